@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.client.impl;
+
+import org.apache.ratis.proto.RaftProtos.CommitInfoProto;
+import org.apache.ratis.proto.RaftProtos.RaftClientReplyProto;
+import org.apache.ratis.proto.RaftProtos.RaftClientRequestProto;
+import org.apache.ratis.proto.RaftProtos.ReplicationLevel;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftClientRequest;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.ProtoUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the conversions between the client requests/replies and their protos in {@link ClientProtoUtils}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ClientProtoUtilsBenchmark {
+  static final int NUM_PEERS = 3;
+
+  @Param({"16", "1024"})
+  private int messageSize;
+
+  private RaftClientRequest request;
+  private RaftClientRequestProto requestProto;
+  private RaftClientReply reply;
+  private RaftClientReplyProto replyProto;
+
+  @Setup
+  public void setup() {
+    final byte[] bytes = new byte[messageSize];
+    ThreadLocalRandom.current().nextBytes(bytes);
+    final Message message = Message.valueOf(ByteString.copyFrom(bytes));
+
+    final ClientId clientId = ClientId.randomId();
+    final RaftGroupId groupId = RaftGroupId.randomId();
+    final List<CommitInfoProto> commitInfos = new ArrayList<>();
+    for(int i = 0; i < NUM_PEERS; i++) {
+      final RaftPeer peer = new RaftPeer(RaftPeerId.valueOf("s" + i), "localhost:" + (10000 + i));
+      commitInfos.add(ProtoUtils.toCommitInfoProto(peer, 1000));
+    }
+
+    request = new RaftClientRequest(clientId, RaftPeerId.valueOf("s0"), groupId, 1, 1, message,
+        RaftClientRequest.writeRequestType(ReplicationLevel.MAJORITY));
+    requestProto = ClientProtoUtils.toRaftClientRequestProto(request);
+    reply = new RaftClientReply(request, message, commitInfos);
+    replyProto = ClientProtoUtils.toRaftClientReplyProto(reply);
+  }
+
+  @Benchmark
+  public RaftClientRequestProto toRequestProto() {
+    return ClientProtoUtils.toRaftClientRequestProto(request);
+  }
+
+  @Benchmark
+  public RaftClientRequest toRequest() {
+    return ClientProtoUtils.toRaftClientRequest(requestProto);
+  }
+
+  @Benchmark
+  public RaftClientReplyProto toReplyProto() {
+    return ClientProtoUtils.toRaftClientReplyProto(reply);
+  }
+
+  @Benchmark
+  public RaftClientReply toReply() {
+    return ClientProtoUtils.toRaftClientReply(replyProto);
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.util.TimeDuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark {@link RetryCache#queryCache(ClientId, long)} for the new requests,
+ * which create and then complete the entries, and for the retries of the completed requests.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+public class RetryCacheBenchmark {
+  static final RaftPeerId SERVER_ID = RaftPeerId.valueOf("s0");
+  static final RaftGroupId GROUP_ID = RaftGroupId.randomId();
+  static final int NUM_RETRY_ENTRIES = 1024;
+
+  @State(Scope.Benchmark)
+  public static class CacheState {
+    @Param({"4096"})
+    private int capacity;
+
+    @Param({"60s"})
+    private String expiryTime;
+
+    private RetryCache cache;
+
+    @Setup
+    public void setup() {
+      cache = new RetryCache(capacity, TimeDuration.valueOf(expiryTime, TimeUnit.SECONDS));
+    }
+
+    @TearDown
+    public void tearDown() {
+      cache.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ClientState {
+    private final ClientId clientId = ClientId.randomId();
+    private long nextCallId = NUM_RETRY_ENTRIES;
+
+    /** Add the completed entries with the callIds in [0, NUM_RETRY_ENTRIES) for the retry benchmark. */
+    @Setup
+    public void setup(CacheState state) {
+      for(long callId = 0; callId < NUM_RETRY_ENTRIES; callId++) {
+        complete(state.cache.queryCache(clientId, callId).getEntry(), callId);
+      }
+    }
+
+    void complete(RetryCache.CacheEntry entry, long callId) {
+      entry.updateResult(new RaftClientReply(clientId, SERVER_ID, GROUP_ID, callId, true, null, null,
+          callId, Collections.emptyList()));
+    }
+  }
+
+  @Benchmark
+  public boolean newRequest(CacheState state, ClientState client) {
+    final long callId = client.nextCallId++;
+    final RetryCache.CacheQueryResult result = state.cache.queryCache(client.clientId, callId);
+    client.complete(result.getEntry(), callId);
+    return result.isRetry();
+  }
+
+  @Benchmark
+  public boolean retry(CacheState state, ClientState client) {
+    final long callId = ThreadLocalRandom.current().nextInt(NUM_RETRY_ENTRIES);
+    return state.cache.queryCache(client.clientId, callId).isRetry();
+  }
+}
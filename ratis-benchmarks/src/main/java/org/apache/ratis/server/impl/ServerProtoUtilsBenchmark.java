@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
+import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto.AppendResult;
+import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
+import org.apache.ratis.proto.RaftProtos.CommitInfoProto;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.proto.RaftProtos.ReplicationLevel;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientRequest;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.ProtoUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the conversions in {@link ServerProtoUtils} on the write path:
+ * a client request to a log entry and the appendEntries requests/replies.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ServerProtoUtilsBenchmark {
+  static final int NUM_PEERS = 3;
+  static final long TERM = 1;
+
+  @Param({"16", "1024"})
+  private int messageSize;
+
+  @Param({"1", "64"})
+  private int numEntries;
+
+  private final RaftPeerId leaderId = RaftPeerId.valueOf("s0");
+  private final RaftPeerId followerId = RaftPeerId.valueOf("s1");
+  private final RaftGroupId groupId = RaftGroupId.randomId();
+
+  private RaftClientRequest request;
+  private List<LogEntryProto> entries;
+  private List<CommitInfoProto> commitInfos;
+  private TermIndex previous;
+
+  @Setup
+  public void setup() {
+    final byte[] bytes = new byte[messageSize];
+    ThreadLocalRandom.current().nextBytes(bytes);
+    final Message message = Message.valueOf(ByteString.copyFrom(bytes));
+    final ClientId clientId = ClientId.randomId();
+
+    request = new RaftClientRequest(clientId, leaderId, groupId, 1, 1, message,
+        RaftClientRequest.writeRequestType(ReplicationLevel.MAJORITY));
+
+    entries = new ArrayList<>(numEntries);
+    for(int i = 0; i < numEntries; i++) {
+      entries.add(ServerProtoUtils.toLogEntryProto(
+          ServerProtoUtils.toStateMachineLogEntryProto(clientId, i, message.getContent(), null), TERM, i + 1));
+    }
+
+    commitInfos = new ArrayList<>();
+    for(int i = 0; i < NUM_PEERS; i++) {
+      final RaftPeer peer = new RaftPeer(RaftPeerId.valueOf("s" + i), "localhost:" + (10000 + i));
+      commitInfos.add(ProtoUtils.toCommitInfoProto(peer, 1000));
+    }
+    previous = TermIndex.newTermIndex(TERM, 0);
+  }
+
+  @Benchmark
+  public LogEntryProto toLogEntryProto() {
+    return ServerProtoUtils.toLogEntryProto(
+        ServerProtoUtils.toStateMachineLogEntryProto(request, null, null), TERM, 1);
+  }
+
+  @Benchmark
+  public AppendEntriesRequestProto toAppendEntriesRequestProto() {
+    return ServerProtoUtils.toAppendEntriesRequestProto(leaderId, followerId, groupId, TERM,
+        entries, 0, false, previous, commitInfos, 0, 1);
+  }
+
+  @Benchmark
+  public AppendEntriesReplyProto toAppendEntriesReplyProto() {
+    return ServerProtoUtils.toAppendEntriesReplyProto(followerId, leaderId, groupId, TERM,
+        numEntries, numEntries + 1, AppendResult.SUCCESS, 1);
+  }
+}
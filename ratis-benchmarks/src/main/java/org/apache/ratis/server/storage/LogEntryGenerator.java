@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.server.impl.ServerProtoUtils;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Generate the log entries for the storage benchmarks. */
+interface LogEntryGenerator {
+  ClientId CLIENT_ID = ClientId.randomId();
+
+  /** @return a new state machine log entry with the given size of random data. */
+  static LogEntryProto newEntry(int dataSize, long term, long index) {
+    final byte[] data = new byte[dataSize];
+    ThreadLocalRandom.current().nextBytes(data);
+    return ServerProtoUtils.toLogEntryProto(ServerProtoUtils.toStateMachineLogEntryProto(
+        CLIENT_ID, index, ByteString.copyFrom(data), null), term, index);
+  }
+}
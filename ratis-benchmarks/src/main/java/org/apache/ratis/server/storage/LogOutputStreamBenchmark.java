@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.SizeInBytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark {@link LogOutputStream#write(LogEntryProto)},
+ * i.e. serializing the entries, computing the checksums and writing them to the buffer,
+ * with and without flushing the segment file.
+ *
+ * The segment file is rolled once it reaches {@link #SEGMENT_SIZE}
+ * so that the benchmark does not use unbounded disk space.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LogOutputStreamBenchmark {
+  static final long SEGMENT_SIZE = SizeInBytes.valueOf("64MB").getSize();
+  static final long PREALLOCATED_SIZE = SizeInBytes.valueOf("4MB").getSize();
+  static final int BUFFER_SIZE = SizeInBytes.valueOf("64KB").getSizeInt();
+  static final int FLUSH_BATCH = 16;
+
+  @Param({"128", "1024", "16384"})
+  private int entrySize;
+
+  private File dir;
+  private File file;
+  private LogOutputStream out;
+  private LogEntryProto entry;
+  private long written;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+    file = new File(dir, "log_inprogress_0");
+    entry = LogEntryGenerator.newEntry(entrySize, 1, 0);
+    newSegment();
+  }
+
+  private void newSegment() throws IOException {
+    if (out != null) {
+      out.close();
+    }
+    FileUtils.deleteFully(file);
+    out = new LogOutputStream(file, false, SEGMENT_SIZE, PREALLOCATED_SIZE, BUFFER_SIZE);
+    written = 0;
+  }
+
+  private void writeEntry() throws IOException {
+    if (written >= SEGMENT_SIZE) {
+      newSegment();
+    }
+    out.write(entry);
+    written += entry.getSerializedSize();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    out.close();
+    FileUtils.deleteFully(dir);
+  }
+
+  @Benchmark
+  public void write() throws IOException {
+    writeEntry();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(FLUSH_BATCH)
+  public void writeAndFlush() throws IOException {
+    for(int i = 0; i < FLUSH_BATCH; i++) {
+      writeEntry();
+    }
+    out.flush();
+  }
+}
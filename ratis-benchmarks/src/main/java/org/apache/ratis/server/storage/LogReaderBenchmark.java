@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.SizeInBytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark decoding a segment file with {@link LogReader#readEntry()},
+ * i.e. reading the entries, verifying the checksums and parsing the protos.
+ * The segment file is written once in the setup and is likely in the page cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LogReaderBenchmark {
+  static final int NUM_ENTRIES = 4096;
+
+  @Param({"128", "1024", "16384"})
+  private int entrySize;
+
+  private File dir;
+  private File file;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+    file = new File(dir, "log_0-" + (NUM_ENTRIES - 1));
+    try(LogOutputStream out = new LogOutputStream(file, false, Long.MAX_VALUE,
+        SizeInBytes.valueOf("4MB").getSize(), SizeInBytes.valueOf("64KB").getSizeInt())) {
+      for(int i = 0; i < NUM_ENTRIES; i++) {
+        out.write(LogEntryGenerator.newEntry(entrySize, 1, i));
+      }
+      out.flush();
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    FileUtils.deleteFully(dir);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ENTRIES)
+  public void readEntries(Blackhole blackhole) throws IOException {
+    try(LogReader reader = new LogReader(file)) {
+      Preconditions.assertTrue(reader.verifyHeader());
+      for(LogEntryProto entry; (entry = reader.readEntry()) != null; ) {
+        blackhole.consume(entry);
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.server.protocol.TermIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the lookups in {@link RaftLogCache} with multiple reader threads:
+ * the segment of an index, the term-index and the cached entry of an index, and the last term-index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+public class RaftLogCacheBenchmark {
+  static final int ENTRY_SIZE = 128;
+
+  @Param({"1", "16", "256"})
+  private int numSegments;
+
+  @Param({"1024"})
+  private int segmentSize;
+
+  private RaftLogCache cache;
+  private long numEntries;
+
+  @Setup
+  public void setup() {
+    cache = new RaftLogCache(null, null, new RaftProperties());
+    numEntries = (long) numSegments * segmentSize;
+    for(long start = 0; start < numEntries; start += segmentSize) {
+      final boolean isOpen = start + segmentSize == numEntries;
+      final LogSegment s = LogSegment.newOpenSegment(null, start);
+      for(long i = start; i < start + segmentSize; i++) {
+        s.appendToOpenSegment(LogEntryGenerator.newEntry(ENTRY_SIZE, 1, i));
+      }
+      if (!isOpen) {
+        s.close();
+      }
+      cache.addSegment(s);
+    }
+  }
+
+  private long randomIndex() {
+    return ThreadLocalRandom.current().nextLong(numEntries);
+  }
+
+  @Benchmark
+  public LogSegment getSegment() {
+    return cache.getSegment(randomIndex());
+  }
+
+  @Benchmark
+  public TermIndex getTermIndex() {
+    final long index = randomIndex();
+    return cache.getSegment(index).getTermIndex(index);
+  }
+
+  @Benchmark
+  public LogEntryProto getEntry() {
+    final long index = randomIndex();
+    return cache.getSegment(index).getEntryWithoutLoading(index).getEntry();
+  }
+
+  @Benchmark
+  public TermIndex getLastTermIndex() {
+    return cache.getLastTermIndex();
+  }
+}
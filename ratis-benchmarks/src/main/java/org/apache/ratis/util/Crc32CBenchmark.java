@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Checksum;
+
+/**
+ * Compare {@link PureJavaCrc32C}, which is used by the raft log,
+ * with the checksums in the JDK.
+ * Note that java.util.zip.CRC32C is only available in Java 9 or above.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class Crc32CBenchmark {
+  static final String PURE_JAVA_CRC32C = "PureJavaCrc32C";
+
+  @Param({PURE_JAVA_CRC32C, "java.util.zip.CRC32C", "java.util.zip.CRC32"})
+  private String checksumClass;
+
+  @Param({"64", "1024", "65536"})
+  private int size;
+
+  private Checksum checksum;
+  private byte[] data;
+
+  @Setup
+  public void setup() throws Exception {
+    if (PURE_JAVA_CRC32C.equals(checksumClass)) {
+      checksum = new PureJavaCrc32C();
+    } else {
+      final Class<? extends Checksum> clazz;
+      try {
+        clazz = Class.forName(checksumClass).asSubclass(Checksum.class);
+      } catch (ClassNotFoundException e) {
+        throw new IllegalStateException(checksumClass + " is not available in Java "
+            + System.getProperty("java.version"), e);
+      }
+      checksum = clazz.getDeclaredConstructor().newInstance();
+    }
+
+    data = new byte[size];
+    ThreadLocalRandom.current().nextBytes(data);
+  }
+
+  @Benchmark
+  public long update() {
+    checksum.reset();
+    checksum.update(data, 0, data.length);
+    return checksum.getValue();
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Benchmark the {@link SlidingWindow.Client} and the {@link SlidingWindow.Server}
+ * by submitting a batch of requests and then replying them in order or in reverse order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SlidingWindowBenchmark {
+  static final int BATCH_SIZE = 64;
+
+  static class Request implements SlidingWindow.Request<Long> {
+    private final long seqNum;
+    private Long reply;
+
+    Request(long seqNum) {
+      this.seqNum = seqNum;
+    }
+
+    @Override
+    public long getSeqNum() {
+      return seqNum;
+    }
+
+    @Override
+    public void setReply(Long reply) {
+      this.reply = reply;
+    }
+
+    @Override
+    public boolean hasReply() {
+      return reply != null;
+    }
+  }
+
+  private SlidingWindow.Client<Request, Long> client;
+  private SlidingWindow.Server<Request, Long> server;
+  private long serverSeqNum;
+
+  private final List<Request> sent = new ArrayList<>(BATCH_SIZE);
+  private final Consumer<Request> sendMethod = sent::add;
+  private final Consumer<Request> processingMethod = r -> {};
+  private long replied;
+  private final Consumer<Request> replyMethod = r -> replied++;
+
+  @Setup
+  public void setup() {
+    client = new SlidingWindow.Client<>("client");
+    server = new SlidingWindow.Server<>("server", new Request(Long.MAX_VALUE));
+    serverSeqNum = 0;
+  }
+
+  private long submitBatch() {
+    sent.clear();
+    long first = -1;
+    for(int i = 0; i < BATCH_SIZE; i++) {
+      final long seqNum = client.submitNewRequest(Request::new, sendMethod).getSeqNum();
+      if (first == -1) {
+        first = seqNum;
+      }
+    }
+    return first;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public int clientInOrder() {
+    final long first = submitBatch();
+    for(int i = 0; i < BATCH_SIZE; i++) {
+      final long seqNum = first + i;
+      client.receiveReply(seqNum, seqNum, sendMethod);
+    }
+    return sent.size();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public int clientOutOfOrder() {
+    final long first = submitBatch();
+    // reply the first request, which unblocks the delayed requests, and then the others in reverse order
+    client.receiveReply(first, first, sendMethod);
+    for(int i = BATCH_SIZE - 1; i > 0; i--) {
+      final long seqNum = first + i;
+      client.receiveReply(seqNum, seqNum, sendMethod);
+    }
+    return sent.size();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public long serverInOrder() {
+    final long first = serverSeqNum;
+    for(int i = 0; i < BATCH_SIZE; i++) {
+      server.receivedRequest(new Request(serverSeqNum++), processingMethod);
+    }
+    for(int i = 0; i < BATCH_SIZE; i++) {
+      final long seqNum = first + i;
+      server.receiveReply(seqNum, seqNum, replyMethod, processingMethod);
+    }
+    return replied;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public long serverOutOfOrder() {
+    final long first = serverSeqNum;
+    serverSeqNum += BATCH_SIZE;
+    // the requests arrive in reverse order except for the first one
+    server.receivedRequest(new Request(first), processingMethod);
+    for(int i = BATCH_SIZE - 1; i > 0; i--) {
+      server.receivedRequest(new Request(first + i), processingMethod);
+    }
+    for(int i = BATCH_SIZE - 1; i >= 0; i--) {
+      final long seqNum = first + i;
+      server.receiveReply(seqNum, seqNum, replyMethod, processingMethod);
+    }
+    return replied;
+  }
+}
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.client;
+
+import org.apache.ratis.RaftConfigKeys;
+import org.apache.ratis.client.impl.ClientImplUtils;
+import org.apache.ratis.conf.Parameters;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.GroupMismatchException;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.retry.RetryPolicies;
+import org.apache.ratis.retry.RetryPolicy;
+import org.apache.ratis.rpc.RpcType;
+import org.apache.ratis.util.JavaUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A client to the raft services of many groups.
+ *
+ * All the groups share a single {@link RaftClientRpc},
+ * so that there is only one connection to each server,
+ * as well as the async scheduler and the outstanding async request budget.
+ * Each group has its own {@link RaftClient} to keep its leader cache and its sliding window.
+ * The requests are routed to the groups by the group ids.
+ */
+public interface RaftMultiGroupClient extends Closeable {
+  Logger LOG = LoggerFactory.getLogger(RaftMultiGroupClient.class);
+
+  /** @return the client id. */
+  ClientId getId();
+
+  /** @return the rpc shared by all the groups. */
+  RaftClientRpc getClientRpc();
+
+  /** Add the given group if it is not yet added.  @return the {@link RaftClient} of the group. */
+  RaftClient addGroup(RaftGroup group);
+
+  /** Remove the given group.  @return the removed {@link RaftClient}, or null if the group is not found. */
+  RaftClient removeGroup(RaftGroupId groupId);
+
+  /** @return the ids of the groups added to this client. */
+  Collection<RaftGroupId> getGroupIds();
+
+  /**
+   * @return the {@link RaftClient} of the given group.
+   * @throws GroupMismatchException if the group is not added to this client.
+   */
+  RaftClient getClient(RaftGroupId groupId) throws GroupMismatchException;
+
+  /** Async call to send the given message to the raft service of the given group. */
+  default CompletableFuture<RaftClientReply> sendAsync(RaftGroupId groupId, Message message) {
+    return getClientAsync(groupId).thenCompose(client -> client.sendAsync(message));
+  }
+
+  /** Async call to send the given readonly message to the raft service of the given group. */
+  default CompletableFuture<RaftClientReply> sendReadOnlyAsync(RaftGroupId groupId, Message message) {
+    return getClientAsync(groupId).thenCompose(client -> client.sendReadOnlyAsync(message));
+  }
+
+  /** Send the given message to the raft service of the given group. */
+  default RaftClientReply send(RaftGroupId groupId, Message message) throws IOException {
+    return getClient(groupId).send(message);
+  }
+
+  /** Send the given readonly message to the raft service of the given group. */
+  default RaftClientReply sendReadOnly(RaftGroupId groupId, Message message) throws IOException {
+    return getClient(groupId).sendReadOnly(message);
+  }
+
+  /** The same as {@link #getClient(RaftGroupId)} except that the exception is returned in the future. */
+  default CompletableFuture<RaftClient> getClientAsync(RaftGroupId groupId) {
+    try {
+      return CompletableFuture.completedFuture(getClient(groupId));
+    } catch (GroupMismatchException e) {
+      return JavaUtils.completeExceptionally(e);
+    }
+  }
+
+  /** @return a {@link Builder}. */
+  static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** To build {@link RaftMultiGroupClient} objects. */
+  class Builder {
+    private ClientId clientId;
+    private RaftClientRpc clientRpc;
+    private RaftProperties properties;
+    private Parameters parameters;
+    private RetryPolicy retryPolicy = RetryPolicies.retryForeverNoSleep();
+
+    private Builder() {}
+
+    /** @return a {@link RaftMultiGroupClient} object. */
+    public RaftMultiGroupClient build() {
+      if (clientId == null) {
+        clientId = ClientId.randomId();
+      }
+      Objects.requireNonNull(properties, "The 'properties' field is not initialized.");
+      if (clientRpc == null) {
+        final RpcType rpcType = RaftConfigKeys.Rpc.type(properties, LOG::debug);
+        final ClientFactory factory = ClientFactory.cast(rpcType.newFactory(parameters));
+        clientRpc = factory.newRaftClientRpc(clientId, properties);
+      }
+      return ClientImplUtils.newRaftMultiGroupClient(clientId, clientRpc, properties, retryPolicy);
+    }
+
+    /** Set {@link RaftMultiGroupClient} ID. */
+    public Builder setClientId(ClientId clientId) {
+      this.clientId = clientId;
+      return this;
+    }
+
+    /** Set {@link RaftClientRpc}. */
+    public Builder setClientRpc(RaftClientRpc clientRpc) {
+      this.clientRpc = clientRpc;
+      return this;
+    }
+
+    /** Set {@link RaftProperties}. */
+    public Builder setProperties(RaftProperties properties) {
+      this.properties = properties;
+      return this;
+    }
+
+    /** Set {@link Parameters}. */
+    public Builder setParameters(Parameters parameters) {
+      this.parameters = parameters;
+      return this;
+    }
+
+    /** Set {@link RetryPolicy}, which is used by all the groups. */
+    public Builder setRetryPolicy(RetryPolicy retryPolicy) {
+      this.retryPolicy = retryPolicy;
+      return this;
+    }
+  }
+}
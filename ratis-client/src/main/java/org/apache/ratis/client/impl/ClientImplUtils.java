@@ -19,6 +19,7 @@ package org.apache.ratis.client.impl;
 
 import org.apache.ratis.client.RaftClient;
 import org.apache.ratis.client.RaftClientRpc;
+import org.apache.ratis.client.RaftMultiGroupClient;
 import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.protocol.RaftGroup;
 import org.apache.ratis.retry.RetryPolicies;
@@ -35,4 +36,9 @@ public class ClientImplUtils {
     return new RaftClientImpl(clientId, group, leaderId, clientRpc, properties,
         retryPolicy);
   }
+
+  public static RaftMultiGroupClient newRaftMultiGroupClient(ClientId clientId,
+      RaftClientRpc clientRpc, RaftProperties properties, RetryPolicy retryPolicy) {
+    return new RaftMultiGroupClientImpl(clientId, clientRpc, properties, retryPolicy);
+  }
 }
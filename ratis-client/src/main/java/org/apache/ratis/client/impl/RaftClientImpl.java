@@ -25,6 +25,8 @@ import org.apache.ratis.retry.RetryPolicy;
 import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.protocol.*;
 import org.apache.ratis.proto.RaftProtos.ReplicationLevel;
+import org.apache.ratis.trace.TraceStage;
+import org.apache.ratis.trace.Tracer;
 import org.apache.ratis.util.*;
 
 import java.io.IOException;
@@ -106,9 +108,22 @@ final class RaftClientImpl implements RaftClient {
       slidingWindows = new ConcurrentHashMap<>();
   private final TimeoutScheduler scheduler;
   private final Semaphore asyncRequestSemaphore;
+  private final Tracer tracer;
+  /** Are the rpc and the tracer owned by this client?  They are not closed by this client if they are shared. */
+  private final boolean ownRpc;
 
   RaftClientImpl(ClientId clientId, RaftGroup group, RaftPeerId leaderId,
       RaftClientRpc clientRpc, RaftProperties properties, RetryPolicy retryPolicy) {
+    this(clientId, group, leaderId, clientRpc, retryPolicy,
+        TimeoutScheduler.newInstance(RaftClientConfigKeys.Async.schedulerThreads(properties)),
+        new Semaphore(RaftClientConfigKeys.Async.maxOutstandingRequests(properties)),
+        Tracer.newInstance(clientId.toString(), properties), true);
+  }
+
+  /** The rpc, the scheduler, the semaphore and the tracer may be shared with the other clients. */
+  RaftClientImpl(ClientId clientId, RaftGroup group, RaftPeerId leaderId,
+      RaftClientRpc clientRpc, RetryPolicy retryPolicy,
+      TimeoutScheduler scheduler, Semaphore asyncRequestSemaphore, Tracer tracer, boolean ownRpc) {
     this.clientId = clientId;
     this.clientRpc = clientRpc;
     this.peers = new ConcurrentLinkedQueue<>(group.getPeers());
@@ -118,8 +133,10 @@ final class RaftClientImpl implements RaftClient {
     Preconditions.assertTrue(retryPolicy != null, "retry policy can't be null");
     this.retryPolicy = retryPolicy;
 
-    asyncRequestSemaphore = new Semaphore(RaftClientConfigKeys.Async.maxOutstandingRequests(properties));
-    scheduler = TimeoutScheduler.newInstance(RaftClientConfigKeys.Async.schedulerThreads(properties));
+    this.asyncRequestSemaphore = asyncRequestSemaphore;
+    this.scheduler = scheduler;
+    this.tracer = tracer;
+    this.ownRpc = ownRpc;
     clientRpc.addServers(peers);
   }
 
@@ -162,19 +179,24 @@ final class RaftClientImpl implements RaftClient {
     if (!type.is(WATCH)) {
       Objects.requireNonNull(message, "message == null");
     }
+    // get the call id first so that the time waiting for the semaphore is traced
+    final long callId = nextCallId();
+    tracer.record(clientId, callId, TraceStage.CLIENT_SUBMIT);
     try {
       asyncRequestSemaphore.acquire();
     } catch (InterruptedException e) {
       throw new CompletionException(IOUtils.toInterruptedIOException(
           "Interrupted when sending " + type + ", message=" + message, e));
     }
-    final long callId = nextCallId();
     final LongFunction<PendingAsyncRequest> constructor = seqNum -> new PendingAsyncRequest(seqNum,
         seq -> newRaftClientRequest(server, callId, seq, message, type));
     return getSlidingWindow(server).submitNewRequest(constructor, this::sendRequestWithRetryAsync
     ).getReplyFuture(
     ).thenApply(reply -> handleStateMachineException(reply, CompletionException::new)
-    ).whenComplete((r, e) -> asyncRequestSemaphore.release());
+    ).whenComplete((r, e) -> {
+      asyncRequestSemaphore.release();
+      tracer.record(clientId, callId, TraceStage.CLIENT_REPLY);
+    });
   }
 
   private RaftClientRequest newRaftClientRequest(
@@ -211,8 +233,13 @@ final class RaftClientImpl implements RaftClient {
     }
 
     final long callId = nextCallId();
-    return sendRequestWithRetry(() -> newRaftClientRequest(
-        server, callId, 0L, message, type));
+    tracer.record(clientId, callId, TraceStage.CLIENT_SUBMIT);
+    try {
+      return sendRequestWithRetry(() -> newRaftClientRequest(
+          server, callId, 0L, message, type));
+    } finally {
+      tracer.record(clientId, callId, TraceStage.CLIENT_REPLY);
+    }
   }
 
   @Override
@@ -308,6 +335,7 @@ final class RaftClientImpl implements RaftClient {
   private CompletableFuture<RaftClientReply> sendRequestAsync(
       RaftClientRequest request, int attemptCount) {
     LOG.debug("{}: send* {}", clientId, request);
+    tracer.record(clientId, request.getCallId(), TraceStage.CLIENT_SEND);
     return clientRpc.sendRequestAsync(request).thenApply(reply -> {
       LOG.debug("{}: receive* {}", clientId, reply);
       reply = handleNotLeaderException(request, reply);
@@ -354,6 +382,7 @@ final class RaftClientImpl implements RaftClient {
   private RaftClientReply sendRequest(RaftClientRequest request)
       throws StateMachineException, GroupMismatchException {
     LOG.debug("{}: send {}", clientId, request);
+    tracer.record(clientId, request.getCallId(), TraceStage.CLIENT_SEND);
     RaftClientReply reply = null;
     try {
       reply = clientRpc.sendRequest(request);
@@ -455,6 +484,9 @@ final class RaftClientImpl implements RaftClient {
 
   @Override
   public void close() throws IOException {
-    clientRpc.close();
+    if (ownRpc) {
+      tracer.close();
+      clientRpc.close();
+    }
   }
 }
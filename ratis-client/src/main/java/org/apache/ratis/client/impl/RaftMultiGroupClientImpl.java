@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.client.impl;
+
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.client.RaftClientConfigKeys;
+import org.apache.ratis.client.RaftClientRpc;
+import org.apache.ratis.client.RaftMultiGroupClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.GroupMismatchException;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.retry.RetryPolicy;
+import org.apache.ratis.trace.Tracer;
+import org.apache.ratis.util.TimeoutScheduler;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/** A {@link RaftMultiGroupClient} with a {@link RaftClientImpl} for each group. */
+final class RaftMultiGroupClientImpl implements RaftMultiGroupClient {
+  private final ClientId clientId;
+  private final RaftClientRpc clientRpc;
+  private final RetryPolicy retryPolicy;
+  /** Shared by all the groups. */
+  private final TimeoutScheduler scheduler;
+  /** Shared by all the groups to bound the total number of outstanding async requests. */
+  private final Semaphore asyncRequestSemaphore;
+  /** Shared by all the groups. */
+  private final Tracer tracer;
+
+  private final Map<RaftGroupId, RaftClientImpl> clients = new ConcurrentHashMap<>();
+
+  RaftMultiGroupClientImpl(ClientId clientId, RaftClientRpc clientRpc, RaftProperties properties,
+      RetryPolicy retryPolicy) {
+    this.clientId = clientId;
+    this.clientRpc = clientRpc;
+    this.retryPolicy = retryPolicy;
+    this.scheduler = TimeoutScheduler.newInstance(RaftClientConfigKeys.Async.schedulerThreads(properties));
+    this.asyncRequestSemaphore = new Semaphore(RaftClientConfigKeys.Async.maxOutstandingRequests(properties));
+    this.tracer = Tracer.newInstance(clientId.toString(), properties);
+  }
+
+  @Override
+  public ClientId getId() {
+    return clientId;
+  }
+
+  @Override
+  public RaftClientRpc getClientRpc() {
+    return clientRpc;
+  }
+
+  @Override
+  public RaftClient addGroup(RaftGroup group) {
+    return clients.computeIfAbsent(group.getGroupId(), id -> new RaftClientImpl(
+        clientId, group, null, clientRpc, retryPolicy, scheduler, asyncRequestSemaphore, tracer, false));
+  }
+
+  @Override
+  public RaftClient removeGroup(RaftGroupId groupId) {
+    return clients.remove(groupId);
+  }
+
+  @Override
+  public Collection<RaftGroupId> getGroupIds() {
+    return Collections.unmodifiableSet(clients.keySet());
+  }
+
+  @Override
+  public RaftClient getClient(RaftGroupId groupId) throws GroupMismatchException {
+    final RaftClient client = clients.get(groupId);
+    if (client == null) {
+      throw new GroupMismatchException(clientId + ": group " + groupId + " not found.");
+    }
+    return client;
+  }
+
+  @Override
+  public void close() throws IOException {
+    clients.clear();
+    tracer.close();
+    clientRpc.close();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "-" + clientId + ":" + clients.keySet();
+  }
+}
@@ -18,12 +18,17 @@
 package org.apache.ratis;
 
 import static org.apache.ratis.conf.ConfUtils.get;
+import static org.apache.ratis.conf.ConfUtils.getInt;
 import static org.apache.ratis.conf.ConfUtils.printAll;
+import static org.apache.ratis.conf.ConfUtils.requireMin;
 import static org.apache.ratis.conf.ConfUtils.set;
+import static org.apache.ratis.conf.ConfUtils.setInt;
 
 import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.rpc.RpcType;
 import org.apache.ratis.rpc.SupportedRpcType;
+import org.apache.ratis.trace.RingBufferTraceSink;
+import org.apache.ratis.trace.TraceSink;
 
 import java.util.function.Consumer;
 
@@ -46,6 +51,40 @@ public interface RaftConfigKeys {
     }
   }
 
+  /** Sampled end-to-end tracing of the write requests; see {@link org.apache.ratis.trace.Tracer}. */
+  interface Trace {
+    String PREFIX = RaftConfigKeys.PREFIX + ".trace";
+
+    /** Trace the requests with call ids being multiples of the period; 0 means disabled. */
+    String SAMPLING_PERIOD_KEY = PREFIX + ".sampling.period";
+    int SAMPLING_PERIOD_DEFAULT = 0;
+    static int samplingPeriod(RaftProperties properties, Consumer<String> logger) {
+      return getInt(properties::getInt, SAMPLING_PERIOD_KEY, SAMPLING_PERIOD_DEFAULT, logger, requireMin(0));
+    }
+    static void setSamplingPeriod(RaftProperties properties, int period) {
+      setInt(properties::setInt, SAMPLING_PERIOD_KEY, period);
+    }
+
+    String SINK_CLASS_KEY = PREFIX + ".sink.class";
+    Class<? extends TraceSink> SINK_CLASS_DEFAULT = RingBufferTraceSink.class;
+    static Class<? extends TraceSink> sinkClass(RaftProperties properties, Consumer<String> logger) {
+      return get((k, d) -> properties.getClass(k, d, TraceSink.class),
+          SINK_CLASS_KEY, SINK_CLASS_DEFAULT, logger);
+    }
+    static void setSinkClass(RaftProperties properties, Class<? extends TraceSink> sinkClass) {
+      properties.setClass(SINK_CLASS_KEY, sinkClass, TraceSink.class);
+    }
+
+    String RING_BUFFER_SIZE_KEY = PREFIX + ".ring.buffer.size";
+    int RING_BUFFER_SIZE_DEFAULT = 4096;
+    static int ringBufferSize(RaftProperties properties, Consumer<String> logger) {
+      return getInt(properties::getInt, RING_BUFFER_SIZE_KEY, RING_BUFFER_SIZE_DEFAULT, logger, requireMin(1));
+    }
+    static void setRingBufferSize(RaftProperties properties, int size) {
+      setInt(properties::setInt, RING_BUFFER_SIZE_KEY, size);
+    }
+  }
+
   static void main(String[] args) {
     printAll(RaftConfigKeys.class);
   }
@@ -49,6 +49,8 @@ public class NativeIO {
     public static int O_APPEND = -1;
     public static int O_NONBLOCK = -1;
     public static int O_SYNC = -1;
+    /** Set only if the platform supports O_DIRECT, e.g. Linux; otherwise, it remains -1. */
+    public static int O_DIRECT = -1;
 
     // Flags for posix_fadvise() from bits/fcntl.h - Set by JNI
     /* No further special treatment.  */
@@ -85,6 +87,7 @@ public class NativeIO {
 
     private static boolean nativeLoaded = false;
     private static boolean syncFileRangePossible = true;
+    private static boolean fallocatePossible = true;
 
     private static long cacheTimeout = -1;
 
@@ -237,6 +240,31 @@ public class NativeIO {
       }
     }
 
+    /** Wrapper around posix_fallocate(3) */
+    static native void posix_fallocate(
+      FileDescriptor fd, long offset, long len) throws NativeIOException;
+
+    /**
+     * Call posix_fallocate on the given file descriptor. See the manpage
+     * for this call for more information. On systems or file systems where
+     * this call is not available, does nothing.
+     *
+     * @return true iff the space is allocated.
+     * @throws NativeIOException if there is an error with the call
+     */
+    public static boolean fallocateIfPossible(
+        FileDescriptor fd, long offset, long len) throws NativeIOException {
+      if (nativeLoaded && fallocatePossible) {
+        try {
+          posix_fallocate(fd, offset, len);
+          return true;
+        } catch (UnsupportedOperationException | UnsatisfiedLinkError uoe) {
+          fallocatePossible = false;
+        }
+      }
+      return false;
+    }
+
     static native void mlock_native(
         ByteBuffer buffer, long len) throws NativeIOException;
 
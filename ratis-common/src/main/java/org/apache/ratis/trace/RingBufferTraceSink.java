@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.trace;
+
+import org.apache.ratis.RaftConfigKeys;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.util.JmxRegister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+/**
+ * Keep the most recent {@link TraceEvent}s in memory,
+ * where the oldest events are overwritten when the buffer is full.
+ * The events can be queried by JMX.
+ */
+public class RingBufferTraceSink implements TraceSink, RingBufferTraceSinkMXBean {
+  public static final Logger LOG = LoggerFactory.getLogger(RingBufferTraceSink.class);
+
+  private final AtomicReferenceArray<TraceEvent> buffer;
+  private final AtomicLong count = new AtomicLong();
+  private final JmxRegister jmx = new JmxRegister();
+
+  public RingBufferTraceSink(String name, RaftProperties properties) {
+    this.buffer = new AtomicReferenceArray<>(RaftConfigKeys.Trace.ringBufferSize(properties, LOG::info));
+
+    final String prefix = "Ratis:service=RaftTrace,name=";
+    jmx.register(this, Arrays.asList(
+        () -> prefix + name,
+        () -> prefix + ObjectName.quote(name)));
+  }
+
+  @Override
+  public void accept(TraceEvent event) {
+    final long i = count.getAndIncrement();
+    buffer.set(Math.toIntExact(i % buffer.length()), event);
+  }
+
+  /** @return the events in the buffer, from the oldest to the newest. */
+  public List<TraceEvent> getTraceEvents() {
+    final long end = count.get();
+    final long start = Math.max(0, end - buffer.length());
+    final List<TraceEvent> events = new ArrayList<>(Math.toIntExact(end - start));
+    for(long i = start; i < end; i++) {
+      final TraceEvent e = buffer.get(Math.toIntExact(i % buffer.length()));
+      if (e != null) {
+        events.add(e);
+      }
+    }
+    return events;
+  }
+
+  @Override
+  public int getCapacity() {
+    return buffer.length();
+  }
+
+  @Override
+  public List<String> getEvents() {
+    return getTraceEvents().stream().map(Objects::toString).collect(Collectors.toList());
+  }
+
+  @Override
+  public List<String> getTrace(long callId) {
+    return getTraceEvents().stream()
+        .filter(e -> e.getCallId() == callId)
+        .map(Objects::toString)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public void close() {
+    try {
+      jmx.unregister();
+    } catch (Exception e) {
+      LOG.warn("Failed to un-register the JMX bean of " + this, e);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.trace;
+
+import org.apache.ratis.protocol.ClientId;
+
+/** A timestamp of a request at a {@link TraceStage}. */
+public final class TraceEvent {
+  private final String name;
+  private final ClientId clientId;
+  private final long callId;
+  private final TraceStage stage;
+  private final long index;
+  private final long timeMs = System.currentTimeMillis();
+  private final long timeNanos = System.nanoTime();
+
+  TraceEvent(String name, ClientId clientId, long callId, TraceStage stage, long index) {
+    this.name = name;
+    this.clientId = clientId;
+    this.callId = callId;
+    this.stage = stage;
+    this.index = index;
+  }
+
+  /** @return the name of the client or the server recording this event. */
+  public String getName() {
+    return name;
+  }
+
+  public ClientId getClientId() {
+    return clientId;
+  }
+
+  public long getCallId() {
+    return callId;
+  }
+
+  public TraceStage getStage() {
+    return stage;
+  }
+
+  /** @return the log index of the request, or -1 if it is not yet known. */
+  public long getIndex() {
+    return index;
+  }
+
+  /** @return the wall-clock time, which is comparable across the machines if their clocks are synchronized. */
+  public long getTimeMs() {
+    return timeMs;
+  }
+
+  /** @return the monotonic time, which is only comparable with the events recorded in the same process. */
+  public long getTimeNanos() {
+    return timeNanos;
+  }
+
+  @Override
+  public String toString() {
+    return name + ":" + clientId + "#" + callId + ":" + stage
+        + (index >= 0? "@" + index: "") + ":" + timeMs + "ms:" + timeNanos + "ns";
+  }
+}
@@ -0,0 +1,35 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.trace;
+
+import java.io.Closeable;
+
+/**
+ * Export the {@link TraceEvent}s recorded by a {@link Tracer}.
+ *
+ * An implementation must have a constructor with the parameters (String name, RaftProperties properties)
+ * and its {@link #accept(TraceEvent)} must be thread-safe and non-blocking
+ * since it is invoked in the request path.
+ */
+public interface TraceSink extends Closeable {
+  void accept(TraceEvent event);
+
+  @Override
+  default void close() {
+  }
+}
@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.trace;
+
+/** The stages of a write request traced by a {@link Tracer}, in the order of the request path. */
+public enum TraceStage {
+  /** The client receives the request from the application. */
+  CLIENT_SUBMIT,
+  /** The client sends the request, or resends it on retry, to a server. */
+  CLIENT_SEND,
+  /** A server receives the request, or a retry of it, from the client. */
+  SERVER_RECEIVE,
+  /** The leader appends the entry of the request to its log. */
+  LEADER_APPEND,
+  /** A follower receives the entry of the request in an appendEntries. */
+  FOLLOWER_RECEIVE,
+  /** A server has written the entry of the request to its log. */
+  LOG_FLUSH,
+  /** A server starts applying the committed entry of the request. */
+  APPLY_START,
+  /** A server has applied the committed entry of the request to its state machine. */
+  APPLY,
+  /** The leader replies the request. */
+  LEADER_REPLY,
+  /** The client receives the reply of the request. */
+  CLIENT_REPLY
+}
@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.trace;
+
+import org.apache.ratis.RaftConfigKeys;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.proto.RaftProtos.StateMachineLogEntryProto;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.util.ReflectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+
+/**
+ * Record the {@link TraceEvent}s of the sampled requests to a {@link TraceSink}.
+ *
+ * A request is sampled if and only if its call id is a multiple of the sampling period.
+ * Since the client id and the call id of a request are carried in the request and in its log entry,
+ * the client, the leader and the followers sample the same requests without any coordination.
+ */
+public final class Tracer implements Closeable {
+  public static final Logger LOG = LoggerFactory.getLogger(Tracer.class);
+
+  /** A tracer sampling no requests. */
+  public static final Tracer DISABLED = new Tracer("disabled", 0, null);
+
+  public static Tracer newInstance(String name, RaftProperties properties) {
+    final int period = RaftConfigKeys.Trace.samplingPeriod(properties, LOG::info);
+    if (period <= 0) {
+      return DISABLED;
+    }
+    final Class<? extends TraceSink> sinkClass = RaftConfigKeys.Trace.sinkClass(properties, LOG::info);
+    final TraceSink sink = ReflectionUtils.newInstance(sinkClass,
+        new Class<?>[] {String.class, RaftProperties.class}, name, properties);
+    return new Tracer(name, period, sink);
+  }
+
+  private final String name;
+  private final int samplingPeriod;
+  private final TraceSink sink;
+
+  private Tracer(String name, int samplingPeriod, TraceSink sink) {
+    this.name = name;
+    this.samplingPeriod = samplingPeriod;
+    this.sink = sink;
+  }
+
+  public boolean isEnabled() {
+    return samplingPeriod > 0;
+  }
+
+  public TraceSink getSink() {
+    return sink;
+  }
+
+  public boolean isSampled(long callId) {
+    return isEnabled() && Math.floorMod(callId, samplingPeriod) == 0;
+  }
+
+  public void record(ClientId clientId, long callId, TraceStage stage) {
+    record(clientId, callId, stage, -1);
+  }
+
+  public void record(ClientId clientId, long callId, TraceStage stage, long index) {
+    if (isSampled(callId)) {
+      sink.accept(new TraceEvent(name, clientId, callId, stage, index));
+    }
+  }
+
+  /** Record the given stage if the given entry is a state machine entry of a sampled request. */
+  public void record(LogEntryProto entry, TraceStage stage) {
+    if (isEnabled() && entry.hasStateMachineLogEntry()) {
+      final StateMachineLogEntryProto smLog = entry.getStateMachineLogEntry();
+      if (isSampled(smLog.getCallId())) {
+        sink.accept(new TraceEvent(name, ClientId.valueOf(smLog.getClientId()), smLog.getCallId(),
+            stage, entry.getIndex()));
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    if (sink != null) {
+      sink.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name + "-" + getClass().getSimpleName() + (isEnabled()? "(1/" + samplingPeriod + ")": "(disabled)");
+  }
+}
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+/**
+ * An event of a hot path, which is recorded to the Java Flight Recorder (JFR)
+ * when running on Java 11 or above; see {@link RaftEvents}.
+ */
+public interface RaftEvent {
+  /** The types of the events, which are recorded as separated JFR event types. */
+  enum Type {
+    /** Flush the log, including the state machine data. */
+    LOG_FLUSH,
+    /** Close the open log segment so that a new segment can be started. */
+    SEGMENT_ROLL,
+    /** Load the entries of a log segment to the cache. */
+    CACHE_LOAD,
+    /**
+     * Build and send an appendEntries request with entries to a follower.
+     * For a blocking RPC, it ends when the reply is received;
+     * for a streaming RPC such as gRPC, it ends when the request is passed to the stream.
+     */
+    APPEND_ENTRIES_SEND,
+    /** Receive and append the entries of an appendEntries request. */
+    APPEND_ENTRIES_RECEIVE,
+    /** A round of a leader election. */
+    ELECTION,
+    /** Take a snapshot of the state machine. */
+    SNAPSHOT_TAKE,
+    /** Install a snapshot chunk from the leader. */
+    SNAPSHOT_INSTALL,
+    /** Apply a batch of committed entries to the state machine. */
+    APPLY_BATCH
+  }
+
+  /** An event which is not recorded. */
+  RaftEvent NOOP = (serverId, groupId, firstIndex, lastIndex, bytes) -> {};
+
+  /**
+   * End this event and then commit it to the recording.
+   * The ids are converted to strings only if the event is recorded.
+   *
+   * @param firstIndex the first log index involved in the event, or -1 if it is not applicable.
+   * @param lastIndex the last log index involved in the event, or -1 if it is not applicable.
+   * @param bytes the number of bytes involved in the event, or -1 if it is not applicable.
+   */
+  void end(Object serverId, Object groupId, long firstIndex, long lastIndex, long bytes);
+}
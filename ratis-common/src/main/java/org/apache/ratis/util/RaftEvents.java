@@ -0,0 +1,33 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+/**
+ * Begin {@link RaftEvent}s.
+ *
+ * JFR is not available in Java 8, so this class always returns {@link RaftEvent#NOOP}.
+ * The multi-release jar has another version of this class for Java 11 or above,
+ * which records the events to JFR; see src/main/java11.
+ */
+public final class RaftEvents {
+  private RaftEvents() {}
+
+  public static RaftEvent begin(RaftEvent.Type type) {
+    return RaftEvent.NOOP;
+  }
+}
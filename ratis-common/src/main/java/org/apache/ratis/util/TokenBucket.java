@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket limiting the rate of bytes, where a token is a byte.
+ * The bucket holds at most one second of tokens.
+ *
+ * A bucket may have a parent, e.g. a bucket of a group may have the bucket of the server as its parent,
+ * so that the rate is limited by both the bucket and its ancestors.
+ *
+ * A request larger than the available tokens is admitted by borrowing the tokens;
+ * the request is delayed until the debt is paid,
+ * either by blocking in {@link #acquire(long)} or by the caller deferring its next request after {@link #borrow(long)}.
+ */
+public class TokenBucket {
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final String name;
+  /** The bytes per second; a non-positive value means unlimited. */
+  private final long rate;
+  private final TokenBucket parent;
+
+  /** The available tokens, which is negative when there is a debt. */
+  private double tokens;
+  private long lastRefillNanos = System.nanoTime();
+
+  public TokenBucket(String name, SizeInBytes bytesPerSecond, TokenBucket parent) {
+    this.name = name;
+    this.rate = bytesPerSecond.getSize();
+    this.parent = parent;
+    this.tokens = Math.max(rate, 0);
+  }
+
+  /** @return true if neither this bucket nor its ancestors limit the rate. */
+  public boolean isUnlimited() {
+    return rate <= 0 && (parent == null || parent.isUnlimited());
+  }
+
+  /** Acquire the given number of tokens from this bucket and then from its parent, blocking if necessary. */
+  public void acquire(long bytes) throws InterruptedException {
+    final long waitNanos = reserve(bytes);
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+    if (parent != null) {
+      parent.acquire(bytes);
+    }
+  }
+
+  /**
+   * Take the given number of tokens from this bucket and its ancestors without blocking,
+   * which may result in a debt.  The caller should defer its next request until the debt is paid.
+   *
+   * @return the time in nanoseconds to wait for paying the debt of this bucket and its ancestors.
+   */
+  public long borrow(long bytes) {
+    final long waitNanos = reserve(bytes);
+    return parent == null? waitNanos: Math.max(waitNanos, parent.borrow(bytes));
+  }
+
+  /**
+   * Take the given number of tokens, which may result in a debt.
+   * @return the time in nanoseconds to wait for paying the debt.
+   */
+  synchronized long reserve(long bytes) {
+    if (rate <= 0) {
+      return 0;
+    }
+    final long now = System.nanoTime();
+    tokens = Math.min(rate, tokens + (now - lastRefillNanos) * rate / NANOS_PER_SECOND);
+    lastRefillNanos = now;
+
+    tokens -= bytes;
+    return tokens >= 0? 0: (long) (-tokens * NANOS_PER_SECOND / rate);
+  }
+
+  @Override
+  public String toString() {
+    return name + "-" + getClass().getSimpleName() + (rate > 0? "(" + rate + "B/s)": "(unlimited)");
+  }
+}
@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.Objects;
+
+/**
+ * Begin {@link RaftEvent}s recorded to the Java Flight Recorder (JFR).
+ *
+ * This is the Java 11 version of the class in the multi-release jar.
+ * The events are recorded only when a recording is running;
+ * they can be disabled or given a threshold in a JFR settings file by their names,
+ * e.g. org.apache.ratis.LogFlush.
+ */
+public final class RaftEvents {
+  private RaftEvents() {}
+
+  public static RaftEvent begin(RaftEvent.Type type) {
+    final JfrEvent event = newEvent(type);
+    if (!event.isEnabled()) {
+      return RaftEvent.NOOP;
+    }
+    event.begin();
+    return event;
+  }
+
+  private static JfrEvent newEvent(RaftEvent.Type type) {
+    switch (type) {
+      case LOG_FLUSH: return new LogFlush();
+      case SEGMENT_ROLL: return new SegmentRoll();
+      case CACHE_LOAD: return new CacheLoad();
+      case APPEND_ENTRIES_SEND: return new AppendEntriesSend();
+      case APPEND_ENTRIES_RECEIVE: return new AppendEntriesReceive();
+      case ELECTION: return new Election();
+      case SNAPSHOT_TAKE: return new SnapshotTake();
+      case SNAPSHOT_INSTALL: return new SnapshotInstall();
+      case APPLY_BATCH: return new ApplyBatch();
+      default: throw new IllegalArgumentException("Unexpected type " + type);
+    }
+  }
+
+  @Category("Apache Ratis")
+  @StackTrace(false)
+  abstract static class JfrEvent extends Event implements RaftEvent {
+    @Label("Server Id")
+    String serverId;
+
+    @Label("Group Id")
+    String groupId;
+
+    @Label("First Index")
+    long firstIndex;
+
+    @Label("Last Index")
+    long lastIndex;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Override
+    public void end(Object serverId, Object groupId, long firstIndex, long lastIndex, long bytes) {
+      end();
+      if (shouldCommit()) {
+        this.serverId = Objects.toString(serverId, null);
+        this.groupId = Objects.toString(groupId, null);
+        this.firstIndex = firstIndex;
+        this.lastIndex = lastIndex;
+        this.bytes = bytes;
+        commit();
+      }
+    }
+  }
+
+  @Name("org.apache.ratis.LogFlush")
+  @Label("Log Flush")
+  @Description("Flush the log, including the state machine data")
+  static final class LogFlush extends JfrEvent {
+  }
+
+  @Name("org.apache.ratis.SegmentRoll")
+  @Label("Segment Roll")
+  @Description("Close the open log segment so that a new segment can be started")
+  static final class SegmentRoll extends JfrEvent {
+  }
+
+  @Name("org.apache.ratis.CacheLoad")
+  @Label("Cache Load")
+  @Description("Load the entries of a log segment to the cache")
+  static final class CacheLoad extends JfrEvent {
+  }
+
+  @Name("org.apache.ratis.AppendEntriesSend")
+  @Label("AppendEntries Send")
+  @Description("Build and send an appendEntries request with entries to a follower;"
+      + " it includes the round trip for a blocking RPC but not for a streaming RPC such as gRPC")
+  static final class AppendEntriesSend extends JfrEvent {
+  }
+
+  @Name("org.apache.ratis.AppendEntriesReceive")
+  @Label("AppendEntries Receive")
+  @Description("Receive and append the entries of an appendEntries request")
+  static final class AppendEntriesReceive extends JfrEvent {
+  }
+
+  @Name("org.apache.ratis.Election")
+  @Label("Election")
+  @Description("A round of a leader election; the indices are the last log index of the candidate")
+  static final class Election extends JfrEvent {
+  }
+
+  @Name("org.apache.ratis.SnapshotTake")
+  @Label("Snapshot Take")
+  @Description("Take a snapshot of the state machine")
+  static final class SnapshotTake extends JfrEvent {
+  }
+
+  @Name("org.apache.ratis.SnapshotInstall")
+  @Label("Snapshot Install")
+  @Description("Install a snapshot chunk from the leader")
+  static final class SnapshotInstall extends JfrEvent {
+  }
+
+  @Name("org.apache.ratis.ApplyBatch")
+  @Label("Apply Batch")
+  @Description("Apply a batch of committed entries to the state machine")
+  static final class ApplyBatch extends JfrEvent {
+  }
+}
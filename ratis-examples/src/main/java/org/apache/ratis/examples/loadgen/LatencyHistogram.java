@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.examples.loadgen;
+
+import org.apache.ratis.util.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values with a bounded relative error,
+ * in the spirit of HdrHistogram.
+ *
+ * Values below 2^{@link #PRECISION_BITS} are counted exactly.
+ * Larger values are counted in buckets, where each power of two is split into
+ * 2^({@link #PRECISION_BITS} - 1) linear sub-buckets,
+ * so that the relative error is less than 2^-({@link #PRECISION_BITS} - 1), i.e. about 1.6%.
+ * The entire range of long values is covered with a fixed number of buckets.
+ */
+public class LatencyHistogram {
+  static final int PRECISION_BITS = 7;
+  private static final int HALF_BUCKET_BITS = PRECISION_BITS - 1;
+  private static final int NUM_BUCKETS = (Long.SIZE - PRECISION_BITS + 1) << HALF_BUCKET_BITS;
+
+  /** @return the bucket index of the given value. */
+  static int toIndex(long value) {
+    if (value < (1L << PRECISION_BITS)) {
+      return (int) value;
+    }
+    final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - HALF_BUCKET_BITS;
+    return (shift << HALF_BUCKET_BITS) + (int) (value >>> shift);
+  }
+
+  /** @return the highest value counted in the bucket with the given index. */
+  static long toHighestValue(int index) {
+    if (index < (1 << PRECISION_BITS)) {
+      return index;
+    }
+    final int shift = (index >>> HALF_BUCKET_BITS) - 1;
+    final long subBucket = index - (shift << HALF_BUCKET_BITS);
+    final long highest = ((subBucket + 1) << shift) - 1;
+    return highest > 0 ? highest : Long.MAX_VALUE;
+  }
+
+  private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /** Record the given value. */
+  public void record(long value) {
+    Preconditions.assertTrue(value >= 0, () -> "value = " + value + " < 0");
+    counts.incrementAndGet(toIndex(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  /** @return the number of recorded values. */
+  public long getCount() {
+    return count.get();
+  }
+
+  /** @return the maximum recorded value. */
+  public long getMax() {
+    return max.get();
+  }
+
+  /** @return the mean of the recorded values. */
+  public double getMean() {
+    final long n = getCount();
+    return n == 0 ? 0 : (double) sum.get() / n;
+  }
+
+  /**
+   * @return the smallest value such that the given percentage of the recorded values
+   *         are less than or equal to it, subject to the precision of this histogram.
+   */
+  public long getValueAtPercentile(double percentile) {
+    Preconditions.assertTrue(percentile >= 0 && percentile <= 100,
+        () -> "percentile = " + percentile + " is not in [0, 100]");
+    final long n = getCount();
+    if (n == 0) {
+      return 0;
+    }
+    final long target = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+    long cumulative = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      cumulative += counts.get(i);
+      if (cumulative >= target) {
+        return Math.min(toHighestValue(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Reset this histogram.
+   * The values recorded concurrently with the reset may be partially discarded.
+   */
+  public void reset() {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    sum.set(0);
+    max.set(0);
+  }
+}
@@ -0,0 +1,549 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.examples.loadgen;
+
+import com.beust.jcommander.DynamicParameter;
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import org.apache.ratis.RaftConfigKeys;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.client.RaftClientConfigKeys;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.examples.arithmetic.cli.SubCommandBase;
+import org.apache.ratis.grpc.GrpcConfigKeys;
+import org.apache.ratis.netty.NettyConfigKeys;
+import org.apache.ratis.proto.RaftProtos.ReplicationLevel;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.rpc.SupportedRpcType;
+import org.apache.ratis.server.RaftServer;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.LifeCycle;
+import org.apache.ratis.util.NetUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An end-to-end load generator.
+ *
+ * It either starts an in-process cluster with {@link LoadStateMachine}s
+ * or connects to a running cluster given by --peers,
+ * drives a configurable mix of async writes, reads, stale reads and watches,
+ * and then reports the throughput and the latency percentiles periodically and at the end.
+ * Raft properties, e.g. the log segment size, can be set with -D for comparing configurations.
+ *
+ * Examples:
+ * <pre>
+ *   # an in-process cluster of 3 servers with 4 groups over Netty
+ *   LoadGenerator --rpc netty --servers 3 --groups 4 --mix write=80,read=10,staleRead=5,watch=5
+ *
+ *   # a multi-process cluster: first start a server process for each peer ...
+ *   LoadGenerator --peers s0:host0:6000,s1:host1:6000,s2:host2:6000 --id s0 --storage /tmp/s0
+ *   # ... then generate load against it
+ *   LoadGenerator --peers s0:host0:6000,s1:host1:6000,s2:host2:6000 --clients 4 --outstanding 128
+ * </pre>
+ */
+public class LoadGenerator {
+  public static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+
+  /** The operations generated. */
+  enum Operation {
+    WRITE("write"), READ("read"), STALE_READ("staleRead"), WATCH("watch");
+
+    private final String name;
+
+    Operation(String name) {
+      this.name = name;
+    }
+
+    static Operation parse(String name) {
+      for (Operation op : values()) {
+        if (op.name.equalsIgnoreCase(name.trim())) {
+          return op;
+        }
+      }
+      throw new ParameterException("Unknown operation " + name + " in the mix, expected one of "
+          + Arrays.toString(values()));
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /** The weighted mix of operations. */
+  static class Mix {
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    Mix(String mix) {
+      final Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+      for (String s : mix.split(",")) {
+        final String[] kv = s.split("=");
+        if (kv.length != 2) {
+          throw new ParameterException("Failed to parse " + s + " in the mix " + mix
+              + ", expected operation=weight");
+        }
+        final int weight = Integer.parseInt(kv[1].trim());
+        if (weight < 0) {
+          throw new ParameterException("Negative weight " + s + " in the mix " + mix);
+        }
+        weights.put(Operation.parse(kv[0]), weight);
+      }
+      weights.values().removeIf(w -> w == 0);
+      if (weights.isEmpty()) {
+        throw new ParameterException("The mix " + mix + " has no operations");
+      }
+
+      operations = weights.keySet().toArray(new Operation[weights.size()]);
+      cumulativeWeights = new int[operations.length];
+      int sum = 0;
+      for (int i = 0; i < operations.length; i++) {
+        sum += weights.get(operations[i]);
+        cumulativeWeights[i] = sum;
+      }
+    }
+
+    Operation next() {
+      final int r = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+      for (int i = 0; ; i++) {
+        if (r < cumulativeWeights[i]) {
+          return operations[i];
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.toString(operations);
+    }
+  }
+
+  /** The latencies in microseconds and the number of errors of an operation. */
+  static class Stats {
+    private final LatencyHistogram interval = new LatencyHistogram();
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final AtomicLong intervalErrors = new AtomicLong();
+    private final AtomicLong totalErrors = new AtomicLong();
+
+    void record(long micros, boolean success) {
+      if (success) {
+        interval.record(micros);
+        total.record(micros);
+      } else {
+        intervalErrors.incrementAndGet();
+        totalErrors.incrementAndGet();
+      }
+    }
+
+    void reset() {
+      interval.reset();
+      total.reset();
+      intervalErrors.set(0);
+      totalErrors.set(0);
+    }
+
+    static String format(Object name, LatencyHistogram h, long errors, double seconds) {
+      return String.format("%-10s %10d ops %10.1f ops/s  mean=%.3f p50=%.3f p90=%.3f p99=%.3f"
+              + " p99.9=%.3f max=%.3f ms  errors=%d",
+          name, h.getCount(), h.getCount() / seconds, h.getMean() / 1000,
+          h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+          h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+          h.getMax() / 1000.0, errors);
+    }
+  }
+
+  /** A client driving the load to a group. */
+  class Worker implements Runnable {
+    private final RaftGroup group;
+    private final RaftPeerId[] peerIds;
+    private final RaftClient client;
+    private final Message[] messages;
+    private final Semaphore outstandingPermits = new Semaphore(outstanding);
+    /** The log index of the last successful write, for the stale reads and the watches. */
+    private final AtomicLong lastWriteIndex = new AtomicLong();
+
+    Worker(RaftGroup group, RaftProperties properties) {
+      this.group = group;
+      this.peerIds = group.getPeers().stream().map(RaftPeer::getId).toArray(RaftPeerId[]::new);
+      this.client = RaftClient.newBuilder().setRaftGroup(group).setProperties(properties).build();
+      this.messages = messageSizes.stream().map(LoadGenerator::newMessage).toArray(Message[]::new);
+    }
+
+    private CompletableFuture<RaftClientReply> send(Operation op) {
+      final ThreadLocalRandom random = ThreadLocalRandom.current();
+      switch (op) {
+        case WRITE:
+          return client.sendAsync(messages[random.nextInt(messages.length)], ReplicationLevel.MAJORITY);
+        case READ:
+          return client.sendReadOnlyAsync(Message.EMPTY);
+        case STALE_READ:
+          return client.sendStaleReadAsync(Message.EMPTY, lastWriteIndex.get(),
+              peerIds[random.nextInt(peerIds.length)]);
+        case WATCH:
+          return client.sendWatchAsync(lastWriteIndex.get(), watchLevel);
+        default:
+          throw new IllegalStateException("Unexpected operation " + op);
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        for (; running; ) {
+          if (!outstandingPermits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+            continue;
+          }
+          final Operation op = mix.next();
+          final Stats s = stats.get(op);
+          final long startNanos = System.nanoTime();
+          CompletableFuture<RaftClientReply> reply;
+          try {
+            reply = send(op);
+          } catch (Throwable t) {
+            reply = new CompletableFuture<>();
+            reply.completeExceptionally(t);
+          }
+          reply.whenComplete((r, e) -> {
+            final boolean success = e == null && r.isSuccess();
+            s.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos), success);
+            if (success && op == Operation.WRITE) {
+              lastWriteIndex.accumulateAndGet(r.getLogIndex(), Math::max);
+            } else if (!success) {
+              LOG.debug("{}: {} failed: {}", group.getGroupId(), op, e != null ? e : r);
+            }
+            outstandingPermits.release();
+          });
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    void awaitOutstanding() throws InterruptedException {
+      if (!outstandingPermits.tryAcquire(outstanding, 60, TimeUnit.SECONDS)) {
+        LOG.warn("{}: {} requests are still outstanding", group.getGroupId(),
+            outstanding - outstandingPermits.availablePermits());
+      }
+    }
+
+    void close() throws IOException {
+      client.close();
+    }
+  }
+
+  @Parameter(names = {"--rpc"}, description = "The rpc type: GRPC or NETTY")
+  private String rpc = SupportedRpcType.GRPC.name();
+
+  @Parameter(names = {"--peers", "-r"}, description = "The peers of a running cluster"
+      + " (format: name:host:port,name:host:port); if it is not set, start an in-process cluster")
+  private String peers;
+
+  @Parameter(names = {"--raftGroup", "-g"}, description = "The groups of a running cluster;"
+      + " each group identifier must have 16 bytes")
+  private List<String> groupNames = Collections.singletonList("demoRaftGroup123");
+
+  @Parameter(names = {"--id", "-i"}, description = "Start the server with this id in --peers"
+      + " and serve the groups in --raftGroup, instead of generating load")
+  private String serverId;
+
+  @Parameter(names = {"--servers"}, description = "The number of servers of the in-process cluster")
+  private int numServers = 3;
+
+  @Parameter(names = {"--groups"}, description = "The number of groups of the in-process cluster")
+  private int numGroups = 1;
+
+  @Parameter(names = {"--storage", "-s"}, description = "The storage directory of the servers;"
+      + " if it is not set, use a temporary directory")
+  private File storageDir;
+
+  @Parameter(names = {"--clients"}, description = "The number of clients for each group")
+  private int numClients = 1;
+
+  @Parameter(names = {"--outstanding"}, description = "The maximum number of outstanding requests for each client")
+  private int outstanding = 64;
+
+  @Parameter(names = {"--messageSizes"}, description = "The message sizes in bytes of the writes;"
+      + " each write uses a size randomly chosen from the list")
+  private List<Integer> messageSizes = Collections.singletonList(128);
+
+  @Parameter(names = {"--mix"}, description = "The weights of the operations: write, read, staleRead and watch")
+  private String mixString = "write=100";
+
+  @Parameter(names = {"--watchLevel"}, description = "The replication level of the watches")
+  private ReplicationLevel watchLevel = ReplicationLevel.ALL_COMMITTED;
+
+  @Parameter(names = {"--warmup"}, description = "The warmup time in seconds, which is excluded from the results")
+  private int warmupSeconds = 5;
+
+  @Parameter(names = {"--duration", "-t"}, description = "The measurement time in seconds")
+  private int durationSeconds = 60;
+
+  @Parameter(names = {"--interval"}, description = "The report interval in seconds")
+  private int intervalSeconds = 5;
+
+  @DynamicParameter(names = "-D", description = "Raft properties for the servers and the clients,"
+      + " e.g. -Draft.server.log.segment.size.max=8MB")
+  private Map<String, String> properties = new HashMap<>();
+
+  @Parameter(names = {"--help", "-h"}, help = true)
+  private boolean help;
+
+  private Mix mix;
+  private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+  private volatile boolean running = true;
+
+  static Message newMessage(int size) {
+    final byte[] bytes = new byte[size];
+    ThreadLocalRandom.current().nextBytes(bytes);
+    return Message.valueOf(ByteString.copyFrom(bytes));
+  }
+
+  static RaftGroupId toRaftGroupId(String name) {
+    return RaftGroupId.valueOf(ByteString.copyFromUtf8(name));
+  }
+
+  private RaftProperties newProperties(SupportedRpcType rpcType) {
+    final RaftProperties p = new RaftProperties();
+    RaftConfigKeys.Rpc.setType(p, rpcType);
+    RaftClientConfigKeys.Async.setMaxOutstandingRequests(p, outstanding);
+    properties.forEach(p::set);
+    return p;
+  }
+
+  private static RaftServer newServer(RaftPeer peer, SupportedRpcType rpcType, RaftProperties properties,
+      File dir, RaftGroup group) throws IOException {
+    final RaftProperties p = new RaftProperties(properties);
+    final int port = NetUtils.createSocketAddr(peer.getAddress()).getPort();
+    switch (rpcType) {
+      case GRPC:
+        GrpcConfigKeys.Server.setPort(p, port);
+        break;
+      case NETTY:
+        NettyConfigKeys.Server.setPort(p, port);
+        break;
+      default:
+        throw new ParameterException("Unsupported rpc type " + rpcType);
+    }
+    RaftServerConfigKeys.setStorageDirs(p, Collections.singletonList(dir));
+    final RaftServer server = RaftServer.newBuilder()
+        .setServerId(peer.getId())
+        .setStateMachineRegistry(gid -> new LoadStateMachine())
+        .setProperties(p)
+        .setGroup(group)
+        .build();
+    server.start();
+    return server;
+  }
+
+  /** Start an in-process cluster and then add the groups to all the servers. */
+  private List<RaftGroup> startCluster(SupportedRpcType rpcType, RaftProperties p, File dir,
+      List<RaftServer> servers) throws IOException {
+    final List<RaftPeer> peerList = new ArrayList<>(numServers);
+    for (int i = 0; i < numServers; i++) {
+      peerList.add(new RaftPeer(RaftPeerId.valueOf("s" + i), NetUtils.createLocalServerAddress()));
+    }
+    for (RaftPeer peer : peerList) {
+      servers.add(newServer(peer, rpcType, p, new File(dir, peer.getId().toString()), null));
+    }
+
+    final List<RaftGroup> groups = new ArrayList<>(numGroups);
+    for (int i = 0; i < numGroups; i++) {
+      final RaftGroup group = RaftGroup.valueOf(RaftGroupId.randomId(), peerList);
+      try (RaftClient client = RaftClient.newBuilder().setRaftGroup(group).setProperties(p).build()) {
+        for (RaftPeer peer : peerList) {
+          client.groupAdd(group, peer.getId());
+        }
+      }
+      groups.add(group);
+    }
+    LOG.info("Started an in-process cluster with {} servers and {} groups over {}",
+        numServers, numGroups, rpcType);
+    return groups;
+  }
+
+  private void report(String header, Map<Operation, LatencyHistogram> histograms,
+      Map<Operation, Long> errors, double seconds) {
+    final StringBuilder b = new StringBuilder(header);
+    histograms.forEach((op, h) -> b.append("\n  ").append(Stats.format(op, h, errors.get(op), seconds)));
+    System.out.println(b);
+  }
+
+  private void reportInterval(long elapsedSeconds) {
+    final Map<Operation, LatencyHistogram> histograms = new EnumMap<>(Operation.class);
+    final Map<Operation, Long> errors = new EnumMap<>(Operation.class);
+    stats.forEach((op, s) -> {
+      histograms.put(op, s.interval);
+      errors.put(op, s.intervalErrors.get());
+    });
+    report(String.format("[%5ds]", elapsedSeconds), histograms, errors, intervalSeconds);
+    stats.values().forEach(s -> {
+      s.interval.reset();
+      s.intervalErrors.set(0);
+    });
+  }
+
+  private void runLoad(List<RaftGroup> groups, RaftProperties p) throws Exception {
+    final List<Worker> workers = new ArrayList<>();
+    for (RaftGroup group : groups) {
+      for (int i = 0; i < numClients; i++) {
+        workers.add(new Worker(group, p));
+      }
+    }
+    LOG.info("Running {} clients for {} groups: mix={}, outstanding={}, messageSizes={}, warmup={}s, duration={}s",
+        workers.size(), groups.size(), mixString, outstanding, messageSizes, warmupSeconds, durationSeconds);
+
+    final List<Thread> threads = workers.stream()
+        .map(w -> new Thread(w, "LoadGenerator-" + w.group.getGroupId()))
+        .collect(Collectors.toList());
+    threads.forEach(Thread::start);
+
+    final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    try {
+      TimeUnit.SECONDS.sleep(warmupSeconds);
+      stats.values().forEach(Stats::reset);
+      final long startNanos = System.nanoTime();
+      reporter.scheduleAtFixedRate(
+          () -> reportInterval(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos)),
+          intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+
+      TimeUnit.SECONDS.sleep(durationSeconds);
+      final double seconds = (System.nanoTime() - startNanos) / 1e9;
+      final Map<Operation, LatencyHistogram> histograms = new EnumMap<>(Operation.class);
+      final Map<Operation, Long> errors = new EnumMap<>(Operation.class);
+      stats.forEach((op, s) -> {
+        histograms.put(op, s.total);
+        errors.put(op, s.totalErrors.get());
+      });
+      reporter.shutdownNow();
+      report(String.format("Summary: %d clients, %d groups, %.1fs", workers.size(), groups.size(), seconds),
+          histograms, errors, seconds);
+    } finally {
+      reporter.shutdownNow();
+      running = false;
+      for (Thread t : threads) {
+        t.join();
+      }
+      for (Worker w : workers) {
+        w.awaitOutstanding();
+        w.close();
+      }
+    }
+  }
+
+  private void serve(SupportedRpcType rpcType, RaftProperties p) throws Exception {
+    if (storageDir == null) {
+      throw new ParameterException("--storage is required for --id");
+    }
+    final RaftPeer[] peerArray = SubCommandBase.parsePeers(peers);
+    final RaftPeer peer = Stream.of(peerArray).filter(x -> x.getId().toString().equals(serverId))
+        .findAny().orElseThrow(() -> new ParameterException(serverId + " is not in the peers " + peers));
+    final RaftServer server = newServer(peer, rpcType, p, storageDir, null);
+    for (String name : groupNames) {
+      try (RaftClient client = RaftClient.newBuilder()
+          .setRaftGroup(RaftGroup.valueOf(toRaftGroupId(name), peer)).setProperties(p).build()) {
+        client.groupAdd(RaftGroup.valueOf(toRaftGroupId(name), peerArray), peer.getId());
+      }
+    }
+    for(; server.getLifeCycleState() != LifeCycle.State.CLOSED;) {
+      TimeUnit.SECONDS.sleep(1);
+    }
+  }
+
+  public void run() throws Exception {
+    final SupportedRpcType rpcType = SupportedRpcType.valueOfIgnoreCase(rpc);
+    mix = new Mix(mixString);
+    for (Operation op : mix.operations) {
+      stats.put(op, new Stats());
+    }
+    final RaftProperties p = newProperties(rpcType);
+
+    if (peers != null && serverId != null) {
+      serve(rpcType, p);
+      return;
+    }
+
+    final List<RaftServer> servers = new ArrayList<>();
+    final boolean isTemporary = storageDir == null;
+    final File dir = isTemporary ? Files.createTempDirectory(getClass().getSimpleName()).toFile() : storageDir;
+    try {
+      final List<RaftGroup> groups;
+      if (peers == null) {
+        groups = startCluster(rpcType, p, dir, servers);
+      } else {
+        final RaftPeer[] peerArray = SubCommandBase.parsePeers(peers);
+        groups = groupNames.stream().map(name -> RaftGroup.valueOf(toRaftGroupId(name), peerArray))
+            .collect(Collectors.toList());
+      }
+      runLoad(groups, p);
+    } finally {
+      for (RaftServer s : servers) {
+        s.close();
+      }
+      if (isTemporary) {
+        FileUtils.deleteFully(dir);
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    final LoadGenerator generator = new LoadGenerator();
+    final JCommander jc = JCommander.newBuilder().addObject(generator)
+        .programName(LoadGenerator.class.getSimpleName()).build();
+    try {
+      jc.parse(args);
+    } catch (ParameterException exception) {
+      System.err.println("Wrong parameters: " + exception.getMessage());
+      jc.usage();
+      return;
+    }
+    if (generator.help) {
+      jc.usage();
+      return;
+    }
+    generator.run();
+  }
+}
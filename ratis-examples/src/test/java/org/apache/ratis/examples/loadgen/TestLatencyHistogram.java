@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.examples.loadgen;
+
+import org.apache.ratis.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class TestLatencyHistogram extends BaseTest {
+  @Override
+  public int getGlobalTimeoutSeconds() {
+    return 10;
+  }
+
+  @Test
+  public void testIndex() {
+    for(long v = 0; v < 1 << 20; v++) {
+      assertIndex(v);
+    }
+    for(int i = 0; i < 1 << 20; i++) {
+      assertIndex(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE));
+    }
+    assertIndex(Long.MAX_VALUE);
+  }
+
+  static void assertIndex(long v) {
+    final int i = LatencyHistogram.toIndex(v);
+    Assert.assertTrue(v <= LatencyHistogram.toHighestValue(i));
+    if (i > 0) {
+      Assert.assertTrue(v > LatencyHistogram.toHighestValue(i - 1));
+    }
+    // relative error
+    final double error = (LatencyHistogram.toHighestValue(i) - v) / (double) Math.max(v, 1);
+    Assert.assertTrue(error < 1.0 / (1 << (LatencyHistogram.PRECISION_BITS - 1)));
+  }
+
+  @Test
+  public void testPercentiles() {
+    final LatencyHistogram h = new LatencyHistogram();
+    Assert.assertEquals(0, h.getValueAtPercentile(99));
+
+    final int n = 100_000;
+    final long[] values = new long[n];
+    for(int i = 0; i < n; i++) {
+      values[i] = ThreadLocalRandom.current().nextLong(1_000_000);
+      h.record(values[i]);
+    }
+    Arrays.sort(values);
+    Assert.assertEquals(n, h.getCount());
+    Assert.assertEquals(values[n - 1], h.getMax());
+    Assert.assertEquals(values[n - 1], h.getValueAtPercentile(100));
+
+    for(double p : new double[]{1, 50, 90, 99, 99.9}) {
+      final long expected = values[(int) Math.ceil(p / 100 * n) - 1];
+      final long computed = h.getValueAtPercentile(p);
+      Assert.assertTrue(p + ": expected=" + expected + ", computed=" + computed,
+          computed >= expected && computed - expected <= expected / 64 + 1);
+    }
+
+    h.reset();
+    Assert.assertEquals(0, h.getCount());
+    Assert.assertEquals(0, h.getMax());
+  }
+}
@@ -58,6 +58,46 @@ public interface GrpcConfigKeys {
     static void setLeaderOutstandingAppendsMax(RaftProperties properties, int maxAppend) {
       setInt(properties::setInt, LEADER_OUTSTANDING_APPENDS_MAX_KEY, maxAppend);
     }
+
+    /**
+     * The max size of the window, in bytes, of the outstanding appendEntries requests to a follower.
+     * The actual window size is adjusted according to the round trip time
+     * and the acknowledgement rate of the follower.
+     */
+    String LEADER_OUTSTANDING_APPENDS_BYTES_MAX_KEY = PREFIX + ".leader.outstanding.appends.bytes.max";
+    SizeInBytes LEADER_OUTSTANDING_APPENDS_BYTES_MAX_DEFAULT = SizeInBytes.valueOf("32MB");
+    static SizeInBytes leaderOutstandingAppendsBytesMax(RaftProperties properties) {
+      return getSizeInBytes(properties::getSizeInBytes, LEADER_OUTSTANDING_APPENDS_BYTES_MAX_KEY,
+          LEADER_OUTSTANDING_APPENDS_BYTES_MAX_DEFAULT, getDefaultLog());
+    }
+    static void setLeaderOutstandingAppendsBytesMax(RaftProperties properties, SizeInBytes maxBytes) {
+      setSizeInBytes(properties::set, LEADER_OUTSTANDING_APPENDS_BYTES_MAX_KEY, maxBytes);
+    }
+
+    /**
+     * Should the leader send the heartbeats over a separate channel
+     * when there are outstanding appendEntries requests to a follower?
+     * Then, the heartbeats do not wait behind large appendEntries requests.
+     */
+    String HEARTBEAT_CHANNEL_ENABLED_KEY = PREFIX + ".heartbeat.channel.enabled";
+    boolean HEARTBEAT_CHANNEL_ENABLED_DEFAULT = true;
+    static boolean heartbeatChannelEnabled(RaftProperties properties) {
+      return getBoolean(properties::getBoolean,
+          HEARTBEAT_CHANNEL_ENABLED_KEY, HEARTBEAT_CHANNEL_ENABLED_DEFAULT, getDefaultLog());
+    }
+    static void setHeartbeatChannelEnabled(RaftProperties properties, boolean enabled) {
+      setBoolean(properties::setBoolean, HEARTBEAT_CHANNEL_ENABLED_KEY, enabled);
+    }
+
+    String HEARTBEAT_TIMEOUT_KEY = PREFIX + ".heartbeat.timeout";
+    TimeDuration HEARTBEAT_TIMEOUT_DEFAULT = TimeDuration.valueOf(1, TimeUnit.SECONDS);
+    static TimeDuration heartbeatTimeout(RaftProperties properties) {
+      return getTimeDuration(properties.getTimeDuration(HEARTBEAT_TIMEOUT_DEFAULT.getUnit()),
+          HEARTBEAT_TIMEOUT_KEY, HEARTBEAT_TIMEOUT_DEFAULT, getDefaultLog());
+    }
+    static void setHeartbeatTimeout(RaftProperties properties, TimeDuration timeout) {
+      setTimeDuration(properties::setTimeDuration, HEARTBEAT_TIMEOUT_KEY, timeout);
+    }
   }
 
   interface OutputStream {
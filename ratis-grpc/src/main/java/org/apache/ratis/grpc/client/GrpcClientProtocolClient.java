@@ -67,7 +67,12 @@ public class GrpcClientProtocolClient implements Closeable {
   private final RaftClientProtocolServiceStub asyncStub;
   private final AdminProtocolServiceBlockingStub adminBlockingStub;
 
-  private final AtomicReference<AsyncStreamObservers> appendStreamObservers = new AtomicReference<>();
+  /**
+   * The async append streams, one for each group.
+   * The groups cannot share a stream since the server has a sliding window for each stream
+   * while the sequence numbers of the groups are independent.
+   */
+  private final Map<RaftGroupId, AsyncStreamObservers> appendStreamObservers = new ConcurrentHashMap<>();
 
   public GrpcClientProtocolClient(ClientId id, RaftPeer target, RaftProperties properties) {
     this.name = JavaUtils.memoize(() -> id + "->" + target.getId());
@@ -92,10 +97,7 @@ public class GrpcClientProtocolClient implements Closeable {
 
   @Override
   public void close() {
-    final AsyncStreamObservers observers = appendStreamObservers.get();
-    if (observers != null) {
-      observers.close();
-    }
+    appendStreamObservers.values().forEach(AsyncStreamObservers::close);
     channel.shutdownNow();
   }
 
@@ -146,8 +148,8 @@ public class GrpcClientProtocolClient implements Closeable {
         .append(responseHandler);
   }
 
-  AsyncStreamObservers getAppendStreamObservers() {
-    return appendStreamObservers.updateAndGet(a -> a != null? a : new AsyncStreamObservers());
+  AsyncStreamObservers getAppendStreamObservers(RaftGroupId groupId) {
+    return appendStreamObservers.computeIfAbsent(groupId, AsyncStreamObservers::new);
   }
 
   public RaftPeer getTarget() {
@@ -155,6 +157,7 @@ public class GrpcClientProtocolClient implements Closeable {
   }
 
   class AsyncStreamObservers implements Closeable {
+    private final RaftGroupId groupId;
     /** Request map: callId -> future */
     private final AtomicReference<Map<Long, CompletableFuture<RaftClientReply>>> replies = new AtomicReference<>(new ConcurrentHashMap<>());
     private final StreamObserver<RaftClientReplyProto> replyStreamObserver = new StreamObserver<RaftClientReplyProto>() {
@@ -165,6 +168,7 @@ public class GrpcClientProtocolClient implements Closeable {
           final RaftClientReply reply = ClientProtoUtils.toRaftClientReply(proto);
           final NotLeaderException nle = reply.getNotLeaderException();
           if (nle != null) {
+            // the stream is only for this group, so only the requests of this group are failed
             completeReplyExceptionally(nle, NotLeaderException.class.getName());
             return;
           }
@@ -187,6 +191,10 @@ public class GrpcClientProtocolClient implements Closeable {
     };
     private final StreamObserver<RaftClientRequestProto> requestStreamObserver = append(replyStreamObserver);
 
+    AsyncStreamObservers(RaftGroupId groupId) {
+      this.groupId = groupId;
+    }
+
     CompletableFuture<RaftClientReply> onNext(RaftClientRequest request) {
       final Map<Long, CompletableFuture<RaftClientReply>> map = replies.get();
       if (map == null) {
@@ -223,7 +231,7 @@ public class GrpcClientProtocolClient implements Closeable {
     }
 
     private void completeReplyExceptionally(Throwable t, String event) {
-      appendStreamObservers.compareAndSet(this, null);
+      appendStreamObservers.remove(groupId, this);
       final Map<Long, CompletableFuture<RaftClientReply>> map = replies.getAndSet(null);
       if (map == null) {
         return;
@@ -59,8 +59,8 @@ public class GrpcClientRpc extends RaftClientRpcWithProxy<GrpcClientProtocolClie
     final RaftPeerId serverId = request.getServerId();
     try {
       final GrpcClientProtocolClient proxy = getProxies().getProxy(serverId);
-      // Reuse the same grpc stream for all async calls.
-      return proxy.getAppendStreamObservers().onNext(request);
+      // Reuse the same grpc stream for all async calls of a group.
+      return proxy.getAppendStreamObservers(request.getRaftGroupId()).onNext(request);
     } catch (IOException e) {
       return JavaUtils.completeExceptionally(e);
     }
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc.client;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.grpc.GrpcConfigKeys;
+import org.apache.ratis.proto.RaftProtos.DataStreamHeaderProto;
+import org.apache.ratis.proto.RaftProtos.DataStreamReplyProto;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.thirdparty.io.grpc.ManagedChannel;
+import org.apache.ratis.thirdparty.io.grpc.netty.NegotiationType;
+import org.apache.ratis.thirdparty.io.grpc.netty.NettyChannelBuilder;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.ProtoUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * A client to stream data out-of-band to the state machines of the servers in a group,
+ * so that the data is not relayed by the leader.
+ * The data is streamed either to all the servers in parallel,
+ * or along a chain of the servers, where each server forwards the stream to the next.
+ *
+ * After a stream is closed successfully, the client may submit a small transaction
+ * referring to the stream so that the state machines link the data at apply time; see
+ * {@link org.apache.ratis.statemachine.StateMachine#stream(ClientId, long)}.
+ */
+public class GrpcDataStreamClient implements Closeable {
+  public static final Logger LOG = LoggerFactory.getLogger(GrpcDataStreamClient.class);
+
+  /** How a stream is sent to the servers in a group. */
+  public enum Type {
+    /** Send the stream to all the servers in parallel. */
+    PARALLEL,
+    /** Send the stream to the first server, which forwards it to the next server, and so on. */
+    CHAIN
+  }
+
+  private final ClientId clientId;
+  private final int flowControlWindow;
+  private final int maxMessageSize;
+  private final Map<RaftPeerId, ManagedChannel> channels = new ConcurrentHashMap<>();
+
+  public GrpcDataStreamClient(ClientId clientId, RaftProperties properties) {
+    this.clientId = clientId;
+    this.flowControlWindow = GrpcConfigKeys.flowControlWindow(properties, LOG::debug).getSizeInt();
+    this.maxMessageSize = GrpcConfigKeys.messageSizeMax(properties, LOG::debug).getSizeInt();
+  }
+
+  private ManagedChannel getChannel(RaftPeer peer) {
+    return channels.computeIfAbsent(peer.getId(), id -> NettyChannelBuilder.forTarget(peer.getAddress())
+        .negotiationType(NegotiationType.PLAINTEXT)
+        .flowControlWindow(flowControlWindow)
+        .maxInboundMessageSize(maxMessageSize)
+        .build());
+  }
+
+  /** Start a stream to the given peer with the given header. */
+  public GrpcDataStreamOutput newOutput(RaftPeer peer, DataStreamHeaderProto header) throws IOException {
+    return new GrpcDataStreamOutput(clientId + "->" + peer.getId() + "-stream" + header.getStreamId(),
+        getChannel(peer), header);
+  }
+
+  /**
+   * Start a stream to the servers in the given group.
+   *
+   * @param streamId the id of the stream, which must be unique for this client.
+   */
+  public DataStream stream(RaftGroup group, long streamId, Type type) throws IOException {
+    final List<RaftPeer> peers = new ArrayList<>(group.getPeers());
+    final DataStreamHeaderProto.Builder header = DataStreamHeaderProto.newBuilder()
+        .setClientId(clientId.toByteString())
+        .setRaftGroupId(ProtoUtils.toRaftGroupIdProtoBuilder(group.getGroupId()))
+        .setStreamId(streamId);
+
+    final List<GrpcDataStreamOutput> outputs = new ArrayList<>();
+    try {
+      if (type == Type.CHAIN) {
+        ProtoUtils.toRaftPeerProtos(peers.subList(1, peers.size())).forEach(header::addChain);
+        outputs.add(newOutput(peers.get(0), header.build()));
+      } else {
+        for (RaftPeer peer : peers) {
+          outputs.add(newOutput(peer, header.build()));
+        }
+      }
+    } catch (IOException e) {
+      outputs.forEach(out -> out.cancel(e));
+      throw e;
+    }
+    return new DataStream(streamId, outputs);
+  }
+
+  /** A stream to one or more servers. */
+  public class DataStream {
+    private final long streamId;
+    private final List<GrpcDataStreamOutput> outputs;
+    /** Leave room for the other fields in a message. */
+    private final int chunkSize = maxMessageSize / 2;
+
+    private DataStream(long streamId, List<GrpcDataStreamOutput> outputs) {
+      this.streamId = streamId;
+      this.outputs = Collections.unmodifiableList(outputs);
+    }
+
+    public long getStreamId() {
+      return streamId;
+    }
+
+    /** Write the remaining bytes of the given buffer to all the outputs. */
+    public void write(ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining()) {
+        final int n = Math.min(buffer.remaining(), chunkSize);
+        final ByteBuffer chunk = buffer.duplicate();
+        chunk.limit(chunk.position() + n);
+        // copy once and share the immutable ByteString with all the outputs
+        final ByteString data = ByteString.copyFrom(chunk);
+        buffer.position(buffer.position() + n);
+        try {
+          for (GrpcDataStreamOutput out : outputs) {
+            out.write(data);
+          }
+        } catch (IOException e) {
+          cancel(e);
+          throw e;
+        }
+      }
+    }
+
+    /**
+     * End the stream.
+     * @return a future of the replies from the servers, which completes exceptionally if any server fails.
+     */
+    public CompletableFuture<List<DataStreamReplyProto>> closeAsync() {
+      final List<CompletableFuture<DataStreamReplyProto>> futures = outputs.stream()
+          .map(GrpcDataStreamOutput::closeAsync)
+          .collect(Collectors.toList());
+      return JavaUtils.allOf(futures).thenApply(v -> futures.stream()
+          .map(CompletableFuture::join)
+          .collect(Collectors.toList()));
+    }
+
+    /** Abort the stream with the given cause. */
+    public void cancel(Throwable cause) {
+      outputs.forEach(out -> out.cancel(cause));
+    }
+  }
+
+  @Override
+  public void close() {
+    channels.values().forEach(ManagedChannel::shutdownNow);
+    channels.clear();
+  }
+}
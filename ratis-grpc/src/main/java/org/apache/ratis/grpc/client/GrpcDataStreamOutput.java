@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc.client;
+
+import org.apache.ratis.grpc.GrpcUtil;
+import org.apache.ratis.proto.RaftProtos.DataStreamHeaderProto;
+import org.apache.ratis.proto.RaftProtos.DataStreamReplyProto;
+import org.apache.ratis.proto.RaftProtos.DataStreamRequestProto;
+import org.apache.ratis.proto.grpc.DataStreamServiceGrpc;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.thirdparty.io.grpc.ManagedChannel;
+import org.apache.ratis.thirdparty.io.grpc.stub.ClientCallStreamObserver;
+import org.apache.ratis.thirdparty.io.grpc.stub.ClientResponseObserver;
+import org.apache.ratis.util.IOUtils;
+import org.apache.ratis.util.Preconditions;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A data stream to a single server over a {@link DataStreamServiceGrpc} call.
+ * The first request is the header and the following requests are the data.
+ *
+ * The writes are flow controlled:
+ * {@link #write(ByteString)} blocks until the underlying call is ready for more data,
+ * while {@link #writeAsync(ByteString)} holds the data until the call is ready
+ * and returns a future completed once the data is sent.
+ */
+public class GrpcDataStreamOutput {
+  private final String name;
+  private final CompletableFuture<DataStreamReplyProto> replyFuture = new CompletableFuture<>();
+  private volatile ClientCallStreamObserver<DataStreamRequestProto> requestObserver;
+  /** The request held by {@link #writeAsync(ByteString)}, at most one at a time; guarded by this object. */
+  private DataStreamRequestProto pending;
+  private CompletableFuture<Void> pendingFuture;
+
+  public GrpcDataStreamOutput(String name, ManagedChannel channel, DataStreamHeaderProto header)
+      throws IOException {
+    this.name = name;
+    DataStreamServiceGrpc.newStub(channel).stream(
+        new ClientResponseObserver<DataStreamRequestProto, DataStreamReplyProto>() {
+          @Override
+          public void beforeStart(ClientCallStreamObserver<DataStreamRequestProto> observer) {
+            requestObserver = observer;
+            observer.setOnReadyHandler(GrpcDataStreamOutput.this::notifyReady);
+          }
+
+          @Override
+          public void onNext(DataStreamReplyProto reply) {
+            replyFuture.complete(reply);
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            replyFuture.completeExceptionally(GrpcUtil.unwrapIOException(t));
+            notifyReady();
+          }
+
+          @Override
+          public void onCompleted() {
+            if (!replyFuture.isDone()) {
+              replyFuture.completeExceptionally(new IOException(name + ": completed without a reply"));
+            }
+            notifyReady();
+          }
+        });
+    // the header is small; send it without waiting so that creating an output never blocks
+    requestObserver.onNext(DataStreamRequestProto.newBuilder().setHeader(header).build());
+  }
+
+  private synchronized void notifyReady() {
+    sendPending();
+    notifyAll();
+  }
+
+  private IOException getException() {
+    return IOUtils.asIOException(replyFuture.handle((reply, e) -> e != null? e
+        : new IOException(name + ": already completed")).join());
+  }
+
+  /** Send the pending request if the call is ready, or fail it if the call is done. */
+  private synchronized void sendPending() {
+    if (pendingFuture == null) {
+      return;
+    }
+    final CompletableFuture<Void> f = pendingFuture;
+    if (replyFuture.isDone()) {
+      f.completeExceptionally(getException());
+    } else if (requestObserver.isReady()) {
+      requestObserver.onNext(pending);
+      f.complete(null);
+    } else {
+      return;
+    }
+    pending = null;
+    pendingFuture = null;
+  }
+
+  private void send(DataStreamRequestProto request) throws IOException {
+    synchronized (this) {
+      while (!requestObserver.isReady() && !replyFuture.isDone()) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw IOUtils.toInterruptedIOException(name + ": interrupted while waiting to send", e);
+        }
+      }
+    }
+    if (replyFuture.isCompletedExceptionally()) {
+      throw getException();
+    }
+    requestObserver.onNext(request);
+  }
+
+  /** Write the given data, which must not be modified afterward. */
+  public void write(ByteString data) throws IOException {
+    send(DataStreamRequestProto.newBuilder().setData(data).build());
+  }
+
+  /**
+   * Write the given data, which must not be modified afterward, without blocking.
+   * The previous write must be completed before calling this method.
+   *
+   * @return a future completed once the data is sent, or completed exceptionally if the stream fails.
+   */
+  public synchronized CompletableFuture<Void> writeAsync(ByteString data) {
+    Preconditions.assertNull(pendingFuture, () -> name + ": the previous writeAsync is not yet completed");
+    final CompletableFuture<Void> f = new CompletableFuture<>();
+    pending = DataStreamRequestProto.newBuilder().setData(data).build();
+    pendingFuture = f;
+    sendPending();
+    return f;
+  }
+
+  /** End the stream. */
+  public CompletableFuture<DataStreamReplyProto> closeAsync() {
+    if (!replyFuture.isDone()) {
+      requestObserver.onCompleted();
+    }
+    return replyFuture;
+  }
+
+  /** Abort the stream with the given cause. */
+  public void cancel(Throwable cause) {
+    if (replyFuture.completeExceptionally(cause)) {
+      requestObserver.cancel(name + " cancelled", cause);
+      notifyReady();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
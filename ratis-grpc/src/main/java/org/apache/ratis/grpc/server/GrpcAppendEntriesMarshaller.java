@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc.server;
+
+import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.thirdparty.com.google.protobuf.CodedOutputStream;
+import org.apache.ratis.thirdparty.com.google.protobuf.UnsafeByteOperations;
+import org.apache.ratis.thirdparty.com.google.protobuf.WireFormat;
+import org.apache.ratis.thirdparty.io.grpc.KnownLength;
+import org.apache.ratis.thirdparty.io.grpc.MethodDescriptor.Marshaller;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Marshal the {@link AppendEntriesRequestProto}s with the entries serialized by the given function,
+ * so that the leader may serialize each entry once and share the bytes with all the followers.
+ *
+ * The output is wire compatible with the protobuf marshaller
+ * since a repeated message field is encoded as the length-delimited serialized messages
+ * and the fields of a message can be in any order.
+ */
+class GrpcAppendEntriesMarshaller implements Marshaller<AppendEntriesRequestProto> {
+  private final Marshaller<AppendEntriesRequestProto> protoMarshaller;
+  private final Function<LogEntryProto, ByteString> serializer;
+
+  GrpcAppendEntriesMarshaller(Marshaller<AppendEntriesRequestProto> protoMarshaller,
+      Function<LogEntryProto, ByteString> serializer) {
+    this.protoMarshaller = protoMarshaller;
+    this.serializer = serializer;
+  }
+
+  @Override
+  public InputStream stream(AppendEntriesRequestProto request) {
+    if (request.getEntriesCount() == 0) {
+      return protoMarshaller.stream(request);
+    }
+    return new SerializedInputStream(serialize(request));
+  }
+
+  ByteString serialize(AppendEntriesRequestProto request) {
+    final List<ByteString> parts = new ArrayList<>(2 * request.getEntriesCount() + 1);
+    parts.add(request.toBuilder().clearEntries().build().toByteString());
+    for (LogEntryProto entry : request.getEntriesList()) {
+      final ByteString serialized = serializer.apply(entry);
+      parts.add(newEntryPrefix(serialized.size()));
+      parts.add(serialized);
+    }
+    // concatenate without copying the serialized entries
+    return ByteString.copyFrom(parts);
+  }
+
+  /** @return the tag and the length of an entry. */
+  private static ByteString newEntryPrefix(int entrySize) {
+    final byte[] prefix = new byte[CodedOutputStream.computeTagSize(AppendEntriesRequestProto.ENTRIES_FIELD_NUMBER)
+        + CodedOutputStream.computeUInt32SizeNoTag(entrySize)];
+    final CodedOutputStream out = CodedOutputStream.newInstance(prefix);
+    try {
+      out.writeTag(AppendEntriesRequestProto.ENTRIES_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+      out.writeUInt32NoTag(entrySize);
+      out.checkNoSpaceLeft();
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to write the prefix of an entry with size " + entrySize, e);
+    }
+    return UnsafeByteOperations.unsafeWrap(prefix);
+  }
+
+  @Override
+  public AppendEntriesRequestProto parse(InputStream stream) {
+    return protoMarshaller.parse(stream);
+  }
+
+  /** The length is known so that grpc can write the message without buffering it first. */
+  private static class SerializedInputStream extends FilterInputStream implements KnownLength {
+    SerializedInputStream(ByteString serialized) {
+      super(serialized.newInput());
+    }
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc.server;
+
+import org.apache.ratis.grpc.GrpcUtil;
+import org.apache.ratis.grpc.client.GrpcDataStreamClient;
+import org.apache.ratis.grpc.client.GrpcDataStreamOutput;
+import org.apache.ratis.proto.RaftProtos.DataStreamHeaderProto;
+import org.apache.ratis.proto.RaftProtos.DataStreamReplyProto;
+import org.apache.ratis.proto.RaftProtos.DataStreamRequestProto;
+import org.apache.ratis.proto.RaftProtos.RaftPeerProto;
+import org.apache.ratis.proto.grpc.DataStreamServiceGrpc.DataStreamServiceImplBase;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.impl.RaftServerProxy;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.thirdparty.io.grpc.Status;
+import org.apache.ratis.thirdparty.io.grpc.StatusRuntimeException;
+import org.apache.ratis.thirdparty.io.grpc.stub.ServerCallStreamObserver;
+import org.apache.ratis.thirdparty.io.grpc.stub.StreamObserver;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.ProtoUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Receive the out-of-band data streams from the clients
+ * and write the data to the state machines; see
+ * {@link org.apache.ratis.statemachine.StateMachine#stream(ClientId, long)}.
+ *
+ * When the header has a chain, the stream is also forwarded to the next peer in the chain
+ * and the reply is sent after both the local write and the downstream are completed.
+ * The chain must only contain the other peers in the configuration of the group;
+ * the peers are resolved against the configuration, not the addresses sent by the client.
+ *
+ * The inbound flow control is manual:
+ * the next request is requested only after the current request is written locally and forwarded,
+ * so that a slow state machine or a slow downstream pushes back the client
+ * without blocking the grpc threads.
+ */
+public class GrpcDataStreamService extends DataStreamServiceImplBase {
+  public static final Logger LOG = LoggerFactory.getLogger(GrpcDataStreamService.class);
+
+  private final RaftServerProxy server;
+  private final GrpcDataStreamClient forwarder;
+
+  public GrpcDataStreamService(RaftServerProxy server) {
+    this.server = server;
+    this.forwarder = new GrpcDataStreamClient(ClientId.randomId(), server.getProperties());
+  }
+
+  void close() {
+    forwarder.close();
+  }
+
+  @Override
+  public StreamObserver<DataStreamRequestProto> stream(StreamObserver<DataStreamReplyProto> responseObserver) {
+    final ServerCallStreamObserver<DataStreamReplyProto> observer
+        = (ServerCallStreamObserver<DataStreamReplyProto>) responseObserver;
+    observer.disableAutoInboundFlowControl();
+    observer.request(1);
+    return new DataStreamObserver(observer);
+  }
+
+  private class DataStreamObserver implements StreamObserver<DataStreamRequestProto> {
+    private final ServerCallStreamObserver<DataStreamReplyProto> responseObserver;
+
+    private DataStreamHeaderProto header;
+    private String name = server.getId() + ":stream";
+    /** The future of the local channel; the data are written in order by chaining the futures. */
+    private CompletableFuture<WritableByteChannel> channelFuture;
+    private GrpcDataStreamOutput downstream;
+    /** The future of the last data forwarded to the downstream. */
+    private CompletableFuture<Void> forwarded = CompletableFuture.completedFuture(null);
+    private long bytesWritten = 0;
+    private boolean closed = false;
+
+    DataStreamObserver(ServerCallStreamObserver<DataStreamReplyProto> responseObserver) {
+      this.responseObserver = responseObserver;
+    }
+
+    @Override
+    public void onNext(DataStreamRequestProto request) {
+      try {
+        if (header == null) {
+          if (!request.hasHeader()) {
+            throw invalidArgument("the first request is not a header but " + request.getTypeCase());
+          }
+          onHeader(request.getHeader());
+        } else {
+          if (request.getTypeCase() != DataStreamRequestProto.TypeCase.DATA) {
+            throw invalidArgument("the request is not data but " + request.getTypeCase());
+          }
+          onData(request.getData());
+        }
+      } catch (Throwable t) {
+        fail(t);
+      }
+    }
+
+    private StatusRuntimeException invalidArgument(String message) {
+      return Status.INVALID_ARGUMENT.withDescription(name + ": " + message).asRuntimeException();
+    }
+
+    /** @return the peers in the chain resolved against the configuration of the group. */
+    private List<RaftPeer> resolveChain(RaftGroup group, List<RaftPeerProto> chain) {
+      final List<RaftPeer> peers = new ArrayList<>(chain.size());
+      for (RaftPeerProto p : chain) {
+        final RaftPeerId id = RaftPeerId.valueOf(p.getId());
+        final RaftPeer peer = group.getPeer(id);
+        if (peer == null || id.equals(server.getId()) || peers.contains(peer)) {
+          throw invalidArgument("unexpected peer " + id + " in the chain " + chain + " of group " + group);
+        }
+        peers.add(peer);
+      }
+      return peers;
+    }
+
+    private void onHeader(DataStreamHeaderProto h) throws IOException {
+      header = h;
+      final ClientId clientId = ClientId.valueOf(h.getClientId());
+      name = server.getId() + ":" + clientId + "-stream" + h.getStreamId();
+      LOG.debug("{}: new stream, chain={}", name, h.getChainList());
+
+      final RaftServerImpl impl = server.getImpl(ProtoUtils.toRaftGroupId(h.getRaftGroupId()));
+      final List<RaftPeer> chain = resolveChain(impl.getGroup(), h.getChainList());
+      if (!chain.isEmpty()) {
+        downstream = forwarder.newOutput(chain.get(0), DataStreamHeaderProto.newBuilder(h)
+            .clearChain().addAllChain(ProtoUtils.toRaftPeerProtos(chain.subList(1, chain.size()))).build());
+      }
+      channelFuture = impl.getStateMachine().stream(clientId, h.getStreamId());
+      channelFuture.whenComplete((channel, e) -> {
+        if (e != null) {
+          fail(e);
+        } else {
+          responseObserver.request(1);
+        }
+      });
+    }
+
+    private void onData(ByteString data) {
+      if (downstream != null) {
+        forwarded = downstream.writeAsync(data);
+      }
+      channelFuture = channelFuture.thenApply(channel -> JavaUtils.supplyAndWrapAsCompletionException(() -> {
+        for(ByteBuffer buffer = data.asReadOnlyByteBuffer(); buffer.hasRemaining(); ) {
+          bytesWritten += channel.write(buffer);
+        }
+        return channel;
+      }));
+      channelFuture.thenCombine(forwarded, (channel, v) -> channel).whenComplete((channel, e) -> {
+        if (e != null) {
+          fail(e);
+        } else {
+          responseObserver.request(1);
+        }
+      });
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      GrpcUtil.warn(LOG, () -> name + ": stream onError", t);
+      close(t);
+    }
+
+    @Override
+    public void onCompleted() {
+      if (channelFuture == null) {
+        responseObserver.onCompleted();
+        return;
+      }
+      final CompletableFuture<DataStreamReplyProto> local = channelFuture.thenApply(
+          channel -> JavaUtils.supplyAndWrapAsCompletionException(() -> {
+            channel.close();
+            return DataStreamReplyProto.newBuilder()
+                .setStreamId(header.getStreamId())
+                .setBytesWritten(bytesWritten)
+                .build();
+          }));
+      // the half-close may arrive before the last data is forwarded; close the downstream after it
+      final CompletableFuture<DataStreamReplyProto> reply = downstream == null? local
+          : local.thenCombine(forwarded.thenCompose(v -> downstream.closeAsync()), this::checkDownstream);
+      reply.whenComplete((r, e) -> {
+        if (e != null) {
+          fail(e);
+        } else {
+          succeed(r);
+        }
+      });
+    }
+
+    /** @return the local reply if the downstream has written the same number of bytes. */
+    private DataStreamReplyProto checkDownstream(DataStreamReplyProto localReply,
+        DataStreamReplyProto downstreamReply) {
+      if (downstreamReply.getBytesWritten() != localReply.getBytesWritten()) {
+        throw new CompletionException(new IOException(name + ": bytesWritten mismatched, local="
+            + localReply.getBytesWritten() + " but downstream " + downstream + " has "
+            + downstreamReply.getBytesWritten()));
+      }
+      return localReply;
+    }
+
+    private synchronized void succeed(DataStreamReplyProto reply) {
+      if (!closed) {
+        closed = true;
+        LOG.debug("{}: completed, bytesWritten={}", name, bytesWritten);
+        responseObserver.onNext(reply);
+        responseObserver.onCompleted();
+      }
+    }
+
+    private synchronized void fail(Throwable t) {
+      if (close(t)) {
+        LOG.warn(name + ": failed", JavaUtils.unwrapCompletionException(t));
+        responseObserver.onError(t instanceof StatusRuntimeException? t : GrpcUtil.wrapException(t));
+      }
+    }
+
+    /** @return true if it is closed by this call. */
+    private synchronized boolean close(Throwable cause) {
+      if (closed) {
+        return false;
+      }
+      closed = true;
+      if (downstream != null) {
+        downstream.cancel(cause);
+      }
+      if (channelFuture != null) {
+        channelFuture.thenAccept(channel -> {
+          try {
+            channel.close();
+          } catch (IOException e) {
+            LOG.warn(name + ": failed to close the channel", e);
+          }
+        });
+      }
+      return true;
+    }
+  }
+}
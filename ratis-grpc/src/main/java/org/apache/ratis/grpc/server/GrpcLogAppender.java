@@ -17,12 +17,14 @@
  */
 package org.apache.ratis.grpc.server;
 
+import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.grpc.GrpcConfigKeys;
 import org.apache.ratis.grpc.GrpcUtil;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.impl.FollowerInfo;
 import org.apache.ratis.server.impl.LeaderState;
 import org.apache.ratis.server.impl.LogAppender;
+import org.apache.ratis.server.impl.RaftServerConstants;
 import org.apache.ratis.server.impl.RaftServerImpl;
 import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.thirdparty.io.grpc.stub.StreamObserver;
@@ -49,7 +51,10 @@ public class GrpcLogAppender extends LogAppender {
   private final GrpcService rpcService;
   private final Map<Long, AppendEntriesRequestProto> pendingRequests;
   private final int maxPendingRequestsNum;
+  private final ReplicationWindow window;
   private long callId = 0;
+  /** The call id of the last heartbeat sent when there were no pending requests; guarded by this object. */
+  private long unqueuedHeartbeatCallId = -1;
   private volatile boolean firstResponseReceived = false;
 
   private final TimeDuration requestTimeoutDuration;
@@ -57,15 +62,23 @@ public class GrpcLogAppender extends LogAppender {
 
   private volatile StreamObserver<AppendEntriesRequestProto> appendLogRequestObserver;
 
+  private final boolean heartbeatChannelEnabled;
+  /** The last time that a heartbeat was sent over the heartbeat channel. */
+  private volatile Timestamp lastHeartbeatTime = new Timestamp();
+
   public GrpcLogAppender(RaftServerImpl server, LeaderState leaderState,
                          FollowerInfo f) {
     super(server, leaderState, f);
 
     this.rpcService = (GrpcService) server.getServerRpc();
 
-    maxPendingRequestsNum = GrpcConfigKeys.Server.leaderOutstandingAppendsMax(
-        server.getProxy().getProperties());
-    requestTimeoutDuration = RaftServerConfigKeys.Rpc.requestTimeout(server.getProxy().getProperties());
+    final RaftProperties properties = server.getProxy().getProperties();
+    maxPendingRequestsNum = GrpcConfigKeys.Server.leaderOutstandingAppendsMax(properties);
+    final int maxWindow = GrpcConfigKeys.Server.leaderOutstandingAppendsBytesMax(properties).getSizeInt();
+    final int maxBatch = RaftServerConfigKeys.Log.Appender.bufferCapacity(properties).getSizeInt();
+    window = new ReplicationWindow(Math.min(maxBatch, maxWindow), maxWindow);
+    requestTimeoutDuration = RaftServerConfigKeys.Rpc.requestTimeout(properties);
+    heartbeatChannelEnabled = GrpcConfigKeys.Server.heartbeatChannelEnabled(properties);
     pendingRequests = new ConcurrentHashMap<>();
   }
 
@@ -96,6 +109,9 @@ public class GrpcLogAppender extends LogAppender {
           appendLog();
         }
       }
+      if (getHeartbeatChannelRemainingTime() <= 0) {
+        sendHeartbeat();
+      }
       checkSlowness();
     }
 
@@ -103,12 +119,43 @@ public class GrpcLogAppender extends LogAppender {
   }
 
   private long getWaitTimeMs() {
+    final long waitTimeMs;
     if (!shouldSendRequest()) {
-      return getHeartbeatRemainingTime(); // No requests, wait until heartbeat
+      waitTimeMs = getNextRequestRemainingTime(); // No requests, wait until heartbeat or the deferred entries
     } else if (shouldWait()) {
-      return halfMinTimeoutMs; // Should wait for a short time
+      waitTimeMs = getHalfMinTimeoutMs(); // Should wait for a short time
+    } else {
+      return 0L;
     }
-    return 0L;
+    return Math.min(waitTimeMs, getHeartbeatChannelRemainingTime());
+  }
+
+  /**
+   * When there are outstanding appendEntries requests, a heartbeat sent over the appendEntries stream
+   * has to wait behind them so that the follower may not receive it before the election timeout.
+   * In such case, the heartbeats are sent over the heartbeat channel.
+   *
+   * @return the time in milliseconds that the leader should send a heartbeat over the heartbeat channel.
+   */
+  private long getHeartbeatChannelRemainingTime() {
+    if (!heartbeatChannelEnabled || pendingRequests.isEmpty()) {
+      return Long.MAX_VALUE;
+    }
+    final Timestamp last = Timestamp.latest(lastHeartbeatTime, follower.getLastRpcResponseTime());
+    return getHalfMinTimeoutMs() - last.elapsedTimeMs();
+  }
+
+  @Override
+  protected void sendHeartbeatWhileThrottled() throws IOException {
+    follower.updateLastRpcSendTime();
+    sendHeartbeat();
+  }
+
+  private void sendHeartbeat() throws IOException {
+    lastHeartbeatTime = new Timestamp();
+    final AppendEntriesRequestProto heartbeat = newHeartbeatRequest(RaftServerConstants.DEFAULT_CALLID);
+    LOG.trace("{}: send heartbeat over the heartbeat channel", this);
+    getClient().heartbeat(heartbeat, new HeartbeatResponseHandler(System.nanoTime()));
   }
 
   private void mayWait() {
@@ -133,16 +180,22 @@ public class GrpcLogAppender extends LogAppender {
     return appendLogRequestObserver == null || super.shouldSendRequest();
   }
 
-  /** @return true iff not received first response or queue is full. */
+  @Override
+  protected int getBufferCapacity() {
+    return window.getBatchSize();
+  }
+
+  /** @return true iff not received first response or queue is full or the window is full. */
   private boolean shouldWait() {
     final int size = pendingRequests.size();
     if (size == 0) {
       return false;
     }
-    return !firstResponseReceived || size >= maxPendingRequestsNum;
+    return !firstResponseReceived || size >= maxPendingRequestsNum || window.isFull();
   }
 
   private void appendLog() throws IOException {
+    final RaftEvent event = RaftEvents.begin(RaftEvent.Type.APPEND_ENTRIES_SEND);
     final AppendEntriesRequestProto pending;
     final StreamObserver<AppendEntriesRequestProto> s;
     synchronized (this) {
@@ -153,16 +206,26 @@ public class GrpcLogAppender extends LogAppender {
       if (pending == null) {
         return;
       }
-      pendingRequests.put(pending.getServerRequest().getCallId(), pending);
+      final long pendingCallId = pending.getServerRequest().getCallId();
+      if (pending.getEntriesCount() == 0 && pendingRequests.isEmpty()) {
+        // the heartbeat is not queued behind other requests; see updateHeartbeatRtt
+        unqueuedHeartbeatCallId = pendingCallId;
+      }
+      pendingRequests.put(pendingCallId, pending);
+      window.onSend(pendingCallId, pending.getSerializedSize());
       updateNextIndex(pending);
       if (appendLogRequestObserver == null) {
-        appendLogRequestObserver = getClient().appendEntries(new AppendLogResponseHandler());
+        // the entries are serialized once by the log and the bytes are shared by all the followers
+        appendLogRequestObserver = getClient().appendEntries(
+            new AppendLogResponseHandler(), raftLog::getSerializedEntry);
       }
       s = appendLogRequestObserver;
     }
 
+    throttleCatchup(pending);
     if (isAppenderRunning()) {
       sendRequest(pending, s);
+      endAppendEntriesSendEvent(event, pending);
     }
   }
 
@@ -178,9 +241,12 @@ public class GrpcLogAppender extends LogAppender {
   }
 
   private void timeoutAppendRequest(AppendEntriesRequestProto request) {
-    AppendEntriesRequestProto pendingRequest = pendingRequests.remove(request.getServerRequest().getCallId());
+    final long requestCallId = request.getServerRequest().getCallId();
+    AppendEntriesRequestProto pendingRequest = pendingRequests.remove(requestCallId);
     if (pendingRequest != null) {
-      LOG.warn( "{}: appendEntries Timeout, request={}", this, ProtoUtils.toString(pendingRequest.getServerRequest()));
+      window.onTimeout(requestCallId);
+      LOG.warn( "{}: appendEntries Timeout, request={}, {}", this,
+          ProtoUtils.toString(pendingRequest.getServerRequest()), window);
     }
   }
 
@@ -263,8 +329,50 @@ public class GrpcLogAppender extends LogAppender {
     }
   }
 
+  /**
+   * StreamObserver for handling the replies of the heartbeats sent over the heartbeat channel.
+   * Since a heartbeat has neither the previous log nor any entries,
+   * the reply does not change the pending requests or the indices of the follower.
+   */
+  private class HeartbeatResponseHandler implements StreamObserver<AppendEntriesReplyProto> {
+    private final long sendNanos;
+
+    HeartbeatResponseHandler(long sendNanos) {
+      this.sendNanos = sendNanos;
+    }
+
+    @Override
+    public void onNext(AppendEntriesReplyProto reply) {
+      LOG.trace("{}: received heartbeat reply {}", GrpcLogAppender.this, ServerProtoUtils.toString(reply));
+      follower.updateLastRpcResponseTime();
+      switch (reply.getResult()) {
+        case SUCCESS:
+          updateHeartbeatRtt(System.nanoTime() - sendNanos);
+          updateCommitIndex(reply.getFollowerCommit());
+          break;
+        case NOT_LEADER:
+          onNotLeader(reply);
+          break;
+        default:
+          break;
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      if (isAppenderRunning()) {
+        GrpcUtil.warn(LOG, () -> server.getId() + ": Failed heartbeat to " + follower.getPeer(), t);
+      }
+    }
+
+    @Override
+    public void onCompleted() {
+    }
+  }
+
   private void clearPendingRequests(long newNextIndex) {
     pendingRequests.clear();
+    window.clear();
     follower.decreaseNextIndex(newNextIndex);
   }
 
@@ -275,6 +383,15 @@ public class GrpcLogAppender extends LogAppender {
       LOG.warn("{}: Request not found, ignoring reply: {}", this, ServerProtoUtils.toString(reply));
       return;
     }
+    onSuccessReply(request);
+    final long replyCallId = reply.getServerReply().getCallId();
+    final long rtt = window.onAck(replyCallId);
+    if (rtt > 0) {
+      updateAppendEntriesRtt(rtt);
+      if (replyCallId == unqueuedHeartbeatCallId) {
+        updateHeartbeatRtt(rtt);
+      }
+    }
     updateCommitIndex(reply.getFollowerCommit());
 
     final long replyNextIndex = reply.getNextIndex();
@@ -314,6 +431,7 @@ public class GrpcLogAppender extends LogAppender {
       LOG.warn("{}: Ignoring {}", server.getId(), reply);
       return;
     }
+    window.onFailure(reply.getServerReply().getCallId());
     Preconditions.assertTrue(request.hasPreviousLog());
     if (request.getPreviousLog().getIndex() >= reply.getNextIndex()) {
       clearPendingRequests(reply.getNextIndex());
@@ -409,6 +527,7 @@ public class GrpcLogAppender extends LogAppender {
       snapshotRequestObserver = getClient().installSnapshot(responseHandler);
       for (InstallSnapshotRequestProto request :
           new SnapshotRequestIter(snapshot, requestId)) {
+        throttleSnapshot(request.getSerializedSize());
         if (isAppenderRunning()) {
           snapshotRequestObserver.onNext(request);
           follower.updateLastRpcSendTime();
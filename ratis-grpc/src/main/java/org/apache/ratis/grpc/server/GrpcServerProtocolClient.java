@@ -17,18 +17,24 @@
  */
 package org.apache.ratis.grpc.server;
 
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.thirdparty.io.grpc.ManagedChannel;
+import org.apache.ratis.thirdparty.io.grpc.MethodDescriptor;
 import org.apache.ratis.thirdparty.io.grpc.netty.NegotiationType;
 import org.apache.ratis.thirdparty.io.grpc.netty.NettyChannelBuilder;
+import org.apache.ratis.thirdparty.io.grpc.stub.ClientCalls;
 import org.apache.ratis.thirdparty.io.grpc.stub.StreamObserver;
 import org.apache.ratis.proto.RaftProtos.*;
 import org.apache.ratis.proto.grpc.RaftServerProtocolServiceGrpc;
 import org.apache.ratis.proto.grpc.RaftServerProtocolServiceGrpc.RaftServerProtocolServiceBlockingStub;
 import org.apache.ratis.proto.grpc.RaftServerProtocolServiceGrpc.RaftServerProtocolServiceStub;
 import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.MemoizedSupplier;
 import org.apache.ratis.util.TimeDuration;
 
 import java.io.Closeable;
+import java.util.function.Function;
 
 /**
  * This is a RaftClient implementation that supports streaming data to the raft
@@ -40,8 +46,12 @@ public class GrpcServerProtocolClient implements Closeable {
   private final RaftServerProtocolServiceBlockingStub blockingStub;
   private final RaftServerProtocolServiceStub asyncStub;
 
+  /** A separate channel for the heartbeats, which is created when the first heartbeat is sent. */
+  private final MemoizedSupplier<ManagedChannel> heartbeatChannel;
+  private final TimeDuration heartbeatTimeoutDuration;
+
   public GrpcServerProtocolClient(RaftPeer target, int flowControlWindow,
-      TimeDuration requestTimeoutDuration) {
+      TimeDuration requestTimeoutDuration, TimeDuration heartbeatTimeoutDuration) {
     channel = NettyChannelBuilder.forTarget(target.getAddress())
         .negotiationType(NegotiationType.PLAINTEXT)
         .flowControlWindow(flowControlWindow)
@@ -49,11 +59,19 @@ public class GrpcServerProtocolClient implements Closeable {
     blockingStub = RaftServerProtocolServiceGrpc.newBlockingStub(channel);
     asyncStub = RaftServerProtocolServiceGrpc.newStub(channel);
     this.requestTimeoutDuration = requestTimeoutDuration;
+
+    heartbeatChannel = JavaUtils.memoize(() -> NettyChannelBuilder.forTarget(target.getAddress())
+        .negotiationType(NegotiationType.PLAINTEXT)
+        .build());
+    this.heartbeatTimeoutDuration = heartbeatTimeoutDuration;
   }
 
   @Override
   public void close() {
     channel.shutdownNow();
+    if (heartbeatChannel.isInitialized()) {
+      heartbeatChannel.get().shutdownNow();
+    }
   }
 
   public RequestVoteReplyProto requestVote(RequestVoteRequestProto request) {
@@ -64,9 +82,25 @@ public class GrpcServerProtocolClient implements Closeable {
     return r;
   }
 
+  /**
+   * @param serializer serialize the entries in the requests,
+   *                   which may return the same bytes shared with the other followers.
+   */
   StreamObserver<AppendEntriesRequestProto> appendEntries(
-      StreamObserver<AppendEntriesReplyProto> responseHandler) {
-    return asyncStub.appendEntries(responseHandler);
+      StreamObserver<AppendEntriesReplyProto> responseHandler, Function<LogEntryProto, ByteString> serializer) {
+    final MethodDescriptor<AppendEntriesRequestProto, AppendEntriesReplyProto> method
+        = RaftServerProtocolServiceGrpc.getAppendEntriesMethod();
+    final MethodDescriptor<AppendEntriesRequestProto, AppendEntriesReplyProto> serialized = method.toBuilder(
+        new GrpcAppendEntriesMarshaller(method.getRequestMarshaller(), serializer), method.getResponseMarshaller())
+        .build();
+    return ClientCalls.asyncBidiStreamingCall(channel.newCall(serialized, asyncStub.getCallOptions()),
+        responseHandler);
+  }
+
+  void heartbeat(AppendEntriesRequestProto request, StreamObserver<AppendEntriesReplyProto> responseHandler) {
+    RaftServerProtocolServiceGrpc.newStub(heartbeatChannel.get())
+        .withDeadlineAfter(heartbeatTimeoutDuration.getDuration(), heartbeatTimeoutDuration.getUnit())
+        .heartbeat(request, responseHandler);
   }
 
   StreamObserver<InstallSnapshotRequestProto> installSnapshot(
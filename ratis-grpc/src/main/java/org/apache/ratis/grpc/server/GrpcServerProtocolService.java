@@ -24,6 +24,7 @@ import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.thirdparty.io.grpc.stub.StreamObserver;
 import org.apache.ratis.proto.RaftProtos.*;
 import org.apache.ratis.proto.grpc.RaftServerProtocolServiceGrpc.RaftServerProtocolServiceImplBase;
+import org.apache.ratis.util.Preconditions;
 import org.apache.ratis.util.ProtoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -108,6 +109,28 @@ public class GrpcServerProtocolService extends RaftServerProtocolServiceImplBase
     };
   }
 
+  @Override
+  public void heartbeat(AppendEntriesRequestProto request,
+      StreamObserver<AppendEntriesReplyProto> responseObserver) {
+    try {
+      Preconditions.assertTrue(!request.hasPreviousLog() && request.getEntriesCount() == 0,
+          () -> "Unexpected heartbeat with previous log or entries: "
+              + ProtoUtils.toString(request.getServerRequest()));
+      server.appendEntriesAsync(request).whenComplete((reply, e) -> {
+        if (e != null) {
+          GrpcUtil.warn(LOG, () -> getId() + ": Failed heartbeat " + ProtoUtils.toString(request.getServerRequest()), e);
+          responseObserver.onError(GrpcUtil.wrapException(e));
+        } else {
+          responseObserver.onNext(reply);
+          responseObserver.onCompleted();
+        }
+      });
+    } catch (Throwable e) {
+      GrpcUtil.warn(LOG, () -> getId() + ": Failed heartbeat " + ProtoUtils.toString(request.getServerRequest()), e);
+      responseObserver.onError(GrpcUtil.wrapException(e));
+    }
+  }
+
   @Override
   public StreamObserver<InstallSnapshotRequestProto> installSnapshot(
       StreamObserver<InstallSnapshotReplyProto> responseObserver) {
@@ -24,6 +24,7 @@ import org.apache.ratis.rpc.SupportedRpcType;
 import org.apache.ratis.server.RaftServer;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.RaftServerRpc;
+import org.apache.ratis.server.impl.RaftServerProxy;
 import org.apache.ratis.server.impl.RaftServerRpcWithProxy;
 import org.apache.ratis.thirdparty.io.grpc.Server;
 import org.apache.ratis.thirdparty.io.grpc.netty.NettyServerBuilder;
@@ -61,6 +62,7 @@ public class GrpcService extends RaftServerRpcWithProxy<GrpcServerProtocolClient
   }
 
   private final Server server;
+  private final GrpcDataStreamService dataStreamService;
   private final Supplier<InetSocketAddress> addressSupplier;
 
   private GrpcService(RaftServer server) {
@@ -69,25 +71,29 @@ public class GrpcService extends RaftServerRpcWithProxy<GrpcServerProtocolClient
         GrpcConfigKeys.messageSizeMax(server.getProperties(), LOG::info),
         RaftServerConfigKeys.Log.Appender.bufferCapacity(server.getProperties()),
         GrpcConfigKeys.flowControlWindow(server.getProperties(), LOG::info),
-        RaftServerConfigKeys.Rpc.requestTimeout(server.getProperties()));
+        RaftServerConfigKeys.Rpc.requestTimeout(server.getProperties()),
+        GrpcConfigKeys.Server.heartbeatTimeout(server.getProperties()));
   }
   private GrpcService(RaftServer raftServer, Supplier<RaftPeerId> idSupplier, int port,
       SizeInBytes grpcMessageSizeMax, SizeInBytes appenderBufferSize,
-      SizeInBytes flowControlWindow, TimeDuration requestTimeoutDuration) {
+      SizeInBytes flowControlWindow, TimeDuration requestTimeoutDuration, TimeDuration heartbeatTimeoutDuration) {
     super(idSupplier, id -> new PeerProxyMap<>(id.toString(),
-        p -> new GrpcServerProtocolClient(p, flowControlWindow.getSizeInt(), requestTimeoutDuration)));
+        p -> new GrpcServerProtocolClient(p, flowControlWindow.getSizeInt(), requestTimeoutDuration,
+            heartbeatTimeoutDuration)));
     if (appenderBufferSize.getSize() > grpcMessageSizeMax.getSize()) {
       throw new IllegalArgumentException("Illegal configuration: "
           + RaftServerConfigKeys.Log.Appender.BUFFER_CAPACITY_KEY + " = " + appenderBufferSize
           + " > " + GrpcConfigKeys.MESSAGE_SIZE_MAX_KEY + " = " + grpcMessageSizeMax);
     }
 
+    dataStreamService = new GrpcDataStreamService((RaftServerProxy) raftServer);
     server = NettyServerBuilder.forPort(port)
         .maxInboundMessageSize(grpcMessageSizeMax.getSizeInt())
         .flowControlWindow(flowControlWindow.getSizeInt())
         .addService(new GrpcServerProtocolService(idSupplier, raftServer))
         .addService(new GrpcClientProtocolService(idSupplier, raftServer))
         .addService(new GrpcAdminProtocolService(raftServer))
+        .addService(dataStreamService)
         .build();
     addressSupplier = JavaUtils.memoize(() -> new InetSocketAddress(port != 0? port: server.getPort()));
   }
@@ -112,6 +118,7 @@ public class GrpcService extends RaftServerRpcWithProxy<GrpcServerProtocolClient
     final String name = getId() + ": shutdown server with port " + server.getPort();
     LOG.info("{} now", name);
     final Server s = server.shutdownNow();
+    dataStreamService.close();
     super.closeImpl();
     try {
       s.awaitTermination();
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc.server;
+
+import org.apache.ratis.util.Preconditions;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * A byte-sized window limiting the outstanding appendEntries requests sent to a follower.
+ *
+ * The window is sized from the bandwidth-delay product of the follower,
+ * i.e. the acknowledged bytes per unit time multiplied by the minimum round trip time.
+ * It grows while the follower keeps up, shrinks to the bandwidth-delay product
+ * when the round trip time increases, i.e. the requests are queued up,
+ * and shrinks by half on timeouts.
+ * The size of the batches in the requests is derived from the window size
+ * so that it also grows and shrinks with the window.
+ *
+ * This class is thread safe.
+ */
+class ReplicationWindow {
+  /** The window is sized to this multiple of the bandwidth-delay product. */
+  private static final int BDP_GAIN = 2;
+  /** The window is divided to this number of batches. */
+  private static final int BATCHES_PER_WINDOW = 4;
+  /** The weight of a new sample in the smoothed round trip time. */
+  private static final double RTT_ALPHA = 0.125;
+  /** The requests are considered queued up when the smoothed round trip time exceeds this multiple of the min. */
+  private static final int QUEUED_RTT_FACTOR = 2;
+
+  private static class Sent {
+    private final int bytes;
+    private final long nanos;
+
+    Sent(int bytes, long nanos) {
+      this.bytes = bytes;
+      this.nanos = nanos;
+    }
+  }
+
+  /** For getting the current time in nanoseconds. */
+  private final LongSupplier nanoTime;
+
+  private final int minWindow;
+  private final int maxWindow;
+  private final int maxBatch;
+
+  /** callId -> the outstanding request */
+  private final Map<Long, Sent> outstanding = new HashMap<>();
+  private long outstandingBytes = 0;
+  private int window;
+
+  private long minRttNanos = Long.MAX_VALUE;
+  private double smoothedRttNanos = 0;
+
+  /** The start time of the current delivery rate sample. */
+  private long sampleStartNanos;
+  /** The bytes acknowledged in the current delivery rate sample. */
+  private long sampleBytes = 0;
+
+  /**
+   * @param maxBatch the maximum size of a batch; see {@link #getBatchSize()}.
+   * @param maxWindow the maximum size of the window.
+   */
+  ReplicationWindow(int maxBatch, int maxWindow) {
+    this(maxBatch, maxWindow, System::nanoTime);
+  }
+
+  ReplicationWindow(int maxBatch, int maxWindow, LongSupplier nanoTime) {
+    Preconditions.assertTrue(maxBatch > 0, () -> "maxBatch = " + maxBatch + " <= 0");
+    Preconditions.assertTrue(maxWindow >= maxBatch,
+        () -> "maxWindow = " + maxWindow + " < maxBatch = " + maxBatch);
+    this.maxBatch = maxBatch;
+    this.maxWindow = maxWindow;
+    this.minWindow = Math.max(maxBatch / BATCHES_PER_WINDOW, 1);
+    this.window = (int) Math.min((long) maxBatch * BATCHES_PER_WINDOW, maxWindow);
+    this.nanoTime = nanoTime;
+    this.sampleStartNanos = nanoTime.getAsLong();
+  }
+
+  /** @return true iff the outstanding bytes have reached the window size. */
+  synchronized boolean isFull() {
+    return !outstanding.isEmpty() && outstandingBytes >= window;
+  }
+
+  /** @return the current size of a batch, which is bounded by the given max batch. */
+  synchronized int getBatchSize() {
+    return Math.max(Math.min(window / BATCHES_PER_WINDOW, maxBatch), 1);
+  }
+
+  synchronized int getWindowSize() {
+    return window;
+  }
+
+  synchronized long getOutstandingBytes() {
+    return outstandingBytes;
+  }
+
+  /** @return the smoothed round trip time in milliseconds, or -1 if there is no sample. */
+  synchronized long getSmoothedRttMs() {
+    return smoothedRttNanos > 0? (long) (smoothedRttNanos / 1_000_000): -1;
+  }
+
+  synchronized void onSend(long callId, int bytes) {
+    final Sent previous = outstanding.put(callId, new Sent(bytes, nanoTime.getAsLong()));
+    if (previous != null) {
+      outstandingBytes -= previous.bytes;
+    }
+    outstandingBytes += bytes;
+  }
+
+  private Sent remove(long callId) {
+    final Sent sent = outstanding.remove(callId);
+    if (sent != null) {
+      outstandingBytes -= sent.bytes;
+    }
+    return sent;
+  }
+
+  /**
+   * The request is acknowledged successfully; update the estimations and then grow the window.
+   *
+   * @return the round trip time in nanoseconds, or -1 if the request is not outstanding.
+   */
+  synchronized long onAck(long callId) {
+    final Sent sent = remove(callId);
+    if (sent == null) {
+      return -1;
+    }
+    final long now = nanoTime.getAsLong();
+    final long rtt = Math.max(now - sent.nanos, 1);
+    minRttNanos = Math.min(minRttNanos, rtt);
+    smoothedRttNanos = smoothedRttNanos == 0? rtt: (1 - RTT_ALPHA) * smoothedRttNanos + RTT_ALPHA * rtt;
+
+    sampleBytes += sent.bytes;
+    final long elapsed = now - sampleStartNanos;
+    if (elapsed >= smoothedRttNanos) {
+      // delivery rate in bytes per nanosecond times the min rtt
+      final double bdp = sampleBytes * (double) minRttNanos / elapsed;
+      final long target = Math.min((long) (BDP_GAIN * bdp), maxWindow);
+      if (target > window) {
+        window = (int) target;
+      } else if (smoothedRttNanos > QUEUED_RTT_FACTOR * minRttNanos) {
+        window = (int) Math.max(target, minWindow);
+      }
+      sampleStartNanos = now;
+      sampleBytes = 0;
+    }
+    return rtt;
+  }
+
+  /** The request has timed out; shrink the window by half. */
+  synchronized void onTimeout(long callId) {
+    if (remove(callId) == null) {
+      return;
+    }
+    window = Math.max(window / 2, minWindow);
+    sampleStartNanos = nanoTime.getAsLong();
+    sampleBytes = 0;
+  }
+
+  /** The request is completed without success, such as inconsistency; the window is unchanged. */
+  synchronized void onFailure(long callId) {
+    remove(callId);
+  }
+
+  /** Clear all the outstanding requests. */
+  synchronized void clear() {
+    outstanding.clear();
+    outstandingBytes = 0;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "window=" + window + ", outstanding=" + outstanding.size() + "/" + outstandingBytes
+        + "B, srtt=" + getSmoothedRttMs() + "ms";
+  }
+}
@@ -18,10 +18,10 @@
 package org.apache.ratis.netty.server;
 
 import org.apache.ratis.client.impl.ClientProtoUtils;
+import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.netty.NettyConfigKeys;
 import org.apache.ratis.netty.NettyRpcProxy;
-import org.apache.ratis.protocol.GroupInfoReply;
-import org.apache.ratis.protocol.GroupListReply;
+import org.apache.ratis.netty.NettyUtils;
 import org.apache.ratis.protocol.RaftClientReply;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.rpc.SupportedRpcType;
@@ -29,10 +29,9 @@ import org.apache.ratis.server.RaftServer;
 import org.apache.ratis.server.RaftServerRpc;
 import org.apache.ratis.server.impl.RaftServerRpcWithProxy;
 import org.apache.ratis.thirdparty.io.netty.bootstrap.ServerBootstrap;
+import org.apache.ratis.thirdparty.io.netty.buffer.PooledByteBufAllocator;
 import org.apache.ratis.thirdparty.io.netty.channel.*;
-import org.apache.ratis.thirdparty.io.netty.channel.nio.NioEventLoopGroup;
 import org.apache.ratis.thirdparty.io.netty.channel.socket.SocketChannel;
-import org.apache.ratis.thirdparty.io.netty.channel.socket.nio.NioServerSocketChannel;
 import org.apache.ratis.thirdparty.io.netty.handler.codec.protobuf.ProtobufDecoder;
 import org.apache.ratis.thirdparty.io.netty.handler.codec.protobuf.ProtobufEncoder;
 import org.apache.ratis.thirdparty.io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
@@ -43,13 +42,18 @@ import org.apache.ratis.proto.RaftProtos.*;
 import org.apache.ratis.proto.netty.NettyProtos.RaftNettyExceptionReplyProto;
 import org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerReplyProto;
 import org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerRequestProto;
+import org.apache.ratis.util.CheckedSupplier;
 import org.apache.ratis.util.CodeInjectionForTesting;
+import org.apache.ratis.util.IOUtils;
+import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.ProtoUtils;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.channels.ClosedChannelException;
-import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * A netty server endpoint that acts as the communication layer.
@@ -78,16 +82,24 @@ public final class NettyRpcService extends RaftServerRpcWithProxy<NettyRpcProxy,
 
   private final RaftServer server;
 
-  private final EventLoopGroup bossGroup = new NioEventLoopGroup();
-  private final EventLoopGroup workerGroup = new NioEventLoopGroup();
+  private final EventLoopGroup bossGroup;
+  private final EventLoopGroup workerGroup;
+  private final ExecutorService asyncRequestExecutor;
   private final ChannelFuture channelFuture;
 
-  @ChannelHandler.Sharable
+  /**
+   * Handle the requests of a channel without blocking the event loop.
+   * The client matches the replies with the requests in order,
+   * so the replies are written in the same order as the requests are received.
+   */
   class InboundHandler extends SimpleChannelInboundHandler<RaftNettyServerRequestProto> {
+    /** The reply of the previous request; only accessed by the event loop thread of the channel. */
+    private CompletableFuture<Void> previous = CompletableFuture.completedFuture(null);
+
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, RaftNettyServerRequestProto proto) {
-      final RaftNettyServerReplyProto reply = handle(proto);
-      ctx.writeAndFlush(reply);
+      final CompletableFuture<RaftNettyServerReplyProto> reply = handleAsync(proto);
+      previous = previous.thenCompose(v -> reply).thenAccept(ctx::writeAndFlush);
     }
   }
 
@@ -96,6 +108,13 @@ public final class NettyRpcService extends RaftServerRpcWithProxy<NettyRpcProxy,
     super(server::getId, id -> new NettyRpcProxy.PeerMap(id.toString()));
     this.server = server;
 
+    final RaftProperties properties = server.getProperties();
+    final boolean useEpoll = NettyConfigKeys.Server.useEpoll(properties);
+    this.bossGroup = NettyUtils.newEventLoopGroup(1, useEpoll);
+    this.workerGroup = NettyUtils.newEventLoopGroup(0, useEpoll);
+    this.asyncRequestExecutor = Executors.newFixedThreadPool(
+        NettyConfigKeys.Server.asyncRequestThreadPoolSize(properties));
+
     final ChannelInitializer<SocketChannel> initializer
         = new ChannelInitializer<SocketChannel>() {
       @Override
@@ -111,12 +130,14 @@ public final class NettyRpcService extends RaftServerRpcWithProxy<NettyRpcProxy,
       }
     };
 
-    final int port = NettyConfigKeys.Server.port(server.getProperties());
+    final int port = NettyConfigKeys.Server.port(properties);
     channelFuture = new ServerBootstrap()
         .group(bossGroup, workerGroup)
-        .channel(NioServerSocketChannel.class)
+        .channel(NettyUtils.getServerChannelClass(workerGroup))
         .handler(new LoggingHandler(LogLevel.INFO))
         .childHandler(initializer)
+        .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+        .childOption(ChannelOption.TCP_NODELAY, true)
         .bind(port);
   }
 
@@ -138,6 +159,7 @@ public final class NettyRpcService extends RaftServerRpcWithProxy<NettyRpcProxy,
   public void closeImpl() throws IOException {
     bossGroup.shutdownGracefully();
     workerGroup.shutdownGracefully();
+    asyncRequestExecutor.shutdown();
     final ChannelFuture f = getChannel().close();
     super.closeImpl();
     f.syncUninterruptibly();
@@ -148,92 +170,117 @@ public final class NettyRpcService extends RaftServerRpcWithProxy<NettyRpcProxy,
     return (InetSocketAddress)getChannel().localAddress();
   }
 
-  RaftNettyServerReplyProto handle(RaftNettyServerRequestProto proto) {
-    RaftRpcRequestProto rpcRequest = null;
+  /**
+   * Handle the given request asynchronously.
+   * The returned future never completes exceptionally;
+   * any failure is converted to an exception reply.
+   */
+  CompletableFuture<RaftNettyServerReplyProto> handleAsync(RaftNettyServerRequestProto proto) {
+    final RaftRpcRequestProto rpcRequest = getRaftRpcRequestProto(proto);
+    CompletableFuture<RaftNettyServerReplyProto> future;
     try {
-      switch (proto.getRaftNettyServerRequestCase()) {
-        case REQUESTVOTEREQUEST: {
-          final RequestVoteRequestProto request = proto.getRequestVoteRequest();
-          rpcRequest = request.getServerRequest();
-          final RequestVoteReplyProto reply = server.requestVote(request);
-          return RaftNettyServerReplyProto.newBuilder()
-              .setRequestVoteReply(reply)
-              .build();
-        }
-        case APPENDENTRIESREQUEST: {
-          final AppendEntriesRequestProto request = proto.getAppendEntriesRequest();
-          rpcRequest = request.getServerRequest();
-          final AppendEntriesReplyProto reply = server.appendEntries(request);
-          return RaftNettyServerReplyProto.newBuilder()
-              .setAppendEntriesReply(reply)
-              .build();
-        }
-        case INSTALLSNAPSHOTREQUEST: {
-          final InstallSnapshotRequestProto request = proto.getInstallSnapshotRequest();
-          rpcRequest = request.getServerRequest();
-          final InstallSnapshotReplyProto reply = server.installSnapshot(request);
-          return RaftNettyServerReplyProto.newBuilder()
-              .setInstallSnapshotReply(reply)
-              .build();
-        }
-        case RAFTCLIENTREQUEST: {
-          final RaftClientRequestProto request = proto.getRaftClientRequest();
-          rpcRequest = request.getRpcRequest();
-          final RaftClientReply reply = server.submitClientRequest(
-              ClientProtoUtils.toRaftClientRequest(request));
-          return RaftNettyServerReplyProto.newBuilder()
-              .setRaftClientReply(ClientProtoUtils.toRaftClientReplyProto(reply))
-              .build();
-        }
-        case SETCONFIGURATIONREQUEST: {
-          final SetConfigurationRequestProto request = proto.getSetConfigurationRequest();
-          rpcRequest = request.getRpcRequest();
-          final RaftClientReply reply = server.setConfiguration(
-              ClientProtoUtils.toSetConfigurationRequest(request));
-          return RaftNettyServerReplyProto.newBuilder()
-              .setRaftClientReply(ClientProtoUtils.toRaftClientReplyProto(reply))
-              .build();
-        }
-        case GROUPMANAGEMENTREQUEST: {
-          final GroupManagementRequestProto request = proto.getGroupManagementRequest();
-          rpcRequest = request.getRpcRequest();
-          final RaftClientReply reply = server.groupManagement(
-              ClientProtoUtils.toGroupManagementRequest(request));
-          return RaftNettyServerReplyProto.newBuilder()
-              .setRaftClientReply(ClientProtoUtils.toRaftClientReplyProto(reply))
-              .build();
-        }
-        case GROUPLISTREQUEST: {
-          final GroupListRequestProto request = proto.getGroupListRequest();
-          rpcRequest = request.getRpcRequest();
-          final GroupListReply reply = server.getGroupList(
-              ClientProtoUtils.toGroupListRequest(request));
-          return RaftNettyServerReplyProto.newBuilder()
-              .setGroupListReply(ClientProtoUtils.toGroupListReplyProto(reply))
-              .build();
-        }
-        case GROUPINFOREQUEST: {
-          final GroupInfoRequestProto request = proto.getGroupInfoRequest();
-          rpcRequest = request.getRpcRequest();
-          final GroupInfoReply reply = server.getGroupInfo(
-              ClientProtoUtils.toGroupInfoRequest(request));
-          return RaftNettyServerReplyProto.newBuilder()
-              .setGroupInfoReply(ClientProtoUtils.toGroupInfoReplyProto(reply))
-              .build();
-        }
-        case RAFTNETTYSERVERREQUEST_NOT_SET:
-          throw new IllegalArgumentException("Request case not set in proto: "
-              + proto.getRaftNettyServerRequestCase());
-        default:
-          throw new UnsupportedOperationException("Request case not supported: "
-              + proto.getRaftNettyServerRequestCase());
+      future = handleImpl(proto);
+    } catch (Throwable t) {
+      future = JavaUtils.completeExceptionally(t);
+    }
+    return future.exceptionally(t -> toRaftNettyServerReplyProto(
+        rpcRequest, IOUtils.asIOException(JavaUtils.unwrapCompletionException(t))));
+  }
+
+  private CompletableFuture<RaftNettyServerReplyProto> supplyAsync(
+      CheckedSupplier<RaftNettyServerReplyProto, IOException> supplier) {
+    return CompletableFuture.supplyAsync(
+        () -> JavaUtils.callAsUnchecked(supplier, CompletionException::new), asyncRequestExecutor);
+  }
+
+  private CompletableFuture<RaftNettyServerReplyProto> handleImpl(RaftNettyServerRequestProto proto)
+      throws IOException {
+    switch (proto.getRaftNettyServerRequestCase()) {
+      case REQUESTVOTEREQUEST: {
+        final RequestVoteRequestProto request = proto.getRequestVoteRequest();
+        return supplyAsync(() -> RaftNettyServerReplyProto.newBuilder()
+            .setRequestVoteReply(server.requestVote(request))
+            .build());
+      }
+      case APPENDENTRIESREQUEST: {
+        final AppendEntriesRequestProto request = proto.getAppendEntriesRequest();
+        return server.appendEntriesAsync(request).thenApply(reply -> RaftNettyServerReplyProto.newBuilder()
+            .setAppendEntriesReply(reply)
+            .build());
+      }
+      case INSTALLSNAPSHOTREQUEST: {
+        final InstallSnapshotRequestProto request = proto.getInstallSnapshotRequest();
+        return supplyAsync(() -> RaftNettyServerReplyProto.newBuilder()
+            .setInstallSnapshotReply(server.installSnapshot(request))
+            .build());
+      }
+      case RAFTCLIENTREQUEST: {
+        final RaftClientRequestProto request = proto.getRaftClientRequest();
+        return server.submitClientRequestAsync(ClientProtoUtils.toRaftClientRequest(request))
+            .thenApply(NettyRpcService::toRaftNettyServerReplyProto);
       }
-    } catch (IOException ioe) {
-      return toRaftNettyServerReplyProto(
-          Objects.requireNonNull(rpcRequest, "rpcRequest = null"), ioe);
+      case SETCONFIGURATIONREQUEST: {
+        final SetConfigurationRequestProto request = proto.getSetConfigurationRequest();
+        return server.setConfigurationAsync(ClientProtoUtils.toSetConfigurationRequest(request))
+            .thenApply(NettyRpcService::toRaftNettyServerReplyProto);
+      }
+      case GROUPMANAGEMENTREQUEST: {
+        final GroupManagementRequestProto request = proto.getGroupManagementRequest();
+        return server.groupManagementAsync(ClientProtoUtils.toGroupManagementRequest(request))
+            .thenApply(NettyRpcService::toRaftNettyServerReplyProto);
+      }
+      case GROUPLISTREQUEST: {
+        final GroupListRequestProto request = proto.getGroupListRequest();
+        return server.getGroupListAsync(ClientProtoUtils.toGroupListRequest(request))
+            .thenApply(reply -> RaftNettyServerReplyProto.newBuilder()
+                .setGroupListReply(ClientProtoUtils.toGroupListReplyProto(reply))
+                .build());
+      }
+      case GROUPINFOREQUEST: {
+        final GroupInfoRequestProto request = proto.getGroupInfoRequest();
+        return server.getGroupInfoAsync(ClientProtoUtils.toGroupInfoRequest(request))
+            .thenApply(reply -> RaftNettyServerReplyProto.newBuilder()
+                .setGroupInfoReply(ClientProtoUtils.toGroupInfoReplyProto(reply))
+                .build());
+      }
+      case RAFTNETTYSERVERREQUEST_NOT_SET:
+        throw new IllegalArgumentException("Request case not set in proto: "
+            + proto.getRaftNettyServerRequestCase());
+      default:
+        throw new UnsupportedOperationException("Request case not supported: "
+            + proto.getRaftNettyServerRequestCase());
+    }
+  }
+
+  private static RaftRpcRequestProto getRaftRpcRequestProto(RaftNettyServerRequestProto proto) {
+    switch (proto.getRaftNettyServerRequestCase()) {
+      case REQUESTVOTEREQUEST:
+        return proto.getRequestVoteRequest().getServerRequest();
+      case APPENDENTRIESREQUEST:
+        return proto.getAppendEntriesRequest().getServerRequest();
+      case INSTALLSNAPSHOTREQUEST:
+        return proto.getInstallSnapshotRequest().getServerRequest();
+      case RAFTCLIENTREQUEST:
+        return proto.getRaftClientRequest().getRpcRequest();
+      case SETCONFIGURATIONREQUEST:
+        return proto.getSetConfigurationRequest().getRpcRequest();
+      case GROUPMANAGEMENTREQUEST:
+        return proto.getGroupManagementRequest().getRpcRequest();
+      case GROUPLISTREQUEST:
+        return proto.getGroupListRequest().getRpcRequest();
+      case GROUPINFOREQUEST:
+        return proto.getGroupInfoRequest().getRpcRequest();
+      default:
+        return RaftRpcRequestProto.getDefaultInstance();
     }
   }
 
+  private static RaftNettyServerReplyProto toRaftNettyServerReplyProto(RaftClientReply reply) {
+    return RaftNettyServerReplyProto.newBuilder()
+        .setRaftClientReply(ClientProtoUtils.toRaftClientReplyProto(reply))
+        .build();
+  }
+
   private static RaftNettyServerReplyProto toRaftNettyServerReplyProto(
       RaftRpcRequestProto request, IOException e) {
     final RaftRpcReplyProto.Builder rpcReply = RaftRpcReplyProto.newBuilder()
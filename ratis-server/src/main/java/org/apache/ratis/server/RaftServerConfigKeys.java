@@ -123,6 +123,31 @@ public interface RaftServerConfigKeys {
       setInt(properties::setInt, SEGMENT_CACHE_MAX_NUM_KEY, maxCachedSegmentNum);
     }
 
+    /**
+     * The max heap size of the cached log entries, including their serialized forms.
+     * The cache of the closed segments is evicted once either this limit or the max number is exceeded.
+     */
+    String SEGMENT_CACHE_SIZE_MAX_KEY = PREFIX + ".segment.cache.size.max";
+    SizeInBytes SEGMENT_CACHE_SIZE_MAX_DEFAULT = SizeInBytes.valueOf("200MB");
+    static SizeInBytes segmentCacheSizeMax(RaftProperties properties) {
+      return getSizeInBytes(properties::getSizeInBytes,
+          SEGMENT_CACHE_SIZE_MAX_KEY, SEGMENT_CACHE_SIZE_MAX_DEFAULT, getDefaultLog());
+    }
+    static void setSegmentCacheSizeMax(RaftProperties properties, SizeInBytes maxSize) {
+      setSizeInBytes(properties::set, SEGMENT_CACHE_SIZE_MAX_KEY, maxSize);
+    }
+
+    /** The number of threads for loading the log segments at startup. */
+    String SEGMENT_LOAD_THREADS_KEY = PREFIX + ".segment.load.threads";
+    int SEGMENT_LOAD_THREADS_DEFAULT = 4;
+    static int segmentLoadThreads(RaftProperties properties) {
+      return getInt(properties::getInt, SEGMENT_LOAD_THREADS_KEY,
+          SEGMENT_LOAD_THREADS_DEFAULT, getDefaultLog(), requireMin(1));
+    }
+    static void setSegmentLoadThreads(RaftProperties properties, int segmentLoadThreads) {
+      setInt(properties::setInt, SEGMENT_LOAD_THREADS_KEY, segmentLoadThreads);
+    }
+
     String PREALLOCATED_SIZE_KEY = PREFIX + ".preallocated.size";
     SizeInBytes PREALLOCATED_SIZE_DEFAULT = SizeInBytes.valueOf("4MB");
     static SizeInBytes preallocatedSize(RaftProperties properties) {
@@ -133,6 +158,17 @@ public interface RaftServerConfigKeys {
       setSizeInBytes(properties::set, PREALLOCATED_SIZE_KEY, preallocatedSize);
     }
 
+    /** Prepare the next segment file in the background so that rolling a segment is just a rename. */
+    String SEGMENT_PREPARE_ENABLED_KEY = PREFIX + ".segment.prepare.enabled";
+    boolean SEGMENT_PREPARE_ENABLED_DEFAULT = true;
+    static boolean segmentPrepareEnabled(RaftProperties properties) {
+      return getBoolean(properties::getBoolean,
+          SEGMENT_PREPARE_ENABLED_KEY, SEGMENT_PREPARE_ENABLED_DEFAULT, getDefaultLog());
+    }
+    static void setSegmentPrepareEnabled(RaftProperties properties, boolean segmentPrepareEnabled) {
+      setBoolean(properties::setBoolean, SEGMENT_PREPARE_ENABLED_KEY, segmentPrepareEnabled);
+    }
+
     String WRITE_BUFFER_SIZE_KEY = PREFIX + ".write.buffer.size";
     SizeInBytes WRITE_BUFFER_SIZE_DEFAULT =SizeInBytes.valueOf("64KB");
     static SizeInBytes writeBufferSize(RaftProperties properties) {
@@ -143,6 +179,32 @@ public interface RaftServerConfigKeys {
       setSizeInBytes(properties::set, WRITE_BUFFER_SIZE_KEY, writeBufferSize);
     }
 
+    /**
+     * Write the log segments with direct I/O (O_DIRECT) so that the log neither pollutes the page cache
+     * nor makes the syncs wait for other dirty pages.
+     * It requires the native library; otherwise, the log falls back to buffered I/O.
+     */
+    String DIRECT_IO_ENABLED_KEY = PREFIX + ".direct.io.enabled";
+    boolean DIRECT_IO_ENABLED_DEFAULT = false;
+    static boolean directIoEnabled(RaftProperties properties) {
+      return getBoolean(properties::getBoolean,
+          DIRECT_IO_ENABLED_KEY, DIRECT_IO_ENABLED_DEFAULT, getDefaultLog());
+    }
+    static void setDirectIoEnabled(RaftProperties properties, boolean directIoEnabled) {
+      setBoolean(properties::setBoolean, DIRECT_IO_ENABLED_KEY, directIoEnabled);
+    }
+
+    /** The alignment of the direct I/O, i.e. the logical block size of the storage; it must be a power of two. */
+    String DIRECT_IO_ALIGNMENT_KEY = PREFIX + ".direct.io.alignment";
+    SizeInBytes DIRECT_IO_ALIGNMENT_DEFAULT = SizeInBytes.valueOf("4KB");
+    static SizeInBytes directIoAlignment(RaftProperties properties) {
+      return getSizeInBytes(properties::getSizeInBytes,
+          DIRECT_IO_ALIGNMENT_KEY, DIRECT_IO_ALIGNMENT_DEFAULT, getDefaultLog());
+    }
+    static void setDirectIoAlignment(RaftProperties properties, SizeInBytes directIoAlignment) {
+      setSizeInBytes(properties::set, DIRECT_IO_ALIGNMENT_KEY, directIoAlignment);
+    }
+
     String FORCE_SYNC_NUM_KEY = PREFIX + ".force.sync.num";
     int FORCE_SYNC_NUM_DEFAULT = 128;
     static int forceSyncNum(RaftProperties properties) {
@@ -190,6 +252,20 @@ public interface RaftServerConfigKeys {
       static void setSyncTimeoutRetry(RaftProperties properties, int syncTimeoutRetry) {
         setInt(properties::setInt, SYNC_TIMEOUT_RETRY_KEY, syncTimeoutRetry, requireMin(-1));
       }
+
+      /**
+       * The max total size of the state machine data cached in the leader
+       * until the entries are replicated to all the followers; 0 disables the cache.
+       */
+      String CACHE_SIZE_KEY = PREFIX + ".cache.size";
+      SizeInBytes CACHE_SIZE_DEFAULT = SizeInBytes.valueOf("64MB");
+      static SizeInBytes cacheSize(RaftProperties properties) {
+        return getSizeInBytes(properties::getSizeInBytes,
+            CACHE_SIZE_KEY, CACHE_SIZE_DEFAULT, getDefaultLog());
+      }
+      static void setCacheSize(RaftProperties properties, SizeInBytes cacheSize) {
+        setSizeInBytes(properties::set, CACHE_SIZE_KEY, cacheSize);
+      }
     }
 
     interface Appender {
@@ -277,6 +353,56 @@ public interface RaftServerConfigKeys {
       setTimeDuration(properties::setTimeDuration, TIMEOUT_MAX_KEY, maxDuration);
     }
 
+    /**
+     * Should the followers adapt their election timeout to the round trip time measured by the leader?
+     * If it is enabled, the leader recommends a min election timeout to each follower in appendEntries,
+     * i.e. the round trip time, with its variation, times {@link #TIMEOUT_ADAPTIVE_RTT_MULTIPLIER_KEY},
+     * bounded by {@link #TIMEOUT_ADAPTIVE_MIN_KEY} and {@link #TIMEOUT_ADAPTIVE_MAX_KEY}.
+     * The max election timeout and the heartbeat interval are scaled accordingly.
+     * It should be set to the same value for all the servers in a group.
+     */
+    String TIMEOUT_ADAPTIVE_ENABLED_KEY = PREFIX + ".timeout.adaptive.enabled";
+    boolean TIMEOUT_ADAPTIVE_ENABLED_DEFAULT = false;
+    static boolean timeoutAdaptiveEnabled(RaftProperties properties) {
+      return getBoolean(properties::getBoolean,
+          TIMEOUT_ADAPTIVE_ENABLED_KEY, TIMEOUT_ADAPTIVE_ENABLED_DEFAULT, getDefaultLog());
+    }
+    static void setTimeoutAdaptiveEnabled(RaftProperties properties, boolean enabled) {
+      setBoolean(properties::setBoolean, TIMEOUT_ADAPTIVE_ENABLED_KEY, enabled);
+    }
+
+    String TIMEOUT_ADAPTIVE_RTT_MULTIPLIER_KEY = PREFIX + ".timeout.adaptive.rtt.multiplier";
+    int TIMEOUT_ADAPTIVE_RTT_MULTIPLIER_DEFAULT = 10;
+    static int timeoutAdaptiveRttMultiplier(RaftProperties properties) {
+      return getInt(properties::getInt, TIMEOUT_ADAPTIVE_RTT_MULTIPLIER_KEY,
+          TIMEOUT_ADAPTIVE_RTT_MULTIPLIER_DEFAULT, getDefaultLog(), requireMin(1));
+    }
+    static void setTimeoutAdaptiveRttMultiplier(RaftProperties properties, int multiplier) {
+      setInt(properties::setInt, TIMEOUT_ADAPTIVE_RTT_MULTIPLIER_KEY, multiplier);
+    }
+
+    /** The lower bound of the adaptive min election timeout. */
+    String TIMEOUT_ADAPTIVE_MIN_KEY = PREFIX + ".timeout.adaptive.min";
+    TimeDuration TIMEOUT_ADAPTIVE_MIN_DEFAULT = TimeDuration.valueOf(150, TimeUnit.MILLISECONDS);
+    static TimeDuration timeoutAdaptiveMin(RaftProperties properties) {
+      return getTimeDuration(properties.getTimeDuration(TIMEOUT_ADAPTIVE_MIN_DEFAULT.getUnit()),
+          TIMEOUT_ADAPTIVE_MIN_KEY, TIMEOUT_ADAPTIVE_MIN_DEFAULT, getDefaultLog());
+    }
+    static void setTimeoutAdaptiveMin(RaftProperties properties, TimeDuration minDuration) {
+      setTimeDuration(properties::setTimeDuration, TIMEOUT_ADAPTIVE_MIN_KEY, minDuration);
+    }
+
+    /** The upper bound of the adaptive min election timeout. */
+    String TIMEOUT_ADAPTIVE_MAX_KEY = PREFIX + ".timeout.adaptive.max";
+    TimeDuration TIMEOUT_ADAPTIVE_MAX_DEFAULT = TimeDuration.valueOf(10, TimeUnit.SECONDS);
+    static TimeDuration timeoutAdaptiveMax(RaftProperties properties) {
+      return getTimeDuration(properties.getTimeDuration(TIMEOUT_ADAPTIVE_MAX_DEFAULT.getUnit()),
+          TIMEOUT_ADAPTIVE_MAX_KEY, TIMEOUT_ADAPTIVE_MAX_DEFAULT, getDefaultLog());
+    }
+    static void setTimeoutAdaptiveMax(RaftProperties properties, TimeDuration maxDuration) {
+      setTimeDuration(properties::setTimeDuration, TIMEOUT_ADAPTIVE_MAX_KEY, maxDuration);
+    }
+
     String REQUEST_TIMEOUT_KEY = PREFIX + ".request.timeout";
     TimeDuration REQUEST_TIMEOUT_DEFAULT = TimeDuration.valueOf(3000, TimeUnit.MILLISECONDS);
     static TimeDuration requestTimeout(RaftProperties properties) {
@@ -323,6 +449,17 @@ public interface RaftServerConfigKeys {
       setInt(properties::setInt, CAPACITY_KEY, capacity);
     }
 
+    /** The estimated memory limit of the cache, including the reply messages. */
+    String SIZE_MAX_KEY = PREFIX + ".size.max";
+    SizeInBytes SIZE_MAX_DEFAULT = SizeInBytes.valueOf("64MB");
+    static SizeInBytes sizeMax(RaftProperties properties) {
+      return getSizeInBytes(properties::getSizeInBytes,
+          SIZE_MAX_KEY, SIZE_MAX_DEFAULT, getDefaultLog());
+    }
+    static void setSizeMax(RaftProperties properties, SizeInBytes sizeMax) {
+      setSizeInBytes(properties::set, SIZE_MAX_KEY, sizeMax);
+    }
+
     String EXPIRY_TIME_KEY = PREFIX + ".expirytime";
     TimeDuration EXPIRY_TIME_DEFAULT = TimeDuration.valueOf(60, TimeUnit.SECONDS);
     static TimeDuration expiryTime(RaftProperties properties) {
@@ -334,6 +471,103 @@ public interface RaftServerConfigKeys {
     }
   }
 
+  /**
+   * Hibernate the idle groups:
+   * the leader stops sending heartbeats and the followers suspend their election timers
+   * until the group receives a request or a message.
+   */
+  interface Hibernation {
+    String PREFIX = RaftServerConfigKeys.PREFIX + ".hibernation";
+
+    String ENABLED_KEY = PREFIX + ".enabled";
+    boolean ENABLED_DEFAULT = false;
+    static boolean enabled(RaftProperties properties) {
+      return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+    }
+    static void setEnabled(RaftProperties properties, boolean enabled) {
+      setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+    }
+
+    /** A group hibernates after it has not received any requests for this time. */
+    String IDLE_TIME_KEY = PREFIX + ".idle.time";
+    TimeDuration IDLE_TIME_DEFAULT = TimeDuration.valueOf(60, TimeUnit.SECONDS);
+    static TimeDuration idleTime(RaftProperties properties) {
+      return getTimeDuration(properties.getTimeDuration(IDLE_TIME_DEFAULT.getUnit()),
+          IDLE_TIME_KEY, IDLE_TIME_DEFAULT, getDefaultLog());
+    }
+    static void setIdleTime(RaftProperties properties, TimeDuration idleTime) {
+      setTimeDuration(properties::setTimeDuration, IDLE_TIME_KEY, idleTime);
+    }
+  }
+
+  /** Balance the leaders of the groups across the peers of a server. */
+  interface LeaderBalancer {
+    String PREFIX = RaftServerConfigKeys.PREFIX + ".leader.balancer";
+
+    String ENABLED_KEY = PREFIX + ".enabled";
+    boolean ENABLED_DEFAULT = false;
+    static boolean enabled(RaftProperties properties) {
+      return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+    }
+    static void setEnabled(RaftProperties properties, boolean enabled) {
+      setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+    }
+
+    String INTERVAL_KEY = PREFIX + ".interval";
+    TimeDuration INTERVAL_DEFAULT = TimeDuration.valueOf(60, TimeUnit.SECONDS);
+    static TimeDuration interval(RaftProperties properties) {
+      return getTimeDuration(properties.getTimeDuration(INTERVAL_DEFAULT.getUnit()),
+          INTERVAL_KEY, INTERVAL_DEFAULT, getDefaultLog());
+    }
+    static void setInterval(RaftProperties properties, TimeDuration interval) {
+      setTimeDuration(properties::setTimeDuration, INTERVAL_KEY, interval);
+    }
+  }
+
+  /**
+   * Throttle the background replication traffic, i.e. the snapshot chunks and the appendEntries
+   * to the followers lagging far behind, so that it cannot saturate the disk and the network of the leader.
+   * The appendEntries to the followers near the commit index are never throttled.
+   */
+  interface Throttle {
+    String PREFIX = RaftServerConfigKeys.PREFIX + ".throttle";
+
+    /** The bandwidth per second shared by all the groups of a server; 0 means unlimited. */
+    String SERVER_BANDWIDTH_KEY = PREFIX + ".server.bandwidth";
+    SizeInBytes SERVER_BANDWIDTH_DEFAULT = SizeInBytes.valueOf(0);
+    static SizeInBytes serverBandwidth(RaftProperties properties) {
+      return getSizeInBytes(properties::getSizeInBytes,
+          SERVER_BANDWIDTH_KEY, SERVER_BANDWIDTH_DEFAULT, getDefaultLog());
+    }
+    static void setServerBandwidth(RaftProperties properties, SizeInBytes bandwidth) {
+      setSizeInBytes(properties::set, SERVER_BANDWIDTH_KEY, bandwidth);
+    }
+
+    /** The bandwidth per second of each group; 0 means unlimited. */
+    String GROUP_BANDWIDTH_KEY = PREFIX + ".group.bandwidth";
+    SizeInBytes GROUP_BANDWIDTH_DEFAULT = SizeInBytes.valueOf(0);
+    static SizeInBytes groupBandwidth(RaftProperties properties) {
+      return getSizeInBytes(properties::getSizeInBytes,
+          GROUP_BANDWIDTH_KEY, GROUP_BANDWIDTH_DEFAULT, getDefaultLog());
+    }
+    static void setGroupBandwidth(RaftProperties properties, SizeInBytes bandwidth) {
+      setSizeInBytes(properties::set, GROUP_BANDWIDTH_KEY, bandwidth);
+    }
+
+    /**
+     * A follower is catching up if the entries sent to it are behind the leader's commit index
+     * by more than this number of entries.
+     */
+    String CATCHUP_LAG_KEY = PREFIX + ".catchup.lag";
+    long CATCHUP_LAG_DEFAULT = 1024L;
+    static long catchupLag(RaftProperties properties) {
+      return getLong(properties::getLong, CATCHUP_LAG_KEY, CATCHUP_LAG_DEFAULT, getDefaultLog(), requireMin(0L));
+    }
+    static void setCatchupLag(RaftProperties properties, long lag) {
+      setLong(properties::setLong, CATCHUP_LAG_KEY, lag);
+    }
+  }
+
   static void main(String[] args) {
     printAll(RaftServerConfigKeys.class);
   }
@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.util.Preconditions;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The election timeout of a server.
+ *
+ * When the adaptive timeout is disabled, the configured min and max timeouts are used.
+ * Otherwise, the leader recommends a min timeout to each follower according to the round trip time between them;
+ * see {@link RaftServerConfigKeys.Rpc#TIMEOUT_ADAPTIVE_ENABLED_KEY}.
+ * A recommendation of 0 means the configured min timeout.
+ * The ratio of the max timeout to the min timeout is kept the same as the configured ratio.
+ */
+class ElectionTimeout {
+  private final int configuredMinMs;
+  private final int configuredMaxMs;
+
+  private final boolean adaptive;
+  private final int rttMultiplier;
+  private final int lowerBoundMs;
+  private final int upperBoundMs;
+
+  private volatile int minMs;
+
+  ElectionTimeout(RaftProperties properties) {
+    configuredMinMs = RaftServerConfigKeys.Rpc.timeoutMin(properties).toInt(TimeUnit.MILLISECONDS);
+    configuredMaxMs = RaftServerConfigKeys.Rpc.timeoutMax(properties).toInt(TimeUnit.MILLISECONDS);
+    Preconditions.assertTrue(configuredMaxMs > configuredMinMs,
+        "max timeout: %s, min timeout: %s", configuredMaxMs, configuredMinMs);
+
+    adaptive = RaftServerConfigKeys.Rpc.timeoutAdaptiveEnabled(properties);
+    rttMultiplier = RaftServerConfigKeys.Rpc.timeoutAdaptiveRttMultiplier(properties);
+    lowerBoundMs = RaftServerConfigKeys.Rpc.timeoutAdaptiveMin(properties).toInt(TimeUnit.MILLISECONDS);
+    upperBoundMs = RaftServerConfigKeys.Rpc.timeoutAdaptiveMax(properties).toInt(TimeUnit.MILLISECONDS);
+    Preconditions.assertTrue(upperBoundMs >= lowerBoundMs && lowerBoundMs > 0,
+        "adaptive max timeout: %s, adaptive min timeout: %s", upperBoundMs, lowerBoundMs);
+
+    minMs = configuredMinMs;
+  }
+
+  int getMinMs() {
+    return minMs;
+  }
+
+  int getMaxMs() {
+    return toMaxMs(minMs);
+  }
+
+  int getRandomMs() {
+    final int min = minMs;
+    return min + ThreadLocalRandom.current().nextInt(toMaxMs(min) - min + 1);
+  }
+
+  private int toMaxMs(int min) {
+    return Math.toIntExact((long) min * configuredMaxMs / configuredMinMs);
+  }
+
+  /** @return the smallest min timeout which a follower may have; it is used before the round trip time is known. */
+  int getFloorMs() {
+    return adaptive? Math.min(lowerBoundMs, configuredMinMs): configuredMinMs;
+  }
+
+  /**
+   * For the leader to recommend a min timeout to a follower.
+   *
+   * @param rttNanos the round trip time, including its variation, to the follower;
+   *                 a non-positive value means that it is unknown.
+   * @return the recommended min timeout in milliseconds, or 0 if it is not adaptive or the round trip time is unknown.
+   */
+  int recommend(long rttNanos) {
+    if (!adaptive || rttNanos <= 0) {
+      return 0;
+    }
+    final long ms = TimeUnit.NANOSECONDS.toMillis(rttMultiplier * rttNanos);
+    return (int) Math.max(lowerBoundMs, Math.min(upperBoundMs, ms));
+  }
+
+  /** @return the min timeout which a follower uses for the given recommendation. */
+  int toMinMs(int recommendedMs) {
+    return adaptive && recommendedMs > 0?
+        Math.max(lowerBoundMs, Math.min(upperBoundMs, recommendedMs)): configuredMinMs;
+  }
+
+  /** For a follower to use the min timeout recommended by the leader. */
+  void update(int recommendedMs) {
+    minMs = toMinMs(recommendedMs);
+  }
+
+  @Override
+  public String toString() {
+    return "ElectionTimeout(" + getMinMs() + "ms-" + getMaxMs() + "ms" + (adaptive? ", adaptive": "") + ")";
+  }
+}
@@ -43,6 +43,9 @@ public class FollowerInfo {
   private volatile boolean attendVote;
   private final int rpcSlownessTimeoutMs;
 
+  /** The smoothed round trip time and its variation in nanoseconds, as the TCP retransmission timer (RFC 6298). */
+  private double smoothedRttNanos = 0;
+  private double rttVariationNanos = 0;
 
   FollowerInfo(RaftPeerId id, RaftPeer peer, Timestamp lastRpcTime, long nextIndex,
       boolean attendVote, int rpcSlownessTimeoutMs) {
@@ -133,4 +136,19 @@ public class FollowerInfo {
   public boolean isSlow() {
     return lastRpcResponseTime.get().elapsedTimeMs() > rpcSlownessTimeoutMs;
   }
+
+  synchronized void updateRtt(long nanos) {
+    if (smoothedRttNanos == 0) {
+      smoothedRttNanos = nanos;
+      rttVariationNanos = nanos / 2.0;
+    } else {
+      rttVariationNanos = 0.75 * rttVariationNanos + 0.25 * Math.abs(smoothedRttNanos - nanos);
+      smoothedRttNanos = 0.875 * smoothedRttNanos + 0.125 * nanos;
+    }
+  }
+
+  /** @return the smoothed round trip time plus four times its variation in nanoseconds, or 0 if it is unknown. */
+  synchronized long getRttWithVariationNanos() {
+    return (long) (smoothedRttNanos + 4 * rttVariationNanos);
+  }
 }
@@ -17,6 +17,7 @@
  */
 package org.apache.ratis.server.impl;
 
+import org.apache.ratis.util.AutoCloseableLock;
 import org.apache.ratis.util.Daemon;
 import org.apache.ratis.util.Timestamp;
 import org.slf4j.Logger;
@@ -33,6 +34,8 @@ class FollowerState extends Daemon {
   private volatile Timestamp lastRpcTime = new Timestamp();
   private volatile boolean monitorRunning = true;
   private volatile boolean inLogSync = false;
+  /** When the group is hibernating, the election timer is suspended. */
+  private volatile boolean hibernating = false;
 
   FollowerState(RaftServerImpl server) {
     this.server = server;
@@ -43,6 +46,28 @@ class FollowerState extends Daemon {
     LOG.trace("{} update last rpc time to {} {}", server.getId(),
         lastRpcTime, inLogSync);
     this.inLogSync = inLogSync;
+    this.hibernating = false;
+  }
+
+  /** The leader asks this follower to hibernate. */
+  void hibernate() {
+    LOG.info("{}: hibernate, lastRpcTime:{}ms", server.getId(), lastRpcTime.elapsedTimeMs());
+    hibernating = true;
+  }
+
+  /**
+   * Wake up from hibernation, if it is hibernating, and restart the election timer.
+   * If the leader does not send any message before the timer expires, a new election will start.
+   */
+  void wakeUp() {
+    if (hibernating) {
+      LOG.info("{}: wake up from hibernation", server.getId());
+      updateLastRpcTime(false);
+    }
+  }
+
+  boolean isHibernating() {
+    return hibernating;
   }
 
   Timestamp getLastRpcTime() {
@@ -72,12 +97,16 @@ class FollowerState extends Daemon {
           break;
         }
         synchronized (server) {
-          if (!inLogSync && lastRpcTime.elapsedTimeMs() >= electionTimeout) {
-            LOG.info("{} changes to CANDIDATE, lastRpcTime:{}, electionTimeout:{}ms",
-                server.getId(), lastRpcTime.elapsedTimeMs(), electionTimeout);
-            // election timeout, should become a candidate
-            server.changeToCandidate();
-            break;
+          // the write lock excludes the appendEntries requests updating the last rpc time with the read lock
+          try (AutoCloseableLock writeLock = server.writeLock()) {
+            // the follower state may have been stopped, e.g. by a leadership transfer
+            if (monitorRunning && !inLogSync && !hibernating && lastRpcTime.elapsedTimeMs() >= electionTimeout) {
+              LOG.info("{} changes to CANDIDATE, lastRpcTime:{}, electionTimeout:{}ms",
+                  server.getId(), lastRpcTime.elapsedTimeMs(), electionTimeout);
+              // election timeout, should become a candidate
+              server.changeToCandidate();
+              break;
+            }
           }
         }
       } catch (InterruptedException e) {
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.util.Daemon;
+import org.apache.ratis.util.TimeDuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Balance the leaders of the groups in a {@link RaftServerProxy}.
+ *
+ * When a server restarts, the leadership of all its groups moves to the other servers
+ * and, without balancing, never comes back.
+ * This daemon periodically counts the leaders of the groups in this server per peer
+ * and transfers the leadership of the groups led by this server to the peers leading fewer groups.
+ * A leadership is transferred only if the difference of the counts is at least two,
+ * so that the balancing converges.
+ */
+class LeaderBalancer extends Daemon {
+  static final Logger LOG = LoggerFactory.getLogger(LeaderBalancer.class);
+
+  private final RaftServerProxy proxy;
+  private final TimeDuration interval;
+  private volatile boolean running = true;
+
+  LeaderBalancer(RaftServerProxy proxy, TimeDuration interval) {
+    this.proxy = proxy;
+    this.interval = interval;
+  }
+
+  void stopRunning() {
+    running = false;
+    interrupt();
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      try {
+        interval.sleep();
+        if (running) {
+          balance();
+        }
+      } catch (InterruptedException e) {
+        LOG.info("{} is interrupted", this);
+        return;
+      } catch (Exception e) {
+        LOG.warn(this + " caught an exception", e);
+      }
+    }
+  }
+
+  /** @return the number of the leadership transfers started. */
+  int balance() throws IOException {
+    final RaftPeerId selfId = proxy.getId();
+    final Map<RaftPeerId, Integer> counts = new HashMap<>();
+    final List<RaftServerImpl> leading = new ArrayList<>();
+    for (RaftServerImpl impl : proxy.getImpls()) {
+      impl.getRaftConf().getPeers().forEach(p -> counts.putIfAbsent(p.getId(), 0));
+      final RaftPeerId leaderId = impl.isLeader()? selfId: impl.getState().getLeaderId();
+      if (leaderId != null) {
+        counts.merge(leaderId, 1, Integer::sum);
+      }
+      if (impl.isLeader()) {
+        leading.add(impl);
+      }
+    }
+    LOG.debug("{}: leader counts {}", this, counts);
+
+    int transferred = 0;
+    for (RaftServerImpl impl : leading) {
+      final RaftPeerId target = impl.getRaftConf().getPeers().stream()
+          .map(RaftPeer::getId)
+          .filter(id -> !id.equals(selfId))
+          .min(Comparator.comparing(id -> counts.getOrDefault(id, 0)))
+          .orElse(null);
+      if (target == null || counts.getOrDefault(selfId, 0) - counts.getOrDefault(target, 0) < 2) {
+        continue;
+      }
+      if (impl.transferLeadership(target)) {
+        LOG.info("{}: transfer the leadership of {} to {}, leader counts {}",
+            this, impl.getGroupId(), target, counts);
+        counts.merge(selfId, -1, Integer::sum);
+        counts.merge(target, 1, Integer::sum);
+        transferred++;
+      }
+    }
+    return transferred;
+  }
+
+  @Override
+  public String toString() {
+    return proxy.getId() + ": " + getClass().getSimpleName();
+  }
+}
@@ -26,6 +26,8 @@ import org.apache.ratis.statemachine.SnapshotInfo;
 import org.apache.ratis.util.Daemon;
 import org.apache.ratis.util.Preconditions;
 import org.apache.ratis.util.ProtoUtils;
+import org.apache.ratis.util.RaftEvent;
+import org.apache.ratis.util.RaftEvents;
 import org.apache.ratis.util.Timestamp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -119,6 +121,7 @@ class LeaderElection extends Daemon {
     final ServerState state = server.getState();
     while (running && server.isCandidate()) {
       // one round of requestVotes
+      final RaftEvent event = RaftEvents.begin(RaftEvent.Type.ELECTION);
       final long electionTerm;
       synchronized (server) {
         electionTerm = state.initElection();
@@ -150,6 +153,8 @@ class LeaderElection extends Daemon {
           }
         }
       }
+      final long lastIndex = lastEntry != null? lastEntry.getIndex(): -1;
+      event.end(server.getId(), server.getGroupId(), lastIndex, lastIndex, -1);
 
       synchronized (server) {
         if (electionTerm != state.getCurrentTerm() || !running ||
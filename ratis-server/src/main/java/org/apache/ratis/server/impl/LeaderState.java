@@ -37,6 +37,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.LongSupplier;
 import java.util.function.Predicate;
@@ -171,13 +172,27 @@ public class LeaderState {
   private final RaftLog raftLog;
   private final long currentTerm;
   private volatile ConfigurationStagingState stagingState;
-  private List<List<FollowerInfo>> voterLists;
+  /** For computing the commit index from the match indices; only used by the {@link EventProcessor}. */
+  private volatile Voters matchIndexVoters;
+  /** For computing the watch indices from the follower commit indices; synchronized on itself. */
+  private volatile Voters commitIndexVoters;
+  /** The indices of the configuration entries not yet known to be committed, in ascending order. */
+  private final Deque<Long> uncommittedConfIndices = new ArrayDeque<>();
 
   /**
    * The list of threads appending entries to followers.
    * The list is protected by the RaftServer's lock.
    */
   private final SenderList senders;
+  /** The ongoing leadership transfer, if there is any. */
+  private final AtomicReference<LeadershipTransfer> leadershipTransfer = new AtomicReference<>();
+
+  private final boolean hibernationEnabled;
+  private final long hibernationIdleTimeMs;
+  private final Object hibernationLock = new Object();
+  /** The time of the last request received by this leader. */
+  private volatile Timestamp lastRequestTime = new Timestamp();
+  private volatile boolean hibernating = false;
   private final EventQueue eventQueue = new EventQueue();
   private final EventProcessor processor;
   private final PendingRequests pendingRequests;
@@ -188,14 +203,22 @@ public class LeaderState {
   private final TimeDuration syncInterval;
   private final long placeHolderIndex;
 
+  /** Method references created once in order to avoid allocation for each commit update. */
+  private final LongSupplier getLatestFlushedIndex;
+  private final LongSupplier getLastCommittedIndex;
+
   LeaderState(RaftServerImpl server, RaftProperties properties) {
     this.server = server;
 
     stagingCatchupGap = RaftServerConfigKeys.stagingCatchupGap(properties);
     syncInterval = RaftServerConfigKeys.Rpc.sleepTime(properties);
+    hibernationEnabled = RaftServerConfigKeys.Hibernation.enabled(properties);
+    hibernationIdleTimeMs = RaftServerConfigKeys.Hibernation.idleTime(properties).toLong(TimeUnit.MILLISECONDS);
 
     final ServerState state = server.getState();
     this.raftLog = state.getLog();
+    this.getLatestFlushedIndex = raftLog::getLatestFlushedIndex;
+    this.getLastCommittedIndex = raftLog::getLastCommittedIndex;
     this.currentTerm = state.getCurrentTerm();
     processor = new EventProcessor();
     this.pendingRequests = new PendingRequests(server.getId());
@@ -210,7 +233,17 @@ public class LeaderState {
         p -> server.newLogAppender(this, p, t, placeHolderIndex, true))
         .toArray(LogAppender[]::new));
 
-    voterLists = divideFollowers(conf);
+    updateVoters(conf);
+
+    // find out the uncommitted configuration entries from the previous terms
+    final TermIndex[] uncommitted = raftLog.getEntries(raftLog.getLastCommittedIndex() + 1, placeHolderIndex);
+    if (uncommitted != null) {
+      for (TermIndex ti : uncommitted) {
+        if (raftLog.isConfigEntry(ti)) {
+          addUncommittedConfIndex(ti.getIndex());
+        }
+      }
+    }
   }
 
   LogEntryProto start() {
@@ -222,6 +255,7 @@ public class LeaderState {
     CodeInjectionForTesting.execute(APPEND_PLACEHOLDER,
         server.getId().toString(), null);
     raftLog.append(placeHolder);
+    addUncommittedConfIndex(placeHolder.getIndex());
 
     processor.start();
     senders.forEach(LogAppender::startAppender);
@@ -232,10 +266,132 @@ public class LeaderState {
     return server.getState().getLastAppliedIndex() >= placeHolderIndex;
   }
 
+  /**
+   * A leadership transfer to a follower; see Section 3.10 of the Raft dissertation.
+   * The leader stops accepting new requests and,
+   * once the follower has caught up, asks it to start an election immediately.
+   * The transfer is aborted if it is not completed within an election timeout.
+   */
+  private static class LeadershipTransfer {
+    private final RaftPeerId target;
+    private final Timestamp startTime = new Timestamp();
+
+    LeadershipTransfer(RaftPeerId target) {
+      this.target = target;
+    }
+
+    @Override
+    public String toString() {
+      return "LeadershipTransfer-" + target + ":" + startTime.elapsedTimeMs() + "ms";
+    }
+  }
+
+  void transferLeadership(RaftPeerId target) {
+    final LeadershipTransfer previous = leadershipTransfer.getAndSet(new LeadershipTransfer(target));
+    LOG.info("{}: transfer the leadership to {} (previous: {})", server.getId(), target, previous);
+    notifySenders();
+  }
+
+  /** @return the ongoing leadership transfer, or null if there is none or it has timed out. */
+  private LeadershipTransfer getLeadershipTransfer() {
+    final LeadershipTransfer t = leadershipTransfer.get();
+    if (t != null && t.startTime.elapsedTimeMs() > server.getMaxTimeoutMs()
+        && leadershipTransfer.compareAndSet(t, null)) {
+      LOG.info("{}: {} timed out", server.getId(), t);
+      return null;
+    }
+    return t;
+  }
+
+  boolean isTransferringLeadership() {
+    return getLeadershipTransfer() != null;
+  }
+
+  /**
+   * A request is received, so reset the idle timer
+   * and wake up the group if it is hibernating.
+   */
+  void wakeUp() {
+    if (!hibernationEnabled) {
+      return;
+    }
+    final boolean wasHibernating;
+    synchronized (hibernationLock) {
+      lastRequestTime = new Timestamp();
+      wasHibernating = hibernating;
+      hibernating = false;
+    }
+    if (wasHibernating) {
+      LOG.info("{}: wake up from hibernation", server.getId());
+      notifySenders();
+    }
+  }
+
+  /**
+   * Is the group hibernating?
+   * The group starts hibernating once it has been idle for the configured time,
+   * all the log entries are committed and all the followers have caught up.
+   * Then, the followers are asked to suspend their election timers
+   * and the leader stops sending heartbeats until it wakes up.
+   */
+  boolean isHibernating() {
+    if (!hibernationEnabled || hibernating) {
+      return hibernating;
+    }
+    synchronized (hibernationLock) {
+      if (hibernating || !shouldHibernate()) {
+        return hibernating;
+      }
+      hibernating = true;
+    }
+    LOG.info("{}: start hibernation at index {}", server.getId(), raftLog.getLastCommittedIndex());
+    raftLog.evictCache();
+    return true;
+  }
+
+  private boolean shouldHibernate() {
+    if (lastRequestTime.elapsedTimeMs() < hibernationIdleTimeMs || !isReady() || inStagingState()
+        || isTransferringLeadership() || !server.getRaftConf().isStable()) {
+      return false;
+    }
+    final long last = raftLog.getNextIndex() - 1;
+    return raftLog.getLastCommittedIndex() == last && senders.stream()
+        .map(LogAppender::getFollower)
+        .allMatch(f -> f.getMatchIndex() == last && f.getCommitIndex() == last);
+  }
+
+  /** @return true iff the target is caught up by the request and it should start an election. */
+  private boolean shouldTimeoutNow(RaftPeerId targetId, TermIndex previous, List<LogEntryProto> entries) {
+    final LeadershipTransfer t = getLeadershipTransfer();
+    if (t == null || !t.target.equals(targetId)) {
+      return false;
+    }
+    final long last = !entries.isEmpty()? entries.get(entries.size() - 1).getIndex()
+        : previous != null? previous.getIndex(): RaftServerConstants.INVALID_LOG_INDEX;
+    if (last != raftLog.getNextIndex() - 1) {
+      return false;
+    }
+    LOG.info("{}: {} is caught up at index {}, send timeoutNow", server.getId(), t, last);
+    return true;
+  }
+
+  /**
+   * The target has accepted the timeoutNow request, so the transfer is completed.
+   * If the request or its reply is lost, the transfer is aborted after an election timeout.
+   */
+  void onTimeoutNowSuccess(RaftPeerId targetId) {
+    final LeadershipTransfer t = leadershipTransfer.get();
+    if (t != null && t.target.equals(targetId) && leadershipTransfer.compareAndSet(t, null)) {
+      LOG.info("{}: {} completed", server.getId(), t);
+    }
+  }
+
   void stop() {
     this.running = false;
     // do not interrupt event processor since it may be in the middle of logSync
     senders.forEach(LogAppender::stopAppender);
+    // not a leader anymore; release the data kept for the followers
+    raftLog.onFollowersMatched(Long.MAX_VALUE);
     final NotLeaderException nle = server.generateNotLeaderException();
     final Collection<CommitInfoProto> commitInfos = server.getCommitInfos();
     try {
@@ -303,34 +459,60 @@ public class LeaderState {
   }
 
   void commitIndexChanged() {
-    getMajorityMin(FollowerInfo::getCommitIndex, raftLog::getLastCommittedIndex).ifPresent(m -> {
-      // Normally, leader commit index is always ahead followers.
-      // However, after a leader change, the new leader commit index may
-      // be behind some followers in the beginning.
-      watchRequests.update(ReplicationLevel.ALL_COMMITTED, m.min);
-      watchRequests.update(ReplicationLevel.MAJORITY_COMMITTED, m.majority);
-      watchRequests.update(ReplicationLevel.MAJORITY, m.max);
-    });
+    final long min, majority, max;
+    final Voters voters = commitIndexVoters;
+    synchronized (voters) {
+      if (!voters.update(FollowerInfo::getCommitIndex, getLastCommittedIndex)) {
+        return;
+      }
+      min = voters.getMin();
+      majority = voters.getMajority();
+      max = voters.getMax();
+    }
+    // Normally, leader commit index is always ahead followers.
+    // However, after a leader change, the new leader commit index may
+    // be behind some followers in the beginning.
+    watchRequests.update(ReplicationLevel.ALL_COMMITTED, min);
+    watchRequests.update(ReplicationLevel.MAJORITY_COMMITTED, majority);
+    watchRequests.update(ReplicationLevel.MAJORITY, max);
   }
 
   private void applyOldNewConf() {
     final ServerState state = server.getState();
-    final RaftConfiguration current = server.getRaftConf();
-    final RaftConfiguration oldNewConf= stagingState.generateOldNewConf(current,
-        state.getLog().getNextIndex());
-    // apply the (old, new) configuration to log, and use it as the current conf
-    long index = state.getLog().append(state.getCurrentTerm(), oldNewConf);
-    updateConfiguration(index, oldNewConf);
+    // exclude the client transactions which are appended with the server read lock
+    try (AutoCloseableLock writeLock = server.writeLock()) {
+      final RaftConfiguration current = server.getRaftConf();
+      final RaftConfiguration oldNewConf = stagingState.generateOldNewConf(current,
+          state.getLog().getNextIndex());
+      // apply the (old, new) configuration to log, and use it as the current conf
+      long index = state.getLog().append(state.getCurrentTerm(), oldNewConf);
+      addUncommittedConfIndex(index);
+      updateConfiguration(index, oldNewConf);
+    }
 
     this.stagingState = null;
     notifySenders();
   }
 
   private void updateConfiguration(long logIndex, RaftConfiguration newConf) {
-    voterLists = divideFollowers(newConf);
+    updateVoters(newConf);
     server.getState().setRaftConf(logIndex, newConf);
   }
 
+  private void updateVoters(RaftConfiguration conf) {
+    matchIndexVoters = newVoters(conf);
+    commitIndexVoters = newVoters(conf);
+  }
+
+  private void addUncommittedConfIndex(long index) {
+    synchronized (uncommittedConfIndices) {
+      final Long last = uncommittedConfIndices.peekLast();
+      Preconditions.assertTrue(last == null || last < index,
+          () -> "Configuration entry index " + index + " <= the last index " + last);
+      uncommittedConfIndices.addLast(index);
+    }
+  }
+
   void updateFollowerCommitInfos(CommitInfoCache cache, List<CommitInfoProto> protos) {
     senders.stream().map(LogAppender::getFollower)
         .map(f -> cache.update(f.getPeer(), f.getCommitIndex()))
@@ -339,10 +521,27 @@ public class LeaderState {
 
   AppendEntriesRequestProto newAppendEntriesRequestProto(RaftPeerId targetId,
       TermIndex previous, List<LogEntryProto> entries, boolean initializing,
-      long callId) {
-    return ServerProtoUtils.toAppendEntriesRequestProto(server.getId(), targetId,
-        server.getGroupId(), currentTerm, entries, raftLog.getLastCommittedIndex(),
-        initializing, previous, server.getCommitInfos(), callId);
+      int electionTimeoutMs, long callId) {
+    final AppendEntriesRequestProto request = ServerProtoUtils.toAppendEntriesRequestProto(
+        server.getId(), targetId, server.getGroupId(), currentTerm, entries, raftLog.getLastCommittedIndex(),
+        initializing, previous, server.getCommitInfos(), electionTimeoutMs, callId);
+    if (shouldTimeoutNow(targetId, previous, entries)) {
+      return request.toBuilder().setTimeoutNow(true).build();
+    } else if (entries.isEmpty() && isHibernating()) {
+      return request.toBuilder().setHibernate(true).build();
+    }
+    return request;
+  }
+
+  /**
+   * @return a heartbeat with neither the previous log nor any entries,
+   *         so that it only resets the election timer of the follower.
+   */
+  AppendEntriesRequestProto newHeartbeatRequestProto(RaftPeerId targetId, boolean initializing,
+      int electionTimeoutMs, long callId) {
+    return ServerProtoUtils.toAppendEntriesRequestProto(
+        server.getId(), targetId, server.getGroupId(), currentTerm, Collections.emptyList(),
+        raftLog.getLastCommittedIndex(), initializing, null, server.getCommitInfos(), electionTimeoutMs, callId);
   }
 
   /**
@@ -500,101 +699,126 @@ public class LeaderState {
     eventQueue.submit(UPDATE_COMMIT_EVENT);
   }
 
-  static class MinMajorityMax {
-    private final long min;
-    private final long majority;
-    private final long max;
+  /**
+   * The voters of a configuration and, when the configuration is transitional, the voters of the old configuration.
+   * The index arrays are reused for computing the min, majority and max indices without allocation.
+   * This class is not thread safe.
+   */
+  static class Voters {
+    private final List<FollowerInfo> followers;
+    private final long[] indices;
+    private final List<FollowerInfo> oldFollowers;
+    private final long[] oldIndices;
+
+    Voters(List<FollowerInfo> followers, boolean includeSelf,
+        List<FollowerInfo> oldFollowers, boolean includeSelfInOldConf) {
+      this.followers = followers;
+      this.indices = new long[includeSelf? followers.size() + 1: followers.size()];
+      this.oldFollowers = oldFollowers;
+      this.oldIndices = oldFollowers == null? null
+          : new long[includeSelfInOldConf? oldFollowers.size() + 1: oldFollowers.size()];
+    }
+
+    /**
+     * Update the indices in place and then sort them.
+     * @return false if there is no voter.
+     */
+    boolean update(ToLongFunction<FollowerInfo> getFollowerIndex, LongSupplier getLogIndex) {
+      if (indices.length == 0 || (oldIndices != null && oldIndices.length == 0)) {
+        return false;
+      }
+      updateSorted(indices, followers, getFollowerIndex, getLogIndex);
+      if (oldIndices != null) {
+        updateSorted(oldIndices, oldFollowers, getFollowerIndex, getLogIndex);
+      }
+      return true;
+    }
 
-    MinMajorityMax(long min, long majority, long max) {
-      this.min = min;
-      this.majority = majority;
-      this.max = max;
+    long getMin() {
+      return oldIndices == null? indices[0]: Math.min(indices[0], oldIndices[0]);
     }
 
-    MinMajorityMax combine(MinMajorityMax that) {
-      return new MinMajorityMax(
-          Math.min(this.min, that.min),
-          Math.min(this.majority, that.majority),
-          Math.min(this.max, that.max));
+    long getMajority() {
+      final long majority = getMajority(indices);
+      return oldIndices == null? majority: Math.min(majority, getMajority(oldIndices));
     }
 
-    static MinMajorityMax valueOf(long[] sorted) {
-      return new MinMajorityMax(sorted[0], getMajority(sorted), getMax(sorted));
+    long getMax() {
+      final long max = getMax(indices);
+      return oldIndices == null? max: Math.min(max, getMax(oldIndices));
     }
 
-    static long getMajority(long[] sorted) {
+    private static long getMajority(long[] sorted) {
       return sorted[(sorted.length - 1) / 2];
     }
 
-    static long getMax(long[] sorted) {
+    private static long getMax(long[] sorted) {
       return sorted[sorted.length - 1];
     }
-  }
-
-  private void updateCommit() {
-    getMajorityMin(FollowerInfo::getMatchIndex, raftLog::getLatestFlushedIndex)
-        .ifPresent(m -> updateCommit(m.majority, m.min));
-  }
-
-  private Optional<MinMajorityMax> getMajorityMin(ToLongFunction<FollowerInfo> followerIndex, LongSupplier logIndex) {
-    final RaftPeerId selfId = server.getId();
-    final RaftConfiguration conf = server.getRaftConf();
-
-    final List<FollowerInfo> followers = voterLists.get(0);
-    final boolean includeSelf = conf.containsInConf(selfId);
-    if (followers.isEmpty() && !includeSelf) {
-      return Optional.empty();
-    }
-
-    final long[] indicesInNewConf = getSorted(followers, includeSelf, followerIndex, logIndex);
-    final MinMajorityMax newConf = MinMajorityMax.valueOf(indicesInNewConf);
 
-    if (!conf.isTransitional()) {
-      return Optional.of(newConf);
-    } else { // configuration is in transitional state
-      final List<FollowerInfo> oldFollowers = voterLists.get(1);
-      final boolean includeSelfInOldConf = conf.containsInOldConf(selfId);
-      if (oldFollowers.isEmpty() && !includeSelfInOldConf) {
-        return Optional.empty();
+    private static void updateSorted(long[] indices, List<FollowerInfo> followers,
+        ToLongFunction<FollowerInfo> getFollowerIndex, LongSupplier getLogIndex) {
+      for (int i = 0; i < followers.size(); i++) {
+        indices[i] = getFollowerIndex.applyAsLong(followers.get(i));
       }
+      if (indices.length > followers.size()) {
+        // note that we also need to wait for the local disk I/O
+        indices[indices.length - 1] = getLogIndex.getAsLong();
+      }
+      Arrays.sort(indices);
+    }
+  }
 
-      final long[] indicesInOldConf = getSorted(oldFollowers, includeSelfInOldConf, followerIndex, logIndex);
-      final MinMajorityMax oldConf = MinMajorityMax.valueOf(indicesInOldConf);
-      return Optional.of(newConf.combine(oldConf));
+  private void updateCommit() {
+    raftLog.onFollowersMatched(getMinFollowerMatchIndex());
+    final Voters voters = matchIndexVoters;
+    if (voters.update(FollowerInfo::getMatchIndex, getLatestFlushedIndex)) {
+      updateCommit(voters.getMajority(), voters.getMin());
     }
   }
 
   private void updateCommit(long majority, long min) {
     final long oldLastCommitted = raftLog.getLastCommittedIndex();
     if (majority > oldLastCommitted) {
-      // copy the entries out from the raftlog, in order to prevent that
-      // the log gets purged after the statemachine does a snapshot
-      final TermIndex[] entriesToCommit = raftLog.getEntries(
-          oldLastCommitted + 1, majority + 1);
       if (server.getState().updateStatemachine(majority, currentTerm)) {
+        updateCommitTimer(majority);
         watchRequests.update(ReplicationLevel.MAJORITY, majority);
         commitIndexChanged();
       }
-      checkAndUpdateConfiguration(entriesToCommit);
+      checkAndUpdateConfiguration();
     }
 
     watchRequests.update(ReplicationLevel.ALL, min);
     pendingRequests.checkDelayedReplies(min);
   }
 
-  private boolean committedConf(TermIndex[] entries) {
+  /**
+   * Sample the commit latency using the last committed request
+   * so that it costs a single lookup per commit index update.
+   */
+  private void updateCommitTimer(long committed) {
+    final PendingRequest pending = pendingRequests.get(committed);
+    if (pending != null) {
+      RaftServerMetrics.update(server.getMetrics().getCommitTimer(), pending.getStartNanos());
+    }
+  }
+
+  /** @return true if any configuration entry has been committed since the last call. */
+  private boolean committedConf() {
     final long currentCommitted = raftLog.getLastCommittedIndex();
-    for (TermIndex entry : entries) {
-      if (entry.getIndex() <= currentCommitted && raftLog.isConfigEntry(entry)) {
-        return true;
+    boolean committed = false;
+    synchronized (uncommittedConfIndices) {
+      for(Long i; (i = uncommittedConfIndices.peekFirst()) != null && i <= currentCommitted; ) {
+        uncommittedConfIndices.pollFirst();
+        committed = true;
       }
     }
-    return false;
+    return committed;
   }
 
-  private void checkAndUpdateConfiguration(TermIndex[] entriesToCheck) {
+  private void checkAndUpdateConfiguration() {
     final RaftConfiguration conf = server.getRaftConf();
-    if (committedConf(entriesToCheck)) {
+    if (committedConf()) {
       if (conf.isTransitional()) {
         replicateNewConf();
       } else { // the (new) log entry has been committed
@@ -624,53 +848,43 @@ public class LeaderState {
    * 4) start replicating the log entry
    */
   private void replicateNewConf() {
-    final RaftConfiguration conf = server.getRaftConf();
-    final RaftConfiguration newConf = RaftConfiguration.newBuilder()
-        .setConf(conf)
-        .setLogEntryIndex(raftLog.getNextIndex())
-        .build();
-    // stop the LogAppender if the corresponding follower is no longer in the conf
-    updateSenders(newConf);
-    long index = raftLog.append(server.getState().getCurrentTerm(), newConf);
-    updateConfiguration(index, newConf);
+    // exclude the client transactions which are appended with the server read lock
+    try (AutoCloseableLock writeLock = server.writeLock()) {
+      final RaftConfiguration conf = server.getRaftConf();
+      final RaftConfiguration newConf = RaftConfiguration.newBuilder()
+          .setConf(conf)
+          .setLogEntryIndex(raftLog.getNextIndex())
+          .build();
+      // stop the LogAppender if the corresponding follower is no longer in the conf
+      updateSenders(newConf);
+      long index = raftLog.append(server.getState().getCurrentTerm(), newConf);
+      addUncommittedConfIndex(index);
+      updateConfiguration(index, newConf);
+    }
     notifySenders();
   }
 
-  private static long[] getSorted(List<FollowerInfo> followers, boolean includeSelf,
-      ToLongFunction<FollowerInfo> getFollowerIndex, LongSupplier getLogIndex) {
-    final int length = includeSelf ? followers.size() + 1 : followers.size();
-    if (length == 0) {
-      throw new IllegalArgumentException("followers.size() == "
-          + followers.size() + " and includeSelf == " + includeSelf);
-    }
-    final long[] indices = new long[length];
-    for (int i = 0; i < followers.size(); i++) {
-      indices[i] = getFollowerIndex.applyAsLong(followers.get(i));
-    }
-    if (includeSelf) {
-      // note that we also need to wait for the local disk I/O
-      indices[length - 1] = getLogIndex.getAsLong();
-    }
-
-    Arrays.sort(indices);
-    return indices;
+  private Voters newVoters(RaftConfiguration conf) {
+    return newVoters(conf, server.getId(),
+        senders.stream().map(LogAppender::getFollower).collect(Collectors.toList()));
   }
 
-  private List<List<FollowerInfo>> divideFollowers(RaftConfiguration conf) {
-    List<List<FollowerInfo>> lists = new ArrayList<>(2);
-    List<FollowerInfo> listForNew = senders.stream()
-        .filter(sender -> conf.containsInConf(sender.getFollower().getPeer().getId()))
-        .map(LogAppender::getFollower)
+  /**
+   * @param followers the followers of the leader, which may include the non-voting staging followers.
+   * @return the voters of the given configuration,
+   *         where the leader is a voter only if the configuration contains it.
+   */
+  static Voters newVoters(RaftConfiguration conf, RaftPeerId selfId, List<FollowerInfo> followers) {
+    final List<FollowerInfo> listForNew = followers.stream()
+        .filter(f -> conf.containsInConf(f.getPeer().getId()))
         .collect(Collectors.toList());
-    lists.add(listForNew);
-    if (conf.isTransitional()) {
-      List<FollowerInfo> listForOld = senders.stream()
-          .filter(sender -> conf.containsInOldConf(sender.getFollower().getPeer().getId()))
-          .map(LogAppender::getFollower)
-          .collect(Collectors.toList());
-      lists.add(listForOld);
+    if (!conf.isTransitional()) {
+      return new Voters(listForNew, conf.containsInConf(selfId), null, false);
     }
-    return lists;
+    final List<FollowerInfo> listForOld = followers.stream()
+        .filter(f -> conf.containsInOldConf(f.getPeer().getId()))
+        .collect(Collectors.toList());
+    return new Voters(listForNew, conf.containsInConf(selfId), listForOld, conf.containsInOldConf(selfId));
   }
 
   /** @return true if the request is replied; otherwise, the reply is delayed, return false. */
@@ -686,6 +900,19 @@ public class LeaderState {
     return pendingRequests.getTransactionContext(index);
   }
 
+  int getNumPendingRequests() {
+    return pendingRequests.size();
+  }
+
+  long getPendingRequestsBytes() {
+    return pendingRequests.getBytes();
+  }
+
+  /** @return the min match index of the followers, or {@link Long#MAX_VALUE} if there are no followers. */
+  private long getMinFollowerMatchIndex() {
+    return senders.stream().mapToLong(s -> s.getFollower().getMatchIndex()).min().orElse(Long.MAX_VALUE);
+  }
+
   long[] getFollowerNextIndices() {
     return senders.stream().mapToLong(s -> s.getFollower().getNextIndex()).toArray();
   }
@@ -17,6 +17,7 @@
  */
 package org.apache.ratis.server.impl;
 
+import com.codahale.metrics.Timer;
 import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.server.RaftServerConfigKeys;
@@ -38,6 +39,8 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.apache.ratis.server.impl.RaftServerConstants.DEFAULT_CALLID;
 import static org.apache.ratis.server.impl.RaftServerConstants.INVALID_LOG_INDEX;
@@ -62,10 +65,21 @@ public class LogAppender {
   private final boolean batchSending;
   private final LogEntryBuffer buffer;
   private final int snapshotChunkMaxSize;
-  protected final long halfMinTimeoutMs;
+  private final ElectionTimeout electionTimeout;
+  /** The min election timeout of the follower according to the last request sent. */
+  private volatile int followerMinTimeoutMs;
+  private final Timer appendEntriesRttTimer;
+  private final TokenBucket throttle;
+  private final long catchupLag;
+  /** The catch-up entries are deferred until this time, in {@link System#nanoTime()}, to pay the throttle debt. */
+  private volatile long catchupDeferredUntilNanos = System.nanoTime();
 
   private final LifeCycle lifeCycle;
   private final Daemon daemon = new Daemon(this::runAppender);
+  /** Has the follower acknowledged a request asking it to hibernate?  If so, the heartbeats are suspended. */
+  private volatile boolean followerHibernating = false;
+  /** The last request asking the follower to hibernate, which is not yet acknowledged. */
+  private final AtomicReference<AppendEntriesRequestProto> hibernateRequest = new AtomicReference<>();
 
   public LogAppender(RaftServerImpl server, LeaderState leaderState, FollowerInfo f) {
     this.follower = f;
@@ -77,7 +91,11 @@ public class LogAppender {
     this.maxBufferSize = RaftServerConfigKeys.Log.Appender.bufferCapacity(properties).getSizeInt();
     this.batchSending = RaftServerConfigKeys.Log.Appender.batchEnabled(properties);
     this.snapshotChunkMaxSize = RaftServerConfigKeys.Log.Appender.snapshotChunkSizeMax(properties).getSizeInt();
-    this.halfMinTimeoutMs = server.getMinTimeoutMs() / 2;
+    this.electionTimeout = server.getElectionTimeout();
+    this.followerMinTimeoutMs = electionTimeout.getFloorMs();
+    this.appendEntriesRttTimer = server.getMetrics().getAppendEntriesRttTimer(getFollowerId());
+    this.throttle = server.getReplicationThrottle();
+    this.catchupLag = RaftServerConfigKeys.Throttle.catchupLag(properties);
 
     this.buffer = new LogEntryBuffer();
     this.lifeCycle = new LifeCycle(this);
@@ -91,6 +109,8 @@ public class LogAppender {
 
   public void startAppender() {
     lifeCycle.transition(STARTING);
+    server.getMetrics().addFollower(getFollowerId(),
+        () -> raftLog.getNextIndex() - 1 - follower.getMatchIndex());
     daemon.start();
   }
 
@@ -122,6 +142,7 @@ public class LogAppender {
       return;
     }
     lifeCycle.transition(CLOSING);
+    server.getMetrics().removeFollower(getFollowerId());
     daemon.interrupt();
   }
 
@@ -148,7 +169,9 @@ public class LogAppender {
      */
     boolean addEntry(EntryWithData entry) {
       final int entrySize = entry.getSerializedSize();
-      if (totalSize + entrySize <= maxBufferSize) {
+      // the first entry is only limited by the max buffer size
+      final int capacity = buf.isEmpty()? maxBufferSize: Math.min(getBufferCapacity(), maxBufferSize);
+      if (totalSize + entrySize <= capacity) {
         buf.add(entry);
         totalSize += entrySize;
         return true;
@@ -167,7 +190,7 @@ public class LogAppender {
         protos.add(bufEntry.getEntry());
       }
       final AppendEntriesRequestProto request = leaderState.newAppendEntriesRequestProto(
-          getFollowerId(), previous, protos, !follower.isAttendingVote(), callId);
+          getFollowerId(), previous, protos, !follower.isAttendingVote(), recommendElectionTimeoutMs(), callId);
       buf.clear();
       totalSize = 0;
       return request;
@@ -178,6 +201,14 @@ public class LogAppender {
     }
   }
 
+  /**
+   * @return the capacity of the buffer for batching log entries in a request.
+   *         Subclasses may override this method to adjust the batch size dynamically.
+   */
+  protected int getBufferCapacity() {
+    return maxBufferSize;
+  }
+
   private TermIndex getPrevious() {
     TermIndex previous = raftLog.getTermIndex(follower.getNextIndex() - 1);
     if (previous == null) {
@@ -201,7 +232,7 @@ public class LogAppender {
     if (leaderNext == next && !buffer.isEmpty()) {
       // no new entries, then send out the entries in the buffer
       toSend = true;
-    } else if (leaderNext > next) {
+    } else if (leaderNext > next && getCatchupDeferredTimeMs(next) <= 0) {
       boolean hasSpace = true;
       for(; hasSpace && leaderNext > next;) {
         hasSpace = buffer.addEntry(raftLog.getEntryWithData(next++));
@@ -213,7 +244,15 @@ public class LogAppender {
     }
 
     if (toSend || shouldHeartbeat()) {
-      return buffer.getAppendRequest(previous, callId);
+      final AppendEntriesRequestProto request = buffer.getAppendRequest(previous, callId);
+      if (request.getHibernate()) {
+        hibernateRequest.set(request);
+      } else {
+        // any other request wakes up the follower
+        hibernateRequest.set(null);
+        followerHibernating = false;
+      }
+      return request;
     }
     return null;
   }
@@ -225,6 +264,7 @@ public class LogAppender {
     AppendEntriesRequestProto request = null;
     while (isAppenderRunning()) { // keep retrying for IOException
       try {
+        final RaftEvent event = RaftEvents.begin(RaftEvent.Type.APPEND_ENTRIES_SEND);
         if (request == null || request.getEntriesCount() == 0) {
           request = createRequest(DEFAULT_CALLID);
         }
@@ -238,9 +278,20 @@ public class LogAppender {
           return null;
         }
 
+        throttleCatchup(request);
         follower.updateLastRpcSendTime();
+        final long sendNanos = System.nanoTime();
         final AppendEntriesReplyProto r = server.getServerRpc().appendEntries(request);
+        final long rtt = System.nanoTime() - sendNanos;
+        updateAppendEntriesRtt(rtt);
+        if (request.getEntriesCount() == 0) {
+          updateHeartbeatRtt(rtt);
+        }
         follower.updateLastRpcResponseTime();
+        endAppendEntriesSendEvent(event, request);
+        if (r.getResult() == AppendEntriesReplyProto.AppendResult.SUCCESS) {
+          onSuccessReply(request);
+        }
 
         updateCommitIndex(r.getFollowerCommit());
         return r;
@@ -260,6 +311,120 @@ public class LogAppender {
     return null;
   }
 
+  /**
+   * The given request has been replied with SUCCESS.
+   * The follower starts hibernating only if the request is the last one asking it to hibernate,
+   * since the request may be lost or rejected, or the follower may have been woken up by a later request.
+   * Similarly, a leadership transfer is completed only when the follower has accepted the timeoutNow request.
+   */
+  protected void onSuccessReply(AppendEntriesRequestProto request) {
+    if (request.getHibernate() && hibernateRequest.compareAndSet(request, null)) {
+      followerHibernating = true;
+    }
+    if (request.getTimeoutNow()) {
+      leaderState.onTimeoutNowSuccess(getFollowerId());
+    }
+  }
+
+  /**
+   * Is the follower catching up, i.e. is the given index behind the commit index by more than the catch-up lag?
+   * The catch-up traffic is throttled so that the replication near the commit index is not slowed down.
+   */
+  private boolean isCatchingUp(long index) {
+    return !throttle.isUnlimited() && raftLog.getLastCommittedIndex() - index > catchupLag;
+  }
+
+  /**
+   * Throttle the given request if the follower is catching up.
+   * The request is sent right away but the next catch-up entries are deferred until the debt is paid;
+   * see {@link #getCatchupDeferredTimeMs(long)}.
+   * The appender thread never sleeps for the throttle so that the heartbeats are not delayed.
+   */
+  protected void throttleCatchup(AppendEntriesRequestProto request) {
+    final int n = request.getEntriesCount();
+    if (n > 0 && isCatchingUp(request.getEntries(n - 1).getIndex())) {
+      final long waitNanos = throttle.borrow(request.getSerializedSize());
+      if (waitNanos > 0) {
+        catchupDeferredUntilNanos = System.nanoTime() + waitNanos;
+      }
+    }
+  }
+
+  /**
+   * @return the time in milliseconds that the entries starting at the given index are deferred by the throttle;
+   *         a non-positive value means that the entries can be sent now.
+   */
+  private long getCatchupDeferredTimeMs(long followerIndex) {
+    if (!isCatchingUp(followerIndex)) {
+      return 0;
+    }
+    final long nanos = catchupDeferredUntilNanos - System.nanoTime();
+    return nanos <= 0? 0: TimeUnit.NANOSECONDS.toMillis(nanos) + 1;
+  }
+
+  /**
+   * Throttle a snapshot chunk; see {@link RaftServerConfigKeys.Throttle}.
+   * The debt is paid by waiting in slices no longer than the heartbeat interval
+   * so that a heartbeat can be sent between the slices.
+   */
+  protected void throttleSnapshot(long bytes) throws IOException {
+    final long deadline = System.nanoTime() + throttle.borrow(bytes);
+    for(long remaining; isAppenderRunning() && (remaining = deadline - System.nanoTime()) > 0; ) {
+      final long waitMs = Math.min(TimeUnit.NANOSECONDS.toMillis(remaining) + 1, getHeartbeatRemainingTime());
+      if (waitMs > 0) {
+        try {
+          synchronized (this) {
+            wait(waitMs);
+          }
+        } catch (InterruptedException e) {
+          throw IOUtils.toInterruptedIOException(this + ": interrupted when throttling", e);
+        }
+      }
+      if (shouldHeartbeat()) {
+        sendHeartbeatWhileThrottled();
+      }
+    }
+  }
+
+  /** Send a heartbeat when a snapshot chunk is being throttled. */
+  protected void sendHeartbeatWhileThrottled() throws IOException {
+    final AppendEntriesRequestProto heartbeat = newHeartbeatRequest(DEFAULT_CALLID);
+    follower.updateLastRpcSendTime();
+    final AppendEntriesReplyProto r = server.getServerRpc().appendEntries(heartbeat);
+    follower.updateLastRpcResponseTime();
+    if (r.getResult() == AppendEntriesReplyProto.AppendResult.NOT_LEADER) {
+      checkResponseTerm(r.getTerm());
+    }
+  }
+
+  /**
+   * End the given event if the given request is not a heartbeat.
+   * The sync appender calls it after the reply is received
+   * but a streaming appender calls it once the request is sent; see {@link RaftEvent.Type#APPEND_ENTRIES_SEND}.
+   */
+  protected void endAppendEntriesSendEvent(RaftEvent event, AppendEntriesRequestProto request) {
+    final int n = request.getEntriesCount();
+    if (n > 0) {
+      event.end(server.getId(), server.getGroupId(),
+          request.getEntries(0).getIndex(), request.getEntries(n - 1).getIndex(), request.getSerializedSize());
+    }
+  }
+
+  /** Record the round trip time, in nanoseconds, of an appendEntries call to the follower. */
+  protected void updateAppendEntriesRtt(long nanos) {
+    appendEntriesRttTimer.update(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Record the round trip time, in nanoseconds, of a heartbeat which was not queued behind other requests.
+   * Only these samples are used for recommending the election timeout
+   * since the appendEntries round trip time also includes the queueing, the throttling
+   * and the log flush in the follower, which would stretch the timeout under load.
+   */
+  protected void updateHeartbeatRtt(long nanos) {
+    follower.updateRtt(nanos);
+  }
+
   protected void updateCommitIndex(long commitIndex) {
     if (follower.updateCommitIndex(commitIndex)) {
       leaderState.commitIndexChanged();
@@ -381,6 +546,10 @@ public class LogAppender {
     try {
       for (InstallSnapshotRequestProto request :
           new SnapshotRequestIter(snapshot, requestId)) {
+        throttleSnapshot(request.getSerializedSize());
+        if (!isAppenderRunning()) {
+          return null;
+        }
         follower.updateLastRpcSendTime();
         reply = server.getServerRpc().installSnapshot(request);
         follower.updateLastRpcResponseTime();
@@ -444,7 +613,7 @@ public class LogAppender {
       }
       if (isAppenderRunning() && !shouldAppendEntries(
           follower.getNextIndex() + buffer.getPendingEntryNum())) {
-        final long waitTime = getHeartbeatRemainingTime();
+        final long waitTime = getNextRequestRemainingTime();
         if (waitTime > 0) {
           synchronized (this) {
             wait(waitTime);
@@ -517,7 +686,7 @@ public class LogAppender {
   }
 
   private boolean shouldAppendEntries(long followerIndex) {
-    return followerIndex < raftLog.getNextIndex();
+    return followerIndex < raftLog.getNextIndex() && getCatchupDeferredTimeMs(followerIndex) <= 0;
   }
 
   private boolean shouldHeartbeat() {
@@ -528,7 +697,46 @@ public class LogAppender {
    * @return the time in milliseconds that the leader should send a heartbeat.
    */
   protected long getHeartbeatRemainingTime() {
-    return halfMinTimeoutMs - follower.getLastRpcTime().elapsedTimeMs();
+    if (followerHibernating && leaderState.isHibernating()) {
+      // the heartbeats are suspended; check again later in case that a wake up notification is missed
+      return server.getMaxTimeoutMs();
+    }
+    return getHalfMinTimeoutMs() - follower.getLastRpcTime().elapsedTimeMs();
+  }
+
+  /**
+   * @return the time in milliseconds that the leader should send the next request,
+   *         i.e. either a heartbeat or the catch-up entries deferred by the throttle.
+   */
+  protected long getNextRequestRemainingTime() {
+    final long heartbeat = getHeartbeatRemainingTime();
+    final long deferred = getCatchupDeferredTimeMs(follower.getNextIndex() + buffer.getPendingEntryNum());
+    return deferred > 0? Math.min(deferred, heartbeat): heartbeat;
+  }
+
+  /** @return the min election timeout to be recommended to the follower; see {@link ElectionTimeout}. */
+  private int recommendElectionTimeoutMs() {
+    final int recommended = electionTimeout.recommend(follower.getRttWithVariationNanos());
+    followerMinTimeoutMs = electionTimeout.toMinMs(recommended);
+    return recommended;
+  }
+
+  /**
+   * The heartbeat interval is half of the min election timeout of the follower.
+   * Since the follower may not have received the latest recommendation,
+   * use the smaller one of the last recommended timeout and the timeout to be recommended.
+   *
+   * @return half of the min election timeout of the follower.
+   */
+  protected long getHalfMinTimeoutMs() {
+    final int next = electionTimeout.toMinMs(electionTimeout.recommend(follower.getRttWithVariationNanos()));
+    return Math.min(followerMinTimeoutMs, next) / 2;
+  }
+
+  /** @return a heartbeat request without the previous log; see {@link LeaderState#newHeartbeatRequestProto}. */
+  protected AppendEntriesRequestProto newHeartbeatRequest(long callId) {
+    return leaderState.newHeartbeatRequestProto(
+        getFollowerId(), !follower.isAttendingVote(), recommendElectionTimeoutMs(), callId);
   }
 
   protected void checkResponseTerm(long responseTerm) {
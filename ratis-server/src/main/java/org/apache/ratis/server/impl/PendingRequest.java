@@ -54,6 +54,8 @@ public class PendingRequest implements Comparable<PendingRequest> {
   private final RaftClientRequest request;
   private final TransactionContext entry;
   private final CompletableFuture<RaftClientReply> future;
+  /** The time this request was added, for the commit latency metric. */
+  private final long startNanos = System.nanoTime();
 
   private volatile DelayedReply delayed;
 
@@ -84,6 +86,15 @@ public class PendingRequest implements Comparable<PendingRequest> {
     return entry;
   }
 
+  long getStartNanos() {
+    return startNanos;
+  }
+
+  int getMessageSize() {
+    final Message message = request.getMessage();
+    return message != null? message.getContent().size(): 0;
+  }
+
   /**
    * This is only used when setting new raft configuration.
    */
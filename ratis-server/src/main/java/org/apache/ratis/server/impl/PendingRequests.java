@@ -41,6 +41,8 @@ class PendingRequests {
   private static class RequestMap {
     private final Object name;
     private final ConcurrentMap<Long, PendingRequest> map = new ConcurrentHashMap<>();
+    /** The total message size of the requests in the map. */
+    private final AtomicLong bytes = new AtomicLong();
 
     RequestMap(Object name) {
       this.name = name;
@@ -50,6 +52,7 @@ class PendingRequests {
       LOG.debug("{}: PendingRequests.put {} -> {}", name, index, p);
       final PendingRequest previous = map.put(index, p);
       Preconditions.assertTrue(previous == null);
+      bytes.addAndGet(p.getMessageSize());
     }
 
     PendingRequest get(long index) {
@@ -61,9 +64,20 @@ class PendingRequests {
     PendingRequest remove(long index) {
       final PendingRequest r = map.remove(index);
       LOG.debug("{}: PendingRequests.remove {} returns {}", name, index, r);
+      if (r != null) {
+        bytes.addAndGet(-r.getMessageSize());
+      }
       return r;
     }
 
+    int size() {
+      return map.size();
+    }
+
+    long getBytes() {
+      return bytes.get();
+    }
+
     Collection<TransactionContext> setNotLeaderException(NotLeaderException nle, Collection<CommitInfoProto> commitInfos) {
       LOG.debug("{}: PendingRequests.setNotLeaderException", name);
       try {
@@ -72,6 +86,7 @@ class PendingRequests {
             .collect(Collectors.toList());
       } finally {
         map.clear();
+        bytes.set(0);
       }
     }
   }
@@ -190,6 +205,19 @@ class PendingRequests {
     pendingSetConf = null;
   }
 
+  /** @return the pending request with the given index, or null if there is no such request. */
+  PendingRequest get(long index) {
+    return pendingRequests.get(index);
+  }
+
+  int size() {
+    return pendingRequests.size();
+  }
+
+  long getBytes() {
+    return pendingRequests.getBytes();
+  }
+
   TransactionContext getTransactionContext(long index) {
     PendingRequest pendingRequest = pendingRequests.get(index);
     // it is possible that the pendingRequest is null if this peer just becomes
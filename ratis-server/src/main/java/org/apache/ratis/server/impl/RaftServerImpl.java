@@ -17,6 +17,7 @@
  */
 package org.apache.ratis.server.impl;
 
+import com.codahale.metrics.Timer;
 import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.proto.RaftProtos.*;
 import org.apache.ratis.protocol.*;
@@ -33,6 +34,8 @@ import org.apache.ratis.statemachine.SnapshotInfo;
 import org.apache.ratis.statemachine.StateMachine;
 import org.apache.ratis.statemachine.TransactionContext;
 import org.apache.ratis.thirdparty.com.google.common.annotations.VisibleForTesting;
+import org.apache.ratis.trace.TraceStage;
+import org.apache.ratis.trace.Tracer;
 import org.apache.ratis.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,8 +46,8 @@ import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -64,13 +67,13 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
   private static final String CLASS_NAME = RaftServerImpl.class.getSimpleName();
   static final String REQUEST_VOTE = CLASS_NAME + ".requestVote";
-  static final String APPEND_ENTRIES = CLASS_NAME + ".appendEntries";
+  public static final String APPEND_ENTRIES = CLASS_NAME + ".appendEntries";
+  public static final String HIBERNATE = CLASS_NAME + ".hibernate";
   static final String INSTALL_SNAPSHOT = CLASS_NAME + ".installSnapshot";
 
   private final RaftServerProxy proxy;
   private final StateMachine stateMachine;
-  private final int minTimeoutMs;
-  private final int maxTimeoutMs;
+  private final ElectionTimeout electionTimeout;
   private final int rpcSlownessTimeoutMs;
 
   private final LifeCycle lifeCycle;
@@ -83,6 +86,20 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
   private final CommitInfoCache commitInfoCache = new CommitInfoCache();
 
   private final RaftServerJmxAdapter jmxAdapter;
+  private final RaftServerMetrics metrics;
+  /** Throttle the background replication traffic of this group; its parent is the throttle of the server. */
+  private final TokenBucket replicationThrottle;
+
+  /**
+   * The role and the term are changed only when holding both the monitor of this object and the write lock
+   * so that the steady-state request paths,
+   * i.e. the leader write submission and the follower append, only need the read lock.
+   * The monitor must be acquired before the write lock
+   * and it must not be acquired when holding the read lock.
+   */
+  private final ReentrantReadWriteLock roleLock = new ReentrantReadWriteLock();
+  /** For appending the client transactions and adding the pending requests in the log order. */
+  private final Object appendTransactionLock = new Object();
 
   RaftServerImpl(RaftGroup group, StateMachine stateMachine, RaftServerProxy proxy) throws IOException {
     final RaftPeerId id = proxy.getId();
@@ -93,23 +110,24 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     this.role = new RoleInfo(id);
 
     final RaftProperties properties = proxy.getProperties();
-    minTimeoutMs = RaftServerConfigKeys.Rpc.timeoutMin(properties).toInt(TimeUnit.MILLISECONDS);
-    maxTimeoutMs = RaftServerConfigKeys.Rpc.timeoutMax(properties).toInt(TimeUnit.MILLISECONDS);
+    electionTimeout = new ElectionTimeout(properties);
     rpcSlownessTimeoutMs = RaftServerConfigKeys.Rpc.slownessTimeout(properties).toInt(TimeUnit.MILLISECONDS);
-    Preconditions.assertTrue(maxTimeoutMs > minTimeoutMs,
-        "max timeout: %s, min timeout: %s", maxTimeoutMs, minTimeoutMs);
     this.proxy = proxy;
 
+    this.metrics = new RaftServerMetrics(id, groupId);
     this.state = new ServerState(id, group, properties, this, stateMachine);
     this.retryCache = initRetryCache(properties);
+    this.replicationThrottle = new TokenBucket(id + "@" + groupId,
+        RaftServerConfigKeys.Throttle.groupBandwidth(properties), proxy.getReplicationThrottle());
 
     this.jmxAdapter = new RaftServerJmxAdapter();
   }
 
   private RetryCache initRetryCache(RaftProperties prop) {
     final int capacity = RaftServerConfigKeys.RetryCache.capacity(prop);
+    final SizeInBytes sizeMax = RaftServerConfigKeys.RetryCache.sizeMax(prop);
     final TimeDuration expireTime = RaftServerConfigKeys.RetryCache.expiryTime(prop);
-    return new RetryCache(capacity, expireTime);
+    return new RetryCache(capacity, sizeMax, expireTime);
   }
 
   LogAppender newLogAppender(
@@ -123,17 +141,20 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     return peerSupplier.get();
   }
 
+  ElectionTimeout getElectionTimeout() {
+    return electionTimeout;
+  }
+
   int getMinTimeoutMs() {
-    return minTimeoutMs;
+    return electionTimeout.getMinMs();
   }
 
   int getMaxTimeoutMs() {
-    return maxTimeoutMs;
+    return electionTimeout.getMaxMs();
   }
 
   int getRandomTimeoutMs() {
-    return minTimeoutMs + ThreadLocalRandom.current().nextInt(
-        maxTimeoutMs - minTimeoutMs + 1);
+    return electionTimeout.getRandomMs();
   }
 
   public RaftGroupId getGroupId() {
@@ -144,11 +165,28 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     return stateMachine;
   }
 
+  public RaftServerMetrics getMetrics() {
+    return metrics;
+  }
+
   @VisibleForTesting
   public RetryCache getRetryCache() {
     return retryCache;
   }
 
+  AutoCloseableLock readLock() {
+    return AutoCloseableLock.acquire(roleLock.readLock());
+  }
+
+  AutoCloseableLock writeLock() {
+    Preconditions.assertTrue(Thread.holdsLock(this), "The monitor must be acquired before the write lock");
+    return AutoCloseableLock.acquire(roleLock.writeLock());
+  }
+
+  public Tracer getTracer() {
+    return getProxy().getTracer();
+  }
+
   public RaftServerProxy getProxy() {
     return proxy;
   }
@@ -179,6 +217,10 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     }
 
     registerMBean(getId(), getGroupId(), jmxAdapter, jmxAdapter);
+    metrics.addGauge(RaftServerMetrics.PENDING_REQUESTS_COUNT,
+        () -> role.getLeaderState().map(LeaderState::getNumPendingRequests).orElse(0));
+    metrics.addGauge(RaftServerMetrics.PENDING_REQUESTS_BYTES,
+        () -> role.getLeaderState().map(LeaderState::getPendingRequestsBytes).orElse(0L));
     return true;
   }
 
@@ -222,6 +264,10 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     return role;
   }
 
+  TokenBucket getReplicationThrottle() {
+    return replicationThrottle;
+  }
+
   RaftConfiguration getRaftConf() {
     return getState().getRaftConf();
   }
@@ -258,6 +304,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       } catch (Exception ignored) {
         LOG.warn("Failed to close state for " + getId(), ignored);
       }
+      metrics.unregister();
       if (deleteDirectory) {
         final RaftStorageDirectory dir = state.getStorage().getStorageDir();
         try {
@@ -292,19 +339,21 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
    * @throws IOException if term/votedFor persistence failed.
    */
   private synchronized boolean changeToFollower(long newTerm) {
-    final RaftPeerRole old = role.getCurrentRole();
-    final boolean metadataUpdated = state.updateCurrentTerm(newTerm);
-
-    if (old != RaftPeerRole.FOLLOWER) {
-      setRole(RaftPeerRole.FOLLOWER, "changeToFollower");
-      if (old == RaftPeerRole.LEADER) {
-        role.shutdownLeaderState(false);
-      } else if (old == RaftPeerRole.CANDIDATE) {
-        role.shutdownLeaderElection();
+    try (AutoCloseableLock writeLock = writeLock()) {
+      final RaftPeerRole old = role.getCurrentRole();
+      final boolean metadataUpdated = state.updateCurrentTerm(newTerm);
+
+      if (old != RaftPeerRole.FOLLOWER) {
+        setRole(RaftPeerRole.FOLLOWER, "changeToFollower");
+        if (old == RaftPeerRole.LEADER) {
+          role.shutdownLeaderState(false);
+        } else if (old == RaftPeerRole.CANDIDATE) {
+          role.shutdownLeaderElection();
+        }
+        role.startFollowerState(this);
       }
-      role.startFollowerState(this);
+      return metadataUpdated;
     }
-    return metadataUpdated;
   }
 
   synchronized void changeToFollowerAndPersistMetadata(long newTerm) throws IOException {
@@ -314,14 +363,16 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
   }
 
   synchronized void changeToLeader() {
-    Preconditions.assertTrue(isCandidate());
-    role.shutdownLeaderElection();
-    setRole(RaftPeerRole.LEADER, "changeToLeader");
-    state.becomeLeader();
-
-    // start sending AppendEntries RPC to followers
-    final LogEntryProto e = role.startLeaderState(this, getProxy().getProperties());
-    getState().setRaftConf(e);
+    try (AutoCloseableLock writeLock = writeLock()) {
+      Preconditions.assertTrue(isCandidate());
+      role.shutdownLeaderElection();
+      setRole(RaftPeerRole.LEADER, "changeToLeader");
+      state.becomeLeader();
+
+      // start sending AppendEntries RPC to followers
+      final LogEntryProto e = role.startLeaderState(this, getProxy().getProperties());
+      getState().setRaftConf(e);
+    }
   }
 
   Collection<CommitInfoProto> getCommitInfos() {
@@ -389,9 +440,11 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
   }
 
   synchronized void changeToCandidate() {
-    Preconditions.assertTrue(isFollower());
-    role.shutdownFollowerState();
-    setRole(RaftPeerRole.CANDIDATE, "changeToCandidate");
+    try (AutoCloseableLock writeLock = writeLock()) {
+      Preconditions.assertTrue(isFollower());
+      role.shutdownFollowerState();
+      setRole(RaftPeerRole.CANDIDATE, "changeToCandidate");
+    }
     if (state.checkForExtendedNoLeader()) {
       stateMachine.notifyExtendedNoLeader(getGroup(), getRoleInfoProto());
     }
@@ -399,6 +452,42 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     role.startLeaderElection(this);
   }
 
+  /**
+   * Transfer the leadership of this group to the given peer.
+   * The leadership is transferred once the peer has caught up;
+   * see {@link LeaderState#transferLeadership(RaftPeerId)}.
+   *
+   * @return false if this server is not a ready leader or the given peer is not a follower in the conf.
+   */
+  synchronized boolean transferLeadership(RaftPeerId target) {
+    final LeaderState leaderState = role.getLeaderState().orElse(null);
+    if (!isLeader() || leaderState == null || !leaderState.isReady()
+        || getId().equals(target) || !getRaftConf().containsInConf(target)) {
+      return false;
+    }
+    leaderState.transferLeadership(target);
+    return true;
+  }
+
+  /** The leader asks this follower to hibernate since the group is idle. */
+  private void hibernate(long leaderTerm) {
+    try (AutoCloseableLock readLock = readLock()) {
+      if (!isFollower() || state.getCurrentTerm() != leaderTerm) {
+        return;
+      }
+      role.getFollowerState().ifPresent(FollowerState::hibernate);
+    }
+    state.getLog().evictCache();
+  }
+
+  /** The leader is transferring the leadership to this server, so start an election immediately. */
+  private synchronized void timeoutNow(RaftPeerId leaderId, long leaderTerm) {
+    if (lifeCycle.getCurrentState() == RUNNING && isFollower() && state.getCurrentTerm() == leaderTerm) {
+      LOG.info("{}: leader {} is transferring the leadership in term {}", getId(), leaderId, leaderTerm);
+      changeToCandidate();
+    }
+  }
+
   @Override
   public String toString() {
     return String.format("%8s ", role) + groupId + " " + state
@@ -417,12 +506,17 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     }
 
     if (!isLeader()) {
+      // the leader may be gone while the group is hibernating
+      role.getFollowerState().ifPresent(FollowerState::wakeUp);
       NotLeaderException exception = generateNotLeaderException();
       final RaftClientReply reply = new RaftClientReply(request, exception, getCommitInfos());
       return RetryCache.failWithReply(reply, entry);
     }
     final LeaderState leaderState = role.getLeaderState().orElse(null);
-    if (leaderState == null || !leaderState.isReady()) {
+    if (leaderState != null) {
+      leaderState.wakeUp();
+    }
+    if (leaderState == null || !leaderState.isReady() || leaderState.isTransferringLeadership()) {
       RetryCache.CacheEntry cacheEntry = retryCache.get(request.getClientId(), request.getCallId());
       if (cacheEntry != null && cacheEntry.isCompletedNormally()) {
         return cacheEntry.getReplyFuture();
@@ -473,7 +567,8 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     CompletableFuture<RaftClientReply> reply;
 
     final PendingRequest pending;
-    synchronized (this) {
+    // the role cannot be changed when holding the read lock
+    try (AutoCloseableLock readLock = readLock()) {
       reply = checkLeaderState(request, cacheEntry);
       if (reply != null) {
         return reply;
@@ -481,23 +576,24 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
       // append the message to its local log
       final LeaderState leaderState = role.getLeaderStateNonNull();
-      final long entryIndex;
-      try {
-        entryIndex = state.applyLog(context);
-      } catch (StateMachineException e) {
-        // the StateMachineException is thrown by the SM in the preAppend stage.
-        // Return the exception in a RaftClientReply.
-        RaftClientReply exceptionReply = new RaftClientReply(request, e, getCommitInfos());
-        cacheEntry.failWithReply(exceptionReply);
-        // leader will step down here
-        if (isLeader() && leaderState != null) {
+      synchronized (appendTransactionLock) {
+        final long entryIndex;
+        try {
+          entryIndex = state.applyLog(context);
+          getTracer().record(request.getClientId(), request.getCallId(), TraceStage.LEADER_APPEND, entryIndex);
+        } catch (StateMachineException e) {
+          // the StateMachineException is thrown by the SM in the preAppend stage.
+          // Return the exception in a RaftClientReply.
+          RaftClientReply exceptionReply = new RaftClientReply(request, e, getCommitInfos());
+          cacheEntry.failWithReply(exceptionReply);
+          // leader will step down here
           leaderState.submitStepDownEvent();
+          return CompletableFuture.completedFuture(exceptionReply);
         }
-        return CompletableFuture.completedFuture(exceptionReply);
-      }
 
-      // put the request into the pending queue
-      pending = leaderState.addPendingRequest(entryIndex, request, context);
+        // put the request into the pending queue
+        pending = leaderState.addPendingRequest(entryIndex, request, context);
+      }
       leaderState.notifySenders();
     }
     return pending.getFuture();
@@ -508,6 +604,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       RaftClientRequest request) throws IOException {
     assertLifeCycleState(RUNNING);
     LOG.debug("{}: receive client request({})", getId(), request);
+    getTracer().record(request.getClientId(), request.getCallId(), TraceStage.SERVER_RECEIVE);
     if (request.is(RaftClientRequestProto.TypeCase.STALEREAD)) {
       return staleReadAsync(request);
     }
@@ -539,6 +636,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       return previousResult.getEntry().getReplyFuture();
     }
     final RetryCache.CacheEntry cacheEntry = previousResult.getEntry();
+    final Timer.Context timerContext = metrics.getClientRequestTimer().time();
 
     // TODO: this client request will not be added to pending requests until
     // later which means that any failure in between will leave partial state in
@@ -550,7 +648,9 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       cacheEntry.failWithReply(exceptionReply);
       return CompletableFuture.completedFuture(exceptionReply);
     }
-    return appendTransaction(request, context, cacheEntry);
+    final CompletableFuture<RaftClientReply> reply = appendTransaction(request, context, cacheEntry);
+    reply.whenComplete((r, e) -> timerContext.stop());
+    return reply;
   }
 
   private CompletableFuture<RaftClientReply> watchAsync(RaftClientRequest request) {
@@ -647,30 +747,32 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     final RaftPeer[] peersInNewConf = request.getPeersInNewConf();
     final PendingRequest pending;
     synchronized (this) {
-      reply = checkLeaderState(request, null);
-      if (reply != null) {
-        return reply;
-      }
+      try (AutoCloseableLock writeLock = writeLock()) {
+        reply = checkLeaderState(request, null);
+        if (reply != null) {
+          return reply;
+        }
 
-      final RaftConfiguration current = getRaftConf();
-      final LeaderState leaderState = role.getLeaderStateNonNull();
-      // make sure there is no other raft reconfiguration in progress
-      if (!current.isStable() || leaderState.inStagingState() || !state.isConfCommitted()) {
-        throw new ReconfigurationInProgressException(
-            "Reconfiguration is already in progress: " + current);
-      }
+        final RaftConfiguration current = getRaftConf();
+        final LeaderState leaderState = role.getLeaderStateNonNull();
+        // make sure there is no other raft reconfiguration in progress
+        if (!current.isStable() || leaderState.inStagingState() || !state.isConfCommitted()) {
+          throw new ReconfigurationInProgressException(
+              "Reconfiguration is already in progress: " + current);
+        }
 
-      // return success with a null message if the new conf is the same as the current
-      if (current.hasNoChange(peersInNewConf)) {
-        pending = new PendingRequest(request);
-        pending.setReply(new RaftClientReply(request, getCommitInfos()));
-        return pending.getFuture();
-      }
+        // return success with a null message if the new conf is the same as the current
+        if (current.hasNoChange(peersInNewConf)) {
+          pending = new PendingRequest(request);
+          pending.setReply(new RaftClientReply(request, getCommitInfos()));
+          return pending.getFuture();
+        }
 
-      // add new peers into the rpc service
-      getServerRpc().addPeers(Arrays.asList(peersInNewConf));
-      // add staging state into the leaderState
-      pending = leaderState.startSetConfiguration(request);
+        // add new peers into the rpc service
+        getServerRpc().addPeers(Arrays.asList(peersInNewConf));
+        // add staging state into the leaderState
+        pending = leaderState.startSetConfiguration(request);
+      }
     }
     return pending.getFuture();
   }
@@ -729,33 +831,37 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     boolean shouldShutdown = false;
     final RequestVoteReplyProto reply;
     synchronized (this) {
-      final FollowerState fs = role.getFollowerState().orElse(null);
-      if (shouldWithholdVotes(candidateTerm)) {
-        LOG.info("{}-{}: Withhold vote from candidate {} with term {}. State: leader={}, term={}, lastRpcElapsed={}",
-            getId(), role, candidateId, candidateTerm, state.getLeaderId(), state.getCurrentTerm(),
-            fs != null? fs.getLastRpcTime().elapsedTimeMs() + "ms": null);
-      } else if (state.recognizeCandidate(candidateId, candidateTerm)) {
-        final boolean termUpdated = changeToFollower(candidateTerm);
-        // see Section 5.4.1 Election restriction
-        if (state.isLogUpToDate(candidateLastEntry) && fs != null) {
-          fs.updateLastRpcTime(false);
-          state.grantVote(candidateId);
-          voteGranted = true;
+      try (AutoCloseableLock writeLock = writeLock()) {
+        final FollowerState fs = role.getFollowerState().orElse(null);
+        if (shouldWithholdVotes(candidateTerm)) {
+          LOG.info("{}-{}: Withhold vote from candidate {} with term {}. State: leader={}, term={}, lastRpcElapsed={}",
+              getId(), role, candidateId, candidateTerm, state.getLeaderId(), state.getCurrentTerm(),
+              fs != null? fs.getLastRpcTime().elapsedTimeMs() + "ms": null);
+        } else if (state.recognizeCandidate(candidateId, candidateTerm)) {
+          final boolean termUpdated = changeToFollower(candidateTerm);
+          // see Section 5.4.1 Election restriction
+          if (state.isLogUpToDate(candidateLastEntry) && fs != null) {
+            fs.updateLastRpcTime(false);
+            state.grantVote(candidateId);
+            voteGranted = true;
+          }
+          if (termUpdated || voteGranted) {
+            state.persistMetadata(); // sync metafile
+          }
         }
-        if (termUpdated || voteGranted) {
-          state.persistMetadata(); // sync metafile
+        if (!voteGranted && shouldSendShutdown(candidateId, candidateLastEntry)) {
+          shouldShutdown = true;
+        }
+        reply = ServerProtoUtils.toRequestVoteReplyProto(candidateId, getId(),
+            groupId, voteGranted, state.getCurrentTerm(), shouldShutdown);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("{} replies to vote request: {}. Peer's state: {}",
+              getId(), ProtoUtils.toString(reply), state);
         }
-      }
-      if (!voteGranted && shouldSendShutdown(candidateId, candidateLastEntry)) {
-        shouldShutdown = true;
-      }
-      reply = ServerProtoUtils.toRequestVoteReplyProto(candidateId, getId(),
-          groupId, voteGranted, state.getCurrentTerm(), shouldShutdown);
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("{} replies to vote request: {}. Peer's state: {}",
-            getId(), ProtoUtils.toString(reply), state);
       }
     }
+    // a candidate may have timed out the leader of a hibernating group
+    role.getFollowerState().ifPresent(FollowerState::wakeUp);
     return reply;
   }
 
@@ -807,10 +913,33 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
         .toArray(new LogEntryProto[r.getEntriesCount()]);
     final TermIndex previous = r.hasPreviousLog() ?
         ServerProtoUtils.toTermIndex(r.getPreviousLog()) : null;
-    return appendEntriesAsync(RaftPeerId.valueOf(request.getRequestorId()),
+    final RaftPeerId leaderId = RaftPeerId.valueOf(request.getRequestorId());
+    if (r.getHibernate()) {
+      CodeInjectionForTesting.execute(HIBERNATE, getId(), leaderId, r.getLeaderTerm());
+    }
+    final CompletableFuture<AppendEntriesReplyProto> future = appendEntriesAsync(leaderId,
         ProtoUtils.toRaftGroupId(request.getRaftGroupId()), r.getLeaderTerm(),
         previous, r.getLeaderCommit(), request.getCallId(), r.getInitializing(),
-        r.getCommitInfosList(), entries);
+        r.getCommitInfosList(), entries).thenApply(reply -> {
+          if (reply.getResult() != NOT_LEADER) {
+            // the request is from the current leader
+            electionTimeout.update(r.getElectionTimeoutMs());
+          }
+          return reply;
+        });
+    if (!r.getTimeoutNow() && !r.getHibernate()) {
+      return future;
+    }
+    return future.thenApply(reply -> {
+      if (reply.getResult() == SUCCESS) {
+        if (r.getTimeoutNow()) {
+          timeoutNow(leaderId, r.getLeaderTerm());
+        } else {
+          hibernate(r.getLeaderTerm());
+        }
+      }
+      return reply;
+    });
   }
 
   static void logAppendEntries(boolean isHeartbeat, Supplier<String> message) {
@@ -838,11 +967,15 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     CodeInjectionForTesting.execute(APPEND_ENTRIES, getId(),
         leaderId, leaderTerm, previous, leaderCommit, initializing, entries);
     final boolean isHeartbeat = entries.length == 0;
+    final RaftEvent event = isHeartbeat? RaftEvent.NOOP: RaftEvents.begin(RaftEvent.Type.APPEND_ENTRIES_RECEIVE);
     logAppendEntries(isHeartbeat,
         () -> getId() + ": receive appendEntries(" + leaderId + ", " + leaderGroupId + ", "
             + leaderTerm + ", " + previous + ", " + leaderCommit + ", " + initializing
             + ", commits" + ProtoUtils.toString(commitInfos)
             + ", entries: " + ServerProtoUtils.toString(entries));
+    for(LogEntryProto entry : entries) {
+      getTracer().record(entry, TraceStage.FOLLOWER_RECEIVE);
+    }
 
     final LifeCycle.State currentState = assertLifeCycleState(STARTING, RUNNING);
     if (currentState == STARTING) {
@@ -860,47 +993,47 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
     final List<CompletableFuture<Long>> futures;
 
-    final long currentTerm;
+    final long currentTerm = leaderTerm;
     final long nextIndex = state.getLog().getNextIndex();
     final long followerCommit = state.getLog().getLastCommittedIndex();
-    synchronized (this) {
-      final boolean recognized = state.recognizeLeader(leaderId, leaderTerm);
-      currentTerm = state.getCurrentTerm();
-      if (!recognized) {
-        final AppendEntriesReplyProto reply = ServerProtoUtils.toAppendEntriesReplyProto(
-            leaderId, getId(), groupId, currentTerm, followerCommit, nextIndex, NOT_LEADER, callId);
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("{}: Not recognize {} (term={}) as leader, state: {} reply: {}",
-              getId(), leaderId, leaderTerm, state, ProtoUtils.toString(reply));
-        }
-        return CompletableFuture.completedFuture(reply);
+    AppendEntriesReplyProto inconsistency = null;
+    boolean steady;
+    try (AutoCloseableLock readLock = readLock()) {
+      // in the steady state, the leader has already been recognized and only the read lock is needed.
+      steady = isSteadyFollower(leaderId, leaderTerm);
+      if (steady) {
+        updateLastRpcTime(true);
+        inconsistency = checkPreviousAndUpdateConfiguration(
+            leaderId, currentTerm, previous, followerCommit, nextIndex, callId, entries);
       }
-      changeToFollowerAndPersistMetadata(leaderTerm);
-      state.setLeader(leaderId, "appendEntries");
+    }
+    if (!steady) {
+      synchronized (this) {
+        try (AutoCloseableLock writeLock = writeLock()) {
+          final boolean recognized = state.recognizeLeader(leaderId, leaderTerm);
+          if (!recognized) {
+            final AppendEntriesReplyProto reply = ServerProtoUtils.toAppendEntriesReplyProto(
+                leaderId, getId(), groupId, state.getCurrentTerm(), followerCommit, nextIndex, NOT_LEADER, callId);
+            if (LOG.isDebugEnabled()) {
+              LOG.debug("{}: Not recognize {} (term={}) as leader, state: {} reply: {}",
+                  getId(), leaderId, leaderTerm, state, ProtoUtils.toString(reply));
+            }
+            return CompletableFuture.completedFuture(reply);
+          }
+          changeToFollowerAndPersistMetadata(leaderTerm);
+          state.setLeader(leaderId, "appendEntries");
 
-      if (!initializing && lifeCycle.compareAndTransition(STARTING, RUNNING)) {
-        role.startFollowerState(this);
-      }
-      updateLastRpcTime(true);
-
-      // We need to check if "previous" is in the local peer. Note that it is
-      // possible that "previous" is covered by the latest snapshot: e.g.,
-      // it's possible there's no log entries outside of the latest snapshot.
-      // However, it is not possible that "previous" index is smaller than the
-      // last index included in snapshot. This is because indices <= snapshot's
-      // last index should have been committed.
-      if (previous != null && !containPrevious(previous)) {
-        final AppendEntriesReplyProto reply = ServerProtoUtils.toAppendEntriesReplyProto(
-            leaderId, getId(), groupId, currentTerm, followerCommit, Math.min(nextIndex, previous.getIndex()),
-            INCONSISTENCY, callId);
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("{}: inconsistency entries. Leader previous:{}, Reply:{}",
-              getId(), previous, ServerProtoUtils.toString(reply));
+          if (!initializing && lifeCycle.compareAndTransition(STARTING, RUNNING)) {
+            role.startFollowerState(this);
+          }
+          updateLastRpcTime(true);
+          inconsistency = checkPreviousAndUpdateConfiguration(
+              leaderId, currentTerm, previous, followerCommit, nextIndex, callId, entries);
         }
-        return CompletableFuture.completedFuture(reply);
       }
-
-      state.updateConfiguration(entries);
+    }
+    if (inconsistency != null) {
+      return CompletableFuture.completedFuture(inconsistency);
     }
 
     futures = state.getLog().append(entries);
@@ -911,7 +1044,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     }
     return JavaUtils.allOf(futures).thenApplyAsync(v -> {
       final AppendEntriesReplyProto reply;
-      synchronized(this) {
+      try (AutoCloseableLock readLock = readLock()) {
         if (lifeCycle.getCurrentState() == RUNNING && isFollower()
             && getState().getCurrentTerm() == currentTerm) {
           // reset election timer to avoid punishing the leader for our own long disk writes
@@ -924,10 +1057,50 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       }
       logAppendEntries(isHeartbeat, () ->
           getId() + ": succeeded to handle AppendEntries. Reply: " + ServerProtoUtils.toString(reply));
+      if (event != RaftEvent.NOOP) {
+        event.end(getId(), groupId, entries[0].getIndex(), entries[entries.length - 1].getIndex(),
+            Arrays.stream(entries).mapToLong(LogEntryProto::getSerializedSize).sum());
+      }
       return reply;
     });
   }
 
+  /**
+   * @return true if this server is a running follower of the given leader in the given term;
+   *         in such case, the role and the term will not be changed by the request.
+   */
+  private boolean isSteadyFollower(RaftPeerId leaderId, long leaderTerm) {
+    return lifeCycle.getCurrentState() == RUNNING && isFollower()
+        && state.getCurrentTerm() == leaderTerm && leaderId.equals(state.getLeaderId());
+  }
+
+  /**
+   * @return an INCONSISTENCY reply if the previous entry is not in this server;
+   *         otherwise, update the configuration with the entries and return null.
+   */
+  private AppendEntriesReplyProto checkPreviousAndUpdateConfiguration(RaftPeerId leaderId, long currentTerm,
+      TermIndex previous, long followerCommit, long nextIndex, long callId, LogEntryProto... entries) {
+    // We need to check if "previous" is in the local peer. Note that it is
+    // possible that "previous" is covered by the latest snapshot: e.g.,
+    // it's possible there's no log entries outside of the latest snapshot.
+    // However, it is not possible that "previous" index is smaller than the
+    // last index included in snapshot. This is because indices <= snapshot's
+    // last index should have been committed.
+    if (previous != null && !containPrevious(previous)) {
+      final AppendEntriesReplyProto reply = ServerProtoUtils.toAppendEntriesReplyProto(
+          leaderId, getId(), groupId, currentTerm, followerCommit, Math.min(nextIndex, previous.getIndex()),
+          INCONSISTENCY, callId);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("{}: inconsistency entries. Leader previous:{}, Reply:{}",
+            getId(), previous, ServerProtoUtils.toString(reply));
+      }
+      return reply;
+    }
+
+    state.updateConfiguration(entries);
+    return null;
+  }
+
   private boolean containPrevious(TermIndex previous) {
     if (LOG.isTraceEnabled()) {
       LOG.trace("{}: prev:{}, latestSnapshot:{}, latestInstalledSnapshot:{}",
@@ -959,38 +1132,42 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
         request.getTermIndex());
     final long lastIncludedIndex = lastTermIndex.getIndex();
     synchronized (this) {
-      final boolean recognized = state.recognizeLeader(leaderId, leaderTerm);
-      currentTerm = state.getCurrentTerm();
-      if (!recognized) {
-        final InstallSnapshotReplyProto reply = ServerProtoUtils
-            .toInstallSnapshotReplyProto(leaderId, getId(), groupId, currentTerm,
-                request.getRequestIndex(), InstallSnapshotResult.NOT_LEADER);
-        LOG.debug("{}: do not recognize leader for installing snapshot." +
-            " Reply: {}", getId(), reply);
-        return reply;
-      }
-      changeToFollowerAndPersistMetadata(leaderTerm);
-      state.setLeader(leaderId, "installSnapshot");
-
-      updateLastRpcTime(true);
-
-      // Check and append the snapshot chunk. We simply put this in lock
-      // considering a follower peer requiring a snapshot installation does not
-      // have a lot of requests
-      Preconditions.assertTrue(
-          state.getLog().getNextIndex() <= lastIncludedIndex,
-          "%s log's next id is %s, last included index in snapshot is %s",
-          getId(),  state.getLog().getNextIndex(), lastIncludedIndex);
-
-      //TODO: We should only update State with installed snapshot once the request is done.
-      state.installSnapshot(request);
-
-      // update the committed index
-      // re-load the state machine if this is the last chunk
-      if (request.getDone()) {
-        state.reloadStateMachine(lastIncludedIndex, leaderTerm);
+      try (AutoCloseableLock writeLock = writeLock()) {
+        final boolean recognized = state.recognizeLeader(leaderId, leaderTerm);
+        currentTerm = state.getCurrentTerm();
+        if (!recognized) {
+          final InstallSnapshotReplyProto reply = ServerProtoUtils
+              .toInstallSnapshotReplyProto(leaderId, getId(), groupId, currentTerm,
+                  request.getRequestIndex(), InstallSnapshotResult.NOT_LEADER);
+          LOG.debug("{}: do not recognize leader for installing snapshot." +
+              " Reply: {}", getId(), reply);
+          return reply;
+        }
+        changeToFollowerAndPersistMetadata(leaderTerm);
+        state.setLeader(leaderId, "installSnapshot");
+
+        updateLastRpcTime(true);
+
+        // Check and append the snapshot chunk. We simply put this in lock
+        // considering a follower peer requiring a snapshot installation does not
+        // have a lot of requests
+        Preconditions.assertTrue(
+            state.getLog().getNextIndex() <= lastIncludedIndex,
+            "%s log's next id is %s, last included index in snapshot is %s",
+            getId(),  state.getLog().getNextIndex(), lastIncludedIndex);
+
+        //TODO: We should only update State with installed snapshot once the request is done.
+        final RaftEvent event = RaftEvents.begin(RaftEvent.Type.SNAPSHOT_INSTALL);
+        state.installSnapshot(request);
+
+        // update the committed index
+        // re-load the state machine if this is the last chunk
+        if (request.getDone()) {
+          state.reloadStateMachine(lastIncludedIndex, leaderTerm);
+        }
+        event.end(getId(), groupId, lastIncludedIndex, lastIncludedIndex, request.getSerializedSize());
+        updateLastRpcTime(false);
       }
-      updateLastRpcTime(false);
     }
     if (request.getDone()) {
       LOG.info("{}: successfully install the whole snapshot-{}", getId(),
@@ -1027,9 +1204,10 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
    * @param logEntry the log entry that has been submitted to the state machine
    * @param stateMachineFuture the future returned by the state machine
    *                           from which we will get transaction result later
+   * @param applyStartNanos the time the log entry was submitted to the state machine
    */
   private CompletableFuture<Message> replyPendingRequest(
-      LogEntryProto logEntry, CompletableFuture<Message> stateMachineFuture) {
+      LogEntryProto logEntry, CompletableFuture<Message> stateMachineFuture, long applyStartNanos) {
     Preconditions.assertTrue(logEntry.hasStateMachineLogEntry());
     final StateMachineLogEntryProto smLog = logEntry.getStateMachineLogEntry();
     // update the retry cache
@@ -1043,6 +1221,8 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
     final long logIndex = logEntry.getIndex();
     return stateMachineFuture.whenComplete((reply, exception) -> {
+      RaftServerMetrics.update(metrics.getApplyTimer(), applyStartNanos);
+      getTracer().record(logEntry, TraceStage.APPLY);
       final RaftClientReply r;
       if (exception == null) {
         r = new RaftClientReply(clientId, serverId, groupId, callId, true, reply, null, logIndex, getCommitInfos());
@@ -1055,12 +1235,13 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
       // update pending request
       boolean updateCache = true;  // always update cache for follower
-      synchronized (RaftServerImpl.this) {
+      try (AutoCloseableLock readLock = readLock()) {
         final LeaderState leaderState = role.getLeaderState().orElse(null);
         if (isLeader() && leaderState != null) { // is leader and is running
           // For leader, update cache unless the reply is delayed.
           // When a reply is delayed, the cache will be updated in DelayedReply.getReply().
           updateCache = leaderState.replyPendingRequest(logIndex, r, cacheEntry);
+          getTracer().record(logEntry, TraceStage.LEADER_REPLY);
         }
       }
       if (updateCache) {
@@ -1096,10 +1277,12 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       trx = stateMachine.applyTransactionSerial(trx);
 
       try {
+        final long applyStartNanos = System.nanoTime();
+        getTracer().record(next, TraceStage.APPLY_START);
         // TODO: This step can be parallelized
         CompletableFuture<Message> stateMachineFuture =
             stateMachine.applyTransaction(trx);
-        return replyPendingRequest(next, stateMachineFuture);
+        return replyPendingRequest(next, stateMachineFuture, applyStartNanos);
       } catch (Throwable e) {
         LOG.error("{}: applyTransaction failed for index:{} proto:{}", getId(),
             next.getIndex(), ServerProtoUtils.toString(next), e.getMessage());
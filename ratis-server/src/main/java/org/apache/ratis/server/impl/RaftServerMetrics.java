@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+import org.apache.ratis.metrics.RatisMetricsRegistry;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeerId;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics of a {@link RaftServerImpl}, i.e. a peer in a raft group.
+ *
+ * The metrics are registered in {@link RatisMetricsRegistry}
+ * with the names prefixed by "ratis.server.[peerId].[groupId]".
+ * The timers record both the latency histograms and the throughput rates.
+ *
+ * The metrics are identified by their names
+ * so that the objects created with the same ids share the same metrics.
+ * All the metrics of a group are removed by {@link #unregister()}
+ * when the group is removed from the server.
+ */
+public class RaftServerMetrics {
+  public static final String RATIS_SERVER_METRICS = "ratis.server";
+
+  public static final String CLIENT_REQUEST = "client-request";
+  public static final String LOG_APPEND = "log-append";
+  public static final String LOG_FLUSH = "log-flush";
+  public static final String COMMIT = "commit";
+  public static final String APPLY = "apply";
+  public static final String SNAPSHOT = "snapshot";
+
+  public static final String FOLLOWER = "follower";
+  public static final String APPEND_ENTRIES_RTT = "append-entries-rtt";
+  public static final String FOLLOWER_LAG = "lag";
+
+  public static final String PENDING_REQUESTS_COUNT = "pending-requests.count";
+  public static final String PENDING_REQUESTS_BYTES = "pending-requests.bytes";
+  public static final String LOG_WORKER_QUEUE_SIZE = "log-worker.queue-size";
+  public static final String LOG_CACHE_HIT_RATIO = "log-cache.hit-ratio";
+  public static final String LOG_CACHE_SIZE = "log-cache.size";
+  public static final String STATEMACHINE_DATA_CACHE_SIZE = "statemachine-data-cache.size";
+
+  /** @return the prefix of the metric names for the given peer and group. */
+  public static String getPrefix(RaftPeerId peerId, RaftGroupId groupId) {
+    // the ids can be null in unit tests
+    return MetricRegistry.name(RATIS_SERVER_METRICS, String.valueOf(peerId), String.valueOf(groupId));
+  }
+
+  private static MetricRegistry getRegistry() {
+    return RatisMetricsRegistry.getRegistry();
+  }
+
+  private final String prefix;
+
+  private final Timer clientRequestTimer;
+  private final Timer logAppendTimer;
+  private final Timer logFlushTimer;
+  private final Timer commitTimer;
+  private final Timer applyTimer;
+  private final Timer snapshotTimer;
+
+  private final Counter cacheHits;
+  private final Counter cacheMisses;
+
+  public RaftServerMetrics(RaftPeerId peerId, RaftGroupId groupId) {
+    this.prefix = getPrefix(peerId, groupId);
+
+    this.clientRequestTimer = getRegistry().timer(getName(CLIENT_REQUEST));
+    this.logAppendTimer = getRegistry().timer(getName(LOG_APPEND));
+    this.logFlushTimer = getRegistry().timer(getName(LOG_FLUSH));
+    this.commitTimer = getRegistry().timer(getName(COMMIT));
+    this.applyTimer = getRegistry().timer(getName(APPLY));
+    this.snapshotTimer = getRegistry().timer(getName(SNAPSHOT));
+
+    this.cacheHits = getRegistry().counter(getName(LOG_CACHE_HIT_RATIO, "hits"));
+    this.cacheMisses = getRegistry().counter(getName(LOG_CACHE_HIT_RATIO, "misses"));
+  }
+
+  /** @return the full name of the metric with this object's prefix. */
+  public String getName(String name, String... names) {
+    return MetricRegistry.name(MetricRegistry.name(prefix, name), names);
+  }
+
+  private String getFollowerName(RaftPeerId followerId, String name) {
+    return getName(FOLLOWER, followerId.toString(), name);
+  }
+
+  /** @return the timer from receiving a client write request to replying it. */
+  public Timer getClientRequestTimer() {
+    return clientRequestTimer;
+  }
+
+  /** @return the timer for writing the log entries to the log file. */
+  public Timer getLogAppendTimer() {
+    return logAppendTimer;
+  }
+
+  /** @return the timer for flushing and syncing the log file. */
+  public Timer getLogFlushTimer() {
+    return logFlushTimer;
+  }
+
+  /** @return the timer from appending a log entry in the leader to committing it. */
+  public Timer getCommitTimer() {
+    return commitTimer;
+  }
+
+  /** @return the timer for applying a log entry to the state machine. */
+  public Timer getApplyTimer() {
+    return applyTimer;
+  }
+
+  /** @return the timer for taking a snapshot of the state machine. */
+  public Timer getSnapshotTimer() {
+    return snapshotTimer;
+  }
+
+  /** @return the timer for the appendEntries round trips from the leader to the given follower. */
+  public Timer getAppendEntriesRttTimer(RaftPeerId followerId) {
+    return getRegistry().timer(getFollowerName(followerId, APPEND_ENTRIES_RTT));
+  }
+
+  public void onCacheHit() {
+    cacheHits.inc();
+  }
+
+  public void onCacheMiss() {
+    cacheMisses.inc();
+  }
+
+  /**
+   * Add the given gauge.  An existing gauge with the same name, if there is any, is replaced
+   * since the gauges of a restarted group or a re-elected leader refer to the new objects.
+   */
+  public void addGauge(String name, Gauge<?> gauge) {
+    final String fullName = getName(name);
+    getRegistry().remove(fullName);
+    getRegistry().register(fullName, gauge);
+  }
+
+  /** Add the gauge for the ratio of the log entry reads served from the cache. */
+  public void addCacheHitRatioGauge() {
+    addGauge(LOG_CACHE_HIT_RATIO, new RatioGauge() {
+      @Override
+      protected Ratio getRatio() {
+        final long hits = cacheHits.getCount();
+        return Ratio.of(hits, hits + cacheMisses.getCount());
+      }
+    });
+  }
+
+  /** Add the gauge for the number of log entries the given follower is behind the leader. */
+  void addFollower(RaftPeerId followerId, Gauge<Long> lag) {
+    addGauge(MetricRegistry.name(FOLLOWER, followerId.toString(), FOLLOWER_LAG), lag);
+  }
+
+  /** Remove the metrics of the given follower, which is no longer replicated by this leader. */
+  void removeFollower(RaftPeerId followerId) {
+    final String followerPrefix = getName(FOLLOWER, followerId.toString()) + ".";
+    getRegistry().removeMatching((name, metric) -> name.startsWith(followerPrefix));
+  }
+
+  /** Remove all the metrics of this group. */
+  void unregister() {
+    final String p = prefix + ".";
+    getRegistry().removeMatching((name, metric) -> name.startsWith(p));
+  }
+
+  static void update(Timer timer, long startNanos) {
+    timer.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public String toString() {
+    return prefix;
+  }
+}
@@ -27,12 +27,14 @@ import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.RaftServerRpc;
 import org.apache.ratis.proto.RaftProtos.*;
 import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.trace.Tracer;
 import org.apache.ratis.util.CheckedFunction;
 import org.apache.ratis.util.IOUtils;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.LifeCycle;
 import org.apache.ratis.util.Preconditions;
 import org.apache.ratis.util.ProtoUtils;
+import org.apache.ratis.util.TokenBucket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -154,6 +156,12 @@ public class RaftServerProxy implements RaftServer {
   private final ServerFactory factory;
 
   private final ImplMap impls = new ImplMap();
+  /** Balance the leaders of the groups; null if it is disabled. */
+  private final LeaderBalancer leaderBalancer;
+  /** Shared by all the groups. */
+  private final Tracer tracer;
+  /** Throttle the background replication traffic of all the groups. */
+  private final TokenBucket replicationThrottle;
 
   RaftServerProxy(RaftPeerId id, StateMachine.Registry stateMachineRegistry,
       RaftProperties properties, Parameters parameters) {
@@ -166,6 +174,11 @@ public class RaftServerProxy implements RaftServer {
     this.serverRpc = factory.newRaftServerRpc(this);
     this.id = id != null? id: RaftPeerId.valueOf(getIdStringFrom(serverRpc));
     this.lifeCycle = new LifeCycle(this.id);
+    this.leaderBalancer = RaftServerConfigKeys.LeaderBalancer.enabled(properties)?
+        new LeaderBalancer(this, RaftServerConfigKeys.LeaderBalancer.interval(properties)): null;
+    this.tracer = Tracer.newInstance(this.id.toString(), properties);
+    this.replicationThrottle = new TokenBucket(this.id.toString(),
+        RaftServerConfigKeys.Throttle.serverBandwidth(properties), null);
   }
 
   /** Check the storage dir and add groups*/
@@ -245,6 +258,19 @@ public class RaftServerProxy implements RaftServer {
     return properties;
   }
 
+  /** @return the state machine of the given group. */
+  public StateMachine getStateMachine(RaftGroupId groupId) throws IOException {
+    return getImpl(groupId).getStateMachine();
+  }
+
+  public Tracer getTracer() {
+    return tracer;
+  }
+
+  TokenBucket getReplicationThrottle() {
+    return replicationThrottle;
+  }
+
   public RaftServerRpc getServerRpc() {
     return serverRpc;
   }
@@ -291,12 +317,18 @@ public class RaftServerProxy implements RaftServer {
       LOG.info("{}: start RPC server", getId());
       getServerRpc().start();
     }, IOException.class);
+    if (leaderBalancer != null) {
+      leaderBalancer.start();
+    }
   }
 
   @Override
   public void close() {
     lifeCycle.checkStateAndClose(() -> {
       LOG.info("{}: close", getId());
+      if (leaderBalancer != null) {
+        leaderBalancer.stopRunning();
+      }
       impls.close();
 
       try {
@@ -304,6 +336,7 @@ public class RaftServerProxy implements RaftServer {
       } catch(IOException ignored) {
         LOG.warn(getId() + ": Failed to close " + getRpcType() + " server", ignored);
       }
+      tracer.close();
     });
   }
 
@@ -18,24 +18,49 @@
 package org.apache.ratis.server.impl;
 
 import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.Message;
 import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.thirdparty.com.google.common.annotations.VisibleForTesting;
-import org.apache.ratis.thirdparty.com.google.common.cache.Cache;
-import org.apache.ratis.thirdparty.com.google.common.cache.CacheBuilder;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.SizeInBytes;
 import org.apache.ratis.util.TimeDuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * A cache of the client requests keyed by (clientId, callId).
+ *
+ * The entries are stored in per-client tables so that the requests from different clients
+ * do not contend on the same lock.
+ * The expiry is tracked by time buckets, each of which covers 1/{@link #NUM_BUCKETS} of the expiry time,
+ * so that an entry lives for at least the expiry time and at most one more bucket interval.
+ * When the cache exceeds its capacity or its estimated memory size,
+ * the oldest buckets are evicted before they expire,
+ * except for the buckets created within the last bucket interval.
+ */
 public class RetryCache implements Closeable {
   static final Logger LOG = LoggerFactory.getLogger(RetryCache.class);
   private static final int MIN_CAPACITY = 128;
+  /** The expiry time is divided into this number of buckets. */
+  private static final int NUM_BUCKETS = 8;
+  /** The estimated size of an entry in bytes, excluding the reply message. */
+  static final int ENTRY_SIZE_ESTIMATE = 256;
 
   static class CacheKey {
     private final ClientId clientId;
@@ -75,8 +100,14 @@ public class RetryCache implements Closeable {
   @VisibleForTesting
   public static class CacheEntry {
     private final CacheKey key;
-    private final CompletableFuture<RaftClientReply> replyFuture =
-        new CompletableFuture<>();
+    /**
+     * The future is created lazily since it is not needed by the entries
+     * which are only created and completed when applying the log on the followers.
+     */
+    private CompletableFuture<RaftClientReply> replyFuture;
+    private RaftClientReply reply;
+    private Throwable exception;
+    private volatile boolean done = false;
 
     /**
      * "failed" means we failed to commit the request into the raft group, or
@@ -97,36 +128,63 @@ public class RetryCache implements Closeable {
     }
 
     boolean isDone() {
-      return isFailed() || replyFuture.isDone();
+      return done;
     }
 
     boolean isCompletedNormally() {
-      return !failed && replyFuture.isDone() && !replyFuture.isCompletedExceptionally() && !replyFuture.isCancelled();
+      return !failed && done;
     }
 
-    void updateResult(RaftClientReply reply) {
-      assert !replyFuture.isDone() && !replyFuture.isCancelled();
-      replyFuture.complete(reply);
+    synchronized void updateResult(RaftClientReply reply) {
+      assert !done;
+      complete(reply, null);
     }
 
     boolean isFailed() {
-      return failed || replyFuture.isCompletedExceptionally();
+      return failed;
     }
 
-    void failWithReply(RaftClientReply reply) {
+    synchronized void failWithReply(RaftClientReply reply) {
       failed = true;
-      replyFuture.complete(reply);
+      complete(reply, null);
     }
 
-    void failWithException(Throwable t) {
+    synchronized void failWithException(Throwable t) {
       failed = true;
-      replyFuture.completeExceptionally(t);
+      complete(null, t);
     }
 
-    CompletableFuture<RaftClientReply> getReplyFuture() {
+    private void complete(RaftClientReply r, Throwable t) {
+      if (done) {
+        return;
+      }
+      reply = r;
+      exception = t;
+      done = true;
+      if (replyFuture != null) {
+        if (t != null) {
+          replyFuture.completeExceptionally(t);
+        } else {
+          replyFuture.complete(r);
+        }
+      }
+    }
+
+    synchronized CompletableFuture<RaftClientReply> getReplyFuture() {
+      if (replyFuture == null) {
+        replyFuture = !done? new CompletableFuture<>()
+            : exception != null? JavaUtils.completeExceptionally(exception)
+            : CompletableFuture.completedFuture(reply);
+      }
       return replyFuture;
     }
 
+    /** @return the estimated size of this entry in bytes. */
+    synchronized long getSize() {
+      final Message message = reply != null? reply.getMessage(): null;
+      return message == null? ENTRY_SIZE_ESTIMATE: ENTRY_SIZE_ESTIMATE + message.getContent().size();
+    }
+
     CacheKey getKey() {
       return key;
     }
@@ -150,86 +208,272 @@ public class RetryCache implements Closeable {
     }
   }
 
-  private final Cache<CacheKey, CacheEntry> cache;
+  /** The entries of a client created within the same bucket interval. */
+  private static class Bucket {
+    private final long startNanos;
+    private final List<CacheEntry> entries = new ArrayList<>();
+    /** The bytes charged to the cache, which are re-estimated once the bucket is sealed. */
+    private long bytes = 0;
+    private boolean sealed = false;
+
+    Bucket(long startNanos) {
+      this.startNanos = startNanos;
+    }
+  }
+
+  /** The entries of a client.  All the methods are synchronized on the table. */
+  private class ClientTable {
+    private final ClientId clientId;
+    /** callId -> entry */
+    private final Map<Long, CacheEntry> entries = new HashMap<>();
+    /** The buckets in creation order; each entry in the map is in one of the buckets. */
+    private final Deque<Bucket> buckets = new ArrayDeque<>();
+    /** Once a table is removed from the cache, it must not be used anymore. */
+    private boolean removed = false;
+
+    ClientTable(ClientId clientId) {
+      this.clientId = clientId;
+    }
+
+    synchronized CacheEntry get(long callId, long now) {
+      dropBuckets(now - expiryNanos - intervalNanos);
+      return entries.get(callId);
+    }
+
+    /** @return the existing or a new entry, or null if this table is removed. */
+    synchronized CacheEntry getOrCreate(long callId, long now) {
+      if (removed) {
+        return null;
+      }
+      dropBuckets(now - expiryNanos - intervalNanos);
+      final CacheEntry existing = entries.get(callId);
+      return existing != null? existing: add(new CacheEntry(new CacheKey(clientId, callId)), now);
+    }
+
+    /** @return the query result, or null if this table is removed. */
+    synchronized CacheQueryResult query(long callId, long now) {
+      if (removed) {
+        return null;
+      }
+      dropBuckets(now - expiryNanos - intervalNanos);
+      final CacheEntry existing = entries.get(callId);
+      if (existing == null) {
+        return new CacheQueryResult(add(new CacheEntry(new CacheKey(clientId, callId)), now), false);
+      } else if (!existing.isDone() || !existing.isFailed()) {
+        // the previous attempt is either pending or successful
+        return new CacheQueryResult(existing, true);
+      }
+      // the previous attempt failed, replace it with a new one.
+      return new CacheQueryResult(add(new CacheEntry(existing.getKey()), now), false);
+    }
+
+    /** @return true if the entry is put, or false if this table is removed. */
+    synchronized boolean put(CacheEntry entry, long now) {
+      if (removed) {
+        return false;
+      }
+      add(entry, now);
+      return true;
+    }
+
+    private CacheEntry add(CacheEntry entry, long now) {
+      if (entries.put(entry.getKey().callId, entry) == null) {
+        numEntries.incrementAndGet();
+      }
+
+      Bucket current = buckets.peekLast();
+      if (current == null || now - current.startNanos >= intervalNanos) {
+        if (current != null) {
+          seal(current);
+        }
+        current = new Bucket(now);
+        buckets.addLast(current);
+      }
+      current.entries.add(entry);
+      current.bytes += ENTRY_SIZE_ESTIMATE;
+      totalBytes.addAndGet(ENTRY_SIZE_ESTIMATE);
+      return entry;
+    }
+
+    /** Re-estimate the bytes of a bucket, which will not have new entries, with the sizes of the replies. */
+    private void seal(Bucket bucket) {
+      if (bucket.sealed) {
+        return;
+      }
+      long bytes = 0;
+      for (CacheEntry e : bucket.entries) {
+        bytes += e.getSize();
+      }
+      totalBytes.addAndGet(bytes - bucket.bytes);
+      bucket.bytes = bytes;
+      bucket.sealed = true;
+    }
+
+    /** Drop the buckets started before the given time. */
+    private void dropBuckets(long startedBefore) {
+      for (Bucket b; (b = buckets.peekFirst()) != null && b.startNanos - startedBefore < 0; ) {
+        buckets.pollFirst();
+        for (CacheEntry e : b.entries) {
+          // the entry may have been replaced by a newer entry in a later bucket
+          if (entries.remove(e.getKey().callId, e)) {
+            numEntries.decrementAndGet();
+          }
+        }
+        totalBytes.addAndGet(-b.bytes);
+      }
+    }
+
+    /** Drop the buckets started before the given time and then remove this table if it becomes empty. */
+    synchronized void sweep(long startedBefore, long now) {
+      dropBuckets(startedBefore);
+      final Bucket last = buckets.peekLast();
+      if (last == null) {
+        removed = true;
+        clients.remove(clientId, this);
+      } else if (now - last.startNanos >= intervalNanos) {
+        seal(last);
+      }
+    }
+
+    synchronized void clear() {
+      removed = true;
+      numEntries.addAndGet(-entries.size());
+      entries.clear();
+      for (Bucket b : buckets) {
+        totalBytes.addAndGet(-b.bytes);
+      }
+      buckets.clear();
+    }
+  }
+
+  private final ConcurrentMap<ClientId, ClientTable> clients = new ConcurrentHashMap<>();
+  private final AtomicLong numEntries = new AtomicLong();
+  private final AtomicLong totalBytes = new AtomicLong();
+
+  private final int capacity;
+  private final long sizeMax;
+  private final long expiryNanos;
+  private final long intervalNanos;
+  private final AtomicLong lastSweepNanos;
+  /** For getting the current time in nanoseconds. */
+  private final LongSupplier nanoTime;
 
   /**
    * @param capacity the capacity of the cache
    * @param expirationTime time for an entry to expire in milliseconds
    */
   RetryCache(int capacity, TimeDuration expirationTime) {
-    capacity = Math.max(capacity, MIN_CAPACITY);
-    cache = CacheBuilder.newBuilder().maximumSize(capacity)
-        .expireAfterWrite(expirationTime.toLong(TimeUnit.MILLISECONDS),
-            TimeUnit.MILLISECONDS).build();
+    this(capacity, RaftServerConfigKeys.RetryCache.SIZE_MAX_DEFAULT, expirationTime);
+  }
+
+  /**
+   * @param capacity the capacity of the cache
+   * @param sizeMax the estimated memory limit of the cache
+   * @param expirationTime time for an entry to expire
+   */
+  RetryCache(int capacity, SizeInBytes sizeMax, TimeDuration expirationTime) {
+    this(capacity, sizeMax, expirationTime, System::nanoTime);
+  }
+
+  @VisibleForTesting
+  RetryCache(int capacity, SizeInBytes sizeMax, TimeDuration expirationTime, LongSupplier nanoTime) {
+    this.capacity = Math.max(capacity, MIN_CAPACITY);
+    this.sizeMax = Math.max(sizeMax.getSize(), (long) MIN_CAPACITY * ENTRY_SIZE_ESTIMATE);
+    this.expiryNanos = expirationTime.toLong(TimeUnit.NANOSECONDS);
+    this.intervalNanos = Math.max(expiryNanos / NUM_BUCKETS, 1);
+    this.nanoTime = nanoTime;
+    this.lastSweepNanos = new AtomicLong(nanoTime.getAsLong());
+  }
+
+  private ClientTable getClientTable(ClientId clientId) {
+    final ClientTable table = clients.get(clientId);
+    return table != null? table: clients.computeIfAbsent(clientId, ClientTable::new);
   }
 
   CacheEntry getOrCreateEntry(ClientId clientId, long callId) {
-    final CacheKey key = new CacheKey(clientId, callId);
-    final CacheEntry entry;
-    try {
-      entry = cache.get(key, () -> new CacheEntry(key));
-    } catch (ExecutionException e) {
-      throw new IllegalStateException(e);
-    }
-    Preconditions.assertTrue(entry != null && !entry.isCompletedNormally(),
+    final long now = nanoTime.getAsLong();
+    CacheEntry entry;
+    while ((entry = getClientTable(clientId).getOrCreate(callId, now)) == null) {
+      // the table was removed concurrently; retry with a new table
+    }
+    sweepIfNecessary(now);
+    Preconditions.assertTrue(!entry.isCompletedNormally(),
         "retry cache entry should be pending: %s", entry);
     return entry;
   }
 
   CacheEntry refreshEntry(CacheEntry newEntry) {
-    cache.put(newEntry.key, newEntry);
+    final long now = nanoTime.getAsLong();
+    while (!getClientTable(newEntry.getKey().clientId).put(newEntry, now)) {
+      // the table was removed concurrently; retry with a new table
+    }
+    sweepIfNecessary(now);
     return newEntry;
   }
 
   CacheQueryResult queryCache(ClientId clientId, long callId) {
-    CacheKey key = new CacheKey(clientId, callId);
-    final CacheEntry newEntry = new CacheEntry(key);
-    CacheEntry cacheEntry;
-    try {
-      cacheEntry = cache.get(key, () -> newEntry);
-    } catch (ExecutionException e) {
-      throw new IllegalStateException(e);
+    final long now = nanoTime.getAsLong();
+    CacheQueryResult result;
+    while ((result = getClientTable(clientId).query(callId, now)) == null) {
+      // the table was removed concurrently; retry with a new table
     }
+    sweepIfNecessary(now);
+    return result;
+  }
 
-    if (cacheEntry == newEntry) {
-      // this is the entry we just newly created
-      return new CacheQueryResult(cacheEntry, false);
-    } else if (!cacheEntry.isDone() || !cacheEntry.isFailed()){
-      // the previous attempt is either pending or successful
-      return new CacheQueryResult(cacheEntry, true);
+  private boolean isOverLimit() {
+    return numEntries.get() > capacity || totalBytes.get() > sizeMax;
+  }
+
+  /**
+   * Sweep all the clients once per bucket interval, or more often when the cache is over the limit.
+   * Only the thread winning the race does the sweep.
+   */
+  private void sweepIfNecessary(long now) {
+    final long last = lastSweepNanos.get();
+    final long elapsed = now - last;
+    if (elapsed < intervalNanos && (elapsed < intervalNanos / NUM_BUCKETS || !isOverLimit())) {
+      return;
+    }
+    if (lastSweepNanos.compareAndSet(last, now)) {
+      sweep(now);
     }
+  }
 
-    // the previous attempt failed, replace it with a new one.
-    synchronized (this) {
-      // need to recheck, since there may be other retry attempts being
-      // processed at the same time. The recheck+replacement should be protected
-      // by lock.
-      CacheEntry currentEntry = cache.getIfPresent(key);
-      if (currentEntry == cacheEntry || currentEntry == null) {
-        // if the failed entry has not got replaced by another retry, or the
-        // failed entry got invalidated, we add a new cache entry
-        return new CacheQueryResult(refreshEntry(newEntry), false);
-      } else {
-        return new CacheQueryResult(currentEntry, true);
+  private void sweep(long now) {
+    // the entries created within the last bucket interval are never evicted
+    final long evictionLimit = now - intervalNanos;
+    // drop the expired buckets and then, if it is still over the limit, evict the next oldest buckets
+    for (long startedBefore = now - expiryNanos - intervalNanos; ; ) {
+      for (ClientTable table : clients.values()) {
+        table.sweep(startedBefore, now);
+      }
+      if (!isOverLimit() || startedBefore - evictionLimit >= 0) {
+        return;
       }
+      startedBefore = Math.min(startedBefore + intervalNanos, evictionLimit);
+      LOG.debug("Retry cache is over the limit ({} entries, {} bytes); evict the buckets started before {}",
+          numEntries, totalBytes, startedBefore);
     }
   }
 
   @VisibleForTesting
   long size() {
-    return cache.size();
+    return numEntries.get();
   }
 
   @VisibleForTesting
   CacheEntry get(ClientId clientId, long callId) {
-    return cache.getIfPresent(new CacheKey(clientId, callId));
+    final ClientTable table = clients.get(clientId);
+    return table == null? null: table.get(callId, nanoTime.getAsLong());
   }
 
   @Override
-  public synchronized void close() {
-    if (cache != null) {
-      cache.invalidateAll();
+  public void close() {
+    for (ClientTable table : clients.values()) {
+      table.clear();
     }
+    clients.clear();
   }
 
   static CompletableFuture<RaftClientReply> failWithReply(
@@ -290,7 +290,7 @@ public interface ServerProtoUtils {
   public static AppendEntriesRequestProto toAppendEntriesRequestProto(
       RaftPeerId requestorId, RaftPeerId replyId, RaftGroupId groupId, long leaderTerm,
       List<LogEntryProto> entries, long leaderCommit, boolean initializing,
-      TermIndex previous, Collection<CommitInfoProto> commitInfos, long callId) {
+      TermIndex previous, Collection<CommitInfoProto> commitInfos, int electionTimeoutMs, long callId) {
     RaftRpcRequestProto.Builder rpcRequest = toRaftRpcRequestProtoBuilder(requestorId, replyId, groupId)
         .setCallId(callId);
     final AppendEntriesRequestProto.Builder b = AppendEntriesRequestProto
@@ -298,7 +298,8 @@ public interface ServerProtoUtils {
         .setServerRequest(rpcRequest)
         .setLeaderTerm(leaderTerm)
         .setLeaderCommit(leaderCommit)
-        .setInitializing(initializing);
+        .setInitializing(initializing)
+        .setElectionTimeoutMs(electionTimeoutMs);
     if (entries != null && !entries.isEmpty()) {
       b.addAllEntries(entries);
     }
@@ -20,6 +20,7 @@ package org.apache.ratis.server.impl;
 import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.protocol.Message;
 import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.storage.FileInfo;
 import org.apache.ratis.server.storage.RaftLog;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.statemachine.SnapshotInfo;
@@ -158,6 +159,9 @@ class StateMachineUpdater implements Runnable {
 
         final MemoizedSupplier<List<CompletableFuture<Message>>> futures
             = MemoizedSupplier.valueOf(() -> new ArrayList<>());
+        final RaftEvent applyEvent = RaftEvents.begin(RaftEvent.Type.APPLY_BATCH);
+        final long firstIndex = lastAppliedIndex + 1;
+        long applyBytes = 0;
         while (lastAppliedIndex < committedIndex) {
           final long nextIndex = lastAppliedIndex + 1;
           final LogEntryProto next = raftLog.get(nextIndex);
@@ -171,19 +175,34 @@ class StateMachineUpdater implements Runnable {
               futures.get().add(f);
             }
             lastAppliedIndex = nextIndex;
+            if (applyEvent != RaftEvent.NOOP) {
+              applyBytes += next.getSerializedSize();
+            }
           } else {
             LOG.debug("{}: logEntry {} is null. There may be snapshot to load. state:{}",
                 this, nextIndex, state);
             break;
           }
         }
+        if (lastAppliedIndex >= firstIndex) {
+          applyEvent.end(server.getId(), server.getGroupId(), firstIndex, lastAppliedIndex, applyBytes);
+        }
 
         // check if need to trigger a snapshot
         if (shouldTakeSnapshot()) {
           if (futures.isInitialized()) {
             JavaUtils.allOf(futures.get()).get();
           }
-          stateMachine.takeSnapshot();
+          final long snapshotStartNanos = System.nanoTime();
+          final RaftEvent snapshotEvent = RaftEvents.begin(RaftEvent.Type.SNAPSHOT_TAKE);
+          final long snapshotIndex = stateMachine.takeSnapshot();
+          RaftServerMetrics.update(server.getMetrics().getSnapshotTimer(), snapshotStartNanos);
+          if (snapshotEvent != RaftEvent.NOOP) {
+            final SnapshotInfo snapshot = stateMachine.getLatestSnapshot();
+            final long snapshotBytes = snapshot == null || snapshot.getFiles() == null? -1
+                : snapshot.getFiles().stream().mapToLong(FileInfo::getFileSize).sum();
+            snapshotEvent.end(server.getId(), server.getGroupId(), lastSnapshotIndex + 1, snapshotIndex, snapshotBytes);
+          }
           // TODO purge logs, including log cache. but should keep log for leader's RPCSenders
           lastSnapshotIndex = lastAppliedIndex;
         }
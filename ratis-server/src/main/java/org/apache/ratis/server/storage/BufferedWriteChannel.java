@@ -17,15 +17,110 @@
  */
 package org.apache.ratis.server.storage;
 
+import org.apache.ratis.io.nativeio.NativeIO;
+import org.apache.ratis.util.IOUtils;
+import org.apache.ratis.util.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Provides a buffering layer in front of a FileChannel for writing.
+ *
+ * In the direct I/O mode, see {@link #newDirectWriteChannel(File, int, int, FileChannel)},
+ * the file is opened with O_DIRECT so that the writes bypass the page cache.
+ * Since direct I/O requires the file offset, the length and the buffer address to be aligned,
+ * the buffer is aligned and each flush writes whole blocks,
+ * where the last partial block is padded with the log terminator
+ * and then rewritten with the following data in the next flush.
  */
 public class BufferedWriteChannel extends BufferedChannelBase {
+  static final Logger LOG = LoggerFactory.getLogger(BufferedWriteChannel.class);
+
+  /**
+   * @return a channel writing the given file with direct I/O,
+   *         starting at the current position of the given reader;
+   *         or null if direct I/O is unavailable.
+   */
+  static BufferedWriteChannel newDirectWriteChannel(File file, int writeCapacity, int alignment,
+      FileChannel reader) throws IOException {
+    if (!NativeIO.POSIX.isAvailable() || NativeIO.POSIX.O_DIRECT == -1) {
+      LOG.warn("Direct I/O is unavailable (NativeIO loaded? {}), use buffered I/O for {}",
+          NativeIO.POSIX.isAvailable(), file);
+      return null;
+    }
+
+    final FileDescriptor fd = NativeIO.POSIX.open(file.getAbsolutePath(),
+        NativeIO.POSIX.O_WRONLY | NativeIO.POSIX.O_DIRECT, 0);
+    final FileChannel direct = new FileOutputStream(fd).getChannel();
+    try {
+      return newAlignedWriteChannel(direct, writeCapacity, alignment, reader);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOG.warn("Failed to allocate an aligned buffer, use buffered I/O for " + file, e);
+      direct.close();
+      return null;
+    }
+  }
+
+  /**
+   * @return a channel writing aligned blocks to the given channel,
+   *         starting at the current position of the given reader.
+   */
+  static BufferedWriteChannel newAlignedWriteChannel(FileChannel channel, int writeCapacity, int alignment,
+      FileChannel reader) throws IOException, ReflectiveOperationException {
+    Preconditions.assertTrue(Integer.bitCount(alignment) == 1,
+        () -> "The direct I/O alignment " + alignment + " is not a power of two");
+    final int capacity = Math.max(alignment, (writeCapacity + alignment - 1) & -alignment);
+    final ByteBuffer buffer = allocateAligned(capacity, alignment);
+
+    // the first write starts at the beginning of the block, read the existing bytes of the block
+    final long position = reader.position();
+    final long blockStart = position & -alignment;
+    buffer.limit(Math.toIntExact(position - blockStart));
+    for(long offset = blockStart; buffer.hasRemaining(); ) {
+      final int n = reader.read(buffer, offset);
+      if (n < 0) {
+        throw new EOFException("Failed to read from " + blockStart + " to " + position);
+      }
+      offset += n;
+    }
+    buffer.limit(buffer.capacity());
+    return new BufferedWriteChannel(channel, buffer, alignment, blockStart, position);
+  }
+
+  /** @return a direct buffer with the given capacity and the address aligned to the given alignment. */
+  static ByteBuffer allocateAligned(int capacity, int alignment) throws ReflectiveOperationException {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(capacity + alignment);
+    long address;
+    try {
+      // Java 9+: the address modulo the alignment
+      final Method alignmentOffset = ByteBuffer.class.getMethod("alignmentOffset", int.class, int.class);
+      address = (Integer) alignmentOffset.invoke(buffer, 0, alignment);
+    } catch (NoSuchMethodException e) {
+      // Java 8
+      final Field field = Buffer.class.getDeclaredField("address");
+      field.setAccessible(true);
+      address = field.getLong(buffer);
+    }
+    final int offset = (int) (-address & (alignment - 1));
+    buffer.position(offset);
+    buffer.limit(offset + capacity);
+    return buffer.slice();
+  }
+
+  /** The direct I/O alignment; or 0 if direct I/O is not used. */
+  private final int alignment;
   // The capacity of the write buffer.
   private final int writeCapacity;
   // The position of the file channel's write pointer.
@@ -38,12 +133,29 @@ public class BufferedWriteChannel extends BufferedChannelBase {
   public BufferedWriteChannel(FileChannel fc, int writeCapacity)
       throws IOException {
     super(fc);
+    this.alignment = 0;
     this.writeCapacity = writeCapacity;
     this.position = fc.position();
     this.writeBufferStartPosition.set(position);
     this.writeBuffer = ByteBuffer.allocateDirect(writeCapacity);
   }
 
+  private BufferedWriteChannel(FileChannel fc, ByteBuffer alignedBuffer, int alignment,
+      long blockStart, long position) {
+    super(fc);
+    this.alignment = alignment;
+    this.writeCapacity = alignedBuffer.capacity();
+    this.position = position;
+    this.writeBufferStartPosition.set(blockStart);
+    this.writeBuffer = alignedBuffer;
+    this.writeBuffer.position(Math.toIntExact(position - blockStart));
+  }
+
+  /** @return true if this channel uses direct I/O. */
+  boolean isDirect() {
+    return alignment > 0;
+  }
+
   /**
    * Write all the data in src to the {@link FileChannel}. Note that this function can
    * buffer or re-order writes based on the implementation. These writes will be flushed
@@ -84,16 +196,21 @@ public class BufferedWriteChannel extends BufferedChannelBase {
   }
 
   public void write(byte[] b) throws IOException {
-    int offset = 0;
-    while (offset < b.length) {
-      int toPut = Math.min(b.length - offset, writeBuffer.remaining());
+    write(b, 0, b.length);
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException {
+    int offset = off;
+    final int end = off + len;
+    while (offset < end) {
+      int toPut = Math.min(end - offset, writeBuffer.remaining());
       writeBuffer.put(b, offset, toPut);
       offset += toPut;
       if (writeBuffer.remaining() == 0) {
         flushInternal();
       }
     }
-    position += b.length;
+    position += len;
   }
 
   /**
@@ -133,6 +250,10 @@ public class BufferedWriteChannel extends BufferedChannelBase {
    * @throws IOException if the write fails.
    */
   private void flushInternal() throws IOException {
+    if (isDirect()) {
+      flushAligned();
+      return;
+    }
     writeBuffer.flip();
     do {
       fileChannel.write(writeBuffer);
@@ -141,6 +262,38 @@ public class BufferedWriteChannel extends BufferedChannelBase {
     writeBufferStartPosition.set(fileChannel.position());
   }
 
+  /**
+   * Write the buffer in whole blocks, where the last partial block is padded with the log terminator.
+   * The partial block is kept at the beginning of the buffer so that it is rewritten in the next flush.
+   */
+  private void flushAligned() throws IOException {
+    final int length = writeBuffer.position();
+    if (length == 0) {
+      return;
+    }
+    final int wholeBlocks = length & -alignment;
+    final int partial = length - wholeBlocks;
+    final int padded = partial == 0 ? length : wholeBlocks + alignment;
+    for (int i = length; i < padded; i++) {
+      writeBuffer.put(i, SegmentedRaftLogFormat.getTerminator());
+    }
+
+    final long startPosition = writeBufferStartPosition.get();
+    final ByteBuffer blocks = writeBuffer.duplicate();
+    blocks.position(0);
+    blocks.limit(padded);
+    IOUtils.writeFully(fileChannel, blocks, startPosition);
+
+    if (wholeBlocks > 0) {
+      final ByteBuffer last = writeBuffer.duplicate();
+      last.limit(length);
+      last.position(wholeBlocks);
+      writeBuffer.clear();
+      writeBuffer.put(last);
+      writeBufferStartPosition.set(startPosition + wholeBlocks);
+    }
+  }
+
   public long forceWrite(boolean forceMetadata) throws IOException {
     // This is the point up to which we had flushed to the file system page cache
     // before issuing this force write hence is guaranteed to be made durable by
@@ -17,6 +17,8 @@
  */
 package org.apache.ratis.server.storage;
 
+import org.apache.ratis.io.nativeio.NativeIO;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.thirdparty.com.google.protobuf.CodedOutputStream;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.util.CheckedConsumer;
@@ -47,10 +49,13 @@ public class LogOutputStream implements Closeable {
     }
   }
 
-  private File file;
+  private final File file;
+  private final RandomAccessFile raf;
   private FileChannel fc; // channel of the file stream for sync
   private BufferedWriteChannel out; // buffered FileChannel for writing
   private final Checksum checksum;
+  /** Reused for serializing the entries up to {@link #BUFFER_SIZE}; larger entries use a temporary buffer. */
+  private byte[] entryBuffer = new byte[4096];
 
   private final long segmentMaxSize;
   private final long preallocatedSize;
@@ -59,22 +64,26 @@ public class LogOutputStream implements Closeable {
   public LogOutputStream(File file, boolean append, long segmentMaxSize,
       long preallocatedSize, int bufferSize)
       throws IOException {
-    this.file = file;
-    this.checksum = new PureJavaCrc32C();
-    this.segmentMaxSize = segmentMaxSize;
-    this.preallocatedSize = preallocatedSize;
-    RandomAccessFile rp = new RandomAccessFile(file, "rw");
-    fc = rp.getChannel();
-    fc.position(fc.size());
-    preallocatedPos = fc.size();
-    out = new BufferedWriteChannel(fc, bufferSize);
+    this(file, append, segmentMaxSize, preallocatedSize, bufferSize, 0);
+  }
+
+  /**
+   * @param directIoAlignment if it is positive, write the entries with direct I/O
+   *                          using the given alignment; see {@link BufferedWriteChannel}.
+   */
+  public LogOutputStream(File file, boolean append, long segmentMaxSize,
+      long preallocatedSize, int bufferSize, int directIoAlignment)
+      throws IOException {
+    this(file, segmentMaxSize, preallocatedSize);
 
     try {
-      fc = rp.getChannel();
+      if (!append) {
+        fc.truncate(0);
+      }
       fc.position(fc.size());
       preallocatedPos = fc.size();
 
-      out = new BufferedWriteChannel(fc, bufferSize);
+      out = newWriteChannel(bufferSize, directIoAlignment);
       if (!append) {
         create();
       }
@@ -82,6 +91,7 @@ public class LogOutputStream implements Closeable {
       LOG.warn("Hit IOException while creating log segment " + file
           + ", delete the partial file.");
       // hit IOException, clean up the in-progress log file
+      IOUtils.cleanup(LOG, fc);
       try {
         FileUtils.deleteFully(file);
       } catch (IOException e) {
@@ -91,6 +101,58 @@ public class LogOutputStream implements Closeable {
     }
   }
 
+  private LogOutputStream(File file, long segmentMaxSize, long preallocatedSize) throws IOException {
+    this.file = file;
+    this.checksum = new PureJavaCrc32C();
+    this.segmentMaxSize = segmentMaxSize;
+    this.preallocatedSize = preallocatedSize;
+    this.raf = new RandomAccessFile(file, "rw");
+    this.fc = raf.getChannel();
+  }
+
+  /**
+   * Prepare a new segment file in advance:
+   * create the file, preallocate the space and write the header.
+   * The prepared file can be opened by {@link #openPrepared(File, long, long, int, int)}.
+   */
+  static void prepare(File file, long segmentMaxSize, long preallocatedSize, int bufferSize)
+      throws IOException {
+    final LogOutputStream prepared = new LogOutputStream(file, false, segmentMaxSize,
+        preallocatedSize, bufferSize, 0);
+    // close without truncating the preallocated space
+    prepared.out.close();
+  }
+
+  /** Open a segment file prepared by {@link #prepare(File, long, long, int)} for writing entries. */
+  static LogOutputStream openPrepared(File file, long segmentMaxSize, long preallocatedSize,
+      int bufferSize, int directIoAlignment) throws IOException {
+    final LogOutputStream stream = new LogOutputStream(file, segmentMaxSize, preallocatedSize);
+    try {
+      stream.fc.position(SegmentedRaftLogFormat.getHeaderLength());
+      stream.preallocatedPos = stream.fc.size();
+      stream.out = stream.newWriteChannel(bufferSize, directIoAlignment);
+    } catch (IOException ioe) {
+      IOUtils.cleanup(LOG, stream.fc);
+      throw ioe;
+    }
+    return stream;
+  }
+
+  /**
+   * Create the channel for writing from the current position of {@link #fc}.
+   * Direct I/O falls back to buffered I/O when it is unavailable.
+   */
+  private BufferedWriteChannel newWriteChannel(int bufferSize, int directIoAlignment) throws IOException {
+    if (directIoAlignment > 0) {
+      final BufferedWriteChannel direct = BufferedWriteChannel.newDirectWriteChannel(
+          file, bufferSize, directIoAlignment, fc);
+      if (direct != null) {
+        return direct;
+      }
+    }
+    return new BufferedWriteChannel(fc, bufferSize);
+  }
+
   /**
    * Write the given entry to this output stream.
    *
@@ -110,19 +172,49 @@ public class LogOutputStream implements Closeable {
 
     preallocateIfNecessary(bufferSize + 4);
 
-    byte[] buf = new byte[bufferSize];
-    CodedOutputStream cout = CodedOutputStream.newInstance(buf);
+    final byte[] buf = getEntryBuffer(bufferSize);
+    CodedOutputStream cout = CodedOutputStream.newInstance(buf, 0, bufferSize);
     cout.writeUInt32NoTag(serialized);
     entry.writeTo(cout);
+    writeWithChecksum(buf, bufferSize);
+  }
 
+  /**
+   * Write an entry which is already serialized, e.g. by {@link LogEntryProto#toByteString()}.
+   * The bytes are copied as they are without encoding the entry again.
+   */
+  public void write(ByteString serialized) throws IOException {
+    final int size = serialized.size();
+    final int bufferSize = CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+
+    preallocateIfNecessary(bufferSize + 4);
+
+    final byte[] buf = getEntryBuffer(bufferSize);
+    CodedOutputStream cout = CodedOutputStream.newInstance(buf, 0, bufferSize);
+    cout.writeUInt32NoTag(size);
+    cout.writeRawBytes(serialized);
+    writeWithChecksum(buf, bufferSize);
+  }
+
+  private void writeWithChecksum(byte[] buf, int length) throws IOException {
     checksum.reset();
-    checksum.update(buf, 0, buf.length);
+    checksum.update(buf, 0, length);
     final int sum = (int) checksum.getValue();
 
-    out.write(buf);
+    out.write(buf, 0, length);
     writeInt(sum);
   }
 
+  private byte[] getEntryBuffer(int size) {
+    if (size <= entryBuffer.length) {
+      return entryBuffer;
+    } else if (size > BUFFER_SIZE) {
+      return new byte[size];
+    }
+    entryBuffer = new byte[Math.min(Integer.highestOneBit(size - 1) << 1, BUFFER_SIZE)];
+    return entryBuffer;
+  }
+
   private void writeInt(int v) throws IOException {
     out.write((v >>> 24) & 0xFF);
     out.write((v >>> 16) & 0xFF);
@@ -145,7 +237,8 @@ public class LogOutputStream implements Closeable {
     try {
       out.flush(false);
       if (fc != null && fc.isOpen()) {
-        fc.truncate(fc.position());
+        // in the direct I/O mode, the entries are written through another channel
+        fc.truncate(out.position());
       }
     } finally {
       IOUtils.cleanup(LOG, fc, out);
@@ -166,8 +259,15 @@ public class LogOutputStream implements Closeable {
   }
 
   private void preallocate() throws IOException {
-    fill.position(0);
     long targetSize = Math.min(segmentMaxSize - fc.size(), preallocatedSize);
+    if (targetSize > 0 && NativeIO.POSIX.fallocateIfPossible(raf.getFD(), preallocatedPos, targetSize)) {
+      // reserve the space without writing; the allocated bytes are read as zeros, i.e. terminators
+      preallocatedPos += targetSize;
+      LOG.debug("Pre-allocated {} bytes for the log segment using fallocate", targetSize);
+      return;
+    }
+
+    fill.position(0);
     int allocated = 0;
     while (allocated < targetSize) {
       int size = (int) Math.min(BUFFER_SIZE, targetSize - allocated);
@@ -18,10 +18,12 @@
 package org.apache.ratis.server.storage;
 
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.server.impl.RaftServerConstants;
 import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.server.protocol.TermIndex;
 import org.apache.ratis.thirdparty.com.google.common.annotations.VisibleForTesting;
 import org.apache.ratis.thirdparty.com.google.common.cache.CacheLoader;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.thirdparty.com.google.protobuf.CodedOutputStream;
 import org.apache.ratis.util.FileUtils;
 import org.apache.ratis.util.Preconditions;
@@ -30,38 +32,52 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Objects;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
 
 /**
  * In-memory cache for a log segment file. All the updates will be first written
  * into LogSegment then into corresponding files in the same order.
  *
- * This class will be protected by the RaftServer's lock.
+ * The updates are protected by the RaftLog's write lock.
+ * The reads are lock-free:
+ * an update is published by the volatile write of {@link #endIndex} after the records are written,
+ * so that a reader first reading the end index sees all the records up to it.
+ * A reader racing with a truncation may see either the old or the new records of the truncated indices.
+ *
+ * A closed segment may be created lazily by {@link #newLazyCloseSegment(RaftStorage, long, long)}
+ * with the start and end indices from the file name.
+ * Its records are loaded from the file, and the entries are validated, on the first access.
  */
 class LogSegment implements Comparable<Long> {
   static final Logger LOG = LoggerFactory.getLogger(LogSegment.class);
 
   static long getEntrySize(LogEntryProto entry) {
-    final int serialized = ServerProtoUtils.removeStateMachineData(entry).getSerializedSize();
+    return getEntrySizeWithoutStateMachineData(ServerProtoUtils.removeStateMachineData(entry));
+  }
+
+  /**
+   * @param entry the entry as it is written to the segment file, i.e. without state machine data.
+   * @return the size of the entry in the segment file.
+   */
+  static long getEntrySizeWithoutStateMachineData(LogEntryProto entry) {
+    final int serialized = entry.getSerializedSize();
     return serialized + CodedOutputStream.computeUInt32SizeNoTag(serialized) + 4;
   }
 
+  /** A record of the segment index, which is created on demand from {@link Records}. */
   static class LogRecord {
     /** starting offset in the file */
     private final long offset;
     private final TermIndex termIndex;
 
-    LogRecord(long offset, LogEntryProto entry) {
+    LogRecord(long offset, TermIndex termIndex) {
       this.offset = offset;
-      termIndex = TermIndex.newTermIndex(entry.getTerm(), entry.getIndex());
+      this.termIndex = termIndex;
     }
 
     TermIndex getTermIndex() {
@@ -73,6 +89,193 @@ class LogSegment implements Comparable<Long> {
     }
   }
 
+  /**
+   * The index of a segment stored in primitive arrays,
+   * where the i-th record is for the entry with log index (startIndex + i).
+   * Since the terms rarely change, they are run-length encoded.
+   */
+  private static class Records {
+    // The arrays are volatile so that a grown array is safely published to the lock-free readers.
+    // The readers must first read the segment end index or numRuns before reading the arrays.
+    private volatile long[] offsets = new long[16];
+    private int size = 0;
+
+    /** The j-th run is the records starting at position runStarts[j] with term runTerms[j]. */
+    private volatile int[] runStarts = new int[1];
+    private volatile long[] runTerms = new long[1];
+    private volatile int numRuns = 0;
+
+    int size() {
+      return size;
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    void add(long offset, long term) {
+      if (size == offsets.length) {
+        offsets = Arrays.copyOf(offsets, size << 1);
+      }
+      offsets[size] = offset;
+      final int n = numRuns;
+      if (n == 0 || runTerms[n - 1] != term) {
+        if (n == runTerms.length) {
+          runStarts = Arrays.copyOf(runStarts, n << 1);
+          runTerms = Arrays.copyOf(runTerms, n << 1);
+        }
+        runStarts[n] = size;
+        runTerms[n] = term;
+        numRuns = n + 1;
+      }
+      size++;
+    }
+
+    long getOffset(int i) {
+      return offsets[i];
+    }
+
+    long getTerm(int i) {
+      // read numRuns before the arrays; the arrays may have been grown but not shrunk since then
+      int high = numRuns - 1;
+      final int[] starts = runStarts;
+      // find the last run starting at or before i
+      int low = 0;
+      while (low < high) {
+        final int mid = (low + high + 1) >>> 1;
+        if (starts[mid] <= i) {
+          low = mid;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return runTerms[low];
+    }
+
+    /** Remove the records from the given position (inclusive). */
+    void truncate(int from) {
+      size = from;
+      int n = numRuns;
+      while (n > 0 && runStarts[n - 1] >= from) {
+        n--;
+      }
+      numRuns = n;
+    }
+  }
+
+  /**
+   * A cached entry with its serialized form,
+   * which is computed at most once and then shared by all the log appenders.
+   * Both forms are accounted in the cache size; see {@link EntryCache#getSize()}.
+   */
+  private static class CachedEntry {
+    private final LogEntryProto entry;
+    private volatile ByteString serialized;
+    /** The size of the cache containing this entry; it is null once the entry is removed from the cache. */
+    private AtomicLong cacheSize;
+
+    CachedEntry(LogEntryProto entry, ByteString serialized, AtomicLong cacheSize) {
+      this.entry = entry;
+      this.serialized = serialized;
+      this.cacheSize = cacheSize;
+      cacheSize.addAndGet(getSize());
+    }
+
+    private long getSize() {
+      final ByteString s = serialized;
+      return entry.getSerializedSize() + (s != null? s.size(): 0);
+    }
+
+    ByteString getSerialized() {
+      ByteString s = serialized;
+      if (s == null) {
+        synchronized (this) {
+          s = serialized;
+          if (s == null) {
+            serialized = s = entry.toByteString();
+            if (cacheSize != null) {
+              cacheSize.addAndGet(s.size());
+            }
+          }
+        }
+      }
+      return s;
+    }
+
+    /** Remove this entry from the cache. */
+    synchronized void remove() {
+      if (cacheSize != null) {
+        cacheSize.addAndGet(-getSize());
+        cacheSize = null;
+      }
+    }
+  }
+
+  /**
+   * The cached entries of a segment in an array,
+   * where the i-th element is for the entry with log index (startIndex + i).
+   * The reads are lock-free and the writes are synchronized.
+   */
+  private static class EntryCache {
+    private static final AtomicReferenceArray<CachedEntry> EMPTY = new AtomicReferenceArray<>(0);
+
+    private volatile AtomicReferenceArray<CachedEntry> entries = EMPTY;
+    /** The heap size of the cached entries, including their serialized forms. */
+    private volatile AtomicLong size = new AtomicLong();
+
+    long getSize() {
+      return size.get();
+    }
+
+    CachedEntry getCachedEntry(int i) {
+      final AtomicReferenceArray<CachedEntry> array = entries;
+      return i < array.length()? array.get(i): null;
+    }
+
+    LogEntryProto get(int i) {
+      final CachedEntry cached = getCachedEntry(i);
+      return cached != null? cached.entry: null;
+    }
+
+    void put(int i, LogEntryProto entry) {
+      put(i, entry, null);
+    }
+
+    /** @param serialized the serialized form of the entry, or null if it is not yet serialized. */
+    synchronized void put(int i, LogEntryProto entry, ByteString serialized) {
+      AtomicReferenceArray<CachedEntry> array = entries;
+      if (i >= array.length()) {
+        final AtomicReferenceArray<CachedEntry> newArray
+            = new AtomicReferenceArray<>(Math.max(i + 1, array.length() << 1));
+        for(int k = 0; k < array.length(); k++) {
+          newArray.set(k, array.get(k));
+        }
+        entries = array = newArray;
+      }
+      final CachedEntry previous = array.getAndSet(i, new CachedEntry(entry, serialized, size));
+      if (previous != null) {
+        previous.remove();
+      }
+    }
+
+    /** Remove the entries from the given position (inclusive). */
+    synchronized void truncate(int from) {
+      final AtomicReferenceArray<CachedEntry> array = entries;
+      for(int k = from; k < array.length(); k++) {
+        final CachedEntry removed = array.getAndSet(k, null);
+        if (removed != null) {
+          removed.remove();
+        }
+      }
+    }
+
+    synchronized void clear() {
+      entries = EMPTY;
+      // the removed entries may still be serialized by the readers; they update the old size
+      size = new AtomicLong();
+    }
+  }
+
   static class LogRecordWithEntry {
     private final LogRecord record;
     private final LogEntryProto entry;
@@ -107,6 +310,16 @@ class LogSegment implements Comparable<Long> {
     return new LogSegment(storage, false, start, end);
   }
 
+  /**
+   * Create a closed segment without reading the file.
+   * The records are loaded from the file on the first access to them.
+   */
+  static LogSegment newLazyCloseSegment(RaftStorage storage, long start, long end) {
+    final LogSegment segment = newCloseSegment(storage, start, end);
+    segment.recordsLoaded = false;
+    return segment;
+  }
+
   private static int readSegmentFile(File file, long start, long end,
       boolean isOpen, Consumer<LogEntryProto> entryConsumer) throws IOException {
     int count = 0;
@@ -153,7 +366,7 @@ class LogSegment implements Comparable<Long> {
 
     Preconditions.assertTrue(start == segment.getStartIndex());
     if (!segment.records.isEmpty()) {
-      Preconditions.assertTrue(start == segment.records.get(0).getTermIndex().getIndex());
+      Preconditions.assertTrue(segment.containsIndex(start));
     }
     if (!isOpen) {
       Preconditions.assertTrue(segment.getEndIndex() == end);
@@ -175,12 +388,37 @@ class LogSegment implements Comparable<Long> {
       // note the loading should not exceed the endIndex: it is possible that
       // the on-disk log file should be truncated but has not been done yet.
       readSegmentFile(file, startIndex, endIndex, isOpen,
-          entry -> entryCache.put(ServerProtoUtils.toTermIndex(entry), entry));
+          entry -> entryCache.put(getPosition(entry.getIndex()), entry));
       loadingTimes.incrementAndGet();
-      return Objects.requireNonNull(entryCache.get(key.getTermIndex()));
+      return Objects.requireNonNull(entryCache.get(getPosition(key.getTermIndex().getIndex())));
     }
   }
 
+  /** Load the records if this segment is created lazily and they are not yet loaded. */
+  private void loadRecords() {
+    if (!recordsLoaded) {
+      loadRecordsSynchronized();
+    }
+  }
+
+  private synchronized void loadRecordsSynchronized() {
+    if (recordsLoaded) {
+      return;
+    }
+    final File file = getSegmentFile();
+    final int entryCount;
+    try {
+      entryCount = readSegmentFile(file, startIndex, endIndex, false,
+          entry -> addRecord(entry, getEntrySize(entry)));
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to load the records of " + this + " from " + file, e);
+    }
+    Preconditions.assertTrue(entryCount == numOfEntries(),
+        "Unexpected number of entries in %s: expected %s but read %s", file, numOfEntries(), entryCount);
+    LOG.debug("Loaded {} records from segment file {}", entryCount, file);
+    recordsLoaded = true;
+  }
+
   private File getSegmentFile() {
     return isOpen ?
         storage.getStorageDir().getOpenLogFile(startIndex) :
@@ -188,16 +426,17 @@ class LogSegment implements Comparable<Long> {
   }
 
   public String toDebugString() {
+    loadRecords();
     final StringBuilder b = new StringBuilder()
         .append("startIndex=").append(startIndex)
         .append(", endIndex=").append(endIndex)
         .append(", numOfEntries=").append(numOfEntries())
         .append(", isOpen? ").append(isOpen)
         .append(", file=").append(getSegmentFile());
-    records.stream().map(LogRecord::getTermIndex).forEach(
-        ti -> b.append("  ").append(ti).append(", cache=")
-            .append(ServerProtoUtils.toLogEntryString(entryCache.get(ti)))
-    );
+    for(int i = 0; i < records.size(); i++) {
+      b.append("  ").append(newTermIndex(i)).append(", cache=")
+          .append(ServerProtoUtils.toLogEntryString(entryCache.get(i)));
+    }
     return b.toString();
   }
 
@@ -210,16 +449,20 @@ class LogSegment implements Comparable<Long> {
   /** later replace it with a metric */
   private final AtomicInteger loadingTimes = new AtomicInteger();
   private volatile boolean hasEntryCache;
+  /** Are the records loaded? It is false only for a lazily created segment before the first access. */
+  private volatile boolean recordsLoaded = true;
 
   /**
-   * the list of records is more like the index of a segment
+   * the records are the index of a segment
    */
-  private final List<LogRecord> records = new ArrayList<>();
+  private final Records records = new Records();
   /**
    * the entryCache caches the content of log entries.
    */
-  private final Map<TermIndex, LogEntryProto> entryCache = new ConcurrentHashMap<>();
-  private final Set<TermIndex> configEntries = new HashSet<>();
+  private final EntryCache entryCache = new EntryCache();
+  /** The log indices of the configuration entries in ascending order; read numConfigEntries first. */
+  private volatile long[] configEntries = new long[0];
+  private volatile int numConfigEntries = 0;
 
   private LogSegment(RaftStorage storage, boolean isOpen, long start, long end) {
     this.storage = storage;
@@ -252,6 +495,21 @@ class LogSegment implements Comparable<Long> {
     append(true, entries);
   }
 
+  /**
+   * Append a single entry with its precomputed size in the segment file.
+   * @param serialized the serialized form of the entry, or null if it is not yet serialized.
+   */
+  void appendToOpenSegment(LogEntryProto entry, long entrySize, ByteString serialized) {
+    Preconditions.assertTrue(isOpen(),
+        "The log segment %s is not open for append", this.toString());
+    if (records.isEmpty()) {
+      Preconditions.assertTrue(entry.getIndex() == startIndex,
+          "gap between start index %s and first entry to append %s",
+          startIndex, entry.getIndex());
+    }
+    append(true, entry, entrySize, serialized);
+  }
+
   private void append(boolean keepEntryInCache, LogEntryProto... entries) {
     Preconditions.assertTrue(entries != null && entries.length > 0);
     final long term = entries[0].getTerm();
@@ -264,40 +522,74 @@ class LogSegment implements Comparable<Long> {
       // all these entries should be of the same term
       Preconditions.assertTrue(entry.getTerm() == term,
           "expected term:%s, term of the entry:%s", term, entry.getTerm());
-      final LogRecord currentLast = getLastRecord();
-      if (currentLast != null) {
-        Preconditions.assertTrue(
-            entry.getIndex() == currentLast.getTermIndex().getIndex() + 1,
-            "gap between entries %s and %s", entry.getIndex(),
-            currentLast.getTermIndex().getIndex());
-      }
+      append(keepEntryInCache, entry, getEntrySize(entry), null);
+    }
+  }
 
-      final LogRecord record = new LogRecord(totalSize, entry);
-      records.add(record);
-      if (keepEntryInCache) {
-        entryCache.put(record.getTermIndex(), entry);
-      }
-      if (entry.hasConfigurationEntry()) {
-        configEntries.add(record.getTermIndex());
+  private void append(boolean keepEntryInCache, LogEntryProto entry, long entrySize, ByteString serialized) {
+    if (!records.isEmpty()) {
+      final long lastIndex = startIndex + records.size() - 1;
+      Preconditions.assertTrue(entry.getIndex() == lastIndex + 1,
+          "gap between entries %s and %s", entry.getIndex(), lastIndex);
+    }
+
+    final int position = records.size();
+    addRecord(entry, entrySize);
+    if (keepEntryInCache) {
+      entryCache.put(position, entry, serialized);
+    }
+    endIndex = entry.getIndex();
+  }
+
+  /** Add the record of the given entry without updating the end index. */
+  private void addRecord(LogEntryProto entry, long entrySize) {
+    records.add(totalSize, entry.getTerm());
+    if (entry.hasConfigurationEntry()) {
+      final int n = numConfigEntries;
+      if (n == configEntries.length) {
+        configEntries = Arrays.copyOf(configEntries, Math.max(n << 1, 1));
       }
-      totalSize += getEntrySize(entry);
-      endIndex = entry.getIndex();
+      configEntries[n] = entry.getIndex();
+      numConfigEntries = n + 1;
     }
+    totalSize += entrySize;
+  }
+
+  private int getPosition(long index) {
+    return Math.toIntExact(index - startIndex);
   }
 
+  private TermIndex newTermIndex(int position) {
+    return TermIndex.newTermIndex(records.getTerm(position), startIndex + position);
+  }
+
+  @VisibleForTesting
   LogRecordWithEntry getEntryWithoutLoading(long index) {
     LogRecord record = getLogRecord(index);
     if (record == null) {
       return null;
     }
-    return new LogRecordWithEntry(record, entryCache.get(record.getTermIndex()));
+    return new LogRecordWithEntry(record, entryCache.get(getPosition(index)));
+  }
+
+  /**
+   * @param entry an entry obtained from this segment.
+   * @return the shared serialized form of the given entry if it is the cached instance; otherwise, return null.
+   */
+  ByteString getSerializedEntry(LogEntryProto entry) {
+    final long index = entry.getIndex();
+    if (index < startIndex || index > endIndex) {
+      return null;
+    }
+    final CachedEntry cached = entryCache.getCachedEntry(getPosition(index));
+    return cached != null && cached.entry == entry? cached.getSerialized(): null;
   }
 
   /**
    * Acquire LogSegment's monitor so that there is no concurrent loading.
    */
   synchronized LogEntryProto loadCache(LogRecord record) throws RaftLogIOException {
-    LogEntryProto entry = entryCache.get(record.getTermIndex());
+    LogEntryProto entry = entryCache.get(getPosition(record.getTermIndex().getIndex()));
     if (entry != null) {
       return entry;
     }
@@ -312,25 +604,77 @@ class LogSegment implements Comparable<Long> {
 
   LogRecord getLogRecord(long index) {
     if (index >= startIndex && index <= endIndex) {
-      return records.get(Math.toIntExact(index - startIndex));
+      loadRecords();
+      final int i = getPosition(index);
+      return new LogRecord(records.getOffset(i), newTermIndex(i));
     }
     return null;
   }
 
-  private LogRecord getLastRecord() {
-    return records.isEmpty() ? null : records.get(records.size() - 1);
+  /** @return the term-index of the given log index without creating a {@link LogRecord}. */
+  TermIndex getTermIndex(long index) {
+    if (index >= startIndex && index <= endIndex) {
+      loadRecords();
+      return newTermIndex(getPosition(index));
+    }
+    return null;
+  }
+
+  boolean containsIndex(long index) {
+    return index >= startIndex && index <= endIndex;
+  }
+
+  /**
+   * Similar to {@link #getTermIndex(long)} but it does not create any object.
+   * @return the term of the given log index, or {@link RaftServerConstants#INVALID_LOG_INDEX} if it is not found.
+   */
+  long getTerm(long index) {
+    if (index >= startIndex && index <= endIndex) {
+      loadRecords();
+      return records.getTerm(getPosition(index));
+    }
+    return RaftServerConstants.INVALID_LOG_INDEX;
+  }
+
+  /**
+   * Similar to {@link #getLogRecord(long)} but it does not create any object.
+   * @return the file offset of the given log index, or -1 if it is not found.
+   */
+  long getOffset(long index) {
+    if (index >= startIndex && index <= endIndex) {
+      loadRecords();
+      return records.getOffset(getPosition(index));
+    }
+    return -1;
+  }
+
+  /** @return the cached entry of the given log index, or null if it is not found or not cached. */
+  LogEntryProto getCachedEntry(long index) {
+    return containsIndex(index)? entryCache.get(getPosition(index)): null;
   }
 
   TermIndex getLastTermIndex() {
-    LogRecord last = getLastRecord();
-    return last == null ? null : last.getTermIndex();
+    final long end = endIndex;
+    if (end < startIndex) {
+      return null;
+    }
+    loadRecords();
+    return newTermIndex(getPosition(end));
   }
 
   boolean isConfigEntry(TermIndex ti) {
-    return configEntries.contains(ti);
+    final long index = ti.getIndex();
+    if (index < startIndex || index > endIndex) {
+      return false;
+    }
+    loadRecords();
+    final int n = numConfigEntries;
+    return Arrays.binarySearch(configEntries, 0, n, index) >= 0
+        && records.getTerm(getPosition(index)) == ti.getTerm();
   }
 
   long getTotalSize() {
+    loadRecords();
     return totalSize;
   }
 
@@ -339,13 +683,17 @@ class LogSegment implements Comparable<Long> {
    */
   void truncate(long fromIndex) {
     Preconditions.assertTrue(fromIndex >= startIndex && fromIndex <= endIndex);
-    LogRecord record = records.get(Math.toIntExact(fromIndex - startIndex));
-    for (long index = endIndex; index >= fromIndex; index--) {
-      LogRecord removed = records.remove(Math.toIntExact(index - startIndex));
-      entryCache.remove(removed.getTermIndex());
-      configEntries.remove(removed.getTermIndex());
+    loadRecords();
+    final int from = getPosition(fromIndex);
+    final long offset = records.getOffset(from);
+    records.truncate(from);
+    entryCache.truncate(from);
+    int n = numConfigEntries;
+    while (n > 0 && configEntries[n - 1] >= fromIndex) {
+      n--;
     }
-    totalSize = record.offset;
+    numConfigEntries = n;
+    totalSize = offset;
     isOpen = false;
     this.endIndex = fromIndex - 1;
   }
@@ -368,11 +716,12 @@ class LogSegment implements Comparable<Long> {
   }
 
   void clear() {
-    records.clear();
+    records.truncate(0);
     entryCache.clear();
     hasEntryCache = false;
-    configEntries.clear();
+    numConfigEntries = 0;
     endIndex = startIndex - 1;
+    recordsLoaded = true;
   }
 
   public int getLoadingTimes() {
@@ -388,6 +737,11 @@ class LogSegment implements Comparable<Long> {
     return hasEntryCache;
   }
 
+  /** @return the heap size of the cached entries, including their serialized forms. */
+  long getCacheSize() {
+    return entryCache.getSize();
+  }
+
   boolean containsIndex(long index) {
     return startIndex <= index && endIndex >= index;
   }
@@ -62,7 +62,11 @@ public abstract class RaftLog implements RaftLogSequentialOps, Closeable {
   private final RaftPeerId selfId;
   private final int maxBufferSize;
 
-  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+  /**
+   * The lock serializes the updates.
+   * It is not fair since the frequent reads, such as get and getTermIndex, do not use it in SegmentedRaftLog.
+   */
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
   private final Runner runner = new Runner(this::getName);
   private final OpenCloseState state;
 
@@ -287,6 +291,26 @@ public abstract class RaftLog implements RaftLogSequentialOps, Closeable {
 
   public abstract boolean isConfigEntry(TermIndex ti);
 
+  /** Release the cached log entries, e.g. when the group is hibernating. */
+  public void evictCache() {
+  }
+
+  /**
+   * All the followers have matched the entries up to the given index.
+   * Release the data kept in the leader for replicating these entries.
+   */
+  public void onFollowersMatched(long index) {
+  }
+
+  /**
+   * @param entry an entry obtained from this log.
+   * @return the serialized form of the given entry.
+   *         An implementation may return a cached form which is shared by all the followers.
+   */
+  public ByteString getSerializedEntry(LogEntryProto entry) {
+    return entry.toByteString();
+  }
+
   @Override
   public String toString() {
     return getName() + ":" + state;
@@ -26,6 +26,7 @@ import org.apache.ratis.server.storage.CacheInvalidationPolicy.CacheInvalidation
 import org.apache.ratis.server.storage.LogSegment.LogRecord;
 import org.apache.ratis.server.storage.RaftStorageDirectory.LogPathAndIndex;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,8 +39,12 @@ import static org.apache.ratis.server.impl.RaftServerConstants.INVALID_LOG_INDEX
 
 /**
  * In-memory RaftLog Cache. Currently we provide a simple implementation that
- * caches all the segments in the memory. The cache is not thread-safe and
- * requires external lock protection.
+ * caches all the segments in the memory.
+ *
+ * The updates require external lock protection, i.e. the RaftLog's write lock.
+ * The reads of a single segment are lock-free:
+ * the closed segments are published as an immutable list and the open segment is volatile.
+ * A closed segment is always published before it is removed from the open segment.
  */
 class RaftLogCache {
   public static final Logger LOG = LoggerFactory.getLogger(RaftLogCache.class);
@@ -88,17 +93,19 @@ class RaftLogCache {
 
   private final String name;
   private volatile LogSegment openSegment;
-  private final List<LogSegment> closedSegments;
+  /** An immutable list which is replaced, but not modified, by the updates. */
+  private volatile List<LogSegment> closedSegments = Collections.emptyList();
   private final RaftStorage storage;
 
   private final int maxCachedSegments;
+  private final long maxCacheSize;
   private final CacheInvalidationPolicy evictionPolicy = new CacheInvalidationPolicyDefault();
 
   RaftLogCache(RaftPeerId selfId, RaftStorage storage, RaftProperties properties) {
     this.name = selfId + "-" + getClass().getSimpleName();
     this.storage = storage;
     maxCachedSegments = RaftServerConfigKeys.Log.maxCachedSegmentNum(properties);
-    closedSegments = new ArrayList<>();
+    maxCacheSize = RaftServerConfigKeys.Log.segmentCacheSizeMax(properties).getSize();
   }
 
   int getMaxCachedSegments() {
@@ -107,19 +114,58 @@ class RaftLogCache {
 
   void loadSegment(LogPathAndIndex pi, boolean keepEntryInCache,
       Consumer<LogEntryProto> logConsumer) throws IOException {
-    LogSegment logSegment = LogSegment.loadSegment(storage, pi.getPath().toFile(),
-        pi.startIndex, pi.endIndex, pi.isOpen(), keepEntryInCache, logConsumer);
+    LogSegment logSegment = readSegment(pi, keepEntryInCache, logConsumer);
     if (logSegment != null) {
       addSegment(logSegment);
     }
   }
 
+  /**
+   * Read the segment from the given file without adding it to this cache.
+   * It does not access the cache so that the segments can be read in parallel.
+   *
+   * @return the segment, or null if the file does not have any entries.
+   */
+  LogSegment readSegment(LogPathAndIndex pi, boolean keepEntryInCache,
+      Consumer<LogEntryProto> logConsumer) throws IOException {
+    return LogSegment.loadSegment(storage, pi.getPath().toFile(),
+        pi.startIndex, pi.endIndex, pi.isOpen(), keepEntryInCache, logConsumer);
+  }
+
+  /** Add the closed segment of the given file without reading it; see {@link LogSegment#newLazyCloseSegment}. */
+  void loadSegmentLazily(LogPathAndIndex pi) {
+    Preconditions.assertTrue(!pi.isOpen(), () -> "Unexpected open segment " + pi);
+    addSegment(LogSegment.newLazyCloseSegment(storage, pi.startIndex, pi.endIndex));
+  }
+
   long getCachedSegmentNum() {
     return closedSegments.stream().filter(LogSegment::hasCache).count();
   }
 
+  /** @return the total size of the segments having the entries cached. */
+  long getCachedSize() {
+    final LogSegment open = openSegment;
+    long size = open != null && open.hasCache()? open.getTotalSize(): 0;
+    for (LogSegment s : closedSegments) {
+      if (s.hasCache()) {
+        size += s.getTotalSize();
+      }
+    }
+    return size;
+  }
+
+  /** @return the heap size of the cached entries of all the segments, including their serialized forms. */
+  long getCacheSize() {
+    final LogSegment open = openSegment;
+    long size = open != null? open.getCacheSize(): 0;
+    for (LogSegment s : closedSegments) {
+      size += s.getCacheSize();
+    }
+    return size;
+  }
+
   boolean shouldEvict() {
-    return getCachedSegmentNum() > maxCachedSegments;
+    return getCachedSegmentNum() > maxCachedSegments || getCacheSize() > maxCacheSize;
   }
 
   void evictCache(long[] followerIndices, long flushedIndex,
@@ -131,9 +177,24 @@ class RaftLogCache {
     }
   }
 
+  /** Evict the entry cache of all the closed segments. */
+  void evictClosedSegmentsCache() {
+    closedSegments.forEach(LogSegment::evictCache);
+  }
+
+  private static LogSegment getLast(List<LogSegment> segments) {
+    return segments.isEmpty() ? null : segments.get(segments.size() - 1);
+  }
+
   private LogSegment getLastClosedSegment() {
-    return closedSegments.isEmpty() ?
-        null : closedSegments.get(closedSegments.size() - 1);
+    return getLast(closedSegments);
+  }
+
+  private void addClosedSegment(LogSegment segment) {
+    final List<LogSegment> segments = new ArrayList<>(closedSegments.size() + 1);
+    segments.addAll(closedSegments);
+    segments.add(segment);
+    closedSegments = Collections.unmodifiableList(segments);
   }
 
   private void validateAdding(LogSegment segment) {
@@ -149,7 +210,7 @@ class RaftLogCache {
     if (segment.isOpen()) {
       setOpenSegment(segment);
     } else {
-      closedSegments.add(segment);
+      addClosedSegment(segment);
     }
   }
 
@@ -181,7 +242,7 @@ class RaftLogCache {
         && openSegment.numOfEntries() > 0);
     final long nextIndex = openSegment.getEndIndex() + 1;
     openSegment.close();
-    closedSegments.add(openSegment);
+    addClosedSegment(openSegment);
     clearOpenSegment();
     if (createNewOpen) {
       addOpenSegment(nextIndex);
@@ -189,11 +250,14 @@ class RaftLogCache {
   }
 
   LogSegment getSegment(long index) {
-    if (openSegment != null && index >= openSegment.getStartIndex()) {
-      return openSegment;
+    // read the open segment before the closed segments
+    final LogSegment open = openSegment;
+    if (open != null && index >= open.getStartIndex()) {
+      return open;
     } else {
-      int segmentIndex = Collections.binarySearch(closedSegments, index);
-      return segmentIndex < 0 ? null : closedSegments.get(segmentIndex);
+      final List<LogSegment> closed = closedSegments;
+      int segmentIndex = Collections.binarySearch(closed, index);
+      return segmentIndex < 0 ? null : closed.get(segmentIndex);
     }
   }
 
@@ -249,8 +313,7 @@ class RaftLogCache {
     endIndex = Math.min(endIndex, startIndex + size - 1);
     int index = offset;
     for (long i = startIndex; i <= endIndex; i++) {
-      LogRecord r = segment.getLogRecord(i);
-      entries[index++] = r == null ? null : r.getTermIndex();
+      entries[index++] = segment.getTermIndex(i);
     }
   }
 
@@ -260,33 +323,57 @@ class RaftLogCache {
   }
 
   long getStartIndex() {
-    if (closedSegments.isEmpty()) {
-      return openSegment != null ? openSegment.getStartIndex() :
+    final LogSegment open = openSegment;
+    final List<LogSegment> closed = closedSegments;
+    if (closed.isEmpty()) {
+      return open != null ? open.getStartIndex() :
           RaftServerConstants.INVALID_LOG_INDEX;
     } else {
-      return closedSegments.get(0).getStartIndex();
+      return closed.get(0).getStartIndex();
     }
   }
 
   long getEndIndex() {
-    return openSegment != null ? openSegment.getEndIndex() :
-        (closedSegments.isEmpty() ?
-            INVALID_LOG_INDEX :
-            closedSegments.get(closedSegments.size() - 1).getEndIndex());
+    final LogSegment open = openSegment;
+    if (open != null) {
+      return open.getEndIndex();
+    }
+    final LogSegment lastClosed = getLastClosedSegment();
+    return lastClosed == null ? INVALID_LOG_INDEX : lastClosed.getEndIndex();
   }
 
   TermIndex getLastTermIndex() {
-    return (openSegment != null && openSegment.numOfEntries() > 0) ?
-        openSegment.getLastTermIndex() :
-        (closedSegments.isEmpty() ? null :
-            closedSegments.get(closedSegments.size() - 1).getLastTermIndex());
+    final LogSegment open = openSegment;
+    final TermIndex last = open != null ? open.getLastTermIndex() : null;
+    if (last != null) {
+      return last;
+    }
+    final LogSegment lastClosed = getLastClosedSegment();
+    return lastClosed == null ? null : lastClosed.getLastTermIndex();
   }
 
   void appendEntry(LogEntryProto entry) {
+    appendEntry(entry, LogSegment.getEntrySize(entry), null);
+  }
+
+  /**
+   * Append the entry with its precomputed size in the segment file.
+   * @param serialized the serialized form of the entry, or null if it is not yet serialized.
+   */
+  void appendEntry(LogEntryProto entry, long entrySize, ByteString serialized) {
     // SegmentedRaftLog does the segment creation/rolling work. Here we just
     // simply append the entry into the open segment.
     Preconditions.assertTrue(openSegment != null);
-    openSegment.appendToOpenSegment(entry);
+    openSegment.appendToOpenSegment(entry, entrySize, serialized);
+  }
+
+  /**
+   * @param entry an entry obtained from this cache.
+   * @return the shared serialized form of the given entry if it is cached; otherwise, return null.
+   */
+  ByteString getSerializedEntry(LogEntryProto entry) {
+    final LogSegment segment = getSegment(entry.getIndex());
+    return segment != null? segment.getSerializedEntry(entry): null;
   }
 
   private SegmentFileInfo deleteOpenSegment() {
@@ -316,7 +403,7 @@ class RaftLogCache {
           SegmentFileInfo info = new SegmentFileInfo(openSegment.getStartIndex(),
               oldEnd, true, openSegment.getTotalSize(),
               openSegment.getEndIndex());
-          closedSegments.add(openSegment);
+          addClosedSegment(openSegment);
           clearOpenSegment();
           return new TruncationSegments(info, Collections.emptyList());
         }
@@ -326,16 +413,18 @@ class RaftLogCache {
       final long oldEnd = ts.getEndIndex();
       List<SegmentFileInfo> list = new ArrayList<>();
       ts.truncate(index);
-      final int size = closedSegments.size();
+      final List<LogSegment> remaining = new ArrayList<>(closedSegments);
+      final int size = remaining.size();
       for (int i = size - 1;
            i >= (ts.numOfEntries() == 0 ? segmentIndex : segmentIndex + 1);
            i-- ) {
-        LogSegment s = closedSegments.remove(i);
+        LogSegment s = remaining.remove(i);
         final long endOfS = i == segmentIndex ? oldEnd : s.getEndIndex();
         s.clear();
         list.add(new SegmentFileInfo(s.getStartIndex(), endOfS, false, 0,
             s.getEndIndex()));
       }
+      closedSegments = Collections.unmodifiableList(remaining);
       if (openSegment != null) {
         list.add(deleteOpenSegment());
       }
@@ -378,14 +467,14 @@ class RaftLogCache {
     @Override
     public boolean hasNext() {
       return currentSegment != null &&
-          currentSegment.getLogRecord(nextIndex) != null;
+          currentSegment.containsIndex(nextIndex);
     }
 
     @Override
     public TermIndex next() {
-      LogRecord record;
+      final TermIndex termIndex;
       if (currentSegment == null ||
-          (record = currentSegment.getLogRecord(nextIndex)) == null) {
+          (termIndex = currentSegment.getTermIndex(nextIndex)) == null) {
         throw new NoSuchElementException();
       }
       if (++nextIndex > currentSegment.getEndIndex()) {
@@ -395,7 +484,7 @@ class RaftLogCache {
               openSegment : closedSegments.get(segmentIndex);
         }
       }
-      return record.getTermIndex();
+      return termIndex;
     }
   }
 
@@ -412,7 +501,8 @@ class RaftLogCache {
       openSegment.clear();
       clearOpenSegment();
     }
-    closedSegments.forEach(LogSegment::clear);
-    closedSegments.clear();
+    final List<LogSegment> closed = closedSegments;
+    closedSegments = Collections.emptyList();
+    closed.forEach(LogSegment::clear);
   }
 }
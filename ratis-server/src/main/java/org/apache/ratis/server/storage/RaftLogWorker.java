@@ -17,31 +17,38 @@
  */
 package org.apache.ratis.server.storage;
 
-import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import org.apache.ratis.conf.RaftProperties;
-import org.apache.ratis.metrics.RatisMetricsRegistry;
+import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.protocol.TimeoutIOException;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.impl.RaftServerConstants;
+import org.apache.ratis.server.impl.RaftServerMetrics;
 import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.server.storage.RaftLogCache.SegmentFileInfo;
 import org.apache.ratis.server.storage.RaftLogCache.TruncationSegments;
 import org.apache.ratis.server.storage.SegmentedRaftLog.Task;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -86,6 +93,9 @@ class RaftLogWorker implements Runnable {
   }
 
   private final String name;
+  private final RaftPeerId selfId;
+  /** The group id, which is null in unit tests. */
+  private final RaftGroupId groupId;
   /**
    * The task queue accessed by rpc handler threads and the io worker thread.
    */
@@ -97,13 +107,16 @@ class RaftLogWorker implements Runnable {
   private volatile LogOutputStream out;
   private final Runnable submitUpdateCommitEvent;
   private final StateMachine stateMachine;
-  private final Supplier<Timer> logFlushTimer;
+  private final Timer logAppendTimer;
+  private final Timer logFlushTimer;
 
   /**
    * The number of entries that have been written into the LogOutputStream but
    * has not been flushed.
    */
   private int pendingFlushNum = 0;
+  /** The size of the entries that have been written but not yet flushed. */
+  private long pendingFlushBytes = 0;
   /** the index of the last entry that has been written */
   private long lastWrittenIndex;
   /** the largest index of the entry that has been flushed */
@@ -114,12 +127,21 @@ class RaftLogWorker implements Runnable {
   private final long segmentMaxSize;
   private final long preallocatedSize;
   private final int bufferSize;
+  /** The alignment for writing the segments with direct I/O; or 0 if direct I/O is disabled. */
+  private final int directIoAlignment;
 
   private final StateMachineDataPolicy stateMachineDataPolicy;
 
-  RaftLogWorker(RaftPeerId selfId, StateMachine stateMachine, Runnable submitUpdateCommitEvent,
-      RaftStorage storage, RaftProperties properties) {
+  /** Prepare the next segment file in the background; null if it is disabled. */
+  private final ExecutorService segmentPreparer;
+  /** The future of the segment file being prepared, which is only accessed by the worker thread. */
+  private CompletableFuture<File> preparedSegment;
+
+  RaftLogWorker(RaftPeerId selfId, RaftGroupId groupId, StateMachine stateMachine, Runnable submitUpdateCommitEvent,
+      RaftStorage storage, RaftServerMetrics metrics, RaftProperties properties) {
     this.name = selfId + "-" + getClass().getSimpleName();
+    this.selfId = selfId;
+    this.groupId = groupId;
     LOG.info("new {} for {}", name, storage);
 
     this.submitUpdateCommitEvent = submitUpdateCommitEvent;
@@ -130,15 +152,18 @@ class RaftLogWorker implements Runnable {
     this.segmentMaxSize = RaftServerConfigKeys.Log.segmentSizeMax(properties).getSize();
     this.preallocatedSize = RaftServerConfigKeys.Log.preallocatedSize(properties).getSize();
     this.bufferSize = RaftServerConfigKeys.Log.writeBufferSize(properties).getSizeInt();
+    this.directIoAlignment = RaftServerConfigKeys.Log.directIoEnabled(properties)?
+        RaftServerConfigKeys.Log.directIoAlignment(properties).getSizeInt(): 0;
     this.forceSyncNum = RaftServerConfigKeys.Log.forceSyncNum(properties);
 
     this.stateMachineDataPolicy = new StateMachineDataPolicy(properties);
+    this.segmentPreparer = RaftServerConfigKeys.Log.segmentPrepareEnabled(properties)?
+        Executors.newSingleThreadExecutor(Daemon::new): null;
 
     this.workerThread = new Thread(this, name);
 
-    // Server Id can be null in unit tests
-    this.logFlushTimer = JavaUtils.memoize(() -> RatisMetricsRegistry.getRegistry()
-        .timer(MetricRegistry.name(RaftLogWorker.class, selfId.toString(), "flush-time")));
+    this.logAppendTimer = metrics.getLogAppendTimer();
+    this.logFlushTimer = metrics.getLogFlushTimer();
   }
 
   void start(long latestIndex, File openSegmentFile) throws IOException {
@@ -148,8 +173,9 @@ class RaftLogWorker implements Runnable {
     if (openSegmentFile != null) {
       Preconditions.assertTrue(openSegmentFile.exists());
       out = new LogOutputStream(openSegmentFile, true, segmentMaxSize,
-          preallocatedSize, bufferSize);
+          preallocatedSize, bufferSize, directIoAlignment);
     }
+    prepareNextSegment();
     workerThread.start();
   }
 
@@ -161,9 +187,28 @@ class RaftLogWorker implements Runnable {
     } catch (InterruptedException ignored) {
     }
     IOUtils.cleanup(LOG, out);
+    if (segmentPreparer != null) {
+      segmentPreparer.shutdownNow();
+      deletePreparedSegment();
+    }
     LOG.info("{} close()", name);
   }
 
+  /** Delete the prepared segment file, if there is any, after the preparation has stopped. */
+  private void deletePreparedSegment() {
+    try {
+      if (!segmentPreparer.awaitTermination(3, TimeUnit.SECONDS)) {
+        LOG.warn("{}: Timed out waiting for the segment preparation to stop", name);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    final File prepared = storage.getStorageDir().getPreparedLogFile();
+    if (prepared.exists() && !prepared.delete()) {
+      LOG.warn("{}: Failed to delete the prepared segment file {}", name, prepared);
+    }
+  }
+
   /**
    * A snapshot has just been installed on the follower. Need to update the IO
    * worker's state accordingly.
@@ -258,7 +303,8 @@ class RaftLogWorker implements Runnable {
   private void flushWrites() throws IOException {
     if (out != null) {
       LOG.debug("{}: flush {}", name, out);
-      final Timer.Context timerContext = logFlushTimer.get().time();
+      final RaftEvent event = RaftEvents.begin(RaftEvent.Type.LOG_FLUSH);
+      final Timer.Context timerContext = logFlushTimer.time();
       try {
         final CompletableFuture<Void> f = stateMachine != null ?
             stateMachine.flushStateMachineData(lastWrittenIndex) :
@@ -273,6 +319,7 @@ class RaftLogWorker implements Runnable {
       } finally {
         timerContext.stop();
       }
+      event.end(selfId, groupId, flushedIndex + 1, lastWrittenIndex, pendingFlushBytes);
       updateFlushedIndex();
     }
   }
@@ -281,6 +328,7 @@ class RaftLogWorker implements Runnable {
     LOG.debug("{}: updateFlushedIndex {} -> {}", name, flushedIndex, lastWrittenIndex);
     flushedIndex = lastWrittenIndex;
     pendingFlushNum = 0;
+    pendingFlushBytes = 0;
     Optional.ofNullable(submitUpdateCommitEvent).ifPresent(Runnable::run);
   }
 
@@ -303,7 +351,36 @@ class RaftLogWorker implements Runnable {
   }
 
   Task writeLogEntry(LogEntryProto entry) {
-    return addIOTask(new WriteLog(entry));
+    return writeLogEntry(entry, ServerProtoUtils.removeStateMachineData(entry));
+  }
+
+  /**
+   * @param entry the entry which may have state machine data.
+   * @param entryWithoutData the same entry with the state machine data removed.
+   */
+  Task writeLogEntry(LogEntryProto entry, LogEntryProto entryWithoutData) {
+    return writeLogEntry(entry, entryWithoutData, null);
+  }
+
+  /**
+   * @param entry the entry which may have state machine data.
+   * @param entryWithoutData the same entry with the state machine data removed.
+   * @param serialized the serialized entryWithoutData, or null if it is not yet serialized.
+   */
+  Task writeLogEntry(LogEntryProto entry, LogEntryProto entryWithoutData, ByteString serialized) {
+    return addIOTask(new WriteLog(Collections.singletonList(entry), Collections.singletonList(entryWithoutData),
+        serialized == null? null: Collections.singletonList(serialized)));
+  }
+
+  /**
+   * Write the given consecutive entries using a single task.
+   * The entries must be in the current open segment.
+   *
+   * @param entries the entries which may have state machine data.
+   * @param entriesWithoutData the same entries with the state machine data removed.
+   */
+  Task writeLogEntries(List<LogEntryProto> entries, List<LogEntryProto> entriesWithoutData) {
+    return addIOTask(new WriteLog(entries, entriesWithoutData, null));
   }
 
   Task truncate(TruncationSegments ts) {
@@ -311,24 +388,46 @@ class RaftLogWorker implements Runnable {
   }
 
   private class WriteLog extends Task {
-    private final LogEntryProto entry;
+    private final List<LogEntryProto> entries;
+    /** The serialized entries, or null if they are serialized when writing. */
+    private final List<ByteString> serialized;
     private final CompletableFuture<?> stateMachineFuture;
     private final CompletableFuture<Long> combined;
 
-    WriteLog(LogEntryProto entry) {
-      this.entry = ServerProtoUtils.removeStateMachineData(entry);
-      if (this.entry == entry || stateMachine == null) {
-        this.stateMachineFuture = null;
-      } else {
-        try {
-          // this.entry != entry iff the entry has state machine data
-          this.stateMachineFuture = stateMachine.writeStateMachineData(entry);
-        } catch (Throwable e) {
-          LOG.error(name + ": writeStateMachineData failed for index " + entry.getIndex()
-              + ", entry=" + ServerProtoUtils.toLogEntryString(entry), e);
-          throw e;
+    WriteLog(List<LogEntryProto> entries, List<LogEntryProto> entriesWithoutData, List<ByteString> serialized) {
+      Preconditions.assertTrue(!entries.isEmpty() && entries.size() == entriesWithoutData.size(),
+          () -> "Unexpected sizes: entries.size() == " + entries.size()
+              + ", entriesWithoutData.size() == " + entriesWithoutData.size());
+      Preconditions.assertTrue(serialized == null || serialized.size() == entries.size(),
+          () -> "Unexpected sizes: entries.size() == " + entries.size() + ", serialized.size() == "
+              + serialized.size());
+      this.entries = entriesWithoutData;
+      this.serialized = serialized;
+
+      List<CompletableFuture<?>> futures = null;
+      if (stateMachine != null) {
+        for (int i = 0; i < entries.size(); i++) {
+          final LogEntryProto entry = entries.get(i);
+          if (entriesWithoutData.get(i) == entry) {
+            continue;
+          }
+          try {
+            // entryWithoutData != entry iff the entry has state machine data
+            final CompletableFuture<?> f = stateMachine.writeStateMachineData(entry);
+            if (futures == null) {
+              futures = new ArrayList<>();
+            }
+            futures.add(f);
+          } catch (Throwable e) {
+            LOG.error(name + ": writeStateMachineData failed for index " + entry.getIndex()
+                + ", entry=" + ServerProtoUtils.toLogEntryString(entry), e);
+            throw e;
+          }
         }
       }
+      this.stateMachineFuture = futures == null? null
+          : futures.size() == 1? futures.get(0)
+          : CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
       this.combined = stateMachineFuture == null? super.getFuture()
           : super.getFuture().thenCombine(stateMachineFuture, (index, stateMachineResult) -> index);
     }
@@ -345,11 +444,21 @@ class RaftLogWorker implements Runnable {
       }
 
       Preconditions.assertTrue(out != null);
-      Preconditions.assertTrue(lastWrittenIndex + 1 == entry.getIndex(),
-          "lastWrittenIndex == %s, entry == %s", lastWrittenIndex, entry);
-      out.write(entry);
-      lastWrittenIndex = entry.getIndex();
-      pendingFlushNum++;
+      final Timer.Context timerContext = logAppendTimer.time();
+      for (int i = 0; i < entries.size(); i++) {
+        final LogEntryProto entry = entries.get(i);
+        Preconditions.assertTrue(lastWrittenIndex + 1 == entry.getIndex(),
+            "lastWrittenIndex == %s, entry == %s", lastWrittenIndex, entry);
+        if (serialized != null) {
+          out.write(serialized.get(i));
+        } else {
+          out.write(entry);
+        }
+        lastWrittenIndex = entry.getIndex();
+        pendingFlushBytes += entry.getSerializedSize();
+      }
+      timerContext.stop();
+      pendingFlushNum += entries.size();
       if (shouldFlush()) {
         flushWrites();
       }
@@ -357,12 +466,14 @@ class RaftLogWorker implements Runnable {
 
     @Override
     long getEndIndex() {
-      return entry.getIndex();
+      return entries.get(entries.size() - 1).getIndex();
     }
 
     @Override
     public String toString() {
-      return super.toString() + ": " + ServerProtoUtils.toLogEntryString(entry);
+      final LogEntryProto first = entries.get(0);
+      return super.toString() + ": " + (entries.size() == 1? ServerProtoUtils.toLogEntryString(first)
+          : entries.size() + " entries from " + ServerProtoUtils.toLogEntryString(first));
     }
   }
 
@@ -375,6 +486,7 @@ class RaftLogWorker implements Runnable {
 
     @Override
     public void execute() throws IOException {
+      final RaftEvent event = RaftEvents.begin(RaftEvent.Type.SEGMENT_ROLL);
       IOUtils.cleanup(LOG, out);
       out = null;
       Preconditions.assertTrue(segmentToClose != null);
@@ -395,6 +507,8 @@ class RaftLogWorker implements Runnable {
       } else { // delete the file of the empty segment
         FileUtils.deleteFile(openFile);
       }
+      event.end(selfId, groupId, segmentToClose.getStartIndex(), segmentToClose.getEndIndex(),
+          segmentToClose.getTotalSize());
       updateFlushedIndex();
     }
 
@@ -409,6 +523,51 @@ class RaftLogWorker implements Runnable {
     }
   }
 
+  /**
+   * Prepare the next segment file in the background,
+   * so that starting a new segment only needs to rename the prepared file.
+   */
+  private void prepareNextSegment() {
+    if (segmentPreparer == null || preparedSegment != null) {
+      return;
+    }
+    final File prepared = storage.getStorageDir().getPreparedLogFile();
+    preparedSegment = CompletableFuture.supplyAsync(() -> {
+      try {
+        LogOutputStream.prepare(prepared, segmentMaxSize, preallocatedSize, bufferSize);
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+      return prepared;
+    }, segmentPreparer);
+  }
+
+  /**
+   * Rename the prepared segment file, if there is any, to the given open segment file and then open it.
+   *
+   * @return the output stream of the open segment,
+   *         or null if there is no prepared segment file available.
+   */
+  private LogOutputStream openPreparedSegment(File openFile) {
+    final CompletableFuture<File> future = preparedSegment;
+    if (future == null) {
+      return null;
+    }
+    preparedSegment = null;
+    try {
+      final File prepared = future.join();
+      FileUtils.move(prepared, openFile);
+      return LogOutputStream.openPrepared(openFile, segmentMaxSize, preallocatedSize, bufferSize,
+          directIoAlignment);
+    } catch (Throwable t) {
+      LOG.warn(name + ": Failed to use the prepared segment file for " + openFile, t);
+      if (openFile.exists() && !openFile.delete()) {
+        LOG.warn("{}: Failed to delete {}", name, openFile);
+      }
+      return null;
+    }
+  }
+
   private class StartLogSegment extends Task {
     private final long newStartIndex;
 
@@ -423,8 +582,12 @@ class RaftLogWorker implements Runnable {
       Preconditions.assertTrue(!openFile.exists(), "open file %s exists for %s",
           openFile, name);
       Preconditions.assertTrue(out == null && pendingFlushNum == 0);
-      out = new LogOutputStream(openFile, false, segmentMaxSize,
-          preallocatedSize, bufferSize);
+      out = openPreparedSegment(openFile);
+      if (out == null) {
+        out = new LogOutputStream(openFile, false, segmentMaxSize,
+            preallocatedSize, bufferSize, directIoAlignment);
+      }
+      prepareNextSegment();
       Preconditions.assertTrue(openFile.exists(), "Failed to create file %s for %s",
           openFile.getAbsolutePath(), name);
     }
@@ -503,4 +666,9 @@ class RaftLogWorker implements Runnable {
   long getFlushedIndex() {
     return flushedIndex;
   }
+
+  /** @return the number of the tasks waiting in the queue. */
+  int getQueueSize() {
+    return queue.size();
+  }
 }
@@ -48,6 +48,7 @@ public class RaftStorageDirectory {
   static final String META_FILE_NAME = "raft-meta";
   static final String LOG_FILE_INPROGRESS = "inprogress";
   static final String LOG_FILE_PREFIX = "log";
+  static final String LOG_FILE_PREPARED = "prepared";
   static final String STATE_MACHINE = "sm"; // directory containing state machine snapshots
   static final String TEMP = "tmp";
   static final Pattern CLOSED_SEGMENT_REGEX = Pattern.compile("log_(\\d+)-(\\d+)");
@@ -169,6 +170,11 @@ public class RaftStorageDirectory {
     return LOG_FILE_PREFIX + "_" + startIndex + "-" + endIndex;
   }
 
+  /** @return the segment file prepared in advance for the next open segment. */
+  File getPreparedLogFile() {
+    return new File(getCurrentDir(), LOG_FILE_PREFIX + "_" + LOG_FILE_PREPARED);
+  }
+
   public File getStateMachineDir() {
     return new File(getRoot(), STATE_MACHINE);
   }
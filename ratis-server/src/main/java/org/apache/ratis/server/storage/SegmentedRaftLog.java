@@ -21,24 +21,37 @@ import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.impl.RaftServerMetrics;
 import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.server.protocol.TermIndex;
 import org.apache.ratis.server.storage.LogSegment.LogRecord;
-import org.apache.ratis.server.storage.LogSegment.LogRecordWithEntry;
 import org.apache.ratis.server.storage.RaftStorageDirectory.LogPathAndIndex;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.trace.TraceStage;
+import org.apache.ratis.trace.Tracer;
 import org.apache.ratis.util.AutoCloseableLock;
+import org.apache.ratis.util.CheckedRunnable;
+import org.apache.ratis.util.Daemon;
+import org.apache.ratis.util.IOUtils;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.RaftEvent;
+import org.apache.ratis.util.RaftEvents;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 /**
@@ -96,8 +109,11 @@ public class SegmentedRaftLog extends RaftLog {
   private final RaftServerImpl server;
   private final RaftStorage storage;
   private final RaftLogCache cache;
+  private final StateMachineDataCache stateMachineDataCache;
   private final RaftLogWorker fileLogWorker;
   private final long segmentMaxSize;
+  private final int segmentLoadThreads;
+  private final RaftServerMetrics metrics;
 
   public SegmentedRaftLog(RaftPeerId selfId, RaftServerImpl server,
       RaftStorage storage, long lastIndexInSnapshot, RaftProperties properties) {
@@ -114,9 +130,20 @@ public class SegmentedRaftLog extends RaftLog {
     this.server = server;
     this.storage = storage;
     segmentMaxSize = RaftServerConfigKeys.Log.segmentSizeMax(properties).getSize();
+    segmentLoadThreads = RaftServerConfigKeys.Log.segmentLoadThreads(properties);
     cache = new RaftLogCache(selfId, storage, properties);
-    this.fileLogWorker = new RaftLogWorker(selfId, stateMachine, submitUpdateCommitEvent, storage, properties);
+    stateMachineDataCache = new StateMachineDataCache(
+        RaftServerConfigKeys.Log.StateMachineData.cacheSize(properties).getSize());
+    // the metrics are shared by name; the server can be null in unit tests
+    this.metrics = new RaftServerMetrics(selfId, server != null? server.getGroupId(): null);
+    this.fileLogWorker = new RaftLogWorker(selfId, server != null? server.getGroupId(): null,
+        stateMachine, submitUpdateCommitEvent, storage, metrics, properties);
     lastCommitted.set(lastIndexInSnapshot);
+
+    metrics.addGauge(RaftServerMetrics.LOG_WORKER_QUEUE_SIZE, fileLogWorker::getQueueSize);
+    metrics.addGauge(RaftServerMetrics.LOG_CACHE_SIZE, cache::getCachedSize);
+    metrics.addGauge(RaftServerMetrics.STATEMACHINE_DATA_CACHE_SIZE, stateMachineDataCache::getSize);
+    metrics.addCacheHitRatioGauge();
   }
 
   @Override
@@ -143,17 +170,36 @@ public class SegmentedRaftLog extends RaftLog {
       Consumer<LogEntryProto> logConsumer) throws IOException {
     try(AutoCloseableLock writeLock = writeLock()) {
       List<LogPathAndIndex> paths = storage.getStorageDir().getLogSegmentFiles();
-      int i = 0;
-      for (LogPathAndIndex pi : paths) {
-        // During the initial loading, we can only confirm the committed
-        // index based on the snapshot. This means if a log segment is not kept
-        // in cache after the initial loading, later we have to load its content
-        // again for updating the state machine.
-        // TODO we should let raft peer persist its committed index periodically
-        // so that during the initial loading we can apply part of the log
-        // entries to the state machine
-        boolean keepEntryInCache = (paths.size() - i++) <= cache.getMaxCachedSegments();
-        cache.loadSegment(pi, keepEntryInCache, logConsumer);
+      final int numThreads = Math.min(segmentLoadThreads, paths.size());
+      final ExecutorService executor = numThreads > 1?
+          Executors.newFixedThreadPool(numThreads, Daemon::new): null;
+      try {
+        // The segments are read in parallel but they are added to the cache,
+        // and their entries are passed to the consumer, in order.
+        // At most numThreads segments are read ahead in order to bound the buffered entries.
+        final Deque<CompletableFuture<CheckedRunnable<IOException>>> loading = new ArrayDeque<>();
+        int i = 0;
+        for (LogPathAndIndex pi : paths) {
+          // During the initial loading, we can only confirm the committed
+          // index based on the snapshot. This means if a log segment is not kept
+          // in cache after the initial loading, later we have to load its content
+          // again for updating the state machine.
+          // TODO we should let raft peer persist its committed index periodically
+          // so that during the initial loading we can apply part of the log
+          // entries to the state machine
+          boolean keepEntryInCache = (paths.size() - i++) <= cache.getMaxCachedSegments();
+          loading.add(loadSegment(pi, keepEntryInCache, lastIndexInSnapshot, logConsumer, executor));
+          if (loading.size() > numThreads) {
+            addLoadedSegment(loading.poll());
+          }
+        }
+        while (!loading.isEmpty()) {
+          addLoadedSegment(loading.poll());
+        }
+      } finally {
+        if (executor != null) {
+          executor.shutdownNow();
+        }
       }
 
       // if the largest index is smaller than the last index in snapshot, we do
@@ -169,29 +215,85 @@ public class SegmentedRaftLog extends RaftLog {
     }
   }
 
-  @Override
-  public LogEntryProto get(long index) throws RaftLogIOException {
-    checkLogState();
-    LogSegment segment;
-    LogRecordWithEntry recordAndEntry;
-    try (AutoCloseableLock readLock = readLock()) {
-      segment = cache.getSegment(index);
-      if (segment == null) {
-        return null;
+  /**
+   * Load the segment of the given file.
+   * A closed segment with all its entries in the snapshot is not read;
+   * its records are loaded on the first access and its entries are not passed to the consumer
+   * since the configuration, if there is any, is already loaded from the snapshot.
+   * The other segments are fully read, by the executor if it is non-null.
+   *
+   * @return a future of a task to add the segment to the cache and to pass its entries to the consumer.
+   */
+  private CompletableFuture<CheckedRunnable<IOException>> loadSegment(LogPathAndIndex pi,
+      boolean keepEntryInCache, long lastIndexInSnapshot, Consumer<LogEntryProto> logConsumer,
+      ExecutorService executor) {
+    if (!pi.isOpen() && pi.endIndex <= lastIndexInSnapshot) {
+      return CompletableFuture.completedFuture(() -> cache.loadSegmentLazily(pi));
+    } else if (executor == null) {
+      return CompletableFuture.completedFuture(() -> cache.loadSegment(pi, keepEntryInCache, logConsumer));
+    }
+    return CompletableFuture.supplyAsync(() -> JavaUtils.supplyAndWrapAsCompletionException(
+        () -> readSegment(pi, keepEntryInCache, logConsumer)), executor);
+  }
+
+  /** Read the segment and buffer its entries for the consumer. */
+  private CheckedRunnable<IOException> readSegment(LogPathAndIndex pi, boolean keepEntryInCache,
+      Consumer<LogEntryProto> logConsumer) throws IOException {
+    final List<LogEntryProto> entries = logConsumer != null? new ArrayList<>(): null;
+    final LogSegment segment = cache.readSegment(pi, keepEntryInCache, entries != null? entries::add: null);
+    return () -> {
+      if (segment != null) {
+        cache.addSegment(segment);
       }
-      recordAndEntry = segment.getEntryWithoutLoading(index);
-      if (recordAndEntry == null) {
-        return null;
+      if (entries != null) {
+        entries.forEach(logConsumer);
       }
-      if (recordAndEntry.hasEntry()) {
-        return recordAndEntry.getEntry();
+    };
+  }
+
+  private static void addLoadedSegment(CompletableFuture<CheckedRunnable<IOException>> future)
+      throws IOException {
+    final CheckedRunnable<IOException> addSegment;
+    try {
+      addSegment = future.join();
+    } catch (CompletionException e) {
+      final Throwable cause = JavaUtils.unwrapCompletionException(e);
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
       }
+      throw IOUtils.asIOException(cause);
+    }
+    addSegment.run();
+  }
+
+  @Override
+  public LogEntryProto get(long index) throws RaftLogIOException {
+    checkLogState();
+    // the read is lock-free; see RaftLogCache and LogSegment
+    final LogSegment segment = cache.getSegment(index);
+    if (segment == null) {
+      return null;
+    }
+    // a cache hit does not create any object
+    final LogEntryProto cached = segment.getCachedEntry(index);
+    if (cached != null) {
+      metrics.onCacheHit();
+      return cached;
+    }
+    final LogRecord record = segment.getLogRecord(index);
+    if (record == null) {
+      return null;
     }
 
     // the entry is not in the segment's cache. Load the cache without holding
     // RaftLog's lock.
+    metrics.onCacheMiss();
     checkAndEvictCache();
-    return segment.loadCache(recordAndEntry.getRecord());
+    final RaftEvent event = RaftEvents.begin(RaftEvent.Type.CACHE_LOAD);
+    final LogEntryProto entry = segment.loadCache(record);
+    event.end(getSelfId(), server != null? server.getGroupId(): null,
+        segment.getStartIndex(), segment.getEndIndex(), segment.getTotalSize());
+    return entry;
   }
 
   @Override
@@ -201,6 +303,10 @@ public class SegmentedRaftLog extends RaftLog {
       return new EntryWithData(entry, null);
     }
 
+    final ByteString cached = stateMachineDataCache.get(entry);
+    if (cached != null) {
+      return new EntryWithData(entry, CompletableFuture.completedFuture(cached));
+    }
     try {
       return new EntryWithData(entry, server.getStateMachine().readStateMachineData(entry));
     } catch (Throwable e) {
@@ -222,13 +328,18 @@ public class SegmentedRaftLog extends RaftLog {
     }
   }
 
+  @Override
+  public void evictCache() {
+    try(AutoCloseableLock writeLock = writeLock()) {
+      cache.evictClosedSegmentsCache();
+    }
+  }
+
   @Override
   public TermIndex getTermIndex(long index) {
     checkLogState();
-    try(AutoCloseableLock readLock = readLock()) {
-      LogRecord record = cache.getLogRecord(index);
-      return record != null ? record.getTermIndex() : null;
-    }
+    final LogSegment segment = cache.getSegment(index);
+    return segment != null ? segment.getTermIndex(index) : null;
   }
 
   @Override
@@ -242,9 +353,7 @@ public class SegmentedRaftLog extends RaftLog {
   @Override
   public TermIndex getLastEntryTermIndex() {
     checkLogState();
-    try(AutoCloseableLock readLock = readLock()) {
-      return cache.getLastTermIndex();
-    }
+    return cache.getLastTermIndex();
   }
 
   /**
@@ -255,6 +364,7 @@ public class SegmentedRaftLog extends RaftLog {
   CompletableFuture<Long> truncateImpl(long index) {
     checkLogState();
     try(AutoCloseableLock writeLock = writeLock()) {
+      stateMachineDataCache.truncate(index);
       RaftLogCache.TruncationSegments ts = cache.truncate(index);
       if (ts != null) {
         Task task = fileLogWorker.truncate(ts);
@@ -271,34 +381,22 @@ public class SegmentedRaftLog extends RaftLog {
       LOG.trace("{}: appendEntry {}", server.getId(),
           ServerProtoUtils.toLogEntryString(entry));
     }
+    // strip the state machine data once; the stripped entry is what goes to the segment file
+    final LogEntryProto entryWithoutData = ServerProtoUtils.removeStateMachineData(entry);
+    final long entrySize = LogSegment.getEntrySizeWithoutStateMachineData(entryWithoutData);
     try(AutoCloseableLock writeLock = writeLock()) {
       validateLogEntry(entry);
-      final LogSegment currentOpenSegment = cache.getOpenSegment();
-      if (currentOpenSegment == null) {
-        cache.addOpenSegment(entry.getIndex());
-        fileLogWorker.startLogSegment(entry.getIndex());
-      } else if (isSegmentFull(currentOpenSegment, entry)) {
-        cache.rollOpenSegment(true);
-        fileLogWorker.rollLogSegment(currentOpenSegment);
-        checkAndEvictCache();
-      } else if (currentOpenSegment.numOfEntries() > 0 &&
-          currentOpenSegment.getLastTermIndex().getTerm() != entry.getTerm()) {
-        // the term changes
-        final long currentTerm = currentOpenSegment.getLastTermIndex().getTerm();
-        Preconditions.assertTrue(currentTerm < entry.getTerm(),
-            "open segment's term %s is larger than the new entry's term %s",
-            currentTerm, entry.getTerm());
-        cache.rollOpenSegment(true);
-        fileLogWorker.rollLogSegment(currentOpenSegment);
-        checkAndEvictCache();
-      }
+      prepareOpenSegment(entry, entrySize);
+      cacheStateMachineData(entry, entryWithoutData);
+      final ByteString serialized = serializeOnLeader(entry, entryWithoutData);
 
       // If the entry has state machine data, then the entry should be inserted
       // to statemachine first and then to the cache. Not following the order
       // will leave a spurious entry in the cache.
       CompletableFuture<Long> writeFuture =
-          fileLogWorker.writeLogEntry(entry).getFuture();
-      cache.appendEntry(entry);
+          fileLogWorker.writeLogEntry(entry, entryWithoutData, serialized).getFuture();
+      traceFlush(Collections.singletonList(entry), writeFuture);
+      cache.appendEntry(entry, entrySize, serialized);
       return writeFuture;
     } catch (Throwable throwable) {
       LOG.error(getSelfId() + "exception while appending entry with index:" +
@@ -307,18 +405,133 @@ public class SegmentedRaftLog extends RaftLog {
     }
   }
 
-  private boolean isSegmentFull(LogSegment segment, LogEntryProto entry) {
-    if (segment.getTotalSize() >= segmentMaxSize) {
+  /** Add a new open segment or roll the current open segment, if necessary, for appending the given entry. */
+  private void prepareOpenSegment(LogEntryProto entry, long entrySize) {
+    final LogSegment currentOpenSegment = cache.getOpenSegment();
+    if (currentOpenSegment == null) {
+      cache.addOpenSegment(entry.getIndex());
+      fileLogWorker.startLogSegment(entry.getIndex());
+    } else if (isSegmentFull(currentOpenSegment.getTotalSize(), entrySize)) {
+      cache.rollOpenSegment(true);
+      fileLogWorker.rollLogSegment(currentOpenSegment);
+      checkAndEvictCache();
+    } else if (currentOpenSegment.numOfEntries() > 0 &&
+        currentOpenSegment.getTerm(currentOpenSegment.getEndIndex()) != entry.getTerm()) {
+      // the term changes
+      final long currentTerm = currentOpenSegment.getTerm(currentOpenSegment.getEndIndex());
+      Preconditions.assertTrue(currentTerm < entry.getTerm(),
+          "open segment's term %s is larger than the new entry's term %s",
+          currentTerm, entry.getTerm());
+      cache.rollOpenSegment(true);
+      fileLogWorker.rollLogSegment(currentOpenSegment);
+      checkAndEvictCache();
+    }
+  }
+
+  private boolean isSegmentFull(long segmentSize, long entrySize) {
+    if (segmentSize >= segmentMaxSize) {
       return true;
     } else {
-      final long entrySize = LogSegment.getEntrySize(entry);
       // if entry size is greater than the max segment size, write it directly
       // into the current segment
       return entrySize <= segmentMaxSize &&
-          segment.getTotalSize() + entrySize > segmentMaxSize;
+          segmentSize + entrySize > segmentMaxSize;
+    }
+  }
+
+  /**
+   * Append the entries, starting from the given offset, as a single batch
+   * using one {@link RaftLogWorker} task.
+   * The batch ends at the first entry requiring a new segment.
+   *
+   * @return the offset of the first entry not in the batch.
+   */
+  private int appendBatch(LogEntryProto[] entries, int offset, List<CompletableFuture<Long>> futures) {
+    try {
+      final LogEntryProto first = entries[offset];
+      final List<LogEntryProto> batch = new ArrayList<>(entries.length - offset);
+      final List<LogEntryProto> batchWithoutData = new ArrayList<>(entries.length - offset);
+      final long[] sizes = new long[entries.length - offset];
+      long segmentSize = 0;
+
+      int i = offset;
+      for(; i < entries.length; i++) {
+        final LogEntryProto entry = entries[i];
+        final LogEntryProto entryWithoutData = ServerProtoUtils.removeStateMachineData(entry);
+        final long entrySize = LogSegment.getEntrySizeWithoutStateMachineData(entryWithoutData);
+        if (i == offset) {
+          validateLogEntry(entry);
+          prepareOpenSegment(entry, entrySize);
+          segmentSize = cache.getOpenSegment().getTotalSize();
+        } else if (entry.getTerm() != first.getTerm() || isSegmentFull(segmentSize, entrySize)) {
+          break;
+        }
+        batch.add(entry);
+        batchWithoutData.add(entryWithoutData);
+        sizes[i - offset] = entrySize;
+        segmentSize += entrySize;
+      }
+
+      // write to the state machine first and then to the cache; see appendEntryImpl
+      final CompletableFuture<Long> writeFuture = fileLogWorker.writeLogEntries(batch, batchWithoutData).getFuture();
+      traceFlush(batch, writeFuture);
+      futures.add(writeFuture);
+      for(int j = 0; j < batch.size(); j++) {
+        cache.appendEntry(batch.get(j), sizes[j]);
+      }
+      return i;
+    } catch (Throwable throwable) {
+      LOG.error(getSelfId() + "exception while appending a batch of entries starting from index:" +
+          entries[offset].getIndex(), throwable);
+      throw throwable;
+    }
+  }
+
+  private void traceFlush(List<LogEntryProto> entries, CompletableFuture<Long> writeFuture) {
+    final Tracer tracer = server != null? server.getTracer(): null;
+    if (tracer != null && tracer.isEnabled()) {
+      writeFuture.thenAccept(index -> entries.forEach(e -> tracer.record(e, TraceStage.LOG_FLUSH)));
     }
   }
 
+  /**
+   * In the leader, cache the state machine data of the given entry for the followers.
+   * The followers append entries through {@link #appendImpl(LogEntryProto...)}, which does not cache anything.
+   */
+  private void cacheStateMachineData(LogEntryProto entry, LogEntryProto entryWithoutData) {
+    // entryWithoutData != entry iff the entry has state machine data
+    if (entry == entryWithoutData || server == null || !stateMachineDataCache.isEnabled() || !server.isLeader()) {
+      return;
+    }
+    ServerProtoUtils.getStateMachineData(entry).ifPresent(data -> stateMachineDataCache.put(entry, data));
+  }
+
+  /**
+   * On the leader, serialize an entry without state machine data once
+   * so that the same bytes are written to the segment file and sent to all the followers.
+   *
+   * @return the serialized entry, or null if the entry is not serialized here.
+   */
+  private ByteString serializeOnLeader(LogEntryProto entry, LogEntryProto entryWithoutData) {
+    // entryWithoutData != entry iff the entry has state machine data,
+    // which is not written to the segment file; it is serialized lazily for the followers.
+    if (entry != entryWithoutData || server == null || !server.isLeader()) {
+      return null;
+    }
+    return entry.toByteString();
+  }
+
+  @Override
+  public void onFollowersMatched(long index) {
+    stateMachineDataCache.evict(index);
+  }
+
+  @Override
+  public ByteString getSerializedEntry(LogEntryProto entry) {
+    final ByteString cached = cache.getSerializedEntry(entry);
+    return cached != null? cached: super.getSerializedEntry(entry);
+  }
+
   @Override
   public List<CompletableFuture<Long>> appendImpl(LogEntryProto... entries) {
     checkLogState();
@@ -365,15 +578,12 @@ public class SegmentedRaftLog extends RaftLog {
         }
       }
 
-      final List<CompletableFuture<Long>> futures;
+      final List<CompletableFuture<Long>> futures = new ArrayList<>(2);
       if (truncateIndex != -1) {
-        futures = new ArrayList<>(entries.length - index + 1);
         futures.add(truncate(truncateIndex));
-      } else {
-        futures = new ArrayList<>(entries.length - index);
       }
-      for (int i = index; i < entries.length; i++) {
-        futures.add(appendEntry(entries[i]));
+      for (int i = index; i < entries.length; ) {
+        i = appendBatch(entries, i, futures);
       }
       return futures;
     }
@@ -421,6 +631,7 @@ public class SegmentedRaftLog extends RaftLog {
     try(AutoCloseableLock writeLock = writeLock()) {
       super.close();
       cache.clear();
+      stateMachineDataCache.clear();
     }
     fileLogWorker.close();
     storage.close();
@@ -429,4 +640,8 @@ public class SegmentedRaftLog extends RaftLog {
   RaftLogCache getRaftLogCache() {
     return cache;
   }
+
+  StateMachineDataCache getStateMachineDataCache() {
+    return stateMachineDataCache;
+  }
 }
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A leader-side cache of the state machine data of the log entries being replicated,
+ * so that the data is read from the state machine at most once, instead of once per follower.
+ *
+ * The data is put when the entries are appended by the leader.
+ * It is removed once all the followers have matched the entries,
+ * or, when the total size exceeds the limit, the oldest data is removed first.
+ * A cache miss falls back to {@link org.apache.ratis.statemachine.StateMachine#readStateMachineData}.
+ */
+class StateMachineDataCache {
+  private static class Data {
+    private final long term;
+    private final ByteString data;
+
+    Data(long term, ByteString data) {
+      this.term = term;
+      this.data = data;
+    }
+  }
+
+  private final long maxSize;
+  private final ConcurrentNavigableMap<Long, Data> map = new ConcurrentSkipListMap<>();
+  private final AtomicLong size = new AtomicLong();
+
+  StateMachineDataCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  boolean isEnabled() {
+    return maxSize > 0;
+  }
+
+  /** @return the total size of the cached data. */
+  long getSize() {
+    return size.get();
+  }
+
+  /** Put the state machine data of the given entry. */
+  void put(LogEntryProto entry, ByteString data) {
+    if (data.size() > maxSize) {
+      return;
+    }
+    final Data previous = map.put(entry.getIndex(), new Data(entry.getTerm(), data));
+    size.addAndGet(data.size() - (previous != null? previous.data.size(): 0));
+    // evict the oldest data
+    while (size.get() > maxSize) {
+      final Map.Entry<Long, Data> first = map.pollFirstEntry();
+      if (first == null) {
+        break;
+      }
+      size.addAndGet(-first.getValue().data.size());
+    }
+  }
+
+  /** @return the cached state machine data of the given entry, or null if it is not cached. */
+  ByteString get(LogEntryProto entry) {
+    final Data d = map.get(entry.getIndex());
+    return d != null && d.term == entry.getTerm()? d.data: null;
+  }
+
+  /** Remove the data of the entries with indices less than or equal to the given index. */
+  void evict(long index) {
+    for(Map.Entry<Long, Data> e; (e = map.firstEntry()) != null && e.getKey() <= index; ) {
+      if (map.remove(e.getKey(), e.getValue())) {
+        size.addAndGet(-e.getValue().data.size());
+      }
+    }
+  }
+
+  /** Remove the data of the entries with indices greater than or equal to the given index. */
+  void truncate(long index) {
+    for(Map.Entry<Long, Data> e; (e = map.lastEntry()) != null && e.getKey() >= index; ) {
+      if (map.remove(e.getKey(), e.getValue())) {
+        size.addAndGet(-e.getValue().data.size());
+      }
+    }
+  }
+
+  void clear() {
+    truncate(Long.MIN_VALUE);
+  }
+}
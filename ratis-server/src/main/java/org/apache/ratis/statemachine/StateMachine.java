@@ -17,6 +17,7 @@
  */
 package org.apache.ratis.statemachine;
 
+import org.apache.ratis.protocol.ClientId;
 import org.apache.ratis.protocol.Message;
 import org.apache.ratis.protocol.RaftClientRequest;
 import org.apache.ratis.protocol.RaftGroup;
@@ -29,12 +30,14 @@ import org.apache.ratis.server.storage.RaftStorage;
 import org.apache.ratis.proto.RaftProtos.RoleInfoProto;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.LifeCycle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
@@ -155,6 +158,25 @@ public interface StateMachine extends Closeable {
     return null;
   }
 
+  /**
+   * Create a stream for a client to write data to this state machine out-of-band,
+   * i.e. the data is sent by the client directly to this server
+   * instead of being relayed by the leader in the log entries.
+   * The data is written to the returned channel, which is closed at the end of the stream.
+   *
+   * The client then submits a small transaction referring to the stream,
+   * as defined by the application, so that this state machine can link
+   * the data already written when the transaction is applied.
+   *
+   * @param clientId the id of the client writing the stream.
+   * @param streamId the id of the stream, which is unique for the client.
+   * @return a future of the channel for writing the data.
+   */
+  default CompletableFuture<WritableByteChannel> stream(ClientId clientId, long streamId) {
+    return JavaUtils.completeExceptionally(new UnsupportedOperationException(
+        getClass().getSimpleName() + " does not support data streaming"));
+  }
+
   /**
    * This is called before the transaction passed from the StateMachine is appended to the raft log.
    * This method will be called from log append and having the same strict serial order that the
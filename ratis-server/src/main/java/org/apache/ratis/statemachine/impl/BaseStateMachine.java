@@ -110,14 +110,14 @@ public class BaseStateMachine implements StateMachine {
   protected boolean updateLastAppliedTermIndex(long term, long index) {
     final TermIndex newTI = TermIndex.newTermIndex(term, index);
     final TermIndex oldTI = lastAppliedTermIndex.getAndSet(newTI);
-    if (!newTI.equals(oldTI)) {
+    final boolean updated = !newTI.equals(oldTI);
+    if (updated) {
       LOG.trace("{}: update lastAppliedTermIndex from {} to {}", getId(), oldTI, newTI);
       if (oldTI != null) {
         Preconditions.assertTrue(newTI.compareTo(oldTI) >= 0,
             () -> getId() + ": Failed updateLastAppliedTermIndex: newTI = "
                 + newTI + " < oldTI = " + oldTI);
       }
-      return true;
     }
 
     synchronized (transactionFutures) {
@@ -125,7 +125,7 @@ public class BaseStateMachine implements StateMachine {
         transactionFutures.remove(i).complete(null);
       }
     }
-    return false;
+    return updated;
   }
 
   @Override
@@ -22,7 +22,12 @@ import org.apache.ratis.BaseTest;
 import org.apache.ratis.MiniRaftCluster;
 import org.apache.ratis.RaftTestUtil;
 import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
 import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.storage.RaftStorageTestUtils;
 import org.apache.ratis.util.ExitUtils;
 import org.apache.ratis.util.JavaUtils;
@@ -32,7 +37,9 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.slf4j.Logger;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
@@ -135,6 +142,126 @@ public abstract class LeaderElectionTests<CLUSTER extends MiniRaftCluster>
     Assert.assertEquals(leader.getId(), lastServerLeaderId);
   }
 
+  @Test
+  public void testTransferLeadership() throws Exception {
+    try(final MiniRaftCluster cluster = newCluster(3)) {
+      cluster.start();
+      final RaftServerImpl leader = waitForLeader(cluster);
+      final RaftPeerId target = cluster.getFollowers().get(0).getId();
+      Assert.assertFalse(leader.transferLeadership(leader.getId()));
+      transferLeadership(cluster, cluster.getGroupId(), target);
+
+      // the new leader serves the requests
+      try(final RaftClient client = cluster.createClient()) {
+        Assert.assertTrue(client.send(new RaftTestUtil.SimpleMessage("m")).isSuccess());
+      }
+      Assert.assertEquals(target, cluster.getLeader().getId());
+    }
+  }
+
+  static RaftServerImpl getLeader(MiniRaftCluster cluster, RaftGroupId groupId) {
+    return cluster.getServers().stream()
+        .map(s -> RaftServerTestUtil.getRaftServerImpl(s, groupId))
+        .filter(RaftServerImpl::isLeader)
+        .findAny().orElse(null);
+  }
+
+  static void transferLeadership(MiniRaftCluster cluster, RaftGroupId groupId, RaftPeerId target)
+      throws InterruptedException {
+    JavaUtils.attempt(() -> {
+      final RaftServerImpl leader = getLeader(cluster, groupId);
+      Assert.assertNotNull(leader);
+      if (!leader.getId().equals(target)) {
+        leader.transferLeadership(target);
+        TimeDuration.valueOf(leader.getMaxTimeoutMs(), TimeUnit.MILLISECONDS).sleep();
+        Assert.assertEquals(target, getLeader(cluster, groupId).getId());
+      }
+    }, 10, 100, "transferLeadership to " + target + " for " + groupId, LOG);
+  }
+
+  @Test
+  public void testLeaderBalancer() throws Exception {
+    final int numGroups = 3;
+    try(final MiniRaftCluster cluster = newCluster(3)) {
+      cluster.start();
+      waitForLeader(cluster);
+
+      // add more groups to the same servers
+      final List<RaftGroupId> groupIds = new ArrayList<>();
+      groupIds.add(cluster.getGroupId());
+      for(int i = 1; i < numGroups; i++) {
+        final RaftGroup newGroup = RaftGroup.valueOf(RaftGroupId.randomId(), cluster.getPeers());
+        try(final RaftClient client = cluster.createClient(newGroup)) {
+          for(RaftPeer p : newGroup.getPeers()) {
+            client.groupAdd(newGroup, p.getId());
+          }
+        }
+        groupIds.add(newGroup.getGroupId());
+      }
+
+      // move all the leaders to the same server
+      final RaftServerProxy hot = cluster.getServers().iterator().next();
+      for(RaftGroupId groupId : groupIds) {
+        transferLeadership(cluster, groupId, hot.getId());
+        // wait for the leader to be ready
+        final RaftGroup group = RaftGroup.valueOf(groupId, cluster.getPeers());
+        try(final RaftClient client = cluster.createClient(hot.getId(), group)) {
+          Assert.assertTrue(client.send(new RaftTestUtil.SimpleMessage("m")).isSuccess());
+        }
+      }
+
+      final LeaderBalancer balancer = new LeaderBalancer(hot, TimeDuration.valueOf(1, TimeUnit.SECONDS));
+      Assert.assertEquals(numGroups - 1, balancer.balance());
+      // each server leads one group
+      JavaUtils.attempt(() -> {
+        for(RaftServerProxy s : cluster.getServers()) {
+          Assert.assertEquals(1, s.getImpls().stream().filter(RaftServerImpl::isLeader).count());
+        }
+      }, 10, 500, "balanced", LOG);
+      // already balanced
+      Assert.assertEquals(0, balancer.balance());
+    }
+  }
+
+  @Test
+  public void testHibernation() throws Exception {
+    final RaftProperties properties = new RaftProperties();
+    RaftServerConfigKeys.Hibernation.setEnabled(properties, true);
+    RaftServerConfigKeys.Hibernation.setIdleTime(properties, TimeDuration.valueOf(1, TimeUnit.SECONDS));
+    try(final MiniRaftCluster cluster = getFactory().newCluster(3, properties);
+        final RaftClient client = cluster.createClient()) {
+      cluster.start();
+      final RaftServerImpl leader = waitForLeader(cluster);
+      final long term = leader.getState().getCurrentTerm();
+      Assert.assertTrue(client.send(new RaftTestUtil.SimpleMessage("m0")).isSuccess());
+
+      assertHibernating(cluster, leader);
+      // no elections while hibernating
+      TimeDuration.valueOf(3 * leader.getMaxTimeoutMs(), TimeUnit.MILLISECONDS).sleep();
+      Assert.assertSame(leader, cluster.getLeader());
+      Assert.assertEquals(term, leader.getState().getCurrentTerm());
+
+      // a new request wakes up the group
+      Assert.assertTrue(client.send(new RaftTestUtil.SimpleMessage("m1")).isSuccess());
+      Assert.assertFalse(leader.getRole().getLeaderState().get().isHibernating());
+
+      // the leader is gone while the group is hibernating
+      assertHibernating(cluster, leader);
+      cluster.killServer(leader.getId());
+      Assert.assertTrue(client.send(new RaftTestUtil.SimpleMessage("m2")).isSuccess());
+      Assert.assertNotEquals(leader.getId(), waitForLeader(cluster).getId());
+    }
+  }
+
+  static void assertHibernating(MiniRaftCluster cluster, RaftServerImpl leader) throws InterruptedException {
+    JavaUtils.attempt(() -> {
+      Assert.assertTrue(leader.getRole().getLeaderState().get().isHibernating());
+      for(RaftServerImpl f : cluster.getFollowers()) {
+        Assert.assertTrue(f.getRole().getFollowerState().get().isHibernating());
+      }
+    }, 20, 500, "hibernating", LOG);
+  }
+
   static RaftPeerId getLeader(ServerState state) {
     final RaftPeerId leader = state.getLeaderId();
     if (leader == null) {
@@ -79,6 +79,10 @@ public class RaftServerTestUtil {
     Assert.assertEquals(peers.length, numIncluded + deadIncluded);
   }
 
+  public static int getMinTimeoutMs(RaftServerImpl server) {
+    return server.getMinTimeoutMs();
+  }
+
   public static long getRetryCacheSize(RaftServerImpl server) {
     return server.getRetryCache().size();
   }
@@ -17,8 +17,11 @@
  */
 package org.apache.ratis.server.storage;
 
+import com.codahale.metrics.MetricRegistry;
 import org.apache.log4j.Level;
+import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.impl.RaftServerMetrics;
 import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.server.protocol.TermIndex;
 import org.apache.ratis.proto.RaftProtos;
@@ -32,8 +35,8 @@ public interface RaftStorageTestUtils {
     LogUtils.setLogLevel(RaftLogWorker.LOG, level);
   }
 
-  static String getLogFlushTimeMetric(RaftPeerId serverId) {
-    return RaftLogWorker.class.getName() + "." + serverId + ".flush-time";
+  static String getLogFlushTimeMetric(RaftPeerId serverId, RaftGroupId groupId) {
+    return MetricRegistry.name(RaftServerMetrics.getPrefix(serverId, groupId), RaftServerMetrics.LOG_FLUSH);
   }
 
   static void printLog(RaftLog log, Consumer<String> println) {
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.grpc.TestHeartbeatChannelWithGrpc.DelayAppendEntries;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.impl.RaftServerTestUtil;
+import org.apache.ratis.util.CodeInjectionForTesting;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestAdaptiveElectionTimeoutWithGrpc extends BaseTest implements MiniRaftClusterWithGrpc.FactoryGet {
+  static final int NUM_SERVERS = 3;
+  /** The adaptive min timeout, which is also the floor timeout since it is less than the configured min. */
+  static final int FLOOR_MS = 300;
+
+  static void assertFollowersMinTimeout(MiniRaftClusterWithGrpc cluster) {
+    cluster.getFollowers().forEach(f -> Assert.assertEquals(f.getId().toString(),
+        FLOOR_MS, RaftServerTestUtil.getMinTimeoutMs(f)));
+  }
+
+  static void assertTerm(MiniRaftClusterWithGrpc cluster, RaftServerImpl leader, long term) {
+    Assert.assertTrue(leader.isLeader());
+    cluster.getServerAliveStream().forEach(s -> Assert.assertEquals(s.getId().toString(),
+        term, s.getState().getCurrentTerm()));
+  }
+
+  @Test
+  public void testAdaptiveElectionTimeout() throws Exception {
+    final RaftProperties properties = new RaftProperties();
+    RaftServerConfigKeys.Rpc.setTimeoutMin(properties, TimeDuration.valueOf(1, TimeUnit.SECONDS));
+    RaftServerConfigKeys.Rpc.setTimeoutMax(properties, TimeDuration.valueOf(2, TimeUnit.SECONDS));
+    RaftServerConfigKeys.Rpc.setTimeoutAdaptiveEnabled(properties, true);
+    RaftServerConfigKeys.Rpc.setTimeoutAdaptiveRttMultiplier(properties, 2);
+    RaftServerConfigKeys.Rpc.setTimeoutAdaptiveMin(properties, TimeDuration.valueOf(FLOOR_MS, TimeUnit.MILLISECONDS));
+    RaftServerConfigKeys.Rpc.setTimeoutAdaptiveMax(properties, TimeDuration.valueOf(10, TimeUnit.SECONDS));
+    // the appendEntries round trip time times the multiplier is well above the floor
+    final DelayAppendEntries delay = new DelayAppendEntries(4 * FLOOR_MS);
+    CodeInjectionForTesting.put(RaftServerImpl.APPEND_ENTRIES, delay);
+
+    final MiniRaftClusterWithGrpc cluster = getFactory().newCluster(NUM_SERVERS, properties);
+    try {
+      cluster.start();
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+      final long term = leader.getState().getCurrentTerm();
+
+      // the followers adopt the timeout recommended from the heartbeat round trip time
+      JavaUtils.attempt(() -> assertFollowersMinTimeout(cluster), 50, 100, "adopt the recommended timeout", LOG);
+
+      // the slow appendEntries do not stretch the timeout
+      try (RaftClient client = cluster.createClient(leader.getId())) {
+        delay.enabled.set(true);
+        for (int i = 0; i < 3; i++) {
+          Assert.assertTrue(client.send(new RaftTestUtil.SimpleMessage("m" + i)).isSuccess());
+        }
+      } finally {
+        delay.enabled.set(false);
+      }
+      assertFollowersMinTimeout(cluster);
+      assertTerm(cluster, leader, term);
+
+      // the first heartbeats of a new leader arrive within the floor timeout of the followers,
+      // so that there is no further election
+      cluster.killServer(leader.getId());
+      final RaftServerImpl newLeader = RaftTestUtil.waitForLeader(cluster);
+      final long newTerm = newLeader.getState().getCurrentTerm();
+      Thread.sleep(10 * FLOOR_MS);
+      assertTerm(cluster, newLeader, newTerm);
+      assertFollowersMinTimeout(cluster);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.grpc.client.GrpcDataStreamClient;
+import org.apache.ratis.grpc.client.GrpcDataStreamOutput;
+import org.apache.ratis.proto.RaftProtos.DataStreamHeaderProto;
+import org.apache.ratis.proto.RaftProtos.DataStreamReplyProto;
+import org.apache.ratis.proto.RaftProtos.DataStreamRequestProto;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.proto.grpc.DataStreamServiceGrpc;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.statemachine.TransactionContext;
+import org.apache.ratis.statemachine.impl.BaseStateMachine;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.thirdparty.io.grpc.ManagedChannel;
+import org.apache.ratis.thirdparty.io.grpc.Status;
+import org.apache.ratis.thirdparty.io.grpc.netty.NegotiationType;
+import org.apache.ratis.thirdparty.io.grpc.netty.NettyChannelBuilder;
+import org.apache.ratis.thirdparty.io.grpc.stub.StreamObserver;
+import org.apache.ratis.util.IOUtils;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.ProtoUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class TestDataStreamWithGrpc extends BaseTest implements MiniRaftClusterWithGrpc.FactoryGet {
+  /** Write the streams to memory and link them when the transactions referring to them are applied. */
+  public static class StreamStateMachine extends BaseStateMachine {
+    private final Map<String, ByteArrayOutputStream> streams = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> linked = new ConcurrentHashMap<>();
+
+    static String toKey(ClientId clientId, long streamId) {
+      return clientId + ":" + streamId;
+    }
+
+    @Override
+    public CompletableFuture<WritableByteChannel> stream(ClientId clientId, long streamId) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      streams.put(toKey(clientId, streamId), out);
+      return CompletableFuture.completedFuture(Channels.newChannel(out));
+    }
+
+    @Override
+    public CompletableFuture<Message> applyTransaction(TransactionContext trx) {
+      final LogEntryProto entry = trx.getLogEntry();
+      updateLastAppliedTermIndex(entry.getTerm(), entry.getIndex());
+      final String key = entry.getStateMachineLogEntry().getLogData().toStringUtf8();
+      final ByteArrayOutputStream out = streams.remove(key);
+      if (out == null) {
+        return CompletableFuture.completedFuture(Message.valueOf("-1"));
+      }
+      final byte[] data = out.toByteArray();
+      linked.put(key, data);
+      return CompletableFuture.completedFuture(Message.valueOf(String.valueOf(data.length)));
+    }
+  }
+
+  /** Write slowly in the given peer so that the stream forwarded to it is pushed back. */
+  public static class SlowStreamStateMachine extends StreamStateMachine {
+    static volatile RaftPeerId slowPeer;
+
+    @Override
+    public CompletableFuture<WritableByteChannel> stream(ClientId clientId, long streamId) {
+      final boolean slow = getId().equals(slowPeer);
+      return super.stream(clientId, streamId).thenApply(channel -> !slow? channel : new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+          try {
+            TimeUnit.MILLISECONDS.sleep(20);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw IOUtils.toInterruptedIOException("Interrupted write", e);
+          }
+          return channel.write(src);
+        }
+
+        @Override
+        public boolean isOpen() {
+          return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+          channel.close();
+        }
+      });
+    }
+  }
+
+  static final int NUM_SERVERS = 3;
+
+  @Test
+  public void testParallel() throws Exception {
+    runTestDataStream(GrpcDataStreamClient.Type.PARALLEL);
+  }
+
+  @Test
+  public void testChain() throws Exception {
+    runTestDataStream(GrpcDataStreamClient.Type.CHAIN);
+  }
+
+  /** The last data are forwarded while the downstream is slow, i.e. they are still pending at the half-close. */
+  @Test
+  public void testChainWithSlowDownstream() throws Exception {
+    runTestDataStream(GrpcDataStreamClient.Type.CHAIN, SlowStreamStateMachine.class);
+  }
+
+  void runTestDataStream(GrpcDataStreamClient.Type type) throws Exception {
+    runTestDataStream(type, StreamStateMachine.class);
+  }
+
+  void runTestDataStream(GrpcDataStreamClient.Type type, Class<? extends StreamStateMachine> stateMachineClass)
+      throws Exception {
+    final RaftProperties properties = new RaftProperties();
+    properties.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY, stateMachineClass, StateMachine.class);
+    final MiniRaftClusterWithGrpc cluster = getFactory().newCluster(NUM_SERVERS, properties);
+    try {
+      cluster.start();
+      RaftTestUtil.waitForLeader(cluster);
+      // the second peer in the chain
+      SlowStreamStateMachine.slowPeer = new ArrayList<>(cluster.getGroup().getPeers()).get(1).getId();
+
+      final ClientId clientId = ClientId.randomId();
+      final byte[] data = new byte[3 << 20];
+      ThreadLocalRandom.current().nextBytes(data);
+      final long streamId = 1;
+      try (GrpcDataStreamClient streamClient = new GrpcDataStreamClient(clientId, properties);
+           RaftClient client = cluster.createClient()) {
+        final GrpcDataStreamClient.DataStream stream = streamClient.stream(cluster.getGroup(), streamId, type);
+        for (int offset = 0; offset < data.length; ) {
+          final int n = Math.min(data.length - offset, ThreadLocalRandom.current().nextInt(1 << 16) + 1);
+          stream.write(ByteBuffer.wrap(data, offset, n));
+          offset += n;
+        }
+        final List<DataStreamReplyProto> replies = stream.closeAsync().get();
+        Assert.assertEquals(type == GrpcDataStreamClient.Type.CHAIN? 1: NUM_SERVERS, replies.size());
+        for (DataStreamReplyProto r : replies) {
+          Assert.assertEquals(streamId, r.getStreamId());
+          Assert.assertEquals(data.length, r.getBytesWritten());
+        }
+
+        // commit a small transaction referring to the stream
+        final String key = StreamStateMachine.toKey(clientId, streamId);
+        final RaftClientReply reply = client.send(Message.valueOf(key));
+        Assert.assertTrue(reply.isSuccess());
+        Assert.assertEquals(String.valueOf(data.length), reply.getMessage().getContent().toStringUtf8());
+
+        // all the servers link the data
+        JavaUtils.attempt(() -> {
+          cluster.getServerAliveStream()
+              .map(s -> (StreamStateMachine) s.getStateMachine())
+              .forEach(sm -> Assert.assertArrayEquals(data, sm.linked.get(key)));
+        }, 100, TimeDuration.valueOf(100, TimeUnit.MILLISECONDS), "linked", LOG);
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Test
+  public void testInvalidStreams() throws Exception {
+    final RaftProperties properties = new RaftProperties();
+    properties.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY, StreamStateMachine.class, StateMachine.class);
+    final MiniRaftClusterWithGrpc cluster = getFactory().newCluster(NUM_SERVERS, properties);
+    try {
+      cluster.start();
+      RaftTestUtil.waitForLeader(cluster);
+      final RaftPeer peer = cluster.getGroup().getPeers().iterator().next();
+
+      // the first request is not a header
+      final ManagedChannel channel = NettyChannelBuilder.forTarget(peer.getAddress())
+          .negotiationType(NegotiationType.PLAINTEXT)
+          .build();
+      try {
+        final CompletableFuture<Throwable> error = new CompletableFuture<>();
+        final StreamObserver<DataStreamRequestProto> requests = DataStreamServiceGrpc.newStub(channel).stream(
+            new StreamObserver<DataStreamReplyProto>() {
+              @Override
+              public void onNext(DataStreamReplyProto reply) {
+                error.completeExceptionally(new AssertionError("unexpected reply " + reply));
+              }
+
+              @Override
+              public void onError(Throwable t) {
+                error.complete(t);
+              }
+
+              @Override
+              public void onCompleted() {
+                error.completeExceptionally(new AssertionError("unexpected onCompleted"));
+              }
+            });
+        requests.onNext(DataStreamRequestProto.newBuilder().setData(ByteString.copyFromUtf8("data")).build());
+        Assert.assertEquals(Status.Code.INVALID_ARGUMENT,
+            Status.fromThrowable(error.get(10, TimeUnit.SECONDS)).getCode());
+      } finally {
+        channel.shutdownNow();
+      }
+
+      // the chain has a peer not in the group
+      final RaftPeer unknown = new RaftPeer(RaftPeerId.valueOf("unknown"), "localhost:1");
+      try (GrpcDataStreamClient streamClient = new GrpcDataStreamClient(ClientId.randomId(), properties)) {
+        final GrpcDataStreamOutput out = streamClient.newOutput(peer, DataStreamHeaderProto.newBuilder()
+            .setClientId(ClientId.randomId().toByteString())
+            .setRaftGroupId(ProtoUtils.toRaftGroupIdProtoBuilder(cluster.getGroupId()))
+            .setStreamId(1)
+            .addChain(ProtoUtils.toRaftPeerProto(unknown))
+            .build());
+        try {
+          out.closeAsync().get(10, TimeUnit.SECONDS);
+          Assert.fail("the stream is expected to fail");
+        } catch (ExecutionException e) {
+          Assert.assertEquals(Status.Code.INVALID_ARGUMENT, Status.fromThrowable(e.getCause()).getCode());
+        }
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
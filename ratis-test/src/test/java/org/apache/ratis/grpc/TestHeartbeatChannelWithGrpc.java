@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.util.CodeInjectionForTesting;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestHeartbeatChannelWithGrpc extends BaseTest implements MiniRaftClusterWithGrpc.FactoryGet {
+  static final int NUM_SERVERS = 3;
+
+  /** Delay the followers in handling the appendEntries requests with entries, but not the heartbeats. */
+  static class DelayAppendEntries implements CodeInjectionForTesting.Code {
+    final AtomicBoolean enabled = new AtomicBoolean();
+    private final long delayMs;
+
+    DelayAppendEntries(long delayMs) {
+      this.delayMs = delayMs;
+    }
+
+    @Override
+    public boolean execute(Object localId, Object remoteId, Object... args) {
+      final LogEntryProto[] entries = (LogEntryProto[]) args[args.length - 1];
+      if (!enabled.get() || entries.length == 0) {
+        return false;
+      }
+      LOG.info("{}: delay appendEntries from {} for {}ms", localId, remoteId, delayMs);
+      try {
+        Thread.sleep(delayMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return true;
+    }
+  }
+
+  @Test
+  public void testNoElectionWhenAppendEntriesAreDelayed() throws Exception {
+    final RaftProperties properties = new RaftProperties();
+    // a delay much longer than the election timeout
+    final long delayMs = 4 * RaftServerConfigKeys.Rpc.timeoutMax(properties).toLong(TimeUnit.MILLISECONDS);
+    final DelayAppendEntries delay = new DelayAppendEntries(delayMs);
+    CodeInjectionForTesting.put(RaftServerImpl.APPEND_ENTRIES, delay);
+
+    final MiniRaftClusterWithGrpc cluster = getFactory().newCluster(NUM_SERVERS, properties);
+    try {
+      cluster.start();
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+      final long term = leader.getState().getCurrentTerm();
+
+      try (RaftClient client = cluster.createClient(leader.getId())) {
+        delay.enabled.set(true);
+        final RaftClientReply reply = client.send(new RaftTestUtil.SimpleMessage("m"));
+        Assert.assertTrue(reply.isSuccess());
+      } finally {
+        delay.enabled.set(false);
+      }
+
+      // the followers have received the heartbeats over the heartbeat channel, so there is no election
+      Assert.assertTrue(leader.isLeader());
+      cluster.getServerAliveStream().forEach(s -> Assert.assertEquals(s.getId().toString(),
+          term, s.getState().getCurrentTerm()));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
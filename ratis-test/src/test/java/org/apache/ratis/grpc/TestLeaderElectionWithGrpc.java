@@ -17,10 +17,22 @@
  */
 package org.apache.ratis.grpc;
 
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.impl.BlockRequestHandlingInjection;
 import org.apache.ratis.server.impl.LeaderElectionTests;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.util.CodeInjectionForTesting;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class TestLeaderElectionWithGrpc
     extends LeaderElectionTests<MiniRaftClusterWithGrpc>
     implements MiniRaftClusterWithGrpc.FactoryGet {
@@ -33,4 +45,49 @@ public class TestLeaderElectionWithGrpc
     MiniRaftClusterWithGrpc.sendServerRequestInjection.clear();
     BlockRequestHandlingInjection.getInstance().unblockAll();
   }
+
+  /** Drop the first hibernate request received by a follower. */
+  static class DropHibernateRequest implements CodeInjectionForTesting.Code {
+    private volatile Object followerId;
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public boolean execute(Object localId, Object remoteId, Object... args) {
+      if (!localId.equals(followerId) || count.getAndIncrement() > 0) {
+        return false;
+      }
+      LOG.info("{}: drop the hibernate request from {}", localId, remoteId);
+      throw new IllegalStateException(localId + ": drop the hibernate request from " + remoteId);
+    }
+  }
+
+  /**
+   * The leader must keep sending heartbeats to a follower until the follower has acknowledged a hibernate request.
+   * Otherwise, the follower may start an election when the hibernate request is dropped.
+   */
+  @Test
+  public void testHibernateRequestDropped() throws Exception {
+    final RaftProperties properties = new RaftProperties();
+    RaftServerConfigKeys.Hibernation.setEnabled(properties, true);
+    RaftServerConfigKeys.Hibernation.setIdleTime(properties, TimeDuration.valueOf(1, TimeUnit.SECONDS));
+    final DropHibernateRequest drop = new DropHibernateRequest();
+    CodeInjectionForTesting.put(RaftServerImpl.HIBERNATE, drop);
+
+    try(final MiniRaftClusterWithGrpc cluster = getFactory().newCluster(3, properties);
+        final RaftClient client = cluster.createClient()) {
+      cluster.start();
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+      final long term = leader.getState().getCurrentTerm();
+      drop.followerId = cluster.getFollowers().get(0).getId();
+      Assert.assertTrue(client.send(new RaftTestUtil.SimpleMessage("m0")).isSuccess());
+
+      // the first hibernate request is dropped and then the leader sends another one
+      JavaUtils.attempt(() -> drop.count.get() > 1, 20, TimeDuration.valueOf(500, TimeUnit.MILLISECONDS),
+          "resend the hibernate request", LOG);
+      RaftServerConfigKeys.Rpc.timeoutMax(properties).apply(t -> 3 * t).sleep();
+      Assert.assertSame(leader, cluster.getLeader());
+      cluster.getServerAliveStream().forEach(s -> Assert.assertEquals(s.getId().toString(),
+          term, s.getState().getCurrentTerm()));
+    }
+  }
 }
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.RaftTestUtil.SimpleMessage;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.client.RaftMultiGroupClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.GroupMismatchException;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.retry.RetryPolicy;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestRaftMultiGroupClientWithGrpc extends BaseTest implements MiniRaftClusterWithGrpc.FactoryGet {
+  static final int NUM_SERVERS = 3;
+  static final int NUM_GROUPS = 3;
+  static final int NUM_MESSAGES = 10;
+
+  @Test
+  public void testMultiGroupClient() throws Exception {
+    final MiniRaftClusterWithGrpc cluster = getFactory().newCluster(NUM_SERVERS, new RaftProperties());
+    try {
+      cluster.start();
+      RaftTestUtil.waitForLeader(cluster);
+      runTestMultiGroupClient(cluster);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  void runTestMultiGroupClient(MiniRaftClusterWithGrpc cluster) throws Exception {
+    // count the retries
+    final AtomicInteger numRetries = new AtomicInteger();
+    final RetryPolicy retryPolicy = new RetryPolicy() {
+      @Override
+      public boolean shouldRetry(int attemptCount) {
+        numRetries.incrementAndGet();
+        return true;
+      }
+
+      @Override
+      public TimeDuration getSleepTime() {
+        return TimeDuration.valueOf(100, TimeUnit.MILLISECONDS);
+      }
+    };
+    try (RaftMultiGroupClient multiClient = RaftMultiGroupClient.newBuilder()
+        .setProperties(cluster.getProperties())
+        .setRetryPolicy(retryPolicy)
+        .build()) {
+      // add the groups to the same servers
+      final List<RaftGroup> groups = new ArrayList<>();
+      groups.add(cluster.getGroup());
+      for (int i = 1; i < NUM_GROUPS; i++) {
+        final RaftGroup newGroup = RaftGroup.valueOf(RaftGroupId.randomId(), cluster.getPeers());
+        final RaftClient client = multiClient.addGroup(newGroup);
+        for (RaftPeer p : newGroup.getPeers()) {
+          client.groupAdd(newGroup, p.getId());
+        }
+        groups.add(newGroup);
+      }
+      for (RaftGroup g : groups) {
+        final RaftClient client = multiClient.addGroup(g);
+        Assert.assertSame(client, multiClient.getClient(g.getGroupId()));
+        // all the groups share the same rpc
+        Assert.assertSame(multiClient.getClientRpc(), client.getClientRpc());
+      }
+      Assert.assertEquals(NUM_GROUPS, multiClient.getGroupIds().size());
+
+      // wait for the leaders and let the clients find them, which may retry
+      for (RaftGroup g : groups) {
+        RaftTestUtil.waitForLeader(cluster, g.getGroupId());
+        Assert.assertTrue(multiClient.send(g.getGroupId(), new SimpleMessage("find-leader")).isSuccess());
+      }
+      numRetries.set(0);
+
+      // route the interleaved async requests to the groups; the groups have independent sequence numbers
+      final List<CompletableFuture<RaftClientReply>> futures = new ArrayList<>();
+      for (int i = 0; i < NUM_MESSAGES; i++) {
+        for (RaftGroup g : groups) {
+          futures.add(multiClient.sendAsync(g.getGroupId(), new SimpleMessage(g.getGroupId() + "-m" + i)));
+        }
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        final RaftClientReply reply = futures.get(i).get();
+        Assert.assertTrue(reply.isSuccess());
+        Assert.assertEquals(groups.get(i % NUM_GROUPS).getGroupId(), reply.getRaftGroupId());
+      }
+      Assert.assertEquals(0, numRetries.get());
+      for (RaftGroup g : groups) {
+        Assert.assertTrue(multiClient.send(g.getGroupId(), new SimpleMessage("sync")).isSuccess());
+      }
+
+      // an unknown group
+      final RaftGroupId unknown = RaftGroupId.randomId();
+      testFailureCase("send", () -> multiClient.send(unknown, new SimpleMessage("m")),
+          GroupMismatchException.class);
+      testFailureCaseAsync("sendAsync", () -> multiClient.sendAsync(unknown, new SimpleMessage("m")),
+          GroupMismatchException.class);
+
+      // removing a group does not close the shared rpc
+      Assert.assertNotNull(multiClient.removeGroup(groups.get(1).getGroupId()));
+      testFailureCase("removed", () -> multiClient.getClient(groups.get(1).getGroupId()),
+          GroupMismatchException.class);
+      Assert.assertTrue(multiClient.send(groups.get(0).getGroupId(), new SimpleMessage("after-remove")).isSuccess());
+    }
+  }
+}
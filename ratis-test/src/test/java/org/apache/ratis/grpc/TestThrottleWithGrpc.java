@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.SizeInBytes;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class TestThrottleWithGrpc extends BaseTest implements MiniRaftClusterWithGrpc.FactoryGet {
+  static final int NUM_SERVERS = 3;
+  static final int NUM_MESSAGES = 20;
+  static final int MESSAGE_SIZE = 1024;
+
+  /**
+   * A throttled catch-up takes several election timeouts.
+   * Since the throttle defers the catch-up entries without blocking the heartbeats, there is no election.
+   */
+  @Test
+  public void testNoElectionWhenCatchupIsThrottled() throws Exception {
+    final RaftProperties properties = new RaftProperties();
+    RaftServerConfigKeys.Rpc.setTimeoutMin(properties, TimeDuration.valueOf(500, TimeUnit.MILLISECONDS));
+    RaftServerConfigKeys.Rpc.setTimeoutMax(properties, TimeDuration.valueOf(1, TimeUnit.SECONDS));
+    // the catch-up of the messages takes more than twice of the max election timeout
+    RaftServerConfigKeys.Throttle.setServerBandwidth(properties, SizeInBytes.valueOf(8 << 10));
+    RaftServerConfigKeys.Throttle.setCatchupLag(properties, 0);
+
+    final MiniRaftClusterWithGrpc cluster = getFactory().newCluster(NUM_SERVERS, properties);
+    try {
+      cluster.start();
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+      final long term = leader.getState().getCurrentTerm();
+      final RaftPeerId followerId = cluster.getFollowers().get(0).getId();
+
+      // the follower misses the messages
+      cluster.killServer(followerId);
+      final char[] content = new char[MESSAGE_SIZE];
+      Arrays.fill(content, 'x');
+      try (RaftClient client = cluster.createClient(leader.getId())) {
+        for (int i = 0; i < NUM_MESSAGES; i++) {
+          final RaftClientReply reply = client.send(new RaftTestUtil.SimpleMessage(new String(content)));
+          Assert.assertTrue(reply.isSuccess());
+        }
+      }
+      final long nextIndex = leader.getState().getLog().getNextIndex();
+
+      // the follower catches up under the throttle
+      final RaftServerImpl follower = cluster.restartServer(followerId, false);
+      JavaUtils.attempt(() -> Assert.assertEquals(nextIndex, follower.getState().getLog().getNextIndex()),
+          100, TimeDuration.valueOf(200, TimeUnit.MILLISECONDS), "catch up " + followerId, LOG);
+
+      Assert.assertTrue(leader.isLeader());
+      cluster.getServerAliveStream().forEach(s -> Assert.assertEquals(s.getId().toString(),
+          term, s.getState().getCurrentTerm()));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.RaftConfigKeys;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.trace.RingBufferTraceSink;
+import org.apache.ratis.trace.TraceEvent;
+import org.apache.ratis.trace.TraceStage;
+import org.apache.ratis.trace.Tracer;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class TestTracingWithGrpc extends BaseTest implements MiniRaftClusterWithGrpc.FactoryGet {
+  static final int NUM_SERVERS = 3;
+  static final int SAMPLING_PERIOD = 2;
+
+  @Test
+  public void testRingBuffer() throws Exception {
+    final RaftProperties properties = new RaftProperties();
+    RaftConfigKeys.Trace.setSamplingPeriod(properties, SAMPLING_PERIOD);
+    RaftConfigKeys.Trace.setRingBufferSize(properties, 4);
+
+    try (Tracer tracer = Tracer.newInstance("testRingBuffer", properties)) {
+      final RingBufferTraceSink sink = (RingBufferTraceSink) tracer.getSink();
+      final ClientId clientId = ClientId.randomId();
+      for(long callId = 0; callId < 10; callId++) {
+        Assert.assertEquals(callId % SAMPLING_PERIOD == 0, tracer.isSampled(callId));
+        tracer.record(clientId, callId, TraceStage.CLIENT_SUBMIT);
+      }
+      // only the sampled calls 0, 2, 4, 6, 8 are recorded and the oldest one is overwritten
+      final List<Long> callIds = sink.getTraceEvents().stream()
+          .map(TraceEvent::getCallId)
+          .collect(Collectors.toList());
+      Assert.assertEquals(4, sink.getCapacity());
+      Assert.assertEquals("" + callIds, 4, callIds.size());
+      for(int i = 0; i < callIds.size(); i++) {
+        Assert.assertEquals(2L * (i + 1), callIds.get(i).longValue());
+      }
+      Assert.assertEquals(1, sink.getTrace(4).size());
+      Assert.assertTrue(sink.getTrace(3).isEmpty());
+
+      // the sink is queryable by JMX
+      final ObjectName name = new ObjectName("Ratis:service=RaftTrace,name=testRingBuffer");
+      Assert.assertEquals(4, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Capacity"));
+    }
+    Assert.assertFalse(Tracer.newInstance("disabled", new RaftProperties()).isEnabled());
+  }
+
+  @Test
+  public void testTracing() throws Exception {
+    final RaftProperties properties = new RaftProperties();
+    RaftConfigKeys.Trace.setSamplingPeriod(properties, SAMPLING_PERIOD);
+    final MiniRaftClusterWithGrpc cluster = getFactory().newCluster(NUM_SERVERS, properties);
+    try {
+      cluster.start();
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+
+      final List<RaftClientReply> replies = new ArrayList<>();
+      try (RaftClient client = cluster.createClient(leader.getId())) {
+        for(int i = 0; i < 2 * SAMPLING_PERIOD; i++) {
+          final RaftClientReply reply = client.send(new RaftTestUtil.SimpleMessage("m" + i));
+          Assert.assertTrue(reply.isSuccess());
+          replies.add(reply);
+        }
+      }
+
+      final Set<TraceStage> leaderStages = EnumSet.of(TraceStage.SERVER_RECEIVE, TraceStage.LEADER_APPEND,
+          TraceStage.LOG_FLUSH, TraceStage.APPLY_START, TraceStage.APPLY, TraceStage.LEADER_REPLY);
+      final Set<TraceStage> followerStages = EnumSet.of(TraceStage.FOLLOWER_RECEIVE,
+          TraceStage.LOG_FLUSH, TraceStage.APPLY_START, TraceStage.APPLY);
+      JavaUtils.attempt(() -> {
+        cluster.getServerAliveStream().forEach(s -> {
+          final RingBufferTraceSink sink = (RingBufferTraceSink) s.getTracer().getSink();
+          for(RaftClientReply reply : replies) {
+            final Set<TraceStage> stages = sink.getTraceEvents().stream()
+                .filter(e -> e.getCallId() == reply.getCallId())
+                .map(TraceEvent::getStage)
+                .collect(Collectors.toSet());
+            final boolean sampled = reply.getCallId() % SAMPLING_PERIOD == 0;
+            final Set<TraceStage> expected = !sampled? EnumSet.noneOf(TraceStage.class)
+                : s.getId().equals(leader.getId())? leaderStages: followerStages;
+            Assert.assertEquals(s.getId() + ": " + reply, expected, stages);
+          }
+        });
+      }, 10, TimeDuration.valueOf(100, TimeUnit.MILLISECONDS), "traced", LOG);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
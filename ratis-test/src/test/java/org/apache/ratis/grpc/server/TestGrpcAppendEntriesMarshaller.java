@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc.server;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.proto.RaftProtos.RaftRpcRequestProto;
+import org.apache.ratis.proto.RaftProtos.StateMachineLogEntryProto;
+import org.apache.ratis.proto.RaftProtos.TermIndexProto;
+import org.apache.ratis.proto.grpc.RaftServerProtocolServiceGrpc;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestGrpcAppendEntriesMarshaller extends BaseTest {
+  private final AtomicInteger numSerialized = new AtomicInteger();
+  private final GrpcAppendEntriesMarshaller marshaller = new GrpcAppendEntriesMarshaller(
+      RaftServerProtocolServiceGrpc.getAppendEntriesMethod().getRequestMarshaller(), entry -> {
+        numSerialized.incrementAndGet();
+        return entry.toByteString();
+      });
+
+  static LogEntryProto newEntry(long index, int dataSize) {
+    final byte[] data = new byte[dataSize];
+    ThreadLocalRandom.current().nextBytes(data);
+    return LogEntryProto.newBuilder()
+        .setTerm(2)
+        .setIndex(index)
+        .setStateMachineLogEntry(StateMachineLogEntryProto.newBuilder().setLogData(ByteString.copyFrom(data)))
+        .build();
+  }
+
+  static AppendEntriesRequestProto newRequest(List<LogEntryProto> entries) {
+    return AppendEntriesRequestProto.newBuilder()
+        .setServerRequest(RaftRpcRequestProto.newBuilder().setCallId(7))
+        .setLeaderTerm(2)
+        .setPreviousLog(TermIndexProto.newBuilder().setTerm(1).setIndex(9))
+        .addAllEntries(entries)
+        .setLeaderCommit(8)
+        .setElectionTimeoutMs(300)
+        .build();
+  }
+
+  void assertMarshal(AppendEntriesRequestProto request) throws Exception {
+    numSerialized.set(0);
+    try (InputStream in = marshaller.stream(request)) {
+      Assert.assertEquals(request.getSerializedSize(), in.available());
+      final AppendEntriesRequestProto parsed = AppendEntriesRequestProto.parseFrom(in);
+      Assert.assertEquals(request, parsed);
+    }
+    Assert.assertEquals(request.getEntriesCount(), numSerialized.get());
+  }
+
+  @Test
+  public void testMarshal() throws Exception {
+    // a heartbeat
+    assertMarshal(newRequest(new ArrayList<>()));
+
+    // the entry sizes cover one and multiple bytes for the lengths
+    final List<LogEntryProto> entries = new ArrayList<>();
+    final int[] dataSizes = {0, 1, 100, 200, 20_000, 3 << 20};
+    for(int i = 0; i < dataSizes.length; i++) {
+      entries.add(newEntry(10 + i, dataSizes[i]));
+    }
+    final AppendEntriesRequestProto request = newRequest(entries);
+    assertMarshal(request);
+
+    // the marshaller parses the default protobuf format
+    Assert.assertEquals(request, marshaller.parse(request.toByteString().newInput()));
+  }
+}
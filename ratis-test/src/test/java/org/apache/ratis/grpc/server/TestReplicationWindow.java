@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc.server;
+
+import org.apache.ratis.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestReplicationWindow extends BaseTest {
+  static final int MAX_BATCH = 1000;
+  static final int MAX_WINDOW = 64_000;
+  static final int MIN_WINDOW = MAX_BATCH / 4;
+  static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final AtomicLong clock = new AtomicLong();
+  private final AtomicLong callIds = new AtomicLong();
+  private final ReplicationWindow window = new ReplicationWindow(MAX_BATCH, MAX_WINDOW, clock::get);
+
+  /** Send batches until the window is full, wait for the given round trip time and then ack all of them. */
+  private void sendAndAck(long rttNanos) {
+    final List<Long> sent = new ArrayList<>();
+    while (!window.isFull()) {
+      final long callId = callIds.getAndIncrement();
+      window.onSend(callId, window.getBatchSize());
+      sent.add(callId);
+    }
+    clock.addAndGet(rttNanos);
+    for (long callId : sent) {
+      Assert.assertEquals(rttNanos, window.onAck(callId));
+    }
+    Assert.assertEquals(0, window.getOutstandingBytes());
+  }
+
+  @Test
+  public void testGrowAndShrink() {
+    Assert.assertEquals(4 * MAX_BATCH, window.getWindowSize());
+
+    // the window grows while the follower keeps up, bounded by the max
+    for (int i = 0; i < 20; i++) {
+      final int previous = window.getWindowSize();
+      sendAndAck(MS);
+      Assert.assertTrue(window.getWindowSize() >= previous);
+      Assert.assertTrue(window.getWindowSize() <= MAX_WINDOW);
+    }
+    Assert.assertEquals(MAX_WINDOW, window.getWindowSize());
+    Assert.assertEquals(MAX_BATCH, window.getBatchSize());
+
+    // the window shrinks when the round trip time increases, bounded by the min
+    sendAndAck(10 * MS);
+    Assert.assertTrue(window.getWindowSize() < MAX_WINDOW);
+    for (int i = 0; i < 20; i++) {
+      sendAndAck(10 * MS);
+      Assert.assertTrue(window.getWindowSize() < MAX_WINDOW);
+      Assert.assertTrue(window.getWindowSize() >= MIN_WINDOW);
+    }
+    Assert.assertEquals(MIN_WINDOW, window.getWindowSize());
+  }
+
+  @Test
+  public void testTimeoutAndClear() {
+    for (int i = 0; i < 4; i++) {
+      window.onSend(i, MAX_BATCH);
+    }
+    Assert.assertTrue(window.isFull());
+    Assert.assertEquals(4 * MAX_BATCH, window.getOutstandingBytes());
+
+    // a timeout releases the request and shrinks the window by half
+    window.onTimeout(0);
+    Assert.assertEquals(3 * MAX_BATCH, window.getOutstandingBytes());
+    Assert.assertEquals(2 * MAX_BATCH, window.getWindowSize());
+    // the request has already been released
+    window.onTimeout(0);
+    Assert.assertEquals(2 * MAX_BATCH, window.getWindowSize());
+
+    // a failure releases the request without changing the window
+    window.onFailure(1);
+    Assert.assertEquals(2 * MAX_BATCH, window.getOutstandingBytes());
+    Assert.assertEquals(2 * MAX_BATCH, window.getWindowSize());
+    Assert.assertTrue(window.isFull());
+
+    // resetting the pending requests releases all of them
+    window.clear();
+    Assert.assertEquals(0, window.getOutstandingBytes());
+    Assert.assertFalse(window.isFull());
+    Assert.assertEquals(-1, window.onAck(2));
+
+    // the window does not shrink below the min
+    for (long callId = 10; window.getWindowSize() > MIN_WINDOW; callId++) {
+      window.onSend(callId, MAX_BATCH);
+      window.onTimeout(callId);
+    }
+    window.onSend(100, MAX_BATCH);
+    window.onTimeout(100);
+    Assert.assertEquals(MIN_WINDOW, window.getWindowSize());
+    Assert.assertEquals(0, window.getOutstandingBytes());
+  }
+}
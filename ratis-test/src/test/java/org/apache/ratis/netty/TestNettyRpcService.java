@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.netty;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.RaftTestUtil.SimpleMessage;
+import org.apache.ratis.client.impl.ClientProtoUtils;
+import org.apache.ratis.proto.RaftProtos.RaftClientRequestProto;
+import org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerReplyProto;
+import org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerRequestProto;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.storage.RaftLog;
+import org.apache.ratis.statemachine.SimpleStateMachine4Testing;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.thirdparty.io.netty.channel.EventLoopGroup;
+import org.apache.ratis.thirdparty.io.netty.channel.nio.NioEventLoopGroup;
+import org.apache.ratis.util.JavaUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class TestNettyRpcService extends BaseTest implements MiniRaftClusterWithNetty.FactoryGet {
+  static final int NUM_REQUESTS = 10;
+
+  @Before
+  public void setup() {
+    getProperties().setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        SimpleStateMachine4Testing.class, StateMachine.class);
+  }
+
+  /**
+   * Send concurrent requests over a single channel while the servers cannot commit them.
+   * All the requests must reach the log, i.e. the event loop is not blocked by a pending request,
+   * and the replies must match the requests once they are committed.
+   */
+  @Test
+  public void testConcurrentRequestsOnOneChannel() throws Exception {
+    runWithNewCluster(3, this::runTestConcurrentRequestsOnOneChannel);
+  }
+
+  void runTestConcurrentRequestsOnOneChannel(MiniRaftClusterWithNetty cluster) throws Exception {
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final RaftLog log = leader.getState().getLog();
+    final long nextIndex = log.getNextIndex();
+    final ClientId clientId = ClientId.randomId();
+
+    // block the log flush in the leader and a follower so that no request can be committed
+    final List<SimpleStateMachine4Testing> blocked = new ArrayList<>();
+    blocked.add(SimpleStateMachine4Testing.get(leader));
+    blocked.add(SimpleStateMachine4Testing.get(cluster.getFollowers().get(0)));
+    blocked.forEach(SimpleStateMachine4Testing::blockFlushStateMachineData);
+
+    final EventLoopGroup group = new NioEventLoopGroup(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(NUM_REQUESTS);
+    try (NettyRpcProxy proxy = new NettyRpcProxy(cluster.getGroup().getPeer(leader.getId()), group)) {
+      final List<CompletableFuture<RaftNettyServerReplyProto>> replies = new ArrayList<>();
+      for (int i = 0; i < NUM_REQUESTS; i++) {
+        final RaftClientRequestProto request = ClientProtoUtils.toRaftClientRequestProto(
+            cluster.newRaftClientRequest(clientId, leader.getId(), i, 0, new SimpleMessage("m" + i)));
+        final RaftNettyServerRequestProto proto = RaftNettyServerRequestProto.newBuilder()
+            .setRaftClientRequest(request).build();
+        replies.add(CompletableFuture.supplyAsync(() -> {
+          try {
+            return proxy.send(request.getRpcRequest(), proto);
+          } catch (Exception e) {
+            throw new IllegalStateException("Failed to send " + request.getRpcRequest().getCallId(), e);
+          }
+        }, executor));
+      }
+
+      // all the requests are appended while none of them can be replied
+      JavaUtils.attempt(() -> Assert.assertEquals(nextIndex + NUM_REQUESTS, log.getNextIndex()),
+          50, 100, "append all the requests", LOG);
+      replies.forEach(r -> Assert.assertFalse(r.isDone()));
+
+      blocked.forEach(SimpleStateMachine4Testing::unblockFlushStateMachineData);
+      for (int i = 0; i < NUM_REQUESTS; i++) {
+        final RaftClientReply reply = ClientProtoUtils.toRaftClientReply(replies.get(i).get().getRaftClientReply());
+        Assert.assertTrue(reply.isSuccess());
+        Assert.assertEquals(i, reply.getCallId());
+        Assert.assertEquals(clientId, reply.getClientId());
+      }
+    } finally {
+      executor.shutdown();
+      group.shutdownGracefully();
+    }
+  }
+}
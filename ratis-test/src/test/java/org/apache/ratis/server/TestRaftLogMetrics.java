@@ -18,6 +18,7 @@
 
 package org.apache.ratis.server;
 
+import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import org.apache.log4j.Level;
 import org.apache.ratis.BaseTest;
@@ -26,6 +27,7 @@ import org.apache.ratis.RaftTestUtil;
 import org.apache.ratis.client.RaftClient;
 import org.apache.ratis.metrics.RatisMetricsRegistry;
 import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.impl.RaftServerMetrics;
 import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
 import org.apache.ratis.server.storage.RaftStorageTestUtils;
 import org.apache.ratis.statemachine.StateMachine;
@@ -80,6 +82,47 @@ public class TestRaftLogMetrics extends BaseTest
     }
   }
 
+  @Test
+  public void testServerMetrics() throws Exception {
+    final String prefix;
+    try(final MiniRaftCluster cluster = newCluster(NUM_SERVERS)) {
+      cluster.start();
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+      prefix = leader.getMetrics().toString();
+      runTestServerMetrics(cluster, leader);
+    }
+    // the metrics are removed when the group is removed from the server
+    Assert.assertTrue(RatisMetricsRegistry.getRegistry().getNames().stream().noneMatch(n -> n.startsWith(prefix)));
+  }
+
+  static void runTestServerMetrics(MiniRaftCluster cluster, RaftServerImpl leader) throws Exception {
+    final int numMsg = 10;
+    try (final RaftClient client = cluster.createClient(leader.getId())) {
+      for (RaftTestUtil.SimpleMessage message : RaftTestUtil.SimpleMessage.create(numMsg)) {
+        client.send(message);
+      }
+    }
+
+    final MetricRegistry registry = RatisMetricsRegistry.getRegistry();
+    final RaftServerMetrics metrics = leader.getMetrics();
+    // the timer is stopped asynchronously after the reply future is completed
+    JavaUtils.attempt(() -> Assert.assertEquals(numMsg, metrics.getClientRequestTimer().getCount()),
+        10, 100, "clientRequestTimer", null);
+    Assert.assertTrue(metrics.getCommitTimer().getCount() > 0);
+    Assert.assertTrue(metrics.getApplyTimer().getCount() >= numMsg);
+    Assert.assertTrue(metrics.getLogAppendTimer().getCount() > 0);
+    Assert.assertNotNull(registry.getGauges().get(metrics.getName(RaftServerMetrics.PENDING_REQUESTS_COUNT)));
+    Assert.assertNotNull(registry.getGauges().get(metrics.getName(RaftServerMetrics.LOG_WORKER_QUEUE_SIZE)));
+    Assert.assertNotNull(registry.getGauges().get(metrics.getName(RaftServerMetrics.LOG_CACHE_HIT_RATIO)));
+
+    for(RaftServerImpl f : cluster.getFollowers()) {
+      Assert.assertTrue(metrics.getAppendEntriesRttTimer(f.getId()).getCount() > 0);
+      final String lag = metrics.getName(RaftServerMetrics.FOLLOWER, f.getId().toString(),
+          RaftServerMetrics.FOLLOWER_LAG);
+      Assert.assertNotNull(registry.getGauges().get(lag));
+    }
+  }
+
   static void runTestFlushMetric(MiniRaftCluster cluster) throws Exception {
     int numMsg = 2;
     final RaftTestUtil.SimpleMessage[] messages = RaftTestUtil.SimpleMessage.create(numMsg);
@@ -100,7 +143,7 @@ public class TestRaftLogMetrics extends BaseTest
   }
 
   static void assertFlushCount(RaftServerImpl server) throws Exception {
-      final String flushTimeMetric = RaftStorageTestUtils.getLogFlushTimeMetric(server.getId());
+      final String flushTimeMetric = RaftStorageTestUtils.getLogFlushTimeMetric(server.getId(), server.getGroupId());
       Timer tm = RatisMetricsRegistry.getRegistry().getTimers().get(flushTimeMetric);
       Assert.assertNotNull(tm);
 
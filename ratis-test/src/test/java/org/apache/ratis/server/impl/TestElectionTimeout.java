@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestElectionTimeout extends BaseTest {
+  static RaftProperties newProperties(boolean adaptive) {
+    final RaftProperties properties = new RaftProperties();
+    RaftServerConfigKeys.Rpc.setTimeoutMin(properties, TimeDuration.valueOf(1, TimeUnit.SECONDS));
+    RaftServerConfigKeys.Rpc.setTimeoutMax(properties, TimeDuration.valueOf(2, TimeUnit.SECONDS));
+    RaftServerConfigKeys.Rpc.setTimeoutAdaptiveEnabled(properties, adaptive);
+    RaftServerConfigKeys.Rpc.setTimeoutAdaptiveRttMultiplier(properties, 10);
+    RaftServerConfigKeys.Rpc.setTimeoutAdaptiveMin(properties, TimeDuration.valueOf(100, TimeUnit.MILLISECONDS));
+    RaftServerConfigKeys.Rpc.setTimeoutAdaptiveMax(properties, TimeDuration.valueOf(5, TimeUnit.SECONDS));
+    return properties;
+  }
+
+  static long toNanos(long ms) {
+    return TimeUnit.MILLISECONDS.toNanos(ms);
+  }
+
+  @Test
+  public void testAdaptive() {
+    final ElectionTimeout timeout = new ElectionTimeout(newProperties(true));
+    Assert.assertEquals(1000, timeout.getMinMs());
+    Assert.assertEquals(2000, timeout.getMaxMs());
+    Assert.assertEquals(100, timeout.getFloorMs());
+
+    // the round trip time is unknown
+    Assert.assertEquals(0, timeout.recommend(0));
+    // bounded by the adaptive min and max
+    Assert.assertEquals(100, timeout.recommend(toNanos(1)));
+    Assert.assertEquals(300, timeout.recommend(toNanos(30)));
+    Assert.assertEquals(5000, timeout.recommend(toNanos(1000)));
+
+    // the ratio of the max to the min is kept
+    timeout.update(300);
+    Assert.assertEquals(300, timeout.getMinMs());
+    Assert.assertEquals(600, timeout.getMaxMs());
+    for(int i = 0; i < 10; i++) {
+      final int random = timeout.getRandomMs();
+      Assert.assertTrue("random = " + random, random >= 300 && random <= 600);
+    }
+
+    timeout.update(10);
+    Assert.assertEquals(100, timeout.getMinMs());
+
+    // no recommendation, use the configured timeout
+    timeout.update(0);
+    Assert.assertEquals(1000, timeout.getMinMs());
+    Assert.assertEquals(2000, timeout.getMaxMs());
+  }
+
+  @Test
+  public void testNonAdaptive() {
+    final ElectionTimeout timeout = new ElectionTimeout(newProperties(false));
+    Assert.assertEquals(1000, timeout.getFloorMs());
+    Assert.assertEquals(0, timeout.recommend(toNanos(30)));
+
+    // the recommendations are ignored
+    timeout.update(300);
+    Assert.assertEquals(1000, timeout.getMinMs());
+    Assert.assertEquals(2000, timeout.getMaxMs());
+  }
+}
@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.impl.LeaderState.Voters;
+import org.apache.ratis.util.Timestamp;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** Test the selection of the min, majority and max indices by {@link LeaderState.Voters}. */
+public class TestLeaderStateVoters extends BaseTest {
+  static final RaftPeerId LEADER = RaftPeerId.valueOf("s0");
+  static final long LEADER_INDEX = 20;
+
+  private final List<FollowerInfo> followers = new ArrayList<>();
+
+  private void addFollower(String id, long matchIndex) {
+    final RaftPeer peer = new RaftPeer(RaftPeerId.valueOf(id));
+    final FollowerInfo f = new FollowerInfo(LEADER, peer, new Timestamp(), matchIndex + 1, true, 1000);
+    f.updateMatchIndex(matchIndex);
+    followers.add(f);
+  }
+
+  private static List<RaftPeer> peers(String... ids) {
+    return Arrays.stream(ids).map(RaftPeerId::valueOf).map(RaftPeer::new).collect(Collectors.toList());
+  }
+
+  private Voters newVoters(List<RaftPeer> conf, List<RaftPeer> oldConf) {
+    final RaftConfiguration.Builder b = RaftConfiguration.newBuilder().setConf(conf);
+    if (oldConf != null) {
+      b.setOldConf(oldConf);
+    }
+    final Voters voters = LeaderState.newVoters(b.build(), LEADER, followers);
+    Assert.assertTrue(voters.update(FollowerInfo::getMatchIndex, () -> LEADER_INDEX));
+    return voters;
+  }
+
+  private static void assertIndices(long min, long majority, long max, Voters voters) {
+    Assert.assertEquals("min", min, voters.getMin());
+    Assert.assertEquals("majority", majority, voters.getMajority());
+    Assert.assertEquals("max", max, voters.getMax());
+  }
+
+  @Test
+  public void testVoters() {
+    addFollower("s1", 10);
+    addFollower("s2", 5);
+    addFollower("s3", 3);
+    addFollower("s4", 8);
+
+    // s3 and s4 are not in the conf, e.g. staging; the indices are {5, 10, 20}
+    assertIndices(5, 10, LEADER_INDEX, newVoters(peers("s0", "s1", "s2"), null));
+
+    // a larger conf; the indices are {3, 5, 8, 10, 20}
+    assertIndices(3, 8, LEADER_INDEX, newVoters(peers("s0", "s1", "s2", "s3", "s4"), null));
+  }
+
+  @Test
+  public void testJointConfiguration() {
+    addFollower("s1", 10);
+    addFollower("s2", 5);
+    addFollower("s3", 3);
+    addFollower("s4", 8);
+
+    // new conf {3, 8, 20} and old conf {5, 10, 20}: the majority must be agreed by both
+    assertIndices(3, 8, LEADER_INDEX, newVoters(peers("s0", "s3", "s4"), peers("s0", "s1", "s2")));
+
+    // new conf {3, 5, 8, 20} and old conf {5, 10, 20}
+    assertIndices(3, 5, LEADER_INDEX, newVoters(peers("s0", "s2", "s3", "s4"), peers("s0", "s1", "s2")));
+  }
+
+  @Test
+  public void testLeaderNotInNewConfiguration() {
+    addFollower("s1", 10);
+    addFollower("s2", 5);
+    addFollower("s3", 3);
+
+    // the leader is dropped from the new conf {3, 5, 10} but it is still in the old conf {5, 10, 20}
+    assertIndices(3, 5, 10, newVoters(peers("s1", "s2", "s3"), peers("s0", "s1", "s2")));
+
+    // once the new conf is stable, the leader index is not counted
+    assertIndices(3, 5, 10, newVoters(peers("s1", "s2", "s3"), null));
+  }
+
+  @Test
+  public void testNoVoters() {
+    addFollower("s1", 10);
+    final RaftConfiguration conf = RaftConfiguration.newBuilder().setConf(peers("s5")).build();
+    Assert.assertFalse(LeaderState.newVoters(conf, LEADER, followers)
+        .update(FollowerInfo::getMatchIndex, () -> LEADER_INDEX));
+  }
+}
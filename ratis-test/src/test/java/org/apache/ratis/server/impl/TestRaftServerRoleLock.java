@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
+import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
+import org.apache.ratis.util.AutoCloseableLock;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test the role lock of {@link RaftServerImpl}:
+ * the role and term changes, which hold the write lock,
+ * must exclude the steady-state appendEntries and client requests, which hold the read lock.
+ */
+public class TestRaftServerRoleLock extends BaseTest {
+  static final TimeDuration BLOCKED = TimeDuration.valueOf(200, TimeUnit.MILLISECONDS);
+
+  private MiniRaftClusterWithSimulatedRpc cluster;
+
+  @Before
+  public void setup() throws Exception {
+    cluster = MiniRaftClusterWithSimulatedRpc.FACTORY.newCluster(3, new RaftProperties());
+    cluster.start();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testChangeToCandidateWaitsForAppendEntries() throws Exception {
+    RaftTestUtil.waitForLeader(cluster);
+    final RaftServerImpl follower = cluster.getFollowers().get(0);
+
+    final CompletableFuture<Void> changed;
+    // hold the read lock as an appendEntries in the steady state
+    try (AutoCloseableLock readLock = follower.readLock()) {
+      changed = CompletableFuture.runAsync(follower::changeToCandidate);
+      BLOCKED.sleep();
+      Assert.assertFalse(changed.isDone());
+      Assert.assertTrue(follower.isFollower());
+    }
+    changed.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test(timeout = 30000)
+  public void testAppendEntriesWaitsForRoleChange() throws Exception {
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final RaftServerImpl follower = cluster.getFollowers().get(0);
+    final long term = follower.getState().getCurrentTerm();
+    final AppendEntriesRequestProto heartbeat = leader.getRole().getLeaderState().get().newHeartbeatRequestProto(
+        follower.getId(), false, leader.getElectionTimeout().recommend(0), 0);
+
+    final CompletableFuture<AppendEntriesReplyProto> reply;
+    // hold the monitor and the write lock as a role change
+    synchronized (follower) {
+      try (AutoCloseableLock writeLock = follower.writeLock()) {
+        reply = CompletableFuture.supplyAsync(() -> {
+          try {
+            return follower.appendEntriesAsync(heartbeat).join();
+          } catch (Exception e) {
+            throw new IllegalStateException(e);
+          }
+        });
+        BLOCKED.sleep();
+        Assert.assertFalse(reply.isDone());
+      }
+    }
+    final AppendEntriesReplyProto r = reply.get(10, TimeUnit.SECONDS);
+    Assert.assertEquals(term, r.getTerm());
+  }
+
+  @Test(timeout = 30000)
+  public void testClientRequestWaitsForRoleChange() throws Exception {
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final long nextIndex = leader.getState().getLog().getNextIndex();
+    try (RaftClient client = cluster.createClient(leader.getId())) {
+      final CompletableFuture<RaftClientReply> reply;
+      // hold the monitor and the write lock as a role change
+      synchronized (leader) {
+        try (AutoCloseableLock writeLock = leader.writeLock()) {
+          reply = client.sendAsync(new RaftTestUtil.SimpleMessage("m"));
+          BLOCKED.sleep();
+          Assert.assertFalse(reply.isDone());
+          // the request is not yet appended to the log
+          Assert.assertEquals(nextIndex, leader.getState().getLog().getNextIndex());
+        }
+      }
+      Assert.assertTrue(reply.get(10, TimeUnit.SECONDS).isSuccess());
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.util.SizeInBytes;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test cases to verify RetryCache.
+ */
+public class TestRetryCache extends BaseTest {
+  private static RaftClientReply newReply(ClientId clientId, long callId, boolean success) {
+    return new RaftClientReply(clientId, RaftPeerId.valueOf("s0"), RaftGroupId.randomId(),
+        callId, success, null, null, 0, null);
+  }
+
+  @Test
+  public void testQueryCache() {
+    final RetryCache cache = new RetryCache(128, TimeDuration.valueOf(60, TimeUnit.SECONDS));
+    final ClientId clientId = ClientId.randomId();
+
+    final RetryCache.CacheQueryResult first = cache.queryCache(clientId, 1);
+    Assert.assertFalse(first.isRetry());
+    final RetryCache.CacheQueryResult pending = cache.queryCache(clientId, 1);
+    Assert.assertTrue(pending.isRetry());
+    Assert.assertSame(first.getEntry(), pending.getEntry());
+
+    // a failed entry is replaced by a new entry
+    first.getEntry().failWithReply(newReply(clientId, 1, false));
+    final RetryCache.CacheQueryResult retry = cache.queryCache(clientId, 1);
+    Assert.assertFalse(retry.isRetry());
+    Assert.assertNotSame(first.getEntry(), retry.getEntry());
+    Assert.assertSame(retry.getEntry(), cache.get(clientId, 1));
+
+    // a successful entry is returned to the retries
+    final CompletableFuture<RaftClientReply> future = retry.getEntry().getReplyFuture();
+    final RaftClientReply reply = newReply(clientId, 1, true);
+    retry.getEntry().updateResult(reply);
+    Assert.assertSame(reply, future.join());
+    Assert.assertSame(retry.getEntry(), cache.queryCache(clientId, 1).getEntry());
+    Assert.assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testLazyReplyFuture() {
+    final RetryCache cache = new RetryCache(128, TimeDuration.valueOf(60, TimeUnit.SECONDS));
+    final ClientId clientId = ClientId.randomId();
+
+    final RetryCache.CacheEntry entry = cache.getOrCreateEntry(clientId, 2);
+    final RaftClientReply reply = newReply(clientId, 2, true);
+    entry.updateResult(reply);
+    Assert.assertTrue(entry.isCompletedNormally());
+    Assert.assertSame(reply, entry.getReplyFuture().join());
+
+    final RetryCache.CacheEntry failed = cache.getOrCreateEntry(clientId, 3);
+    failed.failWithException(new IllegalStateException());
+    Assert.assertTrue(failed.isFailed());
+    Assert.assertTrue(failed.getReplyFuture().isCompletedExceptionally());
+  }
+
+  @Test
+  public void testExpiryAndEviction() {
+    final AtomicLong clock = new AtomicLong();
+    // the bucket interval is 100ms
+    final RetryCache cache = new RetryCache(128, SizeInBytes.valueOf("1MB"),
+        TimeDuration.valueOf(800, TimeUnit.MILLISECONDS), clock::get);
+    final ClientId clientId = ClientId.randomId();
+
+    cache.getOrCreateEntry(clientId, 0);
+    Assert.assertNotNull(cache.get(clientId, 0));
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(800));
+    // an entry lives for at least the expiry time
+    Assert.assertNotNull(cache.get(clientId, 0));
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+    Assert.assertNull(cache.get(clientId, 0));
+
+    // over the capacity
+    for (int i = 1; i <= 200; i++) {
+      cache.getOrCreateEntry(ClientId.randomId(), i);
+    }
+    Assert.assertEquals(200, cache.size());
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+    cache.getOrCreateEntry(clientId, 201);
+    Assert.assertEquals(1, cache.size());
+    Assert.assertNotNull(cache.get(clientId, 201));
+  }
+}
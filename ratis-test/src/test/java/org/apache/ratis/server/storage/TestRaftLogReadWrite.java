@@ -20,6 +20,7 @@ package org.apache.ratis.server.storage;
 import org.apache.ratis.BaseTest;
 import org.apache.ratis.RaftTestUtil.SimpleOperation;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.io.nativeio.NativeIO;
 import org.apache.ratis.protocol.ChecksumException;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.impl.RaftServerConstants;
@@ -30,17 +31,21 @@ import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.util.FileUtils;
 import org.junit.After;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Test basic functionality of LogReader, LogInputStream, and LogOutputStream.
@@ -154,6 +159,51 @@ public class TestRaftLogReadWrite extends BaseTest {
     storage.close();
   }
 
+  /**
+   * Write, close, reopen for append and then read the log with direct I/O.
+   * Closing the stream truncates the terminator padding of the last block.
+   */
+  @Test
+  public void testDirectIo() throws IOException {
+    Assume.assumeTrue("Direct I/O is unavailable",
+        NativeIO.POSIX.isAvailable() && NativeIO.POSIX.O_DIRECT != -1);
+    final int alignment = 4096;
+    final RaftStorage storage = new RaftStorage(storageDir, StartupOption.REGULAR);
+    final File openSegment = storage.getStorageDir().getOpenLogFile(0);
+    long size = SegmentedRaftLogFormat.getHeaderLength();
+    final LogEntryProto[] entries = new LogEntryProto[200];
+    try {
+      try (LogOutputStream out = new LogOutputStream(openSegment, false, segmentMaxSize,
+          preallocatedSize, bufferSize, alignment)) {
+        for (int i = 0; i < 100; i++) {
+          size += writeEntry(entries, i, out);
+        }
+      }
+      Assert.assertEquals(size, openSegment.length());
+
+      try (LogOutputStream out = new LogOutputStream(openSegment, true, segmentMaxSize,
+          preallocatedSize, bufferSize, alignment)) {
+        for (int i = 100; i < 200; i++) {
+          size += writeEntry(entries, i, out);
+        }
+      }
+      Assert.assertEquals(size, openSegment.length());
+    } finally {
+      storage.close();
+    }
+
+    final LogEntryProto[] readEntries = readLog(openSegment, 0,
+        RaftServerConstants.INVALID_LOG_INDEX, true);
+    Assert.assertArrayEquals(entries, readEntries);
+  }
+
+  private static long writeEntry(LogEntryProto[] entries, int i, LogOutputStream out) throws IOException {
+    entries[i] = ServerProtoUtils.toLogEntryProto(new SimpleOperation("m" + i).getLogEntryContent(), 0, i);
+    out.write(entries[i]);
+    final int s = entries[i].getSerializedSize();
+    return CodedOutputStream.computeUInt32SizeNoTag(s) + s + 4;
+  }
+
   /**
    * Simulate the scenario that the peer is shutdown without truncating
    * log segment file padding. Make sure the reader can correctly handle this.
@@ -269,4 +319,52 @@ public class TestRaftLogReadWrite extends BaseTest {
       LOG.info("Caught ChecksumException as expected", e);
     }
   }
+
+  /**
+   * Test the aligned writes used by direct I/O with a regular file channel:
+   * the file must have the written bytes followed by the terminator padding
+   * no matter where the flushes happen, including reopening at an unaligned position.
+   */
+  @Test
+  public void testAlignedWrites() throws Exception {
+    final int alignment = 512;
+    final File file = new File(storageDir, "aligned");
+    Assert.assertTrue(storageDir.mkdirs() || storageDir.isDirectory());
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final Random random = new Random();
+
+    for(int round = 0; round < 3; round++) {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.getChannel().position(expected.size());
+        final BufferedWriteChannel out = BufferedWriteChannel.newAlignedWriteChannel(
+            raf.getChannel(), 4096, alignment, raf.getChannel());
+        Assert.assertTrue(out.isDirect());
+        for(int i = 0; i < 200; i++) {
+          final byte[] bytes = new byte[random.nextInt(3 * alignment)];
+          random.nextBytes(bytes);
+          out.write(bytes);
+          expected.write(bytes);
+          Assert.assertEquals(expected.size(), out.position());
+          if (random.nextInt(4) == 0) {
+            out.flush(false);
+            assertAlignedFile(file, expected.toByteArray(), alignment);
+          }
+        }
+        out.flush(true);
+        assertAlignedFile(file, expected.toByteArray(), alignment);
+      }
+    }
+  }
+
+  static void assertAlignedFile(File file, byte[] expected, int alignment) throws IOException {
+    final byte[] actual = Files.readAllBytes(file.toPath());
+    Assert.assertEquals(0, actual.length % alignment);
+    Assert.assertTrue(actual.length >= expected.length);
+    for(int i = 0; i < expected.length; i++) {
+      Assert.assertEquals("i=" + i, expected[i], actual[i]);
+    }
+    for(int i = expected.length; i < actual.length; i++) {
+      Assert.assertEquals("i=" + i, SegmentedRaftLogFormat.getTerminator(), actual[i]);
+    }
+  }
 }
@@ -21,11 +21,14 @@ import org.apache.ratis.BaseTest;
 import org.apache.ratis.RaftTestUtil.SimpleOperation;
 import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.RaftServerConstants;
 import org.apache.ratis.server.impl.RaftServerConstants.StartupOption;
 import org.apache.ratis.server.impl.ServerProtoUtils;
+import org.apache.ratis.server.protocol.TermIndex;
 import org.apache.ratis.server.storage.LogSegment.LogRecordWithEntry;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.proto.RaftProtos.StateMachineLogEntryProto;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.thirdparty.com.google.protobuf.CodedOutputStream;
 import org.apache.ratis.util.FileUtils;
 import org.apache.ratis.util.Preconditions;
@@ -132,6 +135,8 @@ public class TestRaftLogSegment extends BaseTest {
       Assert.assertEquals(i, lre.getRecord().getTermIndex().getIndex());
       Assert.assertEquals(term, lre.getRecord().getTermIndex().getTerm());
       Assert.assertEquals(offset, record.getOffset());
+      Assert.assertEquals(offset, segment.getOffset(i));
+      Assert.assertEquals(term, segment.getTerm(i));
 
       LogEntryProto entry = lre.hasEntry() ?
           lre.getEntry() : segment.loadCache(lre.getRecord());
@@ -240,6 +245,79 @@ public class TestRaftLogSegment extends BaseTest {
     }
   }
 
+  @Test
+  public void testTermChanges() throws Exception {
+    final long start = 1000;
+    final long[] terms = {1, 1, 1, 2, 5, 5, 6, 6, 6, 6};
+    LogSegment segment = LogSegment.newOpenSegment(null, start);
+    for (int i = 0; i < terms.length; i++) {
+      LogEntryProto entry = ServerProtoUtils.toLogEntryProto(
+          new SimpleOperation("m" + i).getLogEntryContent(), terms[i], i + start);
+      segment.appendToOpenSegment(entry);
+    }
+    for (int i = 0; i < terms.length; i++) {
+      final TermIndex ti = segment.getTermIndex(i + start);
+      Assert.assertEquals(terms[i], ti.getTerm());
+      Assert.assertEquals(i + start, ti.getIndex());
+      Assert.assertEquals(ti, segment.getLogRecord(i + start).getTermIndex());
+      Assert.assertEquals(terms[i], segment.getTerm(i + start));
+    }
+    Assert.assertNull(segment.getTermIndex(start + terms.length));
+    Assert.assertEquals(RaftServerConstants.INVALID_LOG_INDEX, segment.getTerm(start + terms.length));
+    Assert.assertEquals(-1, segment.getOffset(start + terms.length));
+
+    // truncate in the middle of a term run; the truncated segment is closed
+    segment.truncate(start + 5);
+    Assert.assertFalse(segment.isOpen());
+    Assert.assertEquals(TermIndex.newTermIndex(5, start + 4), segment.getLastTermIndex());
+    for (int i = 0; i < 5; i++) {
+      Assert.assertEquals(terms[i], segment.getTermIndex(i + start).getTerm());
+    }
+    Assert.assertNull(segment.getTermIndex(start + 5));
+
+    // start a new term in the middle of a term run of a fresh open segment
+    segment = LogSegment.newOpenSegment(null, start);
+    for (int i = 0; i < 5; i++) {
+      LogEntryProto entry = ServerProtoUtils.toLogEntryProto(
+          new SimpleOperation("m" + i).getLogEntryContent(), terms[i], i + start);
+      segment.appendToOpenSegment(entry);
+    }
+    LogEntryProto entry = ServerProtoUtils.toLogEntryProto(
+        new SimpleOperation("x").getLogEntryContent(), 7, start + 5);
+    segment.appendToOpenSegment(entry);
+    Assert.assertEquals(TermIndex.newTermIndex(7, start + 5), segment.getLastTermIndex());
+    Assert.assertEquals(5, segment.getTermIndex(start + 4).getTerm());
+    Assert.assertEquals(2, segment.getTermIndex(start + 3).getTerm());
+  }
+
+  @Test
+  public void testCacheSize() throws Exception {
+    final long start = 1000;
+    final LogSegment segment = LogSegment.newOpenSegment(null, start);
+    long size = 0;
+    for (int i = 0; i < 10; i++) {
+      LogEntryProto entry = ServerProtoUtils.toLogEntryProto(
+          new SimpleOperation("m" + i).getLogEntryContent(), 1, i + start);
+      segment.appendToOpenSegment(entry);
+      size += entry.getSerializedSize();
+    }
+    Assert.assertEquals(size, segment.getCacheSize());
+
+    // the serialized form is accounted once it is computed
+    final LogEntryProto cached = segment.getEntryWithoutLoading(start).getEntry();
+    final ByteString serialized = segment.getSerializedEntry(cached);
+    Assert.assertSame(serialized, segment.getSerializedEntry(cached));
+    Assert.assertEquals(size + serialized.size(), segment.getCacheSize());
+
+    // the truncated entries are not accounted
+    final LogEntryProto last = segment.getEntryWithoutLoading(start + 9).getEntry();
+    segment.truncate(start + 9);
+    Assert.assertEquals(size - last.getSerializedSize() + serialized.size(), segment.getCacheSize());
+
+    segment.evictCache();
+    Assert.assertEquals(0, segment.getCacheSize());
+  }
+
   @Test
   public void testTruncate() throws Exception {
     final long term = 1;
@@ -34,6 +34,7 @@ import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.statemachine.SimpleStateMachine4Testing;
 import org.apache.ratis.statemachine.StateMachine;
 import org.apache.ratis.statemachine.impl.BaseStateMachine;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.util.ExitUtils;
 import org.apache.ratis.util.FileUtils;
 import org.apache.ratis.util.JavaUtils;
@@ -54,12 +55,18 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class TestSegmentedRaftLog extends BaseTest {
@@ -180,6 +187,30 @@ public class TestSegmentedRaftLog extends BaseTest {
     }
   }
 
+  @Test
+  public void testLoadLogSegmentsInParallelAndLazily() throws Exception {
+    RaftServerConfigKeys.Log.setSegmentLoadThreads(properties, 3);
+    List<SegmentRange> ranges = prepareRanges(0, 10, 100, 0);
+    LogEntryProto[] entries = prepareLog(ranges);
+
+    // the segments 0-4 are in the snapshot and the segment 5 is partially in the snapshot
+    final long lastIndexInSnapshot = 549;
+    final List<LogEntryProto> consumed = new ArrayList<>();
+    try (SegmentedRaftLog raftLog =
+             new SegmentedRaftLog(peerId, null, storage, lastIndexInSnapshot, properties)) {
+      raftLog.open(lastIndexInSnapshot, consumed::add);
+      // only the segments not entirely in the snapshot are passed to the consumer, in order
+      Assert.assertEquals(Arrays.asList(entries).subList(500, entries.length), consumed);
+
+      Assert.assertEquals(entries[entries.length - 1], getLastEntry(raftLog));
+      // the lazily loaded segments
+      for (LogEntryProto e : entries) {
+        Assert.assertEquals(e, raftLog.get(e.getIndex()));
+        Assert.assertEquals(ServerProtoUtils.toTermIndex(e), raftLog.getTermIndex(e.getIndex()));
+      }
+    }
+  }
+
   static List<LogEntryProto> prepareLogEntries(List<SegmentRange> slist,
       Supplier<String> stringSupplier) {
     List<LogEntryProto> eList = new ArrayList<>();
@@ -204,6 +235,75 @@ public class TestSegmentedRaftLog extends BaseTest {
     return ServerProtoUtils.toLogEntryProto(m.getLogEntryContent(), term, index);
   }
 
+  /**
+   * Append all the entries at once and check if they are written in batches.
+   */
+  @Test
+  public void testAppendEntries() throws Exception {
+    List<SegmentRange> ranges = prepareRanges(0, 5, 200, 0);
+    List<LogEntryProto> entries = prepareLogEntries(ranges, null);
+
+    try (SegmentedRaftLog raftLog =
+             new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      final List<CompletableFuture<Long>> futures = raftLog.append(
+          entries.toArray(new LogEntryProto[entries.size()]));
+      // at least one batch per term but much less than one per entry
+      Assert.assertTrue(futures.size() >= ranges.size());
+      Assert.assertTrue(futures.size() < entries.size());
+      futures.forEach(CompletableFuture::join);
+      Assert.assertEquals(entries.get(entries.size() - 1).getIndex(),
+          raftLog.getLatestFlushedIndex());
+    }
+
+    try (SegmentedRaftLog raftLog =
+             new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      checkEntries(raftLog, entries, 0, entries.size());
+    }
+  }
+
+  /**
+   * Read the log without locking while the entries are being appended.
+   */
+  @Test
+  public void testConcurrentReads() throws Exception {
+    List<SegmentRange> ranges = prepareRanges(0, 10, 200, 0);
+    List<LogEntryProto> entries = prepareLogEntries(ranges, null);
+
+    try (SegmentedRaftLog raftLog =
+             new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      final AtomicBoolean appending = new AtomicBoolean(true);
+      final List<CompletableFuture<Void>> readers = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        readers.add(CompletableFuture.runAsync(() -> {
+          while (appending.get()) {
+            final TermIndex last = raftLog.getLastEntryTermIndex();
+            if (last == null) {
+              continue;
+            }
+            final LogEntryProto expected = entries.get(Math.toIntExact(last.getIndex()));
+            Assert.assertEquals(ServerProtoUtils.toTermIndex(expected), last);
+            final int index = ThreadLocalRandom.current().nextInt(Math.toIntExact(last.getIndex()) + 1);
+            Assert.assertEquals(ServerProtoUtils.toTermIndex(entries.get(index)), raftLog.getTermIndex(index));
+            try {
+              Assert.assertEquals(entries.get(index), raftLog.get(index));
+            } catch (RaftLogIOException e) {
+              throw new CompletionException(e);
+            }
+          }
+        }));
+      }
+      try {
+        entries.stream().map(raftLog::appendEntry).forEach(CompletableFuture::join);
+      } finally {
+        appending.set(false);
+      }
+      readers.forEach(CompletableFuture::join);
+    }
+  }
+
   /**
    * Append entry one by one and check if log state is correct.
    */
@@ -281,6 +381,53 @@ public class TestSegmentedRaftLog extends BaseTest {
     }
   }
 
+  /**
+   * Roll the log a few times with a stale prepared segment file left in the storage
+   * and check that every segment only holds its own entries.
+   */
+  @Test
+  public void testRollWithPreparedSegment() throws Exception {
+    RaftServerConfigKeys.Log.setSegmentPrepareEnabled(properties, true);
+    RaftServerConfigKeys.Log.setPreallocatedSize(properties, SizeInBytes.valueOf("4KB"));
+    RaftServerConfigKeys.Log.setSegmentSizeMax(properties, SizeInBytes.valueOf("16KB"));
+    final long segmentMax = RaftServerConfigKeys.Log.segmentSizeMax(properties).getSize();
+    final long preallocated = RaftServerConfigKeys.Log.preallocatedSize(properties).getSize();
+
+    // leave a stale prepared segment with some old entries
+    final File prepared = storage.getStorageDir().getPreparedLogFile();
+    try (LogOutputStream out = new LogOutputStream(prepared, false, segmentMax, preallocated, bufferSize)) {
+      for (LogEntryProto e : prepareLogEntries(prepareRanges(0, 1, 10, 1000), null)) {
+        out.write(e);
+      }
+    }
+
+    final byte[] content = new byte[1024];
+    final List<LogEntryProto> entries = prepareLogEntries(prepareRanges(0, 1, 48, 0),
+        () -> new String(content));
+    try (SegmentedRaftLog raftLog =
+             new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      entries.stream().map(raftLog::appendEntry).forEach(CompletableFuture::join);
+    }
+    Assert.assertFalse(prepared.exists());
+
+    final List<RaftStorageDirectory.LogPathAndIndex> segments = storage.getStorageDir().getLogSegmentFiles();
+    Assert.assertTrue("segments=" + segments, segments.stream().filter(s -> !s.isOpen()).count() >= 2);
+    long expectedIndex = 0;
+    for (RaftStorageDirectory.LogPathAndIndex s : segments) {
+      Assert.assertEquals(expectedIndex, s.startIndex);
+      try (LogInputStream in = new LogInputStream(s.getPath().toFile(), s.startIndex, s.endIndex, s.isOpen())) {
+        for (LogEntryProto e; (e = in.nextEntry()) != null; expectedIndex++) {
+          Assert.assertEquals(entries.get((int) expectedIndex), e);
+        }
+      }
+      if (!s.isOpen()) {
+        Assert.assertEquals(s.endIndex + 1, expectedIndex);
+      }
+    }
+    Assert.assertEquals(entries.size(), expectedIndex);
+  }
+
   @Test
   public void testTruncate() throws Exception {
     // prepare the log for truncation
@@ -360,6 +507,97 @@ public class TestSegmentedRaftLog extends BaseTest {
     }
   }
 
+  static ByteString getStateMachineData(LogEntryProto entry) {
+    return entry.getStateMachineLogEntry().getStateMachineEntry().getStateMachineData();
+  }
+
+  /**
+   * The state machine data appended by the leader is served from the cache
+   * until all the followers have matched the entries.
+   */
+  @Test
+  public void testStateMachineDataCache() throws Exception {
+    final List<LogEntryProto> entries = new ArrayList<>();
+    for(long i = 0; i < 20; i++) {
+      entries.add(prepareLogEntry(i < 10? 1: 2, i, null, true));
+    }
+    final long dataSize = entries.stream().limit(11).map(TestSegmentedRaftLog::getStateMachineData)
+        .mapToLong(ByteString::size).sum();
+    final RaftServerImpl server = mock(RaftServerImpl.class);
+    final StateMachine stateMachine = mock(StateMachine.class);
+    when(server.getStateMachine()).thenReturn(stateMachine);
+    when(stateMachine.readStateMachineData(any(LogEntryProto.class))).thenAnswer(invocation -> {
+      final LogEntryProto e = entries.get(Math.toIntExact(((LogEntryProto) invocation.getArguments()[0]).getIndex()));
+      return CompletableFuture.completedFuture(getStateMachineData(e));
+    });
+
+    try (SegmentedRaftLog raftLog = new SegmentedRaftLog(peerId, server, null, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      final StateMachineDataCache dataCache = raftLog.getStateMachineDataCache();
+
+      // the leader caches the data; the entry in the new term rolls the segment of the first 10 entries
+      when(server.isLeader()).thenReturn(true);
+      entries.subList(0, 11).stream().map(raftLog::appendEntry).forEach(CompletableFuture::join);
+      Assert.assertEquals(dataSize, dataCache.getSize());
+
+      // the entries loaded from the segment file do not have the data; it is read from the cache
+      raftLog.evictCache();
+      for(int i = 0; i < 10; i++) {
+        Assert.assertEquals(entries.get(i), raftLog.getEntryWithData(i).getEntry());
+      }
+      verify(stateMachine, never()).readStateMachineData(any(LogEntryProto.class));
+
+      // all the followers have matched the entries up to index 4
+      raftLog.onFollowersMatched(4);
+      for(int i = 0; i < 10; i++) {
+        Assert.assertEquals(entries.get(i), raftLog.getEntryWithData(i).getEntry());
+      }
+      verify(stateMachine, times(5)).readStateMachineData(any(LogEntryProto.class));
+
+      // a follower neither caches nor clears anything
+      final long remaining = dataCache.getSize();
+      when(server.isLeader()).thenReturn(false);
+      raftLog.append(entries.subList(11, 20).toArray(new LogEntryProto[0])).forEach(CompletableFuture::join);
+      Assert.assertEquals(remaining, dataCache.getSize());
+
+      raftLog.onFollowersMatched(Long.MAX_VALUE);
+      Assert.assertEquals(0, dataCache.getSize());
+    }
+  }
+
+  @Test
+  public void testSerializedEntries() throws Exception {
+    final List<LogEntryProto> entries = new ArrayList<>();
+    for(long i = 0; i < 10; i++) {
+      entries.add(prepareLogEntry(1, i, null, i % 2 == 0));
+    }
+    final RaftServerImpl server = mock(RaftServerImpl.class);
+    when(server.isLeader()).thenReturn(true);
+
+    try (SegmentedRaftLog raftLog = new SegmentedRaftLog(peerId, server, null, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      entries.stream().map(raftLog::appendEntry).forEach(CompletableFuture::join);
+
+      for(LogEntryProto e : entries) {
+        final LogEntryProto cached = raftLog.get(e.getIndex());
+        final ByteString serialized = raftLog.getSerializedEntry(cached);
+        Assert.assertEquals(e.toByteString(), serialized);
+        // the bytes are serialized once and shared by all the followers
+        Assert.assertSame(serialized, raftLog.getSerializedEntry(cached));
+        // an entry which is not the cached instance is serialized again
+        Assert.assertNotSame(serialized, raftLog.getSerializedEntry(e.toBuilder().build()));
+      }
+    }
+
+    // the entries written from the serialized bytes are read back
+    try (SegmentedRaftLog raftLog = new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      for(LogEntryProto e : entries) {
+        Assert.assertEquals(ServerProtoUtils.removeStateMachineData(e), raftLog.get(e.getIndex()));
+      }
+    }
+  }
+
   /**
    * Test append with inconsistent entries
    */
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.RaftTestUtil.SimpleOperation;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.server.impl.ServerProtoUtils;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStateMachineDataCache extends BaseTest {
+  static final int DATA_SIZE = 100;
+
+  static LogEntryProto newEntry(long term, long index) {
+    return ServerProtoUtils.toLogEntryProto(new SimpleOperation("m" + index).getLogEntryContent(), term, index);
+  }
+
+  static ByteString newData(long index) {
+    final byte[] bytes = new byte[DATA_SIZE];
+    bytes[0] = (byte) index;
+    return ByteString.copyFrom(bytes);
+  }
+
+  @Test
+  public void testPutGetEvict() {
+    final StateMachineDataCache cache = new StateMachineDataCache(10 * DATA_SIZE);
+    Assert.assertTrue(cache.isEnabled());
+    for(long i = 0; i < 10; i++) {
+      cache.put(newEntry(1, i), newData(i));
+    }
+    Assert.assertEquals(10 * DATA_SIZE, cache.getSize());
+    for(long i = 0; i < 10; i++) {
+      Assert.assertEquals(newData(i), cache.get(newEntry(1, i)));
+      // the term must match
+      Assert.assertNull(cache.get(newEntry(2, i)));
+    }
+
+    // the oldest data is evicted when the cache is full
+    cache.put(newEntry(1, 10), newData(10));
+    Assert.assertEquals(10 * DATA_SIZE, cache.getSize());
+    Assert.assertNull(cache.get(newEntry(1, 0)));
+    Assert.assertNotNull(cache.get(newEntry(1, 10)));
+
+    // evict the data matched by all the followers
+    cache.evict(4);
+    Assert.assertEquals(6 * DATA_SIZE, cache.getSize());
+    Assert.assertNull(cache.get(newEntry(1, 4)));
+    Assert.assertNotNull(cache.get(newEntry(1, 5)));
+
+    cache.truncate(8);
+    Assert.assertEquals(3 * DATA_SIZE, cache.getSize());
+    Assert.assertNull(cache.get(newEntry(1, 8)));
+    Assert.assertNotNull(cache.get(newEntry(1, 7)));
+
+    cache.clear();
+    Assert.assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void testDisabled() {
+    final StateMachineDataCache cache = new StateMachineDataCache(0);
+    Assert.assertFalse(cache.isEnabled());
+    cache.put(newEntry(1, 0), newData(0));
+    Assert.assertEquals(0, cache.getSize());
+    Assert.assertNull(cache.get(newEntry(1, 0)));
+  }
+}
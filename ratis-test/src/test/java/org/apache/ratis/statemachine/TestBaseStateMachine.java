@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.statemachine;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.statemachine.impl.BaseStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+public class TestBaseStateMachine extends BaseTest {
+  static class TestingStateMachine extends BaseStateMachine {
+    boolean applied(long term, long index) {
+      return updateLastAppliedTermIndex(term, index);
+    }
+  }
+
+  @Test
+  public void testQueryStaleCompletesWhenApplied() throws Exception {
+    final TestingStateMachine sm = new TestingStateMachine();
+    Assert.assertTrue(sm.applied(0, 0));
+
+    final CompletableFuture<Message> future = sm.queryStale(Message.valueOf("q"), 5);
+    Assert.assertFalse(future.isDone());
+
+    for (long i = 1; i < 5; i++) {
+      Assert.assertTrue(sm.applied(1, i));
+      Assert.assertFalse("index " + i, future.isDone());
+    }
+    // applying the same index again does not update anything
+    Assert.assertFalse(sm.applied(1, 4));
+    Assert.assertFalse(future.isDone());
+
+    Assert.assertTrue(sm.applied(1, 5));
+    Assert.assertTrue(future.isDone());
+    future.get();
+
+    // a query with an applied index is served immediately
+    Assert.assertTrue(sm.queryStale(Message.valueOf("q"), 3).isDone());
+  }
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestTokenBucket {
+  static final long RATE = 1 << 20;
+
+  @Test(timeout = 10000)
+  public void testReserve() {
+    final TokenBucket bucket = new TokenBucket("test", SizeInBytes.valueOf(RATE), null);
+    Assert.assertFalse(bucket.isUnlimited());
+    // the bucket is initially full
+    Assert.assertEquals(0, bucket.reserve(RATE));
+    // borrow one more second of tokens
+    final long waitNanos = bucket.reserve(RATE);
+    Assert.assertTrue("waitNanos = " + waitNanos, waitNanos > TimeUnit.MILLISECONDS.toNanos(900));
+    Assert.assertTrue("waitNanos = " + waitNanos, waitNanos <= TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Test(timeout = 10000)
+  public void testAcquire() throws Exception {
+    final TokenBucket server = new TokenBucket("server", SizeInBytes.valueOf(RATE), null);
+    final TokenBucket group = new TokenBucket("group", SizeInBytes.valueOf(0), server);
+    Assert.assertFalse(group.isUnlimited());
+
+    // the rate of the group is limited by the server
+    final long startNanos = System.nanoTime();
+    group.acquire(RATE);
+    group.acquire(RATE / 2);
+    final long elapsedNanos = System.nanoTime() - startNanos;
+    Assert.assertTrue("elapsedNanos = " + elapsedNanos, elapsedNanos >= TimeUnit.MILLISECONDS.toNanos(400));
+  }
+
+  @Test(timeout = 1000)
+  public void testBorrow() {
+    final TokenBucket server = new TokenBucket("server", SizeInBytes.valueOf(RATE), null);
+    final TokenBucket group = new TokenBucket("group", SizeInBytes.valueOf(RATE / 2), server);
+
+    // borrowing does not block; the wait time is the max debt of the bucket and its ancestors
+    Assert.assertEquals(0, group.borrow(RATE / 2));
+    final long waitNanos = group.borrow(RATE / 2);
+    Assert.assertTrue("waitNanos = " + waitNanos, waitNanos > TimeUnit.MILLISECONDS.toNanos(900));
+    Assert.assertTrue("waitNanos = " + waitNanos, waitNanos <= TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Test(timeout = 1000)
+  public void testUnlimited() throws Exception {
+    final TokenBucket bucket = new TokenBucket("unlimited", SizeInBytes.valueOf(0),
+        new TokenBucket("parent", SizeInBytes.valueOf(0), null));
+    Assert.assertTrue(bucket.isUnlimited());
+    for(int i = 0; i < 10; i++) {
+      bucket.acquire(Long.MAX_VALUE / 10);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Test the {@link RaftEvent}s recorded to JFR by the Java 11 version of {@link RaftEvents}.
+ *
+ * This test is compiled only with Java 11 or above; see the java11 profile in the pom.
+ */
+public class TestRaftEventsWithJfr extends BaseTest {
+  static final String LOG_FLUSH = "org.apache.ratis.LogFlush";
+  static final String APPEND_ENTRIES_SEND = "org.apache.ratis.AppendEntriesSend";
+
+  @Test
+  public void testWrite() throws Exception {
+    final MiniRaftClusterWithSimulatedRpc cluster
+        = MiniRaftClusterWithSimulatedRpc.FACTORY.newCluster(3, new RaftProperties());
+    final File dump = new File(getTestDir(), "events.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(LOG_FLUSH);
+      recording.enable(APPEND_ENTRIES_SEND);
+      recording.start();
+      // the classes, instead of the multi-release jar, may be in the classpath
+      Assume.assumeTrue("The Java 11 version of RaftEvents is not in use",
+          RaftEvents.begin(RaftEvent.Type.LOG_FLUSH) != RaftEvent.NOOP);
+
+      cluster.start();
+      RaftTestUtil.waitForLeader(cluster);
+      try (RaftClient client = cluster.createClient()) {
+        final RaftClientReply reply = client.send(new RaftTestUtil.SimpleMessage("m"));
+        Assert.assertTrue(reply.isSuccess());
+      }
+      recording.stop();
+      FileUtils.createDirectories(getTestDir());
+      recording.dump(dump.toPath());
+    } finally {
+      cluster.shutdown();
+    }
+
+    final List<RecordedEvent> events = RecordingFile.readAllEvents(dump.toPath());
+    final Set<String> names = events.stream().map(e -> e.getEventType().getName()).collect(Collectors.toSet());
+    LOG.info("Recorded {} events: {}", events.size(), names);
+    Assert.assertTrue(names.contains(LOG_FLUSH));
+    Assert.assertTrue(names.contains(APPEND_ENTRIES_SEND));
+    for (RecordedEvent e : events) {
+      Assert.assertNotNull(e.getString("serverId"));
+      Assert.assertTrue(e.getLong("lastIndex") >= e.getLong("firstIndex"));
+    }
+  }
+}